@@ -97,6 +97,23 @@ def kotlin_dependencies(extra_maven_dependencies = []):
             "https://maven.google.com",
         ],
     )
+
+    # Only used by the optional coroutine API, resolved separately so that the stdlib it requires
+    # doesn't replace the one above for the rest of the library.
+    maven_install(
+        name = "maven_coroutines",
+        artifacts = [
+            # The first release with a stable Flow API, built against this stdlib.
+            "org.jetbrains.kotlin:kotlin-stdlib-jdk8:1.3.50",
+            "org.jetbrains.kotlin:kotlin-stdlib-common:1.3.50",
+            "org.jetbrains.kotlin:kotlin-stdlib:1.3.50",
+            "org.jetbrains.kotlinx:kotlinx-coroutines-core:1.3.0",
+        ],
+        version_conflict_policy = "pinned",
+        repositories = [
+            "https://repo1.maven.org/maven2",
+        ],
+    )
     kotlin_repositories()
     rules_detekt_dependencies()
     robolectric_repositories()
@@ -19,7 +19,7 @@ def native_lib_name(native_dep):
         lib_name = native_dep.split(".so")[0]
     return lib_name
 
-def envoy_mobile_kt_library(name, visibility = None, srcs = [], deps = [], exports = []):
+def envoy_mobile_kt_library(name, visibility = None, srcs = [], deps = [], exports = [], friends = []):
     # These source files must be re-exported to the kotlin custom library rule to ensure their
     # inclusion. This is used to work around testing visibility.
     native.filegroup(
@@ -33,6 +33,7 @@ def envoy_mobile_kt_library(name, visibility = None, srcs = [], deps = [], expor
         srcs = srcs,
         deps = deps,
         exports = exports,
+        friends = friends,
         visibility = visibility,
     )
 
@@ -105,6 +105,10 @@ envoy_status_t Engine::main(const std::string config, const std::string log_leve
 
           network_configurator_ =
               Network::ConfiguratorFactory{server_->serverFactoryContext()}.get();
+          preconnector_ = std::make_unique<Http::Preconnector>(
+              server_->clusterManager(), server_->dispatcher(), network_configurator_);
+          dns_cache_controller_ = std::make_unique<Network::DnsCacheController>(
+              server_->dispatcher(), network_configurator_);
           Envoy::Network::Android::Utility::setAlternateGetifaddrs();
           auto v4_interfaces = network_configurator_->enumerateV4Interfaces();
           auto v6_interfaces = network_configurator_->enumerateV6Interfaces();
@@ -133,6 +137,8 @@ envoy_status_t Engine::main(const std::string config, const std::string log_leve
 
   // Ensure destructors run on Envoy's main thread.
   postinit_callback_handler_.reset(nullptr);
+  dns_cache_controller_.reset();
+  preconnector_.reset();
   network_configurator_.reset();
   client_scope_.reset();
   stat_name_set_.reset();
@@ -237,6 +243,14 @@ envoy_status_t Engine::recordHistogramValue(const std::string& elements, envoy_s
                                             uint64_t value,
                                             envoy_histogram_stat_unit_t unit_measure) {
   ENVOY_LOG(trace, "[pulse.{}] recordHistogramValue", elements);
+  return recordHistogramValues(elements, tags, {{value, 1}}, unit_measure);
+}
+
+envoy_status_t
+Engine::recordHistogramValues(const std::string& elements, envoy_stats_tags tags,
+                              const std::vector<std::pair<uint64_t, uint64_t>>& value_counts,
+                              envoy_histogram_stat_unit_t unit_measure) {
+  ENVOY_LOG(trace, "[pulse.{}] recordHistogramValues", elements);
   ASSERT(dispatcher_->isThreadSafe(), "pulse calls must run from dispatcher's context");
   Stats::StatNameTagVector tags_vctr =
       Stats::Utility::transformToStatNameTagVector(tags, stat_name_set_);
@@ -257,9 +271,13 @@ envoy_status_t Engine::recordHistogramValue(const std::string& elements, envoy_s
     break;
   }
 
-  Stats::Utility::histogramFromElements(*client_scope_, {Stats::DynamicName(name)},
-                                        envoy_unit_measure, tags_vctr)
-      .recordValue(value);
+  Stats::Histogram& histogram = Stats::Utility::histogramFromElements(
+      *client_scope_, {Stats::DynamicName(name)}, envoy_unit_measure, tags_vctr);
+  for (const auto& [value, count] : value_counts) {
+    for (uint64_t i = 0; i < count; i++) {
+      histogram.recordValue(value);
+    }
+  }
   return ENVOY_SUCCESS;
 }
 
@@ -307,6 +325,25 @@ void Engine::drainConnections() {
   server_->clusterManager().drainConnections();
 }
 
+void Engine::preconnect(const std::string& scheme, const std::string& authority,
+                        bool force_http2, uint32_t num_connections) {
+  ASSERT(dispatcher_->isThreadSafe(), "preconnect must be called from the dispatcher's context");
+  const auto destination = Http::Client::preconnectDestination(scheme, force_http2);
+  preconnector_->preconnect(destination.first, authority, destination.second, num_connections);
+}
+
+void Engine::prefetchDns(const std::vector<std::string>& hosts) {
+  ASSERT(dispatcher_->isThreadSafe(), "prefetchDns must be called from the dispatcher's context");
+  dns_cache_controller_->prefetch(hosts);
+}
+
+envoy_status_t Engine::dnsCacheSnapshot(envoy_data& out) {
+  ASSERT(dispatcher_->isThreadSafe(),
+         "dnsCacheSnapshot must be called from the dispatcher's context");
+  out = Data::Utility::copyToBridgeData(dns_cache_controller_->snapshot());
+  return ENVOY_SUCCESS;
+}
+
 Upstream::ClusterManager& Engine::getClusterManager() {
   ASSERT(dispatcher_->isThreadSafe(),
          "getClusterManager must be called from the dispatcher's context");
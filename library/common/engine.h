@@ -10,7 +10,9 @@
 #include "library/common/common/lambda_logger_delegate.h"
 #include "library/common/engine_common.h"
 #include "library/common/http/client.h"
+#include "library/common/http/preconnector.h"
 #include "library/common/network/configurator.h"
+#include "library/common/network/dns_cache_controller.h"
 #include "library/common/types/c_types.h"
 
 namespace Envoy {
@@ -105,6 +107,19 @@ public:
   envoy_status_t recordHistogramValue(const std::string& elements, envoy_stats_tags tags,
                                       uint64_t value, envoy_histogram_stat_unit_t unit_measure);
 
+  /**
+   * Record values for the histogram with the given string of elements and unit measurement, each
+   * as many times as its count.
+   * @param elements, joined elements of the timeseries.
+   * @param tags, custom tags of the reporting stat.
+   * @param value_counts, the values to record, each with the number of times to record it.
+   * @param unit_measure, the unit of measurement (e.g. milliseconds, bytes, etc.)
+   */
+  envoy_status_t
+  recordHistogramValues(const std::string& elements, envoy_stats_tags tags,
+                        const std::vector<std::pair<uint64_t, uint64_t>>& value_counts,
+                        envoy_histogram_stat_unit_t unit_measure);
+
   /**
    * Issue a call against the admin handler, populating the `out` parameter with the response if
    * the call was successful.
@@ -127,6 +142,33 @@ public:
    */
   void drainConnections();
 
+  /**
+   * Open upstream connections to an origin ahead of requests to it. Connections are opened in the
+   * pool that requests with the same scheme and authority are assigned to.
+   * @param scheme, the origin's scheme, http or https.
+   * @param authority, the origin's host, with a port if it isn't the scheme's default.
+   * @param force_http2, whether requests to the origin use HTTP/2 over TLS: its host is an h2 raw
+   *                     domain, or https requests to it force HTTP/2 upstream.
+   * @param num_connections, the number of connections the origin should have open.
+   */
+  void preconnect(const std::string& scheme, const std::string& authority, bool force_http2,
+                  uint32_t num_connections);
+
+  /**
+   * Add hosts to the DNS cache requests are resolved with, resolving them in the background.
+   * @param hosts, the hosts to resolve, with a port if it isn't 443.
+   */
+  void prefetchDns(const std::vector<std::string>& hosts);
+
+  /**
+   * Describe the entries of the DNS cache requests are resolved with, one per line: the host and
+   * port, the resolved address (or "-" while resolving) and the number of seconds since that
+   * address was resolved (or -1 if unknown).
+   * @param out, the description.
+   * @returns ENVOY_SUCCESS if `out` was populated.
+   */
+  envoy_status_t dnsCacheSnapshot(envoy_data& out);
+
   /**
    * Get cluster manager from the Engine.
    */
@@ -149,6 +191,8 @@ private:
   Thread::CondVar cv_;
   Http::ClientPtr http_client_;
   Network::ConfiguratorSharedPtr network_configurator_;
+  Http::PreconnectorPtr preconnector_;
+  Network::DnsCacheControllerPtr dns_cache_controller_;
   Event::ProvisionalDispatcherPtr dispatcher_;
   // Used by the cerr logger to ensure logs don't overwrite each other.
   absl::Mutex log_mutex_;
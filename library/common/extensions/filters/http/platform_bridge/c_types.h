@@ -31,6 +31,10 @@ extern const envoy_filter_headers_status_t kEnvoyFilterHeadersStatusResumeIterat
 typedef struct {
   envoy_filter_headers_status_t status;
   envoy_headers headers;
+  // When set, the status carries a change to the headers passed to the filter rather than the
+  // resulting headers: the headers named by these entries (whose values are ignored) are removed,
+  // then `headers` are added to those remaining.
+  envoy_headers* cleared_headers;
 } envoy_filter_headers_status;
 
 /**
@@ -34,6 +34,23 @@ void replaceHeaders(Http::HeaderMap& headers, envoy_headers c_headers) {
   release_envoy_headers(c_headers);
 }
 
+// Applies a change from a platform filter to the headers: only the headers it touched are
+// removed or added, rather than rebuilding the whole map.
+void updateHeaders(Http::HeaderMap& headers, envoy_headers cleared_headers,
+                   envoy_headers added_headers) {
+  for (envoy_map_size_t i = 0; i < cleared_headers.length; i++) {
+    headers.remove(
+        Http::LowerCaseString(Data::Utility::copyToString(cleared_headers.entries[i].key)));
+  }
+  for (envoy_map_size_t i = 0; i < added_headers.length; i++) {
+    headers.addCopy(
+        Http::LowerCaseString(Data::Utility::copyToString(added_headers.entries[i].key)),
+        Data::Utility::copyToString(added_headers.entries[i].value));
+  }
+  release_envoy_headers(cleared_headers);
+  release_envoy_headers(added_headers);
+}
+
 } // namespace
 
 static void envoy_filter_release_callbacks(const void* context) {
@@ -263,7 +280,12 @@ Http::FilterHeadersStatus PlatformBridgeFilter::FilterBase::onHeaders(Http::Head
 
   switch (result.status) {
   case kEnvoyFilterHeadersStatusContinue:
-    replaceHeaders(headers, result.headers);
+    if (result.cleared_headers) {
+      updateHeaders(headers, *result.cleared_headers, result.headers);
+      free(result.cleared_headers);
+    } else {
+      replaceHeaders(headers, result.headers);
+    }
     state_.headers_forwarded_ = true;
     return Http::FilterHeadersStatus::Continue;
 
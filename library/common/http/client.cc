@@ -602,29 +602,39 @@ const char* ClearTextCluster = "base_clear";
 
 } // namespace
 
+const char* Client::destinationCluster(bool cleartext, bool force_http2) {
+  if (cleartext) {
+    return ClearTextCluster;
+  }
+  return force_http2 ? H2Cluster : BaseCluster;
+}
+
+std::pair<const char*, uint16_t> Client::preconnectDestination(absl::string_view scheme,
+                                                               bool force_http2) {
+  // The HTTP/2 cluster always uses TLS, even for the h2 raw domains' http requests.
+  const bool cleartext = !force_http2 && scheme == Headers::get().SchemeValues.Http;
+  return {destinationCluster(cleartext, force_http2), cleartext ? 80 : 443};
+}
+
 void Client::setDestinationCluster(Http::RequestHeaderMap& headers) {
   // Determine upstream cluster:
   // - Use TLS with ALPN by default.
   // - Use http/2 or ALPN if requested explicitly via x-envoy-mobile-upstream-protocol.
   // - Force http/1.1 if request scheme is http (cleartext).
-  const char* cluster{};
+  const bool cleartext = headers.getSchemeValue() == Headers::get().SchemeValues.Http;
+  bool force_http2 = false;
   auto h2_header = headers.get(H2UpstreamHeader);
-  if (headers.getSchemeValue() == Headers::get().SchemeValues.Http) {
-    cluster = ClearTextCluster;
-  } else if (!h2_header.empty()) {
+  if (!cleartext && !h2_header.empty()) {
     ASSERT(h2_header.size() == 1);
     const auto value = h2_header[0]->value().getStringView();
     if (value == "http2") {
-      cluster = H2Cluster;
+      force_http2 = true;
       // FIXME(goaway): No cluster actually forces H1 today except cleartext!
-    } else if (value == "alpn" || value == "http1") {
-      cluster = BaseCluster;
-    } else {
+    } else if (value != "alpn" && value != "http1") {
       PANIC(fmt::format("using unsupported protocol version {}", value));
     }
-  } else {
-    cluster = BaseCluster;
   }
+  const char* cluster = destinationCluster(cleartext, force_http2);
 
   if (!h2_header.empty()) {
     headers.remove(H2UpstreamHeader);
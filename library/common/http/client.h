@@ -105,6 +105,24 @@ public:
    */
   void cancelStream(envoy_stream_t stream);
 
+  /**
+   * Returns the cluster that requests to an origin are routed to.
+   * @param cleartext, whether the origin's scheme is http.
+   * @param force_http2, whether requests force the use of HTTP/2 upstream.
+   */
+  static const char* destinationCluster(bool cleartext, bool force_http2);
+
+  /**
+   * Returns the cluster that connections to an origin are pooled in, and the port used when the
+   * origin's authority has none. Mirrors the routes: h2 raw domains are routed to the HTTP/2
+   * cluster whatever their scheme, other http origins to the cleartext cluster.
+   * @param scheme, the origin's scheme, http or https.
+   * @param force_http2, whether the origin's host is an h2 raw domain, or https requests to it
+   *                     force HTTP/2 upstream.
+   */
+  static std::pair<const char*, uint16_t> preconnectDestination(absl::string_view scheme,
+                                                                bool force_http2);
+
   const HttpClientStats& stats() const;
   Event::ScopeTracker& scopeTracker() const { return dispatcher_; }
 
@@ -0,0 +1,163 @@
+#include "library/common/http/preconnector.h"
+
+#include "source/common/http/header_map_impl.h"
+#include "source/common/http/utility.h"
+#include "source/common/network/transport_socket_options_impl.h"
+#include "source/common/network/upstream_server_name.h"
+#include "source/common/network/upstream_subject_alt_names.h"
+#include "source/common/stream_info/filter_state_impl.h"
+#include "source/common/upstream/load_balancer_impl.h"
+
+namespace Envoy {
+namespace Http {
+
+namespace {
+
+/**
+ * Load balancer context equivalent to that of a request to the origin. The base clusters enable
+ * auto_sni and auto_san_validation, so the transport socket options are derived from the
+ * authority as the router does; socket options are those the network configuration filter adds.
+ * Both are part of the connection pool's key.
+ */
+class PreconnectContext : public Upstream::LoadBalancerContextBase {
+public:
+  PreconnectContext(absl::string_view authority, Network::Configurator& configurator)
+      : headers_(RequestHeaderMapImpl::create()),
+        socket_options_(std::make_shared<Network::Socket::Options>()) {
+    headers_->setHost(authority);
+    configurator.addUpstreamSocketOptions(socket_options_);
+
+    const auto parsed_authority = Utility::parseAuthority(authority);
+    StreamInfo::FilterStateImpl filter_state(StreamInfo::FilterState::LifeSpan::FilterChain);
+    if (!parsed_authority.is_ip_address_) {
+      filter_state.setData(
+          Network::UpstreamServerName::key(),
+          std::make_unique<Network::UpstreamServerName>(parsed_authority.host_),
+          StreamInfo::FilterState::StateType::Mutable);
+    }
+    filter_state.setData(Network::UpstreamSubjectAltNames::key(),
+                         std::make_unique<Network::UpstreamSubjectAltNames>(
+                             std::vector<std::string>{std::string(parsed_authority.host_)}),
+                         StreamInfo::FilterState::StateType::Mutable);
+    transport_socket_options_ =
+        Network::TransportSocketOptionsUtility::fromFilterState(filter_state);
+  }
+
+  // Upstream::LoadBalancerContext
+  const RequestHeaderMap* downstreamHeaders() const override { return headers_.get(); }
+  Network::Socket::OptionsSharedPtr upstreamSocketOptions() const override {
+    return socket_options_;
+  }
+  Network::TransportSocketOptionsConstSharedPtr upstreamTransportSocketOptions() const override {
+    return transport_socket_options_;
+  }
+
+private:
+  RequestHeaderMapPtr headers_;
+  Network::Socket::OptionsSharedPtr socket_options_;
+  Network::TransportSocketOptionsConstSharedPtr transport_socket_options_;
+};
+
+} // namespace
+
+class Preconnector::PendingPreconnect
+    : public Extensions::Common::DynamicForwardProxy::DnsCache::LoadDnsCacheEntryCallbacks {
+public:
+  PendingPreconnect(Preconnector& parent, absl::string_view cluster_name,
+                    absl::string_view authority, uint32_t num_connections)
+      : parent_(parent), cluster_name_(cluster_name), authority_(authority),
+        num_connections_(num_connections) {}
+
+  // DnsCache::LoadDnsCacheEntryCallbacks
+  void onLoadDnsCacheComplete(
+      const Extensions::Common::DynamicForwardProxy::DnsHostInfoSharedPtr& host_info) override {
+    parent_.onDnsResolved(*this, host_info != nullptr && host_info->address() != nullptr);
+  }
+
+  Preconnector& parent_;
+  const std::string cluster_name_;
+  const std::string authority_;
+  const uint32_t num_connections_;
+  Extensions::Common::DynamicForwardProxy::DnsCache::LoadDnsCacheEntryHandlePtr handle_;
+  std::list<PendingPreconnectPtr>::iterator position_;
+};
+
+void Preconnector::preconnect(absl::string_view cluster_name, absl::string_view authority,
+                              uint16_t default_port, uint32_t num_connections) {
+  ASSERT(dispatcher_.isThreadSafe());
+  auto dns_cache = configurator_->dnsCache();
+  if (!dns_cache) {
+    return;
+  }
+
+  auto pending = std::make_unique<PendingPreconnect>(*this, cluster_name, authority,
+                                                     num_connections);
+  auto result = dns_cache->loadDnsCacheEntry(authority, default_port, *pending);
+  switch (result.status_) {
+  case Extensions::Common::DynamicForwardProxy::DnsCache::LoadDnsCacheEntryStatus::InCache:
+    connect(pending->cluster_name_, pending->authority_, num_connections);
+    break;
+  case Extensions::Common::DynamicForwardProxy::DnsCache::LoadDnsCacheEntryStatus::Loading:
+    pending->handle_ = std::move(result.handle_);
+    pending_.push_front(std::move(pending));
+    pending_.front()->position_ = pending_.begin();
+    break;
+  case Extensions::Common::DynamicForwardProxy::DnsCache::LoadDnsCacheEntryStatus::Overflow:
+    ENVOY_LOG(debug, "preconnect to {} skipped: DNS cache overflow", authority);
+    break;
+  }
+}
+
+void Preconnector::onDnsResolved(PendingPreconnect& pending, bool resolved) {
+  // The cluster learns about the new host from the same DNS resolution, through a callback that
+  // posts to this dispatcher too. Posting ensures the host is known when connecting. It also
+  // defers destroying the DNS cache handle until the cache is done notifying it.
+  dispatcher_.post([this, resolved, position = pending.position_]() {
+    const PendingPreconnect& pending = **position;
+    if (resolved) {
+      connect(pending.cluster_name_, pending.authority_, pending.num_connections_);
+    } else {
+      ENVOY_LOG(debug, "preconnect to {} skipped: DNS resolution failed", pending.authority_);
+    }
+    pending_.erase(position);
+  });
+}
+
+void Preconnector::connect(const std::string& cluster_name, const std::string& authority,
+                           uint32_t num_connections) {
+  Upstream::ThreadLocalCluster* cluster = cluster_manager_.getThreadLocalCluster(cluster_name);
+  if (cluster == nullptr) {
+    ENVOY_LOG(debug, "preconnect to {} skipped: unknown cluster {}", authority, cluster_name);
+    return;
+  }
+
+  PreconnectContext context(authority, *configurator_);
+  Upstream::HostConstSharedPtr host = cluster->loadBalancer().chooseHost(&context);
+  if (host == nullptr) {
+    ENVOY_LOG(debug, "preconnect to {} skipped: no host", authority);
+    return;
+  }
+  // Connections already open or opening to the host, whichever pool they are in, count towards
+  // the requested number: this makes repeated calls idempotent.
+  const uint64_t open_connections = host->stats().cx_active_.value();
+  if (open_connections >= num_connections) {
+    return;
+  }
+
+  auto pool = cluster->httpConnPool(Upstream::ResourcePriority::Default, absl::nullopt, &context);
+  if (!pool.has_value()) {
+    return;
+  }
+  // The pool anticipates one stream, and only opens a connection while the capacity of those being
+  // established is less than `ratio` streams. An HTTP/2 connection's capacity exceeds it after the
+  // first one; the per-host circuit breaker may also stop it short.
+  const float ratio = num_connections - open_connections;
+  uint64_t opened = 0;
+  while (open_connections + opened < num_connections && pool->maybePreconnect(ratio)) {
+    opened++;
+  }
+  ENVOY_LOG(debug, "preconnect to {} opened {} connections", authority, opened);
+}
+
+} // namespace Http
+} // namespace Envoy
@@ -0,0 +1,64 @@
+#pragma once
+
+#include <list>
+#include <memory>
+#include <string>
+
+#include "envoy/event/dispatcher.h"
+#include "envoy/upstream/cluster_manager.h"
+
+#include "source/common/common/logger.h"
+#include "source/extensions/common/dynamic_forward_proxy/dns_cache.h"
+
+#include "absl/strings/string_view.h"
+#include "library/common/network/configurator.h"
+
+namespace Envoy {
+namespace Http {
+
+/**
+ * Opens upstream connections ahead of the requests that will use them, so that these don't wait
+ * for DNS resolution, nor for TCP and TLS handshakes.
+ *
+ * Connections are opened in the same connection pool that requests to the origin are assigned to:
+ * the load balancer context used to pick it mirrors what the router and network configuration
+ * filter provide for such requests. Connections count towards the cluster's per-host circuit
+ * breaker like any other.
+ */
+class Preconnector : public Logger::Loggable<Logger::Id::pool> {
+public:
+  Preconnector(Upstream::ClusterManager& cluster_manager, Event::Dispatcher& dispatcher,
+               Network::ConfiguratorSharedPtr configurator)
+      : cluster_manager_(cluster_manager), dispatcher_(dispatcher), configurator_(configurator) {}
+
+  /**
+   * Resolves the origin and opens connections to it. Idempotent: only the connections missing
+   * for the origin's host to have `num_connections` open are opened, and for HTTP/2 a single
+   * connection is opened.
+   * @param cluster_name, the cluster requests to the origin are routed to.
+   * @param authority, the origin's host, with a port if it isn't the scheme's default.
+   * @param default_port, the scheme's default port.
+   * @param num_connections, the number of connections the origin's host should have.
+   */
+  void preconnect(absl::string_view cluster_name, absl::string_view authority,
+                  uint16_t default_port, uint32_t num_connections);
+
+private:
+  class PendingPreconnect;
+  using PendingPreconnectPtr = std::unique_ptr<PendingPreconnect>;
+
+  void connect(const std::string& cluster_name, const std::string& authority,
+               uint32_t num_connections);
+  void onDnsResolved(PendingPreconnect& pending, bool resolved);
+
+  Upstream::ClusterManager& cluster_manager_;
+  Event::Dispatcher& dispatcher_;
+  Network::ConfiguratorSharedPtr configurator_;
+  // Preconnects waiting for the origin to be resolved.
+  std::list<PendingPreconnectPtr> pending_;
+};
+
+using PreconnectorPtr = std::unique_ptr<Preconnector>;
+
+} // namespace Http
+} // namespace Envoy
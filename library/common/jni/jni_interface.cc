@@ -1,6 +1,7 @@
 #include <ares.h>
 
 #include <string>
+#include <vector>
 
 #include "library/common/api/c_types.h"
 #include "library/common/extensions/filters/http/platform_bridge/c_types.h"
@@ -229,6 +230,23 @@ Java_io_envoyproxy_envoymobile_engine_JniLibrary_dumpStats(JNIEnv* env,
   return str;
 }
 
+extern "C" JNIEXPORT jstring JNICALL
+Java_io_envoyproxy_envoymobile_engine_JniLibrary_dumpPrometheusStats(JNIEnv* env,
+                                                                     jclass, // class
+                                                                     jlong engine) {
+  jni_log("[Envoy]", "dumpPrometheusStats");
+  envoy_data data;
+  jint result = dump_prometheus_stats(engine, &data);
+  if (result != ENVOY_SUCCESS) {
+    return env->NewStringUTF("");
+  }
+
+  jstring str = native_data_to_string(env, data);
+  release_envoy_data(data);
+
+  return str;
+}
+
 extern "C" JNIEXPORT jint JNICALL
 Java_io_envoyproxy_envoymobile_engine_JniLibrary_recordHistogramValue(JNIEnv* env,
                                                                       jclass, // class
@@ -243,6 +261,44 @@ Java_io_envoyproxy_envoymobile_engine_JniLibrary_recordHistogramValue(JNIEnv* en
   return result;
 }
 
+static jint record_histogram_values(JNIEnv* env, jlong engine, jstring elements, jobjectArray tags,
+                                    jintArray j_values, jlongArray j_counts,
+                                    envoy_histogram_stat_unit_t unit_measure) {
+  jsize length = env->GetArrayLength(j_values);
+  std::vector<uint64_t> values(length);
+  std::vector<uint64_t> counts(length);
+  jint* native_values = env->GetIntArrayElements(j_values, nullptr);
+  jlong* native_counts = env->GetLongArrayElements(j_counts, nullptr);
+  for (jsize i = 0; i < length; i++) {
+    values[i] = native_values[i];
+    counts[i] = native_counts[i];
+  }
+  env->ReleaseLongArrayElements(j_counts, native_counts, JNI_ABORT);
+  env->ReleaseIntArrayElements(j_values, native_values, JNI_ABORT);
+
+  const char* native_elements = env->GetStringUTFChars(elements, nullptr);
+  jint result = record_histogram_values(engine, native_elements, to_native_tags(env, tags),
+                                        values.data(), counts.data(), length, unit_measure);
+  env->ReleaseStringUTFChars(elements, native_elements);
+  return result;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_io_envoyproxy_envoymobile_engine_JniLibrary_recordHistogramDurations(
+    JNIEnv* env,
+    jclass, // class
+    jlong engine, jstring elements, jobjectArray tags, jintArray durationsMs, jlongArray counts) {
+  return record_histogram_values(env, engine, elements, tags, durationsMs, counts, MILLISECONDS);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_io_envoyproxy_envoymobile_engine_JniLibrary_recordHistogramValues(
+    JNIEnv* env,
+    jclass, // class
+    jlong engine, jstring elements, jobjectArray tags, jintArray values, jlongArray counts) {
+  return record_histogram_values(env, engine, elements, tags, values, counts, UNSPECIFIED);
+}
+
 // JvmCallbackContext
 
 static void pass_headers(const char* method, envoy_headers headers, jobject j_context) {
@@ -321,12 +377,21 @@ jvm_http_filter_on_request_headers(envoy_headers headers, bool end_stream,
   int unboxed_status = unbox_integer(env, status);
   envoy_headers native_headers = to_native_headers(env, j_headers);
 
+  envoy_headers* cleared_headers = nullptr;
+  // Headers changed by the filter come with the names of the headers to clear.
+  if (env->GetArrayLength(result) == 3) {
+    jobjectArray j_cleared = static_cast<jobjectArray>(env->GetObjectArrayElement(result, 2));
+    cleared_headers = to_native_headers_ptr(env, j_cleared);
+    env->DeleteLocalRef(j_cleared);
+  }
+
   env->DeleteLocalRef(result);
   env->DeleteLocalRef(status);
   env->DeleteLocalRef(j_headers);
 
   return (envoy_filter_headers_status){/*status*/ unboxed_status,
-                                       /*headers*/ native_headers};
+                                       /*headers*/ native_headers,
+                                       /*cleared_headers*/ cleared_headers};
 }
 
 static envoy_filter_headers_status
@@ -342,12 +407,21 @@ jvm_http_filter_on_response_headers(envoy_headers headers, bool end_stream,
   int unboxed_status = unbox_integer(env, status);
   envoy_headers native_headers = to_native_headers(env, j_headers);
 
+  envoy_headers* cleared_headers = nullptr;
+  // Headers changed by the filter come with the names of the headers to clear.
+  if (env->GetArrayLength(result) == 3) {
+    jobjectArray j_cleared = static_cast<jobjectArray>(env->GetObjectArrayElement(result, 2));
+    cleared_headers = to_native_headers_ptr(env, j_cleared);
+    env->DeleteLocalRef(j_cleared);
+  }
+
   env->DeleteLocalRef(result);
   env->DeleteLocalRef(status);
   env->DeleteLocalRef(j_headers);
 
   return (envoy_filter_headers_status){/*status*/ unboxed_status,
-                                       /*headers*/ native_headers};
+                                       /*headers*/ native_headers,
+                                       /*cleared_headers*/ cleared_headers};
 }
 
 static void* jvm_on_data(const char* method, envoy_data data, bool end_stream,
@@ -373,23 +447,82 @@ static void* jvm_on_data(const char* method, envoy_data data, bool end_stream,
   return result;
 }
 
+// Passes data to the JVM as a read-only direct buffer over the native bytes, without copying. The
+// data isn't released: the caller still owns it once the buffer is no longer used.
+static void* jvm_on_data_view(const char* method, envoy_data data, bool end_stream,
+                              envoy_stream_intel stream_intel, void* context) {
+  jni_log("[Envoy]", "jvm_on_data_view");
+  JNIEnv* env = get_env();
+  jobject j_context = static_cast<jobject>(context);
+
+  jclass jcls_JvmCallbackContext = env->GetObjectClass(j_context);
+  jmethodID jmid_onData = env->GetMethodID(jcls_JvmCallbackContext, method,
+                                           "(Ljava/nio/ByteBuffer;Z[J)Ljava/lang/Object;");
+
+  jobject j_data = env->NewDirectByteBuffer(const_cast<uint8_t*>(data.bytes), data.length);
+  jlongArray j_stream_intel = native_stream_intel_to_array(env, stream_intel);
+  jobject result = env->CallObjectMethod(j_context, jmid_onData, j_data,
+                                         end_stream ? JNI_TRUE : JNI_FALSE, j_stream_intel);
+
+  env->DeleteLocalRef(j_stream_intel);
+  env->DeleteLocalRef(j_data);
+  env->DeleteLocalRef(jcls_JvmCallbackContext);
+
+  return result;
+}
+
 static void* jvm_on_response_data(envoy_data data, bool end_stream, envoy_stream_intel stream_intel,
                                   void* context) {
   return jvm_on_data("onResponseData", data, end_stream, stream_intel, context);
 }
 
-static envoy_filter_data_status jvm_http_filter_on_request_data(envoy_data data, bool end_stream,
-                                                                envoy_stream_intel stream_intel,
-                                                                const void* context) {
+// Returns the data of a filter's result for body data passed as a view of `borrowed`. Data
+// returned unchanged hands `borrowed` back to the platform bridge without a copy; anything else
+// is converted, and `borrowed` released, as the view must not outlive it.
+static envoy_data borrowed_buffer_to_native_data(JNIEnv* env, jobject j_data, envoy_data borrowed) {
+  const uint8_t* direct_address = static_cast<uint8_t*>(env->GetDirectBufferAddress(j_data));
+  jlong capacity = env->GetDirectBufferCapacity(j_data);
+  if (direct_address == borrowed.bytes && capacity == static_cast<jlong>(borrowed.length)) {
+    return borrowed;
+  }
+
+  envoy_data native_data;
+  if (direct_address != nullptr && direct_address >= borrowed.bytes &&
+      direct_address < borrowed.bytes + borrowed.length) {
+    // A slice of the view, which points into the borrowed data.
+    native_data = copy_envoy_data(
+        {static_cast<size_t>(capacity), direct_address, envoy_noop_release, nullptr});
+  } else {
+    native_data = buffer_to_native_data(env, j_data);
+  }
+  release_envoy_data(borrowed);
+  return native_data;
+}
+
+// Calls `view_method` with a view of the data when given, or `method` with a copy otherwise.
+static envoy_filter_data_status jvm_http_filter_on_data(const char* method,
+                                                        const char* view_method, envoy_data data,
+                                                        bool end_stream,
+                                                        envoy_stream_intel stream_intel,
+                                                        const void* context) {
   JNIEnv* env = get_env();
-  jobjectArray result = static_cast<jobjectArray>(
-      jvm_on_data("onRequestData", data, end_stream, stream_intel, const_cast<void*>(context)));
+  // A direct buffer can't view empty data, which has no bytes to point to.
+  bool data_view = view_method != nullptr && data.length > 0;
+  jobjectArray result;
+  if (data_view) {
+    result = static_cast<jobjectArray>(jvm_on_data_view(view_method, data, end_stream,
+                                                        stream_intel, const_cast<void*>(context)));
+  } else {
+    result = static_cast<jobjectArray>(
+        jvm_on_data(method, data, end_stream, stream_intel, const_cast<void*>(context)));
+  }
 
   jobject status = env->GetObjectArrayElement(result, 0);
   jobject j_data = static_cast<jobjectArray>(env->GetObjectArrayElement(result, 1));
 
   int unboxed_status = unbox_integer(env, status);
-  envoy_data native_data = buffer_to_native_data(env, j_data);
+  envoy_data native_data = data_view ? borrowed_buffer_to_native_data(env, j_data, data)
+                                     : buffer_to_native_data(env, j_data);
 
   envoy_headers* pending_headers = nullptr;
   // Avoid out-of-bounds access to array when checking for optional pending entities.
@@ -408,34 +541,31 @@ static envoy_filter_data_status jvm_http_filter_on_request_data(envoy_data data,
                                     /*pending_headers*/ pending_headers};
 }
 
+static envoy_filter_data_status jvm_http_filter_on_request_data(envoy_data data, bool end_stream,
+                                                                envoy_stream_intel stream_intel,
+                                                                const void* context) {
+  return jvm_http_filter_on_data("onRequestData", nullptr, data, end_stream, stream_intel, context);
+}
+
 static envoy_filter_data_status jvm_http_filter_on_response_data(envoy_data data, bool end_stream,
                                                                  envoy_stream_intel stream_intel,
                                                                  const void* context) {
-  JNIEnv* env = get_env();
-  jobjectArray result = static_cast<jobjectArray>(
-      jvm_on_data("onResponseData", data, end_stream, stream_intel, const_cast<void*>(context)));
-
-  jobject status = env->GetObjectArrayElement(result, 0);
-  jobject j_data = static_cast<jobjectArray>(env->GetObjectArrayElement(result, 1));
-
-  int unboxed_status = unbox_integer(env, status);
-  envoy_data native_data = buffer_to_native_data(env, j_data);
-
-  envoy_headers* pending_headers = nullptr;
-  // Avoid out-of-bounds access to array when checking for optional pending entities.
-  if (unboxed_status == kEnvoyFilterDataStatusResumeIteration) {
-    jobjectArray j_headers = static_cast<jobjectArray>(env->GetObjectArrayElement(result, 2));
-    pending_headers = to_native_headers_ptr(env, j_headers);
-    env->DeleteLocalRef(j_headers);
-  }
+  return jvm_http_filter_on_data("onResponseData", nullptr, data, end_stream, stream_intel,
+                                 context);
+}
 
-  env->DeleteLocalRef(result);
-  env->DeleteLocalRef(status);
-  env->DeleteLocalRef(j_data);
+static envoy_filter_data_status
+jvm_http_filter_on_request_data_view(envoy_data data, bool end_stream,
+                                     envoy_stream_intel stream_intel, const void* context) {
+  return jvm_http_filter_on_data("onRequestData", "onRequestDataView", data, end_stream,
+                                 stream_intel, context);
+}
 
-  return (envoy_filter_data_status){/*status*/ unboxed_status,
-                                    /*data*/ native_data,
-                                    /*pending_headers*/ pending_headers};
+static envoy_filter_data_status
+jvm_http_filter_on_response_data_view(envoy_data data, bool end_stream,
+                                      envoy_stream_intel stream_intel, const void* context) {
+  return jvm_http_filter_on_data("onResponseData", "onResponseDataView", data, end_stream,
+                                 stream_intel, context);
 }
 
 static void* jvm_on_metadata(envoy_headers metadata, envoy_stream_intel stream_intel,
@@ -789,6 +919,53 @@ static void* jvm_on_send_window_available(envoy_stream_intel stream_intel, void*
 
 // JvmFilterFactoryContext
 
+// Bits of EnvoyHTTPFilterEvents.getEventMask().
+static const jint kFilterEventRequestHeaders = 1;
+static const jint kFilterEventRequestData = 1 << 1;
+static const jint kFilterEventRequestTrailers = 1 << 2;
+static const jint kFilterEventResponseHeaders = 1 << 3;
+static const jint kFilterEventResponseData = 1 << 4;
+static const jint kFilterEventResponseTrailers = 1 << 5;
+static const jint kFilterEventRequestCallbacks = 1 << 6;
+static const jint kFilterEventResponseCallbacks = 1 << 7;
+static const jint kFilterEventError = 1 << 8;
+static const jint kFilterEventCancel = 1 << 9;
+
+static void clear_unimplemented_filter_events(envoy_http_filter* c_filter, jint event_mask) {
+  if (!(event_mask & kFilterEventRequestHeaders)) {
+    c_filter->on_request_headers = nullptr;
+  }
+  if (!(event_mask & kFilterEventRequestData)) {
+    c_filter->on_request_data = nullptr;
+  }
+  if (!(event_mask & kFilterEventRequestTrailers)) {
+    c_filter->on_request_trailers = nullptr;
+  }
+  if (!(event_mask & kFilterEventResponseHeaders)) {
+    c_filter->on_response_headers = nullptr;
+  }
+  if (!(event_mask & kFilterEventResponseData)) {
+    c_filter->on_response_data = nullptr;
+  }
+  if (!(event_mask & kFilterEventResponseTrailers)) {
+    c_filter->on_response_trailers = nullptr;
+  }
+  if (!(event_mask & kFilterEventRequestCallbacks)) {
+    c_filter->set_request_callbacks = nullptr;
+    c_filter->on_resume_request = nullptr;
+  }
+  if (!(event_mask & kFilterEventResponseCallbacks)) {
+    c_filter->set_response_callbacks = nullptr;
+    c_filter->on_resume_response = nullptr;
+  }
+  if (!(event_mask & kFilterEventError)) {
+    c_filter->on_error = nullptr;
+  }
+  if (!(event_mask & kFilterEventCancel)) {
+    c_filter->on_cancel = nullptr;
+  }
+}
+
 static const void* jvm_http_filter_init(const void* context) {
   jni_log("[Envoy]", "jvm_filter_init");
 
@@ -807,6 +984,24 @@ static const void* jvm_http_filter_init(const void* context) {
   jni_log_fmt("[Envoy]", "j_filter: %p", j_filter);
   jobject retained_filter = env->NewGlobalRef(j_filter);
 
+  // c_filter is this filter instance's own copy of the dispatch struct: clearing the callbacks the
+  // filter doesn't implement makes the platform bridge continue those events without a JNI call.
+  jclass jcls_JvmFilterContext = env->GetObjectClass(j_filter);
+  jmethodID jmid_getEventMask = env->GetMethodID(jcls_JvmFilterContext, "getEventMask", "()I");
+  jint event_mask = env->CallIntMethod(j_filter, jmid_getEventMask);
+  clear_unimplemented_filter_events(c_filter, event_mask);
+
+  jmethodID jmid_usesDataViews = env->GetMethodID(jcls_JvmFilterContext, "usesDataViews", "()Z");
+  if (env->CallBooleanMethod(j_filter, jmid_usesDataViews)) {
+    if (c_filter->on_request_data) {
+      c_filter->on_request_data = jvm_http_filter_on_request_data_view;
+    }
+    if (c_filter->on_response_data) {
+      c_filter->on_response_data = jvm_http_filter_on_response_data_view;
+    }
+  }
+
+  env->DeleteLocalRef(jcls_JvmFilterContext);
   env->DeleteLocalRef(jcls_JvmFilterFactoryContext);
   env->DeleteLocalRef(j_filter);
 
@@ -862,6 +1057,72 @@ extern "C" JNIEXPORT jint JNICALL Java_io_envoyproxy_envoymobile_engine_JniLibra
   return result;
 }
 
+// Starts every stream of a batch with a single post to the engine. The handles of the streams are
+// initialized here and written to j_stream_handles. Bodies are direct or array-backed ByteBuffers,
+// or null for headers-only requests.
+extern "C" JNIEXPORT jint JNICALL Java_io_envoyproxy_envoymobile_engine_JniLibrary_startStreams(
+    JNIEnv* env, jclass, jlong engine_handle, jobjectArray j_contexts,
+    jbooleanArray j_explicit_flow_control, jobjectArray j_headers, jobjectArray j_bodies,
+    jintArray j_body_lengths, jlongArray j_stream_handles) {
+  jni_log("[Envoy]", "jvm_start_streams");
+  envoy_engine_t engine = static_cast<envoy_engine_t>(engine_handle);
+  jsize count = env->GetArrayLength(j_contexts);
+  std::vector<envoy_stream_request> requests(count);
+  std::vector<jlong> stream_handles(count);
+  jboolean* explicit_flow_control = env->GetBooleanArrayElements(j_explicit_flow_control, nullptr);
+  jint* body_lengths = env->GetIntArrayElements(j_body_lengths, nullptr);
+
+  for (jsize i = 0; i < count; i++) {
+    envoy_stream_request& request = requests[i];
+    request.stream = init_stream(engine);
+    stream_handles[i] = request.stream;
+
+    jobject j_context = env->GetObjectArrayElement(j_contexts, i);
+    jobject retained_context = env->NewGlobalRef(j_context);
+    env->DeleteLocalRef(j_context);
+    request.callbacks = {jvm_on_response_headers,
+                         jvm_on_response_data,
+                         jvm_on_metadata,
+                         jvm_on_response_trailers,
+                         jvm_on_error,
+                         jvm_on_complete,
+                         jvm_on_cancel,
+                         jvm_on_send_window_available,
+                         retained_context};
+    request.explicit_flow_control = explicit_flow_control[i] == JNI_TRUE;
+
+    jobjectArray j_request_headers =
+        static_cast<jobjectArray>(env->GetObjectArrayElement(j_headers, i));
+    request.headers = to_native_headers(env, j_request_headers);
+    env->DeleteLocalRef(j_request_headers);
+
+    jobject j_body = env->GetObjectArrayElement(j_bodies, i);
+    request.headers_only = j_body == nullptr;
+    request.data = request.headers_only
+                       ? envoy_nodata
+                       : buffer_to_native_data(env, j_body, static_cast<size_t>(body_lengths[i]));
+    env->DeleteLocalRef(j_body);
+  }
+
+  env->ReleaseIntArrayElements(j_body_lengths, body_lengths, JNI_ABORT);
+  env->ReleaseBooleanArrayElements(j_explicit_flow_control, explicit_flow_control, JNI_ABORT);
+  env->SetLongArrayRegion(j_stream_handles, 0, count, stream_handles.data());
+
+  envoy_status_t result = start_streams(engine, requests.data(), requests.size());
+  if (result != ENVOY_SUCCESS) {
+    // The engine didn't take ownership of the requests: no callbacks are fired and we need to
+    // release them. The caller reports the failure to each stream's callbacks.
+    for (const envoy_stream_request& request : requests) {
+      env->DeleteGlobalRef(static_cast<jobject>(request.callbacks.context));
+      release_envoy_headers(request.headers);
+      if (!request.headers_only) {
+        release_envoy_data(request.data);
+      }
+    }
+  }
+  return result;
+}
+
 // EnvoyHTTPFilter
 
 extern "C" JNIEXPORT jint JNICALL
@@ -980,6 +1241,31 @@ extern "C" JNIEXPORT jint JNICALL Java_io_envoyproxy_envoymobile_engine_JniLibra
                       end_stream);
 }
 
+extern "C" JNIEXPORT jint JNICALL
+Java_io_envoyproxy_envoymobile_engine_JniLibrary_sendHeadersAndData(JNIEnv* env, jclass,
+                                                                    jlong engine_handle,
+                                                                    jlong stream_handle,
+                                                                    jobjectArray headers,
+                                                                    jobject data, jint length) {
+  jni_log("[Envoy]", "jvm_send_headers_and_data");
+  return send_headers_and_data(static_cast<envoy_engine_t>(engine_handle),
+                               static_cast<envoy_stream_t>(stream_handle),
+                               to_native_headers(env, headers),
+                               buffer_to_native_data(env, data, length));
+}
+
+// Same guarantees on the jbyteArray and its length as for sendDataByteArray.
+extern "C" JNIEXPORT jint JNICALL
+Java_io_envoyproxy_envoymobile_engine_JniLibrary_sendHeadersAndDataByteArray(
+    JNIEnv* env, jclass, jlong engine_handle, jlong stream_handle, jobjectArray headers,
+    jbyteArray data, jint length) {
+  jni_log("[Envoy]", "jvm_send_headers_and_data");
+  return send_headers_and_data(static_cast<envoy_engine_t>(engine_handle),
+                               static_cast<envoy_stream_t>(stream_handle),
+                               to_native_headers(env, headers),
+                               array_to_native_data(env, data, length));
+}
+
 extern "C" JNIEXPORT jint JNICALL Java_io_envoyproxy_envoymobile_engine_JniLibrary_sendTrailers(
     JNIEnv* env, jclass, jlong engine_handle, jlong stream_handle, jobjectArray trailers) {
   jni_log("[Envoy]", "jvm_send_trailers");
@@ -1023,6 +1309,61 @@ Java_io_envoyproxy_envoymobile_engine_JniLibrary_drainConnections(JNIEnv* env,
   drain_connections(engine);
 }
 
+extern "C" JNIEXPORT jint JNICALL Java_io_envoyproxy_envoymobile_engine_JniLibrary_preconnect(
+    JNIEnv* env,
+    jclass, // class
+    jlong engine, jstring scheme, jstring authority, jboolean force_http2,
+    jint num_connections) {
+  jni_log("[Envoy]", "preconnect");
+  const char* native_scheme = env->GetStringUTFChars(scheme, nullptr);
+  const char* native_authority = env->GetStringUTFChars(authority, nullptr);
+  jint result = preconnect(engine, native_scheme, native_authority, force_http2 == JNI_TRUE,
+                           static_cast<uint32_t>(num_connections));
+  env->ReleaseStringUTFChars(scheme, native_scheme);
+  env->ReleaseStringUTFChars(authority, native_authority);
+  return result;
+}
+
+extern "C" JNIEXPORT jint JNICALL Java_io_envoyproxy_envoymobile_engine_JniLibrary_prefetchDns(
+    JNIEnv* env,
+    jclass, // class
+    jlong engine, jobjectArray hosts) {
+  jni_log("[Envoy]", "prefetchDns");
+  const jsize num_hosts = env->GetArrayLength(hosts);
+  std::vector<std::string> native_hosts;
+  native_hosts.reserve(num_hosts);
+  for (jsize i = 0; i < num_hosts; i++) {
+    jstring host = static_cast<jstring>(env->GetObjectArrayElement(hosts, i));
+    const char* native_host = env->GetStringUTFChars(host, nullptr);
+    native_hosts.emplace_back(native_host);
+    env->ReleaseStringUTFChars(host, native_host);
+    env->DeleteLocalRef(host);
+  }
+  std::vector<const char*> host_ptrs;
+  host_ptrs.reserve(num_hosts);
+  for (const auto& host : native_hosts) {
+    host_ptrs.push_back(host.c_str());
+  }
+  return prefetch_dns(engine, host_ptrs.data(), static_cast<uint32_t>(host_ptrs.size()));
+}
+
+extern "C" JNIEXPORT jstring JNICALL
+Java_io_envoyproxy_envoymobile_engine_JniLibrary_dnsCacheSnapshot(JNIEnv* env,
+                                                                  jclass, // class
+                                                                  jlong engine) {
+  jni_log("[Envoy]", "dnsCacheSnapshot");
+  envoy_data data;
+  jint result = dns_cache_snapshot(engine, &data);
+  if (result != ENVOY_SUCCESS) {
+    return env->NewStringUTF("");
+  }
+
+  jstring str = native_data_to_string(env, data);
+  release_envoy_data(data);
+
+  return str;
+}
+
 extern "C" JNIEXPORT jint JNICALL
 Java_io_envoyproxy_envoymobile_engine_JniLibrary_setPreferredNetwork(JNIEnv* env,
                                                                      jclass, // class
@@ -1,7 +1,9 @@
 #include "library/common/main_interface.h"
 
 #include <atomic>
+#include <functional>
 #include <string>
+#include <vector>
 
 #include "absl/synchronization/notification.h"
 #include "library/common/api/external.h"
@@ -25,6 +27,22 @@ envoy_status_t start_stream(envoy_engine_t engine, envoy_stream_t stream,
       });
 }
 
+envoy_status_t start_streams(envoy_engine_t engine, const envoy_stream_request* requests,
+                             size_t count) {
+  std::vector<envoy_stream_request> batch(requests, requests + count);
+  return Envoy::EngineHandle::runOnEngineDispatcher(
+      engine, [batch = std::move(batch)](auto& engine) -> void {
+        for (const envoy_stream_request& request : batch) {
+          engine.httpClient().startStream(request.stream, request.callbacks,
+                                          request.explicit_flow_control);
+          engine.httpClient().sendHeaders(request.stream, request.headers, request.headers_only);
+          if (!request.headers_only) {
+            engine.httpClient().sendData(request.stream, request.data, true);
+          }
+        }
+      });
+}
+
 envoy_status_t send_headers(envoy_engine_t engine, envoy_stream_t stream, envoy_headers headers,
                             bool end_stream) {
   return Envoy::EngineHandle::runOnEngineDispatcher(
@@ -48,6 +66,15 @@ envoy_status_t send_data(envoy_engine_t engine, envoy_stream_t stream, envoy_dat
       });
 }
 
+envoy_status_t send_headers_and_data(envoy_engine_t engine, envoy_stream_t stream,
+                                     envoy_headers headers, envoy_data data) {
+  return Envoy::EngineHandle::runOnEngineDispatcher(
+      engine, [stream, headers, data](auto& engine) -> void {
+        engine.httpClient().sendHeaders(stream, headers, false);
+        engine.httpClient().sendData(stream, data, true);
+      });
+}
+
 // TODO: implement.
 envoy_status_t send_metadata(envoy_engine_t, envoy_stream_t, envoy_headers) {
   return ENVOY_FAILURE;
@@ -114,8 +141,24 @@ envoy_status_t record_histogram_value(envoy_engine_t e, const char* elements, en
       });
 }
 
+envoy_status_t record_histogram_values(envoy_engine_t e, const char* elements,
+                                       envoy_stats_tags tags, const uint64_t* values,
+                                       const uint64_t* counts, size_t length,
+                                       envoy_histogram_stat_unit_t unit_measure) {
+  std::vector<std::pair<uint64_t, uint64_t>> value_counts;
+  value_counts.reserve(length);
+  for (size_t i = 0; i < length; i++) {
+    value_counts.emplace_back(values[i], counts[i]);
+  }
+  return Envoy::EngineHandle::runOnEngineDispatcher(
+      e, [name = std::string(elements), tags, value_counts = std::move(value_counts),
+          unit_measure](auto& engine) -> void {
+        engine.recordHistogramValues(name, tags, value_counts, unit_measure);
+      });
+}
+
 namespace {
-struct AdminCallContext {
+struct BlockingCallContext {
   envoy_status_t status_{};
   envoy_data response_{};
 
@@ -123,18 +166,19 @@ struct AdminCallContext {
   absl::Notification data_received_{};
 };
 
-absl::optional<envoy_data> blockingAdminCall(envoy_engine_t e, absl::string_view path,
-                                             absl::string_view method,
-                                             std::chrono::milliseconds timeout) {
+absl::optional<envoy_data>
+blockingEngineCall(envoy_engine_t e,
+                   std::function<envoy_status_t(Envoy::Engine&, envoy_data&)> call,
+                   std::chrono::milliseconds timeout) {
   // Use a shared ptr here so that we can safely exit this scope in case of a timeout,
   // allowing the dispatched lambda to clean itself up when it's done.
-  auto context = std::make_shared<AdminCallContext>();
+  auto context = std::make_shared<BlockingCallContext>();
 
   auto status = Envoy::EngineHandle::runOnEngineDispatcher(
-      e, [context, path = std::string(path), method = std::string(method)](auto& engine) -> void {
+      e, [context, call = std::move(call)](auto& engine) -> void {
         absl::MutexLock lock(&context->mutex_);
 
-        context->status_ = engine.makeAdminCall(path, method, context->response_);
+        context->status_ = call(engine, context->response_);
         context->data_received_.Notify();
       });
 
@@ -151,11 +195,23 @@ absl::optional<envoy_data> blockingAdminCall(envoy_engine_t e, absl::string_view
 
     return context->response_;
   } else {
-    ENVOY_LOG_MISC(warn, "timed out waiting for admin response");
+    ENVOY_LOG_MISC(warn, "timed out waiting for engine response");
   }
 
   return {};
 }
+
+absl::optional<envoy_data> blockingAdminCall(envoy_engine_t e, absl::string_view path,
+                                             absl::string_view method,
+                                             std::chrono::milliseconds timeout) {
+  return blockingEngineCall(
+      e,
+      [path = std::string(path), method = std::string(method)](Envoy::Engine& engine,
+                                                               envoy_data& out) {
+        return engine.makeAdminCall(path, method, out);
+      },
+      timeout);
+}
 } // namespace
 
 envoy_status_t dump_stats(envoy_engine_t e, envoy_data* out) {
@@ -168,6 +224,17 @@ envoy_status_t dump_stats(envoy_engine_t e, envoy_data* out) {
   return ENVOY_FAILURE;
 }
 
+envoy_status_t dump_prometheus_stats(envoy_engine_t e, envoy_data* out) {
+  auto maybe_data =
+      blockingAdminCall(e, "/stats/prometheus?usedonly", "GET", std::chrono::milliseconds(100));
+  if (maybe_data) {
+    *out = *maybe_data;
+    return ENVOY_SUCCESS;
+  }
+
+  return ENVOY_FAILURE;
+}
+
 void flush_stats(envoy_engine_t e) {
   Envoy::EngineHandle::runOnEngineDispatcher(e, [](auto& engine) { engine.flushStats(); });
 }
@@ -194,3 +261,31 @@ envoy_status_t drain_connections(envoy_engine_t e) {
   return Envoy::EngineHandle::runOnEngineDispatcher(
       e, [](auto& engine) { engine.drainConnections(); });
 }
+
+envoy_status_t preconnect(envoy_engine_t e, const char* scheme, const char* authority,
+                          bool force_http2, uint32_t num_connections) {
+  return Envoy::EngineHandle::runOnEngineDispatcher(
+      e, [scheme = std::string(scheme), authority = std::string(authority), force_http2,
+          num_connections](auto& engine) {
+        engine.preconnect(scheme, authority, force_http2, num_connections);
+      });
+}
+
+envoy_status_t prefetch_dns(envoy_engine_t e, const char* const* hosts, uint32_t num_hosts) {
+  return Envoy::EngineHandle::runOnEngineDispatcher(
+      e, [hosts = std::vector<std::string>(hosts, hosts + num_hosts)](auto& engine) {
+        engine.prefetchDns(hosts);
+      });
+}
+
+envoy_status_t dns_cache_snapshot(envoy_engine_t e, envoy_data* out) {
+  auto maybe_data = blockingEngineCall(
+      e, [](Envoy::Engine& engine, envoy_data& data) { return engine.dnsCacheSnapshot(data); },
+      std::chrono::milliseconds(100));
+  if (maybe_data) {
+    *out = *maybe_data;
+    return ENVOY_SUCCESS;
+  }
+
+  return ENVOY_FAILURE;
+}
@@ -32,6 +32,37 @@ envoy_stream_t init_stream(envoy_engine_t engine);
 envoy_status_t start_stream(envoy_engine_t engine, envoy_stream_t stream,
                             envoy_http_callbacks callbacks, bool explicit_flow_control);
 
+/**
+ * A request to start a stream with, as part of a batch passed to start_streams.
+ */
+typedef struct {
+  // Handle of the stream, from init_stream.
+  envoy_stream_t stream;
+  // The callbacks that will run the stream callbacks.
+  envoy_http_callbacks callbacks;
+  // Whether to enable explicit flow control on the response stream.
+  bool explicit_flow_control;
+  // The request headers.
+  envoy_headers headers;
+  // The request body, ending the stream. Unused for headers-only requests.
+  envoy_data data;
+  // Whether the request is headers-only.
+  bool headers_only;
+} envoy_stream_request;
+
+/**
+ * Open several HTTP streams and send the headers and body of each, ending it, with a single post
+ * to the engine. Equivalent to start_stream followed by send_headers and send_data for each
+ * request, in order. On failure, the headers and data of the requests aren't released: the caller
+ * keeps ownership of them.
+ * @param engine, handle to the engine associated with the streams.
+ * @param requests, the requests to start streams with.
+ * @param count, the number of requests.
+ * @return envoy_status_t, the resulting status of the operation.
+ */
+envoy_status_t start_streams(envoy_engine_t engine, const envoy_stream_request* requests,
+                             size_t count);
+
 /**
  * Send headers over an open HTTP stream. This method can be invoked once and needs to be called
  * before send_data.
@@ -62,6 +93,19 @@ envoy_status_t read_data(envoy_engine_t engine, envoy_stream_t stream, size_t by
 envoy_status_t send_data(envoy_engine_t engine, envoy_stream_t stream, envoy_data data,
                          bool end_stream);
 
+/**
+ * Send headers and data over an open HTTP stream, ending it. Equivalent to send_headers without
+ * end_stream followed by send_data with end_stream, in a single call, for requests whose whole body
+ * is known upfront.
+ * @param engine, the engine associated with this stream.
+ * @param stream, the stream to send headers and data over.
+ * @param headers, the headers to send.
+ * @param data, the data to send.
+ * @return envoy_status_t, the resulting status of the operation.
+ */
+envoy_status_t send_headers_and_data(envoy_engine_t engine, envoy_stream_t stream,
+                                     envoy_headers headers, envoy_data data);
+
 /**
  * Send metadata over an HTTP stream. This method can be invoked multiple times.
  * @param engine, the engine associated with this stream.
@@ -151,6 +195,23 @@ envoy_status_t record_histogram_value(envoy_engine_t engine, const char* element
                                       envoy_stats_tags tags, uint64_t value,
                                       envoy_histogram_stat_unit_t unit_measure);
 
+/**
+ * Record values aggregated by the platform for the histogram with the given string of elements and
+ * unit measurement, with a single post to the engine. Each value is recorded as many times as its
+ * count.
+ * @param engine, the engine that owns the histogram.
+ * @param elements, the string that identifies the histogram to record to.
+ * @param tags, a map of {key, value} pairs of tags.
+ * @param values, the values to record.
+ * @param counts, the number of times each value is recorded.
+ * @param length, the number of values.
+ * @param unit_measure, the unit of measurement (e.g. milliseconds, bytes, etc.)
+ */
+envoy_status_t record_histogram_values(envoy_engine_t engine, const char* elements,
+                                       envoy_stats_tags tags, const uint64_t* values,
+                                       const uint64_t* counts, size_t length,
+                                       envoy_histogram_stat_unit_t unit_measure);
+
 /**
  * Flush the stats sinks outside of a flushing interval.
  * Note: flushing before the engine has started will result in a no-op.
@@ -167,6 +228,16 @@ void flush_stats(envoy_engine_t engine);
  */
 envoy_status_t dump_stats(envoy_engine_t engine, envoy_data* data);
 
+/**
+ * Collect a snapshot of all active stats in the Prometheus text exposition format. Unlike
+ * dump_stats, histograms are reported as cumulative bucket counts, which makes the output suitable
+ * for computing deltas between successive snapshots.
+ * Note: this function may block for some time while collecting stats.
+ * @param engine, the engine whose stats to dump.
+ * @param data, out parameter to populate with stats data.
+ */
+envoy_status_t dump_prometheus_stats(envoy_engine_t engine, envoy_data* data);
+
 /**
  * Statically register APIs leveraging platform libraries.
  * Warning: Must be completed before any calls to run_engine().
@@ -209,6 +280,42 @@ void terminate_engine(envoy_engine_t engine);
  */
 envoy_status_t drain_connections(envoy_engine_t engine);
 
+/**
+ * Open upstream connections to an origin ahead of requests to it, so that these don't wait for DNS
+ * resolution, nor for TCP and TLS handshakes. Idempotent: only the connections the origin is
+ * missing are opened, a single one if HTTP/2 is negotiated, and never more than the per-host limit.
+ * @param engine, handle to the engine that will make the requests.
+ * @param scheme, the origin's scheme, "http" or "https".
+ * @param authority, the origin's host, with a port if it isn't the scheme's default.
+ * @param force_http2, whether requests to the origin use HTTP/2 over TLS: its host is an h2 raw
+ *                     domain, or https requests to it force HTTP/2 upstream.
+ * @param num_connections, the number of connections the origin should have open.
+ * @return envoy_status_t, the resulting status of the operation.
+ */
+envoy_status_t preconnect(envoy_engine_t engine, const char* scheme, const char* authority,
+                          bool force_http2, uint32_t num_connections);
+
+/**
+ * Add hosts to the DNS cache requests are resolved with, resolving them in the background, so that
+ * requests to them don't wait for resolution. Hosts already cached are left untouched.
+ * @param engine, handle to the engine that will make the requests.
+ * @param hosts, the hosts to resolve, with a port if it isn't 443.
+ * @param num_hosts, the number of hosts.
+ * @return envoy_status_t, the resulting status of the operation.
+ */
+envoy_status_t prefetch_dns(envoy_engine_t engine, const char* const* hosts, uint32_t num_hosts);
+
+/**
+ * Describe the entries of the DNS cache requests are resolved with, one per line: the host and
+ * port, the resolved address (or "-" while resolving) and the number of seconds since that address
+ * was resolved (or -1 if unknown).
+ * Note: this function may block for some time while the engine collects the entries.
+ * @param engine, the engine whose DNS cache to describe.
+ * @param data, out parameter to populate with the description.
+ * @return envoy_status_t, the resulting status of the operation.
+ */
+envoy_status_t dns_cache_snapshot(envoy_engine_t engine, envoy_data* data);
+
 #ifdef __cplusplus
 } // functions
 #endif
@@ -196,6 +196,14 @@ void Configurator::refreshDns(envoy_netconf_t configuration_key) {
   }
 }
 
+Extensions::Common::DynamicForwardProxy::DnsCacheSharedPtr Configurator::dnsCache() {
+  auto dns_cache = dns_cache_manager_->lookUpCacheByName(BaseDnsCache);
+  if (!dns_cache) {
+    ENVOY_LOG_EVENT(warn, "netconf_dns_cache_missing", BaseDnsCache);
+  }
+  return dns_cache;
+}
+
 std::vector<InterfacePair> Configurator::enumerateV4Interfaces() {
   return enumerateInterfaces(AF_INET, 0, 0);
 }
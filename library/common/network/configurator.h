@@ -127,6 +127,11 @@ public:
    */
   void refreshDns(envoy_netconf_t configuration_key);
 
+  /**
+   * @returns the DNS cache shared by the base clusters, or nullptr if it hasn't been created.
+   */
+  Extensions::Common::DynamicForwardProxy::DnsCacheSharedPtr dnsCache();
+
   /**
    * @returns the current socket options that should be used for connections.
    */
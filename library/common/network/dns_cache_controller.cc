@@ -0,0 +1,70 @@
+#include "library/common/network/dns_cache_controller.h"
+
+#include "absl/strings/str_cat.h"
+
+namespace Envoy {
+namespace Network {
+
+namespace {
+// Hosts prefetched without a port are assumed to be reached over TLS, like most requests are.
+constexpr uint16_t DefaultPort = 443;
+} // namespace
+
+DnsCacheController::DnsCacheController(Event::Dispatcher& dispatcher,
+                                       ConfiguratorSharedPtr configurator)
+    : dispatcher_(dispatcher), dns_cache_(configurator->dnsCache()) {
+  if (dns_cache_) {
+    update_callbacks_handle_ = dns_cache_->addUpdateCallbacks(*this);
+  }
+}
+
+void DnsCacheController::prefetch(const std::vector<std::string>& hosts) {
+  ASSERT(dispatcher_.isThreadSafe());
+  if (!dns_cache_) {
+    return;
+  }
+
+  for (const auto& host : hosts) {
+    // The resolution isn't waited for: the handle only holds the callbacks, and dropping it leaves
+    // the resolution running.
+    auto result = dns_cache_->loadDnsCacheEntry(host, DefaultPort, *this);
+    if (result.status_ ==
+        Extensions::Common::DynamicForwardProxy::DnsCache::LoadDnsCacheEntryStatus::Overflow) {
+      ENVOY_LOG(debug, "DNS prefetch of {} skipped: pending resolutions overflow", host);
+    }
+  }
+}
+
+std::string DnsCacheController::snapshot() {
+  ASSERT(dispatcher_.isThreadSafe());
+  if (!dns_cache_) {
+    return "";
+  }
+
+  const MonotonicTime now = dispatcher_.timeSource().monotonicTime();
+  std::string out;
+  dns_cache_->iterateHostMap(
+      [&](absl::string_view host,
+          const Extensions::Common::DynamicForwardProxy::DnsHostInfoSharedPtr& host_info) {
+        const auto address = host_info->address();
+        int64_t age = -1;
+        const auto resolved_at = resolved_at_.find(host);
+        if (address != nullptr && resolved_at != resolved_at_.end()) {
+          age = std::chrono::duration_cast<std::chrono::seconds>(now - resolved_at->second).count();
+        }
+        absl::StrAppend(&out, host, " ", address != nullptr ? address->asStringView() : "-", " ",
+                        age, "\n");
+      });
+  return out;
+}
+
+void DnsCacheController::onDnsHostAddOrUpdate(
+    const std::string& host,
+    const Extensions::Common::DynamicForwardProxy::DnsHostInfoSharedPtr&) {
+  resolved_at_[host] = dispatcher_.timeSource().monotonicTime();
+}
+
+void DnsCacheController::onDnsHostRemove(const std::string& host) { resolved_at_.erase(host); }
+
+} // namespace Network
+} // namespace Envoy
@@ -0,0 +1,68 @@
+#pragma once
+
+#include <string>
+#include <vector>
+
+#include "envoy/common/time.h"
+#include "envoy/event/dispatcher.h"
+
+#include "source/common/common/logger.h"
+#include "source/extensions/common/dynamic_forward_proxy/dns_cache.h"
+
+#include "absl/container/flat_hash_map.h"
+#include "library/common/network/configurator.h"
+
+namespace Envoy {
+namespace Network {
+
+/**
+ * Runtime access to the dynamic forward proxy DNS cache that requests are resolved with: hosts can
+ * be added to it after startup, and its entries inspected.
+ *
+ * The cache doesn't expose when its entries were resolved, so the controller keeps track of it
+ * from the cache's update callbacks.
+ */
+class DnsCacheController
+    : public Extensions::Common::DynamicForwardProxy::DnsCache::UpdateCallbacks,
+      public Extensions::Common::DynamicForwardProxy::DnsCache::LoadDnsCacheEntryCallbacks,
+      public Logger::Loggable<Logger::Id::dns> {
+public:
+  DnsCacheController(Event::Dispatcher& dispatcher, ConfiguratorSharedPtr configurator);
+
+  /**
+   * Adds hosts to the DNS cache, resolving them in the background. Hosts already cached are left
+   * untouched.
+   * @param hosts, the hosts to resolve, with a port if it isn't 443.
+   */
+  void prefetch(const std::vector<std::string>& hosts);
+
+  /**
+   * Returns the entries of the DNS cache, one per line: the host and port, the resolved address
+   * (or "-" while resolving) and the number of seconds since that address was resolved (or -1 if
+   * unknown). Entries are re-resolved periodically; a re-resolution yielding the same address isn't
+   * reported by the cache, so the age is that of the first resolution to the current address.
+   */
+  std::string snapshot();
+
+  // DnsCache::UpdateCallbacks
+  void onDnsHostAddOrUpdate(
+      const std::string& host,
+      const Extensions::Common::DynamicForwardProxy::DnsHostInfoSharedPtr& host_info) override;
+  void onDnsHostRemove(const std::string& host) override;
+
+  // DnsCache::LoadDnsCacheEntryCallbacks
+  void onLoadDnsCacheComplete(
+      const Extensions::Common::DynamicForwardProxy::DnsHostInfoSharedPtr&) override {}
+
+private:
+  Event::Dispatcher& dispatcher_;
+  Extensions::Common::DynamicForwardProxy::DnsCacheSharedPtr dns_cache_;
+  Extensions::Common::DynamicForwardProxy::DnsCache::AddUpdateCallbacksHandlePtr
+      update_callbacks_handle_;
+  absl::flat_hash_map<std::string, MonotonicTime> resolved_at_;
+};
+
+using DnsCacheControllerPtr = std::unique_ptr<DnsCacheController>;
+
+} // namespace Network
+} // namespace Envoy
@@ -8,6 +8,7 @@ import io.envoyproxy.envoymobile.engine.types.EnvoyNetworkType;
 import io.envoyproxy.envoymobile.engine.types.EnvoyOnEngineRunning;
 import io.envoyproxy.envoymobile.engine.types.EnvoyStringAccessor;
 
+import java.util.List;
 import java.util.Map;
 
 /* Android-specific implementation of the `EnvoyEngine` interface. */
@@ -29,6 +30,11 @@ public class AndroidEngineImpl implements EnvoyEngine {
     return envoyEngine.startStream(callbacks, explicitFlowControl);
   }
 
+  @Override
+  public List<EnvoyHTTPStream> startStreams(List<EnvoyHTTPStreamRequest> requests) {
+    return envoyEngine.startStreams(requests);
+  }
+
   public int runWithTemplate(String configurationYAML, EnvoyConfiguration envoyConfiguration,
                              String logLevel) {
     return envoyEngine.runWithTemplate(configurationYAML, envoyConfiguration, logLevel);
@@ -54,6 +60,11 @@ public class AndroidEngineImpl implements EnvoyEngine {
     return envoyEngine.dumpStats();
   }
 
+  @Override
+  public String dumpPrometheusStats() {
+    return envoyEngine.dumpPrometheusStats();
+  }
+
   @Override
   public int recordCounterInc(String elements, Map<String, String> tags, int count) {
     return envoyEngine.recordCounterInc(elements, tags, count);
@@ -79,11 +90,23 @@ public class AndroidEngineImpl implements EnvoyEngine {
     return envoyEngine.recordHistogramDuration(elements, tags, durationMs);
   }
 
+  @Override
+  public int recordHistogramDurations(String elements, Map<String, String> tags,
+                                      int[] durationsMs, long[] counts) {
+    return envoyEngine.recordHistogramDurations(elements, tags, durationsMs, counts);
+  }
+
   @Override
   public int recordHistogramValue(String elements, Map<String, String> tags, int value) {
     return envoyEngine.recordHistogramValue(elements, tags, value);
   }
 
+  @Override
+  public int recordHistogramValues(String elements, Map<String, String> tags, int[] values,
+                                   long[] counts) {
+    return envoyEngine.recordHistogramValues(elements, tags, values, counts);
+  }
+
   @Override
   public int registerStringAccessor(String accessorName, EnvoyStringAccessor accessor) {
     return envoyEngine.registerStringAccessor(accessorName, accessor);
@@ -94,6 +117,21 @@ public class AndroidEngineImpl implements EnvoyEngine {
     envoyEngine.drainConnections();
   }
 
+  @Override
+  public int preconnect(String scheme, String authority, boolean forceHttp2, int numConnections) {
+    return envoyEngine.preconnect(scheme, authority, forceHttp2, numConnections);
+  }
+
+  @Override
+  public int prefetchDns(List<String> hosts) {
+    return envoyEngine.prefetchDns(hosts);
+  }
+
+  @Override
+  public List<EnvoyDnsCacheEntry> dnsCacheSnapshot() {
+    return envoyEngine.dnsCacheSnapshot();
+  }
+
   @Override
   public void setPreferredNetwork(EnvoyNetworkType network) {
     envoyEngine.setPreferredNetwork(network);
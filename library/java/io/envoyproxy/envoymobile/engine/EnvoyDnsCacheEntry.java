@@ -0,0 +1,66 @@
+package io.envoyproxy.envoymobile.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/* An entry of the DNS cache requests are resolved with, as returned by EnvoyEngine. */
+public final class EnvoyDnsCacheEntry {
+  public final String host;
+  public final String address;
+  public final long ageSeconds;
+  public final long ttlSeconds;
+
+  /**
+   * Create a new instance of the entry.
+   *
+   * @param host       the host and port which was resolved.
+   * @param address    the resolved address, null while the host is being resolved.
+   * @param ageSeconds the number of seconds since the address was resolved, -1 if unknown.
+   * @param ttlSeconds the estimated number of seconds until the host is re-resolved, -1 if unknown.
+   */
+  public EnvoyDnsCacheEntry(String host, String address, long ageSeconds, long ttlSeconds) {
+    this.host = host;
+    this.address = address;
+    this.ageSeconds = ageSeconds;
+    this.ttlSeconds = ttlSeconds;
+  }
+
+  /**
+   * Parse the engine's description of its DNS cache: one line per entry, holding the host and
+   * port, the address ("-" while resolving) and its age in seconds (-1 if unknown).
+   *
+   * Hosts are re-resolved every {@code dnsRefreshSeconds} seconds, and the native age only changes
+   * when a re-resolution yields a new address, so the time left until the next re-resolution is
+   * estimated from the age modulo the refresh interval.
+   *
+   * @param snapshot          the description of the cache.
+   * @param dnsRefreshSeconds the interval at which the engine re-resolves hosts.
+   * @return the entries of the cache.
+   */
+  static List<EnvoyDnsCacheEntry> parseSnapshot(String snapshot, int dnsRefreshSeconds) {
+    if (snapshot.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<EnvoyDnsCacheEntry> entries = new ArrayList<>();
+    for (String line : snapshot.split("\n")) {
+      String[] fields = line.split(" ");
+      if (fields.length != 3) {
+        continue;
+      }
+      String address = fields[1].equals("-") ? null : fields[1];
+      long ageSeconds;
+      try {
+        ageSeconds = Long.parseLong(fields[2]);
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      long ttlSeconds = -1;
+      if (ageSeconds >= 0 && dnsRefreshSeconds > 0) {
+        ttlSeconds = dnsRefreshSeconds - ageSeconds % dnsRefreshSeconds;
+      }
+      entries.add(new EnvoyDnsCacheEntry(fields[0], address, ageSeconds, ttlSeconds));
+    }
+    return entries;
+  }
+}
@@ -4,6 +4,7 @@ import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPCallbacks;
 import io.envoyproxy.envoymobile.engine.types.EnvoyNetworkType;
 import io.envoyproxy.envoymobile.engine.types.EnvoyStringAccessor;
 
+import java.util.List;
 import java.util.Map;
 
 /* Wrapper layer for calling into Envoy's C/++ API. */
@@ -17,6 +18,15 @@ public interface EnvoyEngine {
    */
   EnvoyHTTPStream startStream(EnvoyHTTPCallbacks callbacks, boolean explicitFlowControl);
 
+  /**
+   * Creates several streams, and sends the headers and body of each, ending it, in a single call
+   * to the engine. Each stream receives its own callbacks, as with {@link #startStream}.
+   *
+   * @param requests The requests to start streams with.
+   * @return The streams, in the order of their requests.
+   */
+  List<EnvoyHTTPStream> startStreams(List<EnvoyHTTPStreamRequest> requests);
+
   /**
    * Terminates the running engine.
    */
@@ -94,6 +104,19 @@ public interface EnvoyEngine {
    */
   int recordHistogramDuration(String elements, Map<String, String> tags, int durationMs);
 
+  /**
+   * Add recorded durations in ms to the timer histogram with the given string of elements, each as
+   * many times as its count, in a single call.
+   *
+   * @param elements Elements of the histogram stat.
+   * @param tags Tags of the histogram stat.
+   * @param durationsMs Duration values to record in the histogram timer distribution.
+   * @param counts Number of times each duration is recorded.
+   * @return A status indicating if the action was successful.
+   */
+  int recordHistogramDurations(String elements, Map<String, String> tags, int[] durationsMs,
+                               long[] counts);
+
   /**
    * Add another recorded value to the generic histogram with the given string of elements.
    *
@@ -104,6 +127,19 @@ public interface EnvoyEngine {
    */
   int recordHistogramValue(String elements, Map<String, String> tags, int value);
 
+  /**
+   * Add recorded values to the generic histogram with the given string of elements, each as many
+   * times as its count, in a single call.
+   *
+   * @param elements Elements of the histogram stat.
+   * @param tags Tags of the histogram stat.
+   * @param values Amounts to record as new values for the histogram distribution.
+   * @param counts Number of times each value is recorded.
+   * @return A status indicating if the action was successful.
+   */
+  int recordHistogramValues(String elements, Map<String, String> tags, int[] values,
+                            long[] counts);
+
   int registerStringAccessor(String accessor_name, EnvoyStringAccessor accessor);
 
   /**
@@ -115,11 +151,53 @@ public interface EnvoyEngine {
 
   String dumpStats();
 
+  /**
+   * Retrieve the value of all active stats in the Prometheus text exposition format. Histograms
+   * are reported as cumulative bucket counts, which allows callers to compute deltas between
+   * successive snapshots. Note that this function may block for some time.
+   *
+   * @return The active stats and their values, or empty string if the operation failed.
+   */
+  String dumpPrometheusStats();
+
   /**
    * Drain all connections owned by this Engine.
    */
   void drainConnections();
 
+  /**
+   * Open connections to an origin ahead of requests to it, so that these don't wait for DNS
+   * resolution, nor for TCP and TLS handshakes. Connections are opened in the pool requests to the
+   * origin are assigned to, and later requests reusing them report {@code socketReused} in their
+   * final stream intel. Idempotent: only the connections the origin is missing are opened, a single
+   * one if HTTP/2 is negotiated, and never more than the maximum number of connections per host.
+   *
+   * @param scheme         The origin's scheme, http or https.
+   * @param authority      The origin's host, with a port if it isn't the scheme's default.
+   * @param forceHttp2     Whether requests to the origin use HTTP/2 over TLS: its host is an h2 raw
+   *                       domain, or https requests to it force HTTP/2 upstream.
+   * @param numConnections The number of connections the origin should have open.
+   * @return A status indicating if the action was successful.
+   */
+  int preconnect(String scheme, String authority, boolean forceHttp2, int numConnections);
+
+  /**
+   * Add hosts to the DNS cache requests are resolved with, so that requests to them don't wait for
+   * resolution. Hosts are resolved in the background, those already cached are left untouched.
+   *
+   * @param hosts The hosts to resolve, with a port if it isn't 443.
+   * @return A status indicating if the action was successful.
+   */
+  int prefetchDns(List<String> hosts);
+
+  /**
+   * Retrieve the entries of the DNS cache requests are resolved with. Note that this function may
+   * block for some time.
+   *
+   * @return The entries of the cache, or an empty list if the operation failed.
+   */
+  List<EnvoyDnsCacheEntry> dnsCacheSnapshot();
+
   /**
    * Update the network interface to the preferred network for opening new
    * streams.
@@ -7,6 +7,10 @@ import io.envoyproxy.envoymobile.engine.types.EnvoyLogger;
 import io.envoyproxy.envoymobile.engine.types.EnvoyNetworkType;
 import io.envoyproxy.envoymobile.engine.types.EnvoyOnEngineRunning;
 import io.envoyproxy.envoymobile.engine.types.EnvoyStringAccessor;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /* Concrete implementation of the `EnvoyEngine` interface. */
@@ -15,11 +19,20 @@ public class EnvoyEngineImpl implements EnvoyEngine {
   private static final int ENVOY_SUCCESS = 0;
   private static final int ENVOY_FAILURE = 1;
 
+  // envoy_error_code_t
+  private static final int ENVOY_UNDEFINED_ERROR = 0;
+
+  // Lengths of the stream intel arrays passed to callbacks by the JNI layer.
+  private static final int STREAM_INTEL_LENGTH = 4;
+  private static final int FINAL_STREAM_INTEL_LENGTH = 15;
+
   private static final int ENVOY_NET_GENERIC = 0;
   private static final int ENVOY_NET_WWAN = 1;
   private static final int ENVOY_NET_WLAN = 2;
 
   private final long engineHandle;
+  // Matches the engine's default, until it runs with a configuration.
+  private volatile int dnsRefreshSeconds = 60;
 
   /**
    * @param runningCallback Called when the engine finishes its async startup and begins running.
@@ -48,6 +61,51 @@ public class EnvoyEngineImpl implements EnvoyEngine {
     return stream;
   }
 
+  /**
+   * Creates several streams, and sends the headers and body of each, ending it, in a single call
+   * to the engine.
+   *
+   * If the engine can't start them, for instance because it was terminated, the error callback of
+   * each request is called instead.
+   *
+   * @param requests The requests to start streams with.
+   * @return The streams, in the order of their requests.
+   */
+  @Override
+  public List<EnvoyHTTPStream> startStreams(List<EnvoyHTTPStreamRequest> requests) {
+    int count = requests.size();
+    JvmCallbackContext[] contexts = new JvmCallbackContext[count];
+    boolean[] explicitFlowControl = new boolean[count];
+    byte[][][] headers = new byte[count][][];
+    ByteBuffer[] bodies = new ByteBuffer[count];
+    int[] bodyLengths = new int[count];
+    for (int i = 0; i < count; i++) {
+      EnvoyHTTPStreamRequest request = requests.get(i);
+      contexts[i] = new JvmCallbackContext(request.callbacks);
+      explicitFlowControl[i] = request.explicitFlowControl;
+      headers[i] = JniBridgeUtility.toJniHeaders(request.headers);
+      bodies[i] = request.body;
+      bodyLengths[i] = request.bodyLength;
+    }
+    long[] streamHandles = new long[count];
+    int status = JniLibrary.startStreams(engineHandle, contexts, explicitFlowControl, headers,
+                                         bodies, bodyLengths, streamHandles);
+    if (status != ENVOY_SUCCESS) {
+      // No callback will be fired by the engine, which released the requests.
+      byte[] message = "Failed to start the stream".getBytes(StandardCharsets.UTF_8);
+      for (JvmCallbackContext context : contexts) {
+        context.onError(ENVOY_UNDEFINED_ERROR, message, 0, new long[STREAM_INTEL_LENGTH],
+                        new long[FINAL_STREAM_INTEL_LENGTH]);
+      }
+    }
+    List<EnvoyHTTPStream> streams = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      streams.add(new EnvoyHTTPStream(engineHandle, streamHandles[i], contexts[i],
+                                      explicitFlowControl[i]));
+    }
+    return streams;
+  }
+
   @Override
   public void terminate() {
     JniLibrary.terminateEngine(engineHandle);
@@ -60,7 +118,12 @@ public class EnvoyEngineImpl implements EnvoyEngine {
 
   @Override
   public String dumpStats() {
-    return JniLibrary.dumpStats();
+    return JniLibrary.dumpStats(engineHandle);
+  }
+
+  @Override
+  public String dumpPrometheusStats() {
+    return JniLibrary.dumpPrometheusStats(engineHandle);
   }
 
   /**
@@ -76,6 +139,7 @@ public class EnvoyEngineImpl implements EnvoyEngine {
   @Override
   public int runWithTemplate(String configurationYAML, EnvoyConfiguration envoyConfiguration,
                              String logLevel) {
+    dnsRefreshSeconds = envoyConfiguration.dnsRefreshSeconds;
     for (EnvoyHTTPFilterFactory filterFactory : envoyConfiguration.httpPlatformFilterFactories) {
       JniLibrary.registerFilterFactory(filterFactory.getFilterName(),
                                        new JvmFilterFactoryContext(filterFactory));
@@ -183,6 +247,23 @@ public class EnvoyEngineImpl implements EnvoyEngine {
                                               JniBridgeUtility.toJniTags(tags), durationMs);
   }
 
+  /**
+   * Add recorded durations in ms to the timer histogram with the given string of elements, each as
+   * many times as its count, in a single call.
+   *
+   * @param elements Elements of the histogram stat.
+   * @param tags Tags of the histogram stat.
+   * @param durationsMs Duration values to record in the histogram timer distribution.
+   * @param counts Number of times each duration is recorded.
+   * @return A status indicating if the action was successful.
+   */
+  public int recordHistogramDurations(String elements, Map<String, String> tags,
+                                      int[] durationsMs, long[] counts) {
+    return JniLibrary.recordHistogramDurations(engineHandle, elements,
+                                               JniBridgeUtility.toJniTags(tags), durationsMs,
+                                               counts);
+  }
+
   /**
    * Add another recorded value to the generic histogram with the given string of elements.
    *
@@ -196,6 +277,22 @@ public class EnvoyEngineImpl implements EnvoyEngine {
                                            value);
   }
 
+  /**
+   * Add recorded values to the generic histogram with the given string of elements, each as many
+   * times as its count, in a single call.
+   *
+   * @param elements Elements of the histogram stat.
+   * @param tags Tags of the histogram stat.
+   * @param values Amounts to record as new values for the histogram distribution.
+   * @param counts Number of times each value is recorded.
+   * @return A status indicating if the action was successful.
+   */
+  public int recordHistogramValues(String elements, Map<String, String> tags, int[] values,
+                                   long[] counts) {
+    return JniLibrary.recordHistogramValues(engineHandle, elements,
+                                            JniBridgeUtility.toJniTags(tags), values, counts);
+  }
+
   @Override
   public int registerStringAccessor(String accessor_name, EnvoyStringAccessor accessor) {
     return JniLibrary.registerStringAccessor(accessor_name, new JvmStringAccessorContext(accessor));
@@ -206,6 +303,22 @@ public class EnvoyEngineImpl implements EnvoyEngine {
     JniLibrary.drainConnections(engineHandle);
   }
 
+  @Override
+  public int preconnect(String scheme, String authority, boolean forceHttp2, int numConnections) {
+    return JniLibrary.preconnect(engineHandle, scheme, authority, forceHttp2, numConnections);
+  }
+
+  @Override
+  public int prefetchDns(List<String> hosts) {
+    return JniLibrary.prefetchDns(engineHandle, hosts.toArray(new String[0]));
+  }
+
+  @Override
+  public List<EnvoyDnsCacheEntry> dnsCacheSnapshot() {
+    return EnvoyDnsCacheEntry.parseSnapshot(JniLibrary.dnsCacheSnapshot(engineHandle),
+                                            dnsRefreshSeconds);
+  }
+
   @Override
   public void setPreferredNetwork(EnvoyNetworkType network) {
     switch (network) {
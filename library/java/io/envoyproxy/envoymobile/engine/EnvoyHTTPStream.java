@@ -36,6 +36,21 @@ public class EnvoyHTTPStream {
     callbacksContext = new JvmCallbackContext(callbacks);
   }
 
+  /**
+   * Initialize a stream started with its callbacks context, as part of a batch.
+   * @param engineHandle Underlying handle of the Envoy engine.
+   * @param streamHandle Underlying handle of the HTTP stream owned by an Envoy engine.
+   * @param callbacksContext The context of the callbacks the stream was started with.
+   * @param explicitFlowControl Whether explicit flow control is enabled for this stream.
+   */
+  EnvoyHTTPStream(long engineHandle, long streamHandle, JvmCallbackContext callbacksContext,
+                  boolean explicitFlowControl) {
+    this.engineHandle = engineHandle;
+    this.streamHandle = streamHandle;
+    this.explicitFlowControl = explicitFlowControl;
+    this.callbacksContext = callbacksContext;
+  }
+
   /**
    * Send headers over an open HTTP streamHandle. This method can be invoked once
    * and needs to be called before send_data.
@@ -86,6 +101,33 @@ public class EnvoyHTTPStream {
     }
   }
 
+  /**
+   * Send headers and data over an open HTTP streamHandle, ending it. Equivalent to
+   * {@link #sendHeaders} without endStream followed by {@link #sendData} with endStream, in a
+   * single call to the engine.
+   *
+   * @param headers, the headers to send.
+   * @param data,    the data to send.
+   * @param length,  number of bytes to send: 0 <= length <= ByteBuffer.capacity()
+   * @throws UnsupportedOperationException - if the provided buffer is neither a
+   *                                       direct ByteBuffer nor backed by an
+   *                                       on-heap byte array.
+   */
+  public void sendHeadersAndData(Map<String, List<String>> headers, ByteBuffer data, int length) {
+    if (length < 0 || length > data.capacity()) {
+      throw new IllegalArgumentException("Length out of bound");
+    }
+    if (data.isDirect()) {
+      JniLibrary.sendHeadersAndData(engineHandle, streamHandle,
+                                    JniBridgeUtility.toJniHeaders(headers), data, length);
+    } else if (data.hasArray()) {
+      JniLibrary.sendHeadersAndDataByteArray(
+          engineHandle, streamHandle, JniBridgeUtility.toJniHeaders(headers), data.array(), length);
+    } else {
+      throw new UnsupportedOperationException("Unsupported ByteBuffer implementation.");
+    }
+  }
+
   /**
    * Read data from the response stream. Returns immediately.
    *
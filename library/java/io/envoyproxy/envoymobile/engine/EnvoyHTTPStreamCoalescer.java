@@ -0,0 +1,594 @@
+package io.envoyproxy.envoymobile.engine;
+
+import io.envoyproxy.envoymobile.engine.types.EnvoyFinalStreamIntel;
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPCallbacks;
+import io.envoyproxy.envoymobile.engine.types.EnvoyStreamIntel;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares one upstream stream between identical in-flight GET requests.
+ *
+ * <p>Streams started through the coalescer are bound lazily: nothing is sent to the engine until
+ * {@link EnvoyHTTPStream#sendHeaders} is called. Headers-only GETs are keyed on the explicit flow
+ * control mode and on every request header (Vary can't be known before the response arrives). A GET
+ * whose key matches an upstream stream that is still waiting for its response headers joins that
+ * stream as a follower instead of starting a new one. Any other request is passed straight through
+ * to the engine.
+ *
+ * <p>Every follower gets its own copy of the response headers and of each body chunk; like the
+ * data of a stream that isn't coalesced, the chunks are array-backed and writable. With explicit
+ * flow control, body chunks are retained until the slowest follower has read them; the upstream stream is read as fast as the fastest follower asks for data, until
+ * {@link #MAX_BUFFERED_BYTES} are retained for slower followers. Cancelling a follower
+ * only detaches it; the upstream stream is cancelled once its last follower is gone.
+ */
+public final class EnvoyHTTPStreamCoalescer {
+  private static final Executor DIRECT_EXECUTOR = Runnable::run;
+  private static final EnvoyStreamIntel EMPTY_STREAM_INTEL =
+      new EnvoyStreamIntelImpl(new long[] {-1, -1, 0, 0});
+  private static final EnvoyFinalStreamIntel EMPTY_FINAL_STREAM_INTEL =
+      new EnvoyFinalStreamIntelImpl(
+          new long[] {-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 0, 0, 0, 0});
+
+  // Body bytes an upstream retains for lagging followers before it stops reading ahead.
+  static final long MAX_BUFFERED_BYTES = 1024 * 1024;
+
+  private final EnvoyEngine engine;
+  // Guards the coalescer and every upstream; fan-out is cheap enough not to warrant finer locking.
+  private final Object lock = new Object();
+  // Upstream streams that can still be joined, keyed on their request.
+  private final Map<String, Upstream> joinableUpstreams = new HashMap<>();
+  private final AtomicLong upstreamStreamCount = new AtomicLong();
+  private final AtomicLong coalescedStreamCount = new AtomicLong();
+
+  /**
+   * @param engine The engine used to start upstream streams.
+   */
+  public EnvoyHTTPStreamCoalescer(EnvoyEngine engine) { this.engine = engine; }
+
+  /**
+   * Creates a new stream with the provided callbacks. The stream is bound to an upstream stream when
+   * its headers are sent.
+   *
+   * @param callbacks The callbacks for receiving callbacks from the stream.
+   * @param explicitFlowControl Whether explicit flow control will be enabled for this stream.
+   * @return A stream that may be used for sending data.
+   */
+  public EnvoyHTTPStream startStream(EnvoyHTTPCallbacks callbacks, boolean explicitFlowControl) {
+    return new CoalescingStream(callbacks, explicitFlowControl);
+  }
+
+  /**
+   * @return The number of streams started on the engine, coalesced or not.
+   */
+  public long getUpstreamStreamCount() { return upstreamStreamCount.get(); }
+
+  /**
+   * @return The number of streams which joined an upstream stream started by another request.
+   */
+  public long getCoalescedStreamCount() { return coalescedStreamCount.get(); }
+
+  private static String coalescingKey(Map<String, List<String>> headers, boolean endStream,
+                                      boolean explicitFlowControl) {
+    if (!endStream) {
+      return null;
+    }
+    TreeMap<String, List<String>> sorted = new TreeMap<>();
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      sorted.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue());
+    }
+    List<String> methods = sorted.get(":method");
+    if (methods == null || methods.size() != 1 || !"GET".equalsIgnoreCase(methods.get(0))) {
+      return null;
+    }
+    StringBuilder key = new StringBuilder(explicitFlowControl ? "explicit\n" : "implicit\n");
+    for (Map.Entry<String, List<String>> header : sorted.entrySet()) {
+      for (String value : header.getValue()) {
+        key.append(header.getKey()).append(':').append(value).append('\n');
+      }
+    }
+    return key.toString();
+  }
+
+  private static ByteBuffer copyData(ByteBuffer data) {
+    ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+    copy.put(data.duplicate());
+    copy.flip();
+    return copy;
+  }
+
+  private static Map<String, List<String>> copyHeaders(Map<String, List<String>> headers) {
+    Map<String, List<String>> copy = new LinkedHashMap<>();
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      copy.put(header.getKey(), new ArrayList<>(header.getValue()));
+    }
+    return copy;
+  }
+
+  /** The stream handed out by {@link #startStream}. */
+  private final class CoalescingStream extends EnvoyHTTPStream {
+    private final EnvoyHTTPCallbacks callbacks;
+    private final boolean explicitFlowControl;
+    // Exactly one of these is set once the headers have been sent.
+    private volatile EnvoyHTTPStream passThrough;
+    private volatile Follower follower;
+    private volatile boolean cancelledBeforeHeaders;
+
+    CoalescingStream(EnvoyHTTPCallbacks callbacks, boolean explicitFlowControl) {
+      super(0, 0, callbacks, explicitFlowControl);
+      this.callbacks = callbacks;
+      this.explicitFlowControl = explicitFlowControl;
+    }
+
+    @Override
+    public void sendHeaders(Map<String, List<String>> headers, boolean endStream) {
+      if (passThrough != null || follower != null) {
+        throw new IllegalStateException("Headers already sent.");
+      }
+      if (cancelledBeforeHeaders) {
+        return;
+      }
+      String key = coalescingKey(headers, endStream, explicitFlowControl);
+      if (key == null) {
+        upstreamStreamCount.incrementAndGet();
+        passThrough = engine.startStream(callbacks, explicitFlowControl);
+        passThrough.sendHeaders(headers, endStream);
+        return;
+      }
+      Upstream upstream;
+      boolean created = false;
+      synchronized (lock) {
+        upstream = joinableUpstreams.get(key);
+        if (upstream == null) {
+          upstream = new Upstream(key, explicitFlowControl);
+          joinableUpstreams.put(key, upstream);
+          created = true;
+        }
+        follower = upstream.addFollower(callbacks);
+      }
+      if (created) {
+        upstreamStreamCount.incrementAndGet();
+        upstream.start(headers);
+      } else {
+        coalescedStreamCount.incrementAndGet();
+      }
+    }
+
+    @Override
+    public void sendData(ByteBuffer data, int length, boolean endStream) {
+      if (passThrough == null) {
+        throw new IllegalStateException("Can't send data on a headers-only request.");
+      }
+      passThrough.sendData(data, length, endStream);
+    }
+
+    @Override
+    public void sendHeadersAndData(Map<String, List<String>> headers, ByteBuffer data, int length) {
+      if (passThrough != null || follower != null) {
+        throw new IllegalStateException("Headers already sent.");
+      }
+      if (cancelledBeforeHeaders) {
+        return;
+      }
+      // Requests with a body are never coalesced.
+      upstreamStreamCount.incrementAndGet();
+      passThrough = engine.startStream(callbacks, explicitFlowControl);
+      passThrough.sendHeadersAndData(headers, data, length);
+    }
+
+    @Override
+    public void readData(long byteCount) {
+      if (!explicitFlowControl) {
+        throw new UnsupportedOperationException("Called readData without explicit flow control.");
+      }
+      if (passThrough != null) {
+        passThrough.readData(byteCount);
+      } else if (follower != null) {
+        follower.readData(byteCount);
+      }
+    }
+
+    @Override
+    public void sendTrailers(Map<String, List<String>> trailers) {
+      if (passThrough == null) {
+        throw new IllegalStateException("Can't send trailers on a headers-only request.");
+      }
+      passThrough.sendTrailers(trailers);
+    }
+
+    @Override
+    public int cancel() {
+      if (passThrough != null) {
+        return passThrough.cancel();
+      }
+      if (follower != null) {
+        return follower.cancel();
+      }
+      cancelledBeforeHeaders = true;
+      callbacks.getExecutor().execute(
+          () -> callbacks.onCancel(EMPTY_STREAM_INTEL, EMPTY_FINAL_STREAM_INTEL));
+      return 0;
+    }
+  }
+
+  /** One request attached to an {@link Upstream}. All fields are guarded by the coalescer lock. */
+  private static final class Follower {
+    final Upstream upstream;
+    final EnvoyHTTPCallbacks callbacks;
+    // Callbacks waiting to be posted to the follower's executor, in order.
+    final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+    boolean dispatching;
+    boolean done;
+    boolean deliveredEnd;
+    long requestedBytes;
+    int chunkIndex;
+    int chunkOffset;
+
+    Follower(Upstream upstream, EnvoyHTTPCallbacks callbacks) {
+      this.upstream = upstream;
+      this.callbacks = callbacks;
+    }
+
+    void readData(long byteCount) { upstream.readData(this, byteCount); }
+
+    int cancel() { return upstream.cancel(this); }
+  }
+
+  /** An upstream stream, and the callbacks fanning its events out to the followers. */
+  private final class Upstream implements EnvoyHTTPCallbacks {
+    private final String key;
+    private final boolean explicitFlowControl;
+    private final List<Follower> followers = new ArrayList<>();
+    // Body chunks not yet read by every follower. Chunks read by every follower are dropped, and
+    // the followers' chunk indices shifted accordingly.
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long bufferedBytes;
+    private EnvoyHTTPStream stream;
+    private EnvoyStreamIntel lastStreamIntel = EMPTY_STREAM_INTEL;
+    private Map<String, List<String>> headers;
+    private Map<String, List<String>> trailers;
+    private EnvoyFinalStreamIntel finalStreamIntel;
+    private boolean endStream;
+    private boolean complete;
+    private boolean readOutstanding;
+    private boolean terminated;
+
+    Upstream(String key, boolean explicitFlowControl) {
+      this.key = key;
+      this.explicitFlowControl = explicitFlowControl;
+    }
+
+    Follower addFollower(EnvoyHTTPCallbacks callbacks) {
+      Follower follower = new Follower(this, callbacks);
+      followers.add(follower);
+      return follower;
+    }
+
+    void start(Map<String, List<String>> requestHeaders) {
+      EnvoyHTTPStream started = engine.startStream(this, explicitFlowControl);
+      started.sendHeaders(requestHeaders, true);
+      boolean cancelled;
+      synchronized (lock) {
+        stream = started;
+        // Followers may have asked for data, or all left, while the headers were being sent.
+        cancelled = terminated && !complete;
+        maybeReadUpstream();
+      }
+      if (cancelled) {
+        started.cancel();
+      }
+    }
+
+    @Override
+    public Executor getExecutor() {
+      return DIRECT_EXECUTOR;
+    }
+
+    @Override
+    public void onHeaders(Map<String, List<String>> headers, boolean endStream,
+                          EnvoyStreamIntel streamIntel) {
+      List<Follower> toDispatch = new ArrayList<>();
+      synchronized (lock) {
+        stopJoining();
+        this.headers = headers;
+        this.endStream = endStream;
+        lastStreamIntel = streamIntel;
+        for (Follower follower : followers) {
+          Map<String, List<String>> copy = copyHeaders(headers);
+          follower.deliveredEnd = endStream;
+          enqueue(follower, () -> follower.callbacks.onHeaders(copy, endStream, streamIntel),
+                  toDispatch);
+        }
+      }
+      dispatch(toDispatch);
+    }
+
+    @Override
+    public void onData(ByteBuffer data, boolean endStream, EnvoyStreamIntel streamIntel) {
+      List<Follower> toDispatch = new ArrayList<>();
+      synchronized (lock) {
+        this.endStream = endStream;
+        lastStreamIntel = streamIntel;
+        readOutstanding = false;
+        if (!explicitFlowControl) {
+          // The last follower gets the chunk itself, once the others have their copy.
+          for (int i = 0; i < followers.size(); i++) {
+            Follower follower = followers.get(i);
+            ByteBuffer chunk = i == followers.size() - 1 ? data : copyData(data);
+            follower.deliveredEnd = endStream;
+            enqueue(follower, () -> follower.callbacks.onData(chunk, endStream, streamIntel),
+                    toDispatch);
+          }
+        } else {
+          chunks.add(data);
+          bufferedBytes += data.remaining();
+          for (Follower follower : new ArrayList<>(followers)) {
+            deliverBuffered(follower, toDispatch);
+          }
+          releaseConsumedChunks();
+          maybeReadUpstream();
+        }
+      }
+      dispatch(toDispatch);
+    }
+
+    @Override
+    public void onTrailers(Map<String, List<String>> trailers, EnvoyStreamIntel streamIntel) {
+      List<Follower> toDispatch = new ArrayList<>();
+      synchronized (lock) {
+        this.trailers = trailers;
+        endStream = true;
+        lastStreamIntel = streamIntel;
+        for (Follower follower : new ArrayList<>(followers)) {
+          if (explicitFlowControl) {
+            deliverBuffered(follower, toDispatch);
+          } else {
+            Map<String, List<String>> copy = copyHeaders(trailers);
+            follower.deliveredEnd = true;
+            enqueue(follower, () -> follower.callbacks.onTrailers(copy, streamIntel), toDispatch);
+          }
+        }
+      }
+      dispatch(toDispatch);
+    }
+
+    @Override
+    public void onError(int errorCode, String message, int attemptCount,
+                        EnvoyStreamIntel streamIntel, EnvoyFinalStreamIntel finalStreamIntel) {
+      List<Follower> toDispatch = new ArrayList<>();
+      synchronized (lock) {
+        stopJoining();
+        terminated = true;
+        for (Follower follower : followers) {
+          follower.done = true;
+          enqueue(follower,
+                  ()
+                      -> follower.callbacks.onError(errorCode, message, attemptCount, streamIntel,
+                                                    finalStreamIntel),
+                  toDispatch);
+        }
+        followers.clear();
+        chunks.clear();
+        bufferedBytes = 0;
+      }
+      dispatch(toDispatch);
+    }
+
+    @Override
+    public void onCancel(EnvoyStreamIntel streamIntel, EnvoyFinalStreamIntel finalStreamIntel) {
+      List<Follower> toDispatch = new ArrayList<>();
+      synchronized (lock) {
+        stopJoining();
+        terminated = true;
+        // Normally there is nobody left: the upstream is only cancelled by its last follower.
+        for (Follower follower : followers) {
+          follower.done = true;
+          enqueue(follower, () -> follower.callbacks.onCancel(streamIntel, finalStreamIntel),
+                  toDispatch);
+        }
+        followers.clear();
+        chunks.clear();
+        bufferedBytes = 0;
+      }
+      dispatch(toDispatch);
+    }
+
+    @Override
+    public void onSendWindowAvailable(EnvoyStreamIntel streamIntel) {
+      // Coalesced requests are headers-only; there is never a body to send.
+    }
+
+    @Override
+    public void onComplete(EnvoyStreamIntel streamIntel, EnvoyFinalStreamIntel finalStreamIntel) {
+      List<Follower> toDispatch = new ArrayList<>();
+      synchronized (lock) {
+        stopJoining();
+        complete = true;
+        lastStreamIntel = streamIntel;
+        this.finalStreamIntel = finalStreamIntel;
+        for (Follower follower : new ArrayList<>(followers)) {
+          maybeComplete(follower, toDispatch);
+        }
+      }
+      dispatch(toDispatch);
+    }
+
+    void readData(Follower follower, long byteCount) {
+      List<Follower> toDispatch = new ArrayList<>();
+      synchronized (lock) {
+        if (follower.done) {
+          return;
+        }
+        follower.requestedBytes = byteCount;
+        deliverBuffered(follower, toDispatch);
+        releaseConsumedChunks();
+        maybeReadUpstream();
+      }
+      dispatch(toDispatch);
+    }
+
+    int cancel(Follower follower) {
+      List<Follower> toDispatch = new ArrayList<>();
+      EnvoyHTTPStream toCancel = null;
+      synchronized (lock) {
+        if (follower.done) {
+          return 0;
+        }
+        follower.done = true;
+        followers.remove(follower);
+        enqueue(follower,
+                ()
+                    -> follower.callbacks.onCancel(lastStreamIntel, finalStreamIntel != null
+                                                                        ? finalStreamIntel
+                                                                        : EMPTY_FINAL_STREAM_INTEL),
+                toDispatch);
+        if (followers.isEmpty() && !terminated && !complete) {
+          stopJoining();
+          terminated = true;
+          toCancel = stream;
+        }
+        releaseConsumedChunks();
+        // The follower may have been the one holding the others back.
+        maybeReadUpstream();
+      }
+      dispatch(toDispatch);
+      if (toCancel != null) {
+        toCancel.cancel();
+      }
+      return 0;
+    }
+
+    /** Must hold lock. Hands the follower the next buffered chunk, up to what it asked for. */
+    private void deliverBuffered(Follower follower, List<Follower> toDispatch) {
+      if (follower.done || follower.deliveredEnd) {
+        return;
+      }
+      if (follower.requestedBytes > 0 && follower.chunkIndex < chunks.size()) {
+        ByteBuffer chunk = chunks.get(follower.chunkIndex);
+        int length =
+            (int)Math.min(follower.requestedBytes, chunk.remaining() - follower.chunkOffset);
+        ByteBuffer view = chunk.duplicate();
+        view.position(chunk.position() + follower.chunkOffset);
+        view.limit(view.position() + length);
+        // The chunk is retained for the other followers, which must not see this one's writes.
+        ByteBuffer data = copyData(view);
+        follower.chunkOffset += length;
+        if (chunk.position() + follower.chunkOffset == chunk.limit()) {
+          follower.chunkIndex++;
+          follower.chunkOffset = 0;
+        }
+        follower.requestedBytes = 0;
+        boolean last = endStream && trailers == null && follower.chunkIndex == chunks.size();
+        follower.deliveredEnd = last;
+        EnvoyStreamIntel streamIntel = lastStreamIntel;
+        enqueue(follower, () -> follower.callbacks.onData(data, last, streamIntel),
+                toDispatch);
+      } else if (follower.requestedBytes > 0 && trailers != null &&
+                 follower.chunkIndex == chunks.size()) {
+        follower.requestedBytes = 0;
+        follower.deliveredEnd = true;
+        Map<String, List<String>> copy = copyHeaders(trailers);
+        EnvoyStreamIntel streamIntel = lastStreamIntel;
+        enqueue(follower, () -> follower.callbacks.onTrailers(copy, streamIntel), toDispatch);
+      }
+      maybeComplete(follower, toDispatch);
+    }
+
+    /** Must hold lock. Delivers onComplete once the follower has seen the end of the stream. */
+    private void maybeComplete(Follower follower, List<Follower> toDispatch) {
+      if (!complete || follower.done || !follower.deliveredEnd) {
+        return;
+      }
+      follower.done = true;
+      followers.remove(follower);
+      EnvoyStreamIntel streamIntel = lastStreamIntel;
+      EnvoyFinalStreamIntel finalIntel = finalStreamIntel;
+      enqueue(follower, () -> follower.callbacks.onComplete(streamIntel, finalIntel), toDispatch);
+    }
+
+    /**
+     * Must hold lock. Reads from upstream when a caught-up follower is waiting for data, without
+     * retaining more than {@link #MAX_BUFFERED_BYTES} for the followers behind it.
+     */
+    private void maybeReadUpstream() {
+      if (readOutstanding || endStream || terminated || stream == null) {
+        return;
+      }
+      long wanted = 0;
+      for (Follower follower : followers) {
+        if (follower.requestedBytes > 0 && follower.chunkIndex == chunks.size()) {
+          wanted = Math.max(wanted, follower.requestedBytes);
+        }
+      }
+      wanted = Math.min(wanted, MAX_BUFFERED_BYTES - bufferedBytes);
+      if (wanted > 0) {
+        readOutstanding = true;
+        stream.readData(wanted);
+      }
+    }
+
+    /** Must hold lock. Drops the chunks every follower has read from the front of the list. */
+    private void releaseConsumedChunks() {
+      int consumed = chunks.size();
+      for (Follower follower : followers) {
+        consumed = Math.min(consumed, follower.chunkIndex);
+      }
+      if (consumed == 0) {
+        return;
+      }
+      List<ByteBuffer> released = chunks.subList(0, consumed);
+      for (ByteBuffer chunk : released) {
+        bufferedBytes -= chunk.remaining();
+      }
+      released.clear();
+      for (Follower follower : followers) {
+        follower.chunkIndex -= consumed;
+      }
+    }
+
+    /** Must hold lock. Once the response has started, newcomers get their own upstream stream. */
+    private void stopJoining() {
+      if (joinableUpstreams.get(key) == this) {
+        joinableUpstreams.remove(key);
+      }
+    }
+
+    /** Must hold lock. */
+    private void enqueue(Follower follower, Runnable callback, List<Follower> toDispatch) {
+      follower.pending.add(callback);
+      if (!follower.dispatching) {
+        follower.dispatching = true;
+        toDispatch.add(follower);
+      }
+    }
+
+    /**
+     * Must not hold lock. Posts the pending callbacks of each follower to its executor, in order.
+     * Callbacks enqueued by other threads meanwhile are posted by this loop too.
+     */
+    private void dispatch(List<Follower> toDispatch) {
+      for (Follower follower : toDispatch) {
+        while (true) {
+          Runnable callback;
+          synchronized (lock) {
+            callback = follower.pending.poll();
+            if (callback == null) {
+              follower.dispatching = false;
+              break;
+            }
+          }
+          follower.callbacks.getExecutor().execute(callback);
+        }
+      }
+    }
+  }
+}
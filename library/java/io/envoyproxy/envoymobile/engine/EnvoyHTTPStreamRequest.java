@@ -0,0 +1,48 @@
+package io.envoyproxy.envoymobile.engine;
+
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPCallbacks;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/* A request to start a stream with, as part of a batch passed to EnvoyEngine.startStreams. */
+public final class EnvoyHTTPStreamRequest {
+  public final EnvoyHTTPCallbacks callbacks;
+  public final boolean explicitFlowControl;
+  public final Map<String, List<String>> headers;
+  public final ByteBuffer body;
+  public final int bodyLength;
+
+  /**
+   * Create a new request.
+   *
+   * @param callbacks           the callbacks for receiving callbacks from the stream.
+   * @param explicitFlowControl whether explicit flow control will be enabled for the stream.
+   * @param headers             the headers to send.
+   * @param body                the data to send, ending the stream, or null for a headers-only
+   *                            request.
+   * @param bodyLength          number of bytes of the body to send:
+   *                            0 <= length <= ByteBuffer.capacity()
+   * @throws IllegalArgumentException - if the length is out of the body's bounds.
+   * @throws UnsupportedOperationException - if the provided buffer is neither a direct
+   *                                       ByteBuffer nor backed by an on-heap byte array.
+   */
+  public EnvoyHTTPStreamRequest(EnvoyHTTPCallbacks callbacks, boolean explicitFlowControl,
+                                Map<String, List<String>> headers, ByteBuffer body,
+                                int bodyLength) {
+    if (body != null) {
+      if (bodyLength < 0 || bodyLength > body.capacity()) {
+        throw new IllegalArgumentException("Length out of bound");
+      }
+      if (!body.isDirect() && !body.hasArray()) {
+        throw new UnsupportedOperationException("Unsupported ByteBuffer implementation.");
+      }
+    }
+    this.callbacks = callbacks;
+    this.explicitFlowControl = explicitFlowControl;
+    this.headers = headers;
+    this.body = body;
+    this.bodyLength = bodyLength;
+  }
+}
@@ -69,6 +69,26 @@ public class JniLibrary {
   protected static native int startStream(long engine, long stream, JvmCallbackContext context,
                                           boolean explicitFlowControl);
 
+  /**
+   * Initialize and open several underlying HTTP streams, and send the headers and data of each,
+   * ending it, with a single post to the engine. All arrays have one element per stream.
+   *
+   * @param engine,              handle to the streams' associated engine.
+   * @param contexts,            contexts that contain dispatch logic to fire callbacks.
+   * @param explicitFlowControl, whether explicit flow control should be enabled for each stream.
+   * @param headers,             the headers to send.
+   * @param bodies,              the data to send; direct or array-backed ByteBuffers, or null for
+   *                             headers-only requests.
+   * @param bodyLengths,         the size in bytes of the data to send.
+   *                             0 <= length <= data.capacity()
+   * @param streamHandles,       receives the handles of the streams.
+   * @return int,                the resulting status of the operation.
+   */
+  protected static native int startStreams(long engine, JvmCallbackContext[] contexts,
+                                           boolean[] explicitFlowControl, byte[][][] headers,
+                                           ByteBuffer[] bodies, int[] bodyLengths,
+                                           long[] streamHandles);
+
   /**
    * Send headers over an open HTTP stream. This method can be invoked once and
    * needs to be called before send_data.
@@ -110,6 +130,33 @@ public class JniLibrary {
   protected static native int sendData(long engine, long stream, ByteBuffer data, int length,
                                        boolean endStream);
 
+  /**
+   * Send headers and data over an open HTTP stream, ending it, in a single call.
+   *
+   * @param engine,  the stream's associated engine.
+   * @param stream,  the stream to send headers and data over.
+   * @param headers, the headers to send.
+   * @param data,    the data to send; must be a <b>direct</b> ByteBuffer.
+   * @param length,  the size in bytes of the data to send. 0 <= length <= data.capacity()
+   * @return int,    the resulting status of the operation.
+   */
+  protected static native int sendHeadersAndData(long engine, long stream, byte[][] headers,
+                                                 ByteBuffer data, int length);
+
+  /**
+   * Send headers and data over an open HTTP stream, ending it, in a single call.
+   *
+   * @param engine,  the stream's associated engine.
+   * @param stream,  the stream to send headers and data over.
+   * @param headers, the headers to send.
+   * @param data,    the data to send.
+   * @param length,  the size in bytes of the data to send. 0 <= length <= data.length
+   * @return int,    the resulting status of the operation.
+   */
+  protected static native int sendHeadersAndDataByteArray(long engine, long stream,
+                                                          byte[][] headers, byte[] data,
+                                                          int length);
+
   /**
    * Read data from the response stream. Returns immediately.
    * Has no effect if explicit flow control is not enabled.
@@ -253,6 +300,21 @@ public class JniLibrary {
   protected static native int recordHistogramDuration(long engine, String elements, byte[][] tags,
                                                       int durationMs);
 
+  /**
+   * Add recorded durations in ms to the timer histogram with the given string of elements, each as
+   * many times as its count, in a single call.
+   *
+   * @param engine   Handle to the engine that owns the histogram.
+   * @param elements Elements of the histogram stat.
+   * @param tags Tags of the histogram.
+   * @param durationsMs Duration values to record in the histogram timer distribution.
+   * @param counts Number of times each duration is recorded.
+   * @return A status indicating if the action was successful.
+   */
+  protected static native int recordHistogramDurations(long engine, String elements,
+                                                       byte[][] tags, int[] durationsMs,
+                                                       long[] counts);
+
   /**
    * Flush the stats sinks outside of a flushing interval.
    * Note: stat flushing is done asynchronously, this function will never block.
@@ -264,9 +326,21 @@ public class JniLibrary {
 
   /**
    * Retrieve the value of all active stats. Note that this function may block for some time.
+   *
+   * @param engine engine whose stats should be dumped.
    * @return The list of active stats and their values, or empty string of the operation failed
    */
-  protected static native String dumpStats();
+  protected static native String dumpStats(long engine);
+
+  /**
+   * Retrieve the value of all active stats in the Prometheus text exposition format, with
+   * histograms reported as cumulative bucket counts. Note that this function may block for some
+   * time.
+   *
+   * @param engine engine whose stats should be dumped.
+   * @return The active stats and their values, or empty string if the operation failed.
+   */
+  protected static native String dumpPrometheusStats(long engine);
 
   /**
    * Add another recorded value to the generic histogram with the given string of elements.
@@ -280,6 +354,20 @@ public class JniLibrary {
   protected static native int recordHistogramValue(long engine, String elements, byte[][] tags,
                                                    int value);
 
+  /**
+   * Add recorded values to the generic histogram with the given string of elements, each as many
+   * times as its count, in a single call.
+   *
+   * @param engine   Handle to the engine that owns the histogram.
+   * @param elements Elements of the histogram stat.
+   * @param tags Tags of the histogram.
+   * @param values Amounts to record as new values for the histogram distribution.
+   * @param counts Number of times each value is recorded.
+   * @return A status indicating if the action was successful.
+   */
+  protected static native int recordHistogramValues(long engine, String elements, byte[][] tags,
+                                                    int[] values, long[] counts);
+
   /**
    * Provides a configuration template that may be used for building platform
    * filter config chains.
@@ -315,6 +403,39 @@ public class JniLibrary {
    */
   protected static native int drainConnections(long engine);
 
+  /**
+   * Open connections to an origin ahead of requests to it.
+   *
+   * @param engine Handle to the engine that will make the requests.
+   * @param scheme The origin's scheme, http or https.
+   * @param authority The origin's host, with a port if it isn't the scheme's default.
+   * @param forceHttp2 Whether requests to the origin use HTTP/2 over TLS: its host is an h2 raw
+   *                   domain, or https requests to it force HTTP/2 upstream.
+   * @param numConnections The number of connections the origin should have open.
+   * @return The resulting status of the operation.
+   */
+  protected static native int preconnect(long engine, String scheme, String authority,
+                                         boolean forceHttp2, int numConnections);
+
+  /**
+   * Add hosts to the DNS cache requests are resolved with, resolving them in the background.
+   *
+   * @param engine Handle to the engine that will make the requests.
+   * @param hosts The hosts to resolve, with a port if it isn't 443.
+   * @return The resulting status of the operation.
+   */
+  protected static native int prefetchDns(long engine, String[] hosts);
+
+  /**
+   * Describe the entries of the DNS cache requests are resolved with, one per line: the host and
+   * port, the resolved address ("-" while resolving) and the number of seconds since that address
+   * was resolved (-1 if unknown). Note that this function may block for some time.
+   *
+   * @param engine Handle to the engine whose DNS cache should be described.
+   * @return The entries of the cache, or empty string if the operation failed.
+   */
+  protected static native String dnsCacheSnapshot(long engine);
+
   /**
    * Update the network interface to the preferred network for opening new
    * streams. Note that this state is shared by all engines.
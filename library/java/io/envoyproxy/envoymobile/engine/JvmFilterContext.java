@@ -4,7 +4,9 @@ import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPDataViewFilter;
 import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPFilter;
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPFilterEvents;
 
 /**
  * Wrapper class for EnvoyHTTPFilter for receiving JNI calls.
@@ -20,6 +22,25 @@ class JvmFilterContext {
     this.filter = filter;
   }
 
+  /**
+   * Returns the events implemented by the filter, so that the others skip the JNI call. Filters
+   * not implementing EnvoyHTTPFilterEvents are called for all events.
+   *
+   * @return the mask of implemented events, as EnvoyHTTPFilterEvents.EVENT_* bits.
+   */
+  public int getEventMask() {
+    return filter instanceof EnvoyHTTPFilterEvents ? ((EnvoyHTTPFilterEvents)filter).getEventMask()
+                                                   : EnvoyHTTPFilterEvents.EVENT_ALL;
+  }
+
+  /**
+   * Returns whether the filter receives body data as read-only views of native memory, which
+   * filters opt into by implementing EnvoyHTTPDataViewFilter.
+   *
+   * @return true if the filter uses data views.
+   */
+  public boolean usesDataViews() { return filter instanceof EnvoyHTTPDataViewFilter; }
+
   /**
    * Delegates header retrieval to the bridge utility.
    *
@@ -71,6 +92,20 @@ class JvmFilterContext {
         filter.onRequestData(dataBuffer, endStream, new EnvoyStreamIntelImpl(streamIntel)));
   }
 
+  /**
+   * Dispatches a read-only view of native body data up to the platform, for filters using data
+   * views. The view is only valid for the duration of the call.
+   *
+   * @param data,        view of the chunk of body data from the HTTP request.
+   * @param endStream,   indicates this is the last remote frame of the stream.
+   * @param streamIntel, internal HTTP stream metrics, context, and other details.
+   * @return Object[],   pair of HTTP filter status and optional modified data.
+   */
+  public Object onRequestDataView(ByteBuffer data, boolean endStream, long[] streamIntel) {
+    return toJniFilterDataStatus(filter.onRequestData(data.asReadOnlyBuffer(), endStream,
+                                                   new EnvoyStreamIntelImpl(streamIntel)));
+  }
+
   /**
    * Invokes onTrailers callback using trailers passed via passHeaders.
    *
@@ -114,6 +149,20 @@ class JvmFilterContext {
         filter.onResponseData(dataBuffer, endStream, new EnvoyStreamIntelImpl(streamIntel)));
   }
 
+  /**
+   * Dispatches a read-only view of native body data up to the platform, for filters using data
+   * views. The view is only valid for the duration of the call.
+   *
+   * @param data,        view of the chunk of body data from the HTTP response.
+   * @param endStream,   indicates this is the last remote frame of the stream.
+   * @param streamIntel, internal HTTP stream metrics, context, and other details.
+   * @return Object[],   pair of HTTP filter status and optional modified data.
+   */
+  public Object onResponseDataView(ByteBuffer data, boolean endStream, long[] streamIntel) {
+    return toJniFilterDataStatus(filter.onResponseData(data.asReadOnlyBuffer(), endStream,
+                                                   new EnvoyStreamIntelImpl(streamIntel)));
+  }
+
   /**
    * Invokes onTrailers callback using trailers passed via passHeaders.
    *
@@ -253,8 +302,13 @@ class JvmFilterContext {
   }
 
   private static Object[] toJniFilterHeadersStatus(Object[] result) {
-    assert result.length == 2;
     result[1] = toJniHeaders(result[1]);
+    if (result.length == 3) {
+      // Convert the headers to clear, included when the filter changed the headers it received.
+      result[2] = toJniHeaders(result[2]);
+      return result;
+    }
+    assert result.length == 2;
     return result;
   }
 
@@ -0,0 +1,8 @@
+package io.envoyproxy.envoymobile.engine.types;
+
+/**
+ * Marks an EnvoyHTTPFilter receiving body data as read-only views of the native buffers rather
+ * than copies. The views are only valid for the duration of the onRequestData or onResponseData
+ * call; data returned unchanged is then passed on without being copied back.
+ */
+public interface EnvoyHTTPDataViewFilter {}
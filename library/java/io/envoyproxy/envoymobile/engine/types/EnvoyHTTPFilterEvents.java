@@ -0,0 +1,31 @@
+package io.envoyproxy.envoymobile.engine.types;
+
+/**
+ * Implemented by an EnvoyHTTPFilter to only be called for some events. Filters not implementing it
+ * are called for all of them.
+ */
+public interface EnvoyHTTPFilterEvents {
+  // Bits of the mask returned by getEventMask(), one for each group of callbacks a filter may
+  // implement. Kept in sync with the native dispatch in jni_interface.cc.
+  int EVENT_REQUEST_HEADERS = 1;
+  int EVENT_REQUEST_DATA = 1 << 1;
+  int EVENT_REQUEST_TRAILERS = 1 << 2;
+  int EVENT_RESPONSE_HEADERS = 1 << 3;
+  int EVENT_RESPONSE_DATA = 1 << 4;
+  int EVENT_RESPONSE_TRAILERS = 1 << 5;
+  // setRequestFilterCallbacks and onResumeRequest.
+  int EVENT_REQUEST_CALLBACKS = 1 << 6;
+  // setResponseFilterCallbacks and onResumeResponse.
+  int EVENT_RESPONSE_CALLBACKS = 1 << 7;
+  int EVENT_ERROR = 1 << 8;
+  int EVENT_CANCEL = 1 << 9;
+  int EVENT_ALL = (1 << 10) - 1;
+
+  /**
+   * The events this filter implements, as a mask of EVENT_* bits. It is read once, when the
+   * filter is created; the events left out continue without calling into the filter.
+   *
+   * @return the mask of implemented events.
+   */
+  int getEventMask();
+}
@@ -334,12 +334,12 @@ public abstract class CronetEngine {
       Collections.sort(providers, new Comparator<CronetProvider>() {
         @Override
         public int compare(CronetProvider p1, CronetProvider p2) {
-          // The fallback provider should always be at the end of the list.
-          if (CronetProvider.PROVIDER_NAME_FALLBACK.equals(p1.getName())) {
-            return 1;
-          }
-          if (CronetProvider.PROVIDER_NAME_FALLBACK.equals(p2.getName())) {
-            return -1;
+          // The fallback providers should always be at the end of the list, in the order they
+          // were found in.
+          boolean isFallback1 = CronetProvider.PROVIDER_NAME_FALLBACK.equals(p1.getName());
+          boolean isFallback2 = CronetProvider.PROVIDER_NAME_FALLBACK.equals(p2.getName());
+          if (isFallback1 || isFallback2) {
+            return Boolean.compare(isFallback1, isFallback2);
           }
           // A provider with higher version should go first.
           return -compareVersions(p1.getVersion(), p2.getVersion());
@@ -110,6 +110,10 @@ public abstract class CronetProvider {
   private static final String JAVA_CRONET_PROVIDER_CLASS =
       "org.chromium.net.impl.JavaCronetProvider";
 
+  /** Name of the {@link java.net.http.HttpClient} based {@link CronetProvider} class. */
+  private static final String HTTP_CLIENT_CRONET_PROVIDER_CLASS =
+      "org.chromium.net.impl.HttpClientCronetProvider";
+
   /** Name of the native {@link CronetProvider} class. */
   private static final String NATIVE_CRONET_PROVIDER_CLASS =
       "org.chromium.net.impl.NativeCronetProvider";
@@ -140,6 +144,8 @@ public abstract class CronetProvider {
                                      false);
     addCronetProviderImplByClassName(context, GMS_CORE_CRONET_PROVIDER_CLASS, providers, false);
     addCronetProviderImplByClassName(context, NATIVE_CRONET_PROVIDER_CLASS, providers, false);
+    // Both fallback providers may be available: the first enabled one is preferred.
+    addCronetProviderImplByClassName(context, HTTP_CLIENT_CRONET_PROVIDER_CLASS, providers, false);
     addCronetProviderImplByClassName(context, JAVA_CRONET_PROVIDER_CLASS, providers, false);
     return Collections.unmodifiableList(new ArrayList<>(providers));
   }
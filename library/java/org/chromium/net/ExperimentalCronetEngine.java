@@ -349,6 +349,20 @@ public abstract class ExperimentalCronetEngine extends CronetEngine {
    */
   public void removeRequestFinishedListener(RequestFinishedInfo.Listener listener) {}
 
+  /**
+   * Opens connections to {@code origin} ahead of requests to it, so that these don't wait for DNS
+   * resolution, nor for TCP and TLS handshakes. Requests reusing such a connection report it in
+   * {@link RequestFinishedInfo.Metrics#getSocketReused}.
+   *
+   * <p>This is idempotent: only the connections the origin is missing are opened, a single one if
+   * HTTP/2 is negotiated, and never more than the engine allows per host. It returns immediately,
+   * connections are opened in the background.
+   *
+   * @param origin the origin to connect to, such as {@code https://example.com:8443}.
+   * @param numConnections the number of connections the origin should have open.
+   */
+  public void preconnect(String origin, int numConnections) {}
+
   /**
    * Returns the HTTP RTT estimate (in milliseconds) computed by the network quality estimator. Set
    * to {@link #CONNECTION_METRIC_UNKNOWN} if the value is unavailable. This must be called after
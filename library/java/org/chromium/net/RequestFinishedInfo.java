@@ -2,7 +2,9 @@ package org.chromium.net;
 
 import androidx.annotation.Nullable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 /**
@@ -48,6 +50,67 @@ public abstract class RequestFinishedInfo {
     public Executor getExecutor() { return mExecutor; }
   }
 
+  /**
+   * Listens for finished requests, receiving them in batches rather than one at a time. This saves
+   * posting a task per request to the executor, which matters on engines processing many requests.
+   *
+   * <p>A batch is delivered once it holds {@link #getMaxBatchSize} requests, or {@link
+   * #getMaxDelayMillis} after its first request finished, whichever comes first. Implementations
+   * that don't batch deliver each request in its own batch.
+   *
+   * <p>{@hide} as it's a prototype.
+   */
+  public abstract static class BatchListener extends Listener {
+    private final int mMaxBatchSize;
+    private final long mMaxDelayMillis;
+
+    /**
+     * @param executor the executor batches are delivered on.
+     * @param maxBatchSize the maximum number of requests in a batch.
+     * @param maxDelayMillis the maximum delay between a request finishing and its batch being
+     *     delivered.
+     */
+    public BatchListener(Executor executor, int maxBatchSize, long maxDelayMillis) {
+      super(executor);
+      if (maxBatchSize <= 0) {
+        throw new IllegalArgumentException("Batch size must be positive");
+      }
+      if (maxDelayMillis < 0) {
+        throw new IllegalArgumentException("Delay must not be negative");
+      }
+      mMaxBatchSize = maxBatchSize;
+      mMaxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Invoked with a batch of request infos, in the order the requests finished. Will be called in
+     * a task submitted to the {@link java.util.concurrent.Executor} returned by {@link
+     * #getExecutor}.
+     *
+     * @param requestInfos {@link RequestFinishedInfo}s for finished requests.
+     */
+    public abstract void onRequestsFinished(List<RequestFinishedInfo> requestInfos);
+
+    @Override
+    public final void onRequestFinished(RequestFinishedInfo requestInfo) {
+      onRequestsFinished(Collections.singletonList(requestInfo));
+    }
+
+    /**
+     * Returns the maximum number of requests in a batch.
+     *
+     * @return the maximum number of requests in a batch.
+     */
+    public int getMaxBatchSize() { return mMaxBatchSize; }
+
+    /**
+     * Returns the maximum delay between a request finishing and its batch being delivered.
+     *
+     * @return the maximum delay in milliseconds.
+     */
+    public long getMaxDelayMillis() { return mMaxDelayMillis; }
+  }
+
   /**
    * Metrics collected for a single request. Most of these metrics are timestamps for events during
    * the lifetime of the request, which can be used to build a detailed timeline for investigating
@@ -233,6 +296,34 @@ public abstract class RequestFinishedInfo {
      * collected. Number of bytes does not include any previous redirects.
      */
     @Nullable public abstract Long getReceivedByteCount();
+
+    /**
+     * Returns the total time, in nanoseconds, that callbacks of the request spent queued on the
+     * request's executor before running, or {@code null} if not collected.
+     */
+    @Nullable
+    public Long getExecutorQueueingDelayNanos() {
+      return null;
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, between the library invoking a callback expecting a
+     * call to {@link UrlRequest#read} and that call, or {@code null} if not collected.
+     */
+    @Nullable
+    public Long getUserReadDelayNanos() {
+      return null;
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, the request spent inside the library rather than on
+     * the network or in the user's callbacks, or {@code null} if not collected. It includes the
+     * {@link #getExecutorQueueingDelayNanos executor queueing delay}.
+     */
+    @Nullable
+    public Long getLibraryOverheadNanos() {
+      return null;
+    }
   }
 
   /**
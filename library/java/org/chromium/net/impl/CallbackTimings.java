@@ -0,0 +1,108 @@
+package org.chromium.net.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures where the time of a request goes inside the library, as opposed to on the network:
+ *
+ * <ul>
+ *   <li>executor queueing delay: from a callback being posted to the user's executor until it
+ *       runs,
+ *   <li>user read delay: from a callback expecting {@code read()} being invoked until the user
+ *       calls it,
+ *   <li>network thread time: spent in the Java handling of the engine's callbacks.
+ * </ul>
+ *
+ * <p>The library overhead is the sum of the executor queueing delay and the network thread time.
+ * All durations are in nanoseconds. When disabled, nothing is measured and tasks run unwrapped.
+ */
+final class CallbackTimings {
+  private final boolean mEnabled;
+  private final AtomicLong mExecutorQueueingNanos = new AtomicLong();
+  private final AtomicLong mUserReadDelayNanos = new AtomicLong();
+  private final AtomicLong mNetworkThreadNanos = new AtomicLong();
+  // When the user was first expected to call read(), 0 when not expected.
+  private volatile long mReadExpectedAtNanos;
+  // The thread running a task of timingDirectExecutor(), if any.
+  private volatile Thread mNetworkThread;
+
+  CallbackTimings(boolean enabled) { mEnabled = enabled; }
+
+  boolean isEnabled() { return mEnabled; }
+
+  /**
+   * Returns an {@link Executor} running tasks inline on the calling thread, which is meant to be
+   * the network thread, and accounting for the time they take.
+   */
+  Executor timingDirectExecutor() {
+    if (!mEnabled) {
+      return Runnable::run;
+    }
+    return command -> {
+      long start = System.nanoTime();
+      mNetworkThread = Thread.currentThread();
+      try {
+        command.run();
+      } finally {
+        mNetworkThread = null;
+        mNetworkThreadNanos.addAndGet(System.nanoTime() - start);
+      }
+    };
+  }
+
+  /**
+   * Returns {@code task} wrapped to account for the delay until it runs, to be posted to the user's
+   * executor right away.
+   */
+  Runnable timeQueueing(final Runnable task) {
+    if (!mEnabled) {
+      return task;
+    }
+    final long postedAt = System.nanoTime();
+    return () -> {
+      long start = onUserCallbackStarted();
+      mExecutorQueueingNanos.addAndGet(start - postedAt);
+      task.run();
+      onUserCallbackEnded(start);
+    };
+  }
+
+  /**
+   * Notes that a user callback is invoked without going through the user's executor. Returns the
+   * value to pass to {@link #onUserCallbackEnded} once it returns.
+   */
+  long onUserCallbackStarted() { return mEnabled ? System.nanoTime() : 0; }
+
+  /** Notes that a user callback returned. */
+  void onUserCallbackEnded(long startedAt) {
+    if (mEnabled && Thread.currentThread() == mNetworkThread) {
+      // Run inline on the network thread: the user's time isn't the library's.
+      mNetworkThreadNanos.addAndGet(startedAt - System.nanoTime());
+    }
+  }
+
+  /** Notes that the user is about to be invoked with a callback expecting {@code read()}. */
+  void onReadExpected() {
+    if (mEnabled) {
+      mReadExpectedAtNanos = System.nanoTime();
+    }
+  }
+
+  /** Notes that the user called {@code read()}. */
+  void onRead() {
+    long expectedAt = mReadExpectedAtNanos;
+    if (expectedAt != 0) {
+      mReadExpectedAtNanos = 0;
+      mUserReadDelayNanos.addAndGet(System.nanoTime() - expectedAt);
+    }
+  }
+
+  long getExecutorQueueingNanos() { return mExecutorQueueingNanos.get(); }
+
+  long getUserReadDelayNanos() { return mUserReadDelayNanos.get(); }
+
+  long getLibraryOverheadNanos() {
+    return mExecutorQueueingNanos.get() + mNetworkThreadNanos.get();
+  }
+}
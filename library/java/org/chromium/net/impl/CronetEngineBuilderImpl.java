@@ -80,6 +80,12 @@ public abstract class CronetEngineBuilderImpl extends ICronetEngineBuilder {
   private boolean mNetworkQualityEstimatorEnabled;
   private int mThreadPriority = INVALID_THREAD_PRIORITY;
   private String mLogLevel = "info";
+  private boolean mRequestCoalescingEnabled;
+  private int mReadAheadBytes;
+  private int mUploadPipelineMaxChunks;
+  private int mUploadPipelineMaxBytes;
+  private boolean mVirtualThreadsEnabled;
+  private boolean mCallbackTimingHistogramsEnabled;
 
   /**
    * Default config enables SPDY and QUIC, disables SDCH and HTTP cache.
@@ -351,6 +357,92 @@ public abstract class CronetEngineBuilderImpl extends ICronetEngineBuilder {
 
   public String getLogLevel() { return mLogLevel; }
 
+  /**
+   * Enables coalescing of identical in-flight GET requests: while a bodiless GET is waiting for
+   * its response headers, later requests with the same URL and headers share its upstream stream
+   * instead of opening their own. Disabled by default.
+   */
+  public CronetEngineBuilderImpl enableRequestCoalescing(boolean value) {
+    mRequestCoalescingEnabled = value;
+    return this;
+  }
+
+  boolean requestCoalescingEnabled() { return mRequestCoalescingEnabled; }
+
+  /**
+   * Enables read-ahead of response bodies: up to {@code maxBytesPerRequest} bytes are requested
+   * from the network before the user calls {@code read()}, so that reads can be satisfied from
+   * the staged data while the next chunk is in flight. Passing 0 disables read-ahead, which is
+   * the default.
+   */
+  public CronetEngineBuilderImpl enableReadAhead(int maxBytesPerRequest) {
+    if (maxBytesPerRequest < 0) {
+      throw new IllegalArgumentException("Read-ahead budget must not be negative.");
+    }
+    mReadAheadBytes = maxBytesPerRequest;
+    return this;
+  }
+
+  /**
+   * @return the per request read-ahead budget in bytes, or 0 if read-ahead is disabled.
+   */
+  int readAheadBytes() { return mReadAheadBytes; }
+
+  /**
+   * Enables pipelining of request body uploads: up to {@code maxChunks} chunks, and no more than
+   * {@code maxBytes} bytes, are read from the {@link org.chromium.net.UploadDataProvider} while
+   * earlier chunks are being sent, so that reading the body and sending it overlap. A single chunk
+   * is always allowed, whatever its size. Passing 0 chunks disables pipelining, which is the
+   * default.
+   */
+  public CronetEngineBuilderImpl enableUploadPipelining(int maxChunks, int maxBytes) {
+    if (maxChunks < 0 || maxBytes < 0) {
+      throw new IllegalArgumentException("Upload pipelining limits must not be negative.");
+    }
+    mUploadPipelineMaxChunks = maxChunks;
+    mUploadPipelineMaxBytes = maxBytes;
+    return this;
+  }
+
+  /**
+   * @return the number of upload chunks read ahead of the network, or 0 if disabled.
+   */
+  int uploadPipelineMaxChunks() { return mUploadPipelineMaxChunks; }
+
+  /**
+   * @return the number of upload bytes read ahead of the network.
+   */
+  int uploadPipelineMaxBytes() { return mUploadPipelineMaxBytes; }
+
+  /**
+   * Runs the blocking network I/O of each request of the {@link java.net.HttpURLConnection} based
+   * engine on its own virtual thread, rather than on a pool of 10 threads, so that slow requests
+   * don't queue behind each other. Ignored where the JVM doesn't support virtual threads, and by
+   * the other engines. Disabled by default.
+   *
+   * <p>Internal: this is not part of the {@link org.chromium.net.CronetEngine.Builder} API, and is
+   * only reachable by building with {@link JavaCronetEngineBuilderImpl} directly.
+   */
+  public CronetEngineBuilderImpl enableVirtualThreads(boolean value) {
+    mVirtualThreadsEnabled = value;
+    return this;
+  }
+
+  boolean virtualThreadsEnabled() { return mVirtualThreadsEnabled; }
+
+  /**
+   * Records the executor queueing delay, user read delay and library overhead of each finished
+   * request in the engine's {@code cronvoy.request.*_us} histograms. These are always reported in
+   * {@link org.chromium.net.RequestFinishedInfo.Metrics}; recording them in the engine costs three
+   * calls into the engine per request. Disabled by default.
+   */
+  public CronetEngineBuilderImpl enableCallbackTimingHistograms(boolean value) {
+    mCallbackTimingHistogramsEnabled = value;
+    return this;
+  }
+
+  boolean callbackTimingHistogramsEnabled() { return mCallbackTimingHistogramsEnabled; }
+
   /**
    * Returns {@link Context} for builder.
    *
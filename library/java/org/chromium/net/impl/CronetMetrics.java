@@ -27,6 +27,9 @@ public final class CronetMetrics extends RequestFinishedInfo.Metrics {
   @Nullable private final Long mTotalTimeMs;
   @Nullable private final Long mSentByteCount;
   @Nullable private final Long mReceivedByteCount;
+  @Nullable private final Long mExecutorQueueingDelayNanos;
+  @Nullable private final Long mUserReadDelayNanos;
+  @Nullable private final Long mLibraryOverheadNanos;
 
   @Nullable
   private static Date toDate(long timestamp) {
@@ -48,6 +51,19 @@ public final class CronetMetrics extends RequestFinishedInfo.Metrics {
                        long sendingEndMs, long pushStartMs, long pushEndMs, long responseStartMs,
                        long requestEndMs, boolean socketReused, long sentByteCount,
                        long receivedByteCount) {
+    this(requestStartMs, dnsStartMs, dnsEndMs, connectStartMs, connectEndMs, sslStartMs, sslEndMs,
+         sendingStartMs, sendingEndMs, pushStartMs, pushEndMs, responseStartMs, requestEndMs,
+         socketReused, sentByteCount, receivedByteCount, /* executorQueueingDelayNanos= */ -1,
+         /* userReadDelayNanos= */ -1, /* libraryOverheadNanos= */ -1);
+  }
+
+  /** New-style constructor, with the time spent inside the library. -1 means not collected. */
+  public CronetMetrics(long requestStartMs, long dnsStartMs, long dnsEndMs, long connectStartMs,
+                       long connectEndMs, long sslStartMs, long sslEndMs, long sendingStartMs,
+                       long sendingEndMs, long pushStartMs, long pushEndMs, long responseStartMs,
+                       long requestEndMs, boolean socketReused, long sentByteCount,
+                       long receivedByteCount, long executorQueueingDelayNanos,
+                       long userReadDelayNanos, long libraryOverheadNanos) {
     // Check that no end times are before corresponding start times,
     // or exist when start time doesn't.
     assert checkOrder(dnsStartMs, dnsEndMs);
@@ -78,6 +94,10 @@ public final class CronetMetrics extends RequestFinishedInfo.Metrics {
     mSocketReused = socketReused;
     mSentByteCount = sentByteCount;
     mReceivedByteCount = receivedByteCount;
+    mExecutorQueueingDelayNanos =
+        executorQueueingDelayNanos != -1 ? executorQueueingDelayNanos : null;
+    mUserReadDelayNanos = userReadDelayNanos != -1 ? userReadDelayNanos : null;
+    mLibraryOverheadNanos = libraryOverheadNanos != -1 ? libraryOverheadNanos : null;
 
     if (requestStartMs != -1 && responseStartMs != -1) {
       mTtfbMs = responseStartMs - requestStartMs;
@@ -197,4 +217,22 @@ public final class CronetMetrics extends RequestFinishedInfo.Metrics {
   public Long getReceivedByteCount() {
     return mReceivedByteCount;
   }
+
+  @Nullable
+  @Override
+  public Long getExecutorQueueingDelayNanos() {
+    return mExecutorQueueingDelayNanos;
+  }
+
+  @Nullable
+  @Override
+  public Long getUserReadDelayNanos() {
+    return mUserReadDelayNanos;
+  }
+
+  @Nullable
+  @Override
+  public Long getLibraryOverheadNanos() {
+    return mLibraryOverheadNanos;
+  }
 }
@@ -6,6 +6,7 @@ import androidx.annotation.IntDef;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import org.chromium.net.UploadDataProvider;
@@ -25,10 +26,17 @@ public final class CronetUploadDataStream extends UploadDataSink {
   // These are never changed, once a request starts.
   private final Executor mExecutor;
   private final VersionSafeCallbacks.UploadDataProviderWrapper mDataProvider;
+  // Non null when the body is a mapped file, whose chunks are sent without being copied.
+  private final MappedFileUploadDataProvider mMappedFileProvider;
   private final CronetUrlRequest mRequest;
   private long mLength;
   private long mRemainingLength;
 
+  // Upload pipelining limits, see CronetEngineBuilderImpl#enableUploadPipelining. 0 chunks means
+  // that a chunk is only read from the UploadDataProvider once Envoy is ready to send it.
+  private final int mMaxQueuedChunks;
+  private final int mMaxQueuedBytes;
+
   // Reusable read task, to reduce redundant memory allocation.
   private final Runnable mReadTask = new Runnable() {
     @Override
@@ -37,6 +45,21 @@ public final class CronetUploadDataStream extends UploadDataSink {
     }
   };
 
+  private final Runnable mRewindTask = new Runnable() {
+    @Override
+    public void run() {
+      synchronized (mLock) {
+        checkState(UserCallback.NOT_IN_CALLBACK);
+        mInWhichUserCallback = UserCallback.REWIND;
+      }
+      try {
+        mDataProvider.rewind(CronetUploadDataStream.this);
+      } catch (Exception exception) {
+        onError(exception);
+      }
+    }
+  };
+
   // It is only valid from the call to mDataProvider.read until onError or onReadSucceeded.
   private ByteBuffer mByteBuffer;
   private int mByteBufferLimit;
@@ -62,16 +85,33 @@ public final class CronetUploadDataStream extends UploadDataSink {
   @GuardedBy("mLock") private @UserCallback int mInWhichUserCallback = UserCallback.NOT_IN_CALLBACK;
   @GuardedBy("mLock") private boolean mClosedPostponed;
 
+  // Pipelining state: chunks read ahead of the send window, in upload order.
+  @GuardedBy("mLock") private final ArrayDeque<ByteBuffer> mQueuedChunks = new ArrayDeque<>();
+  @GuardedBy("mLock") private long mQueuedBytes;
+  @GuardedBy("mLock") private boolean mLastChunkQueued;
+  @GuardedBy("mLock") private boolean mSendWindowAvailable;
+  @GuardedBy("mLock") private boolean mReadScheduled;
+  // A rewind requested while a read was scheduled or in progress; done once that read is over.
+  @GuardedBy("mLock") private boolean mRewindPostponed;
+
   /**
    * Constructs a CronetUploadDataStream.
    * @param dataProvider the UploadDataProvider to read data from.
    * @param executor the Executor to execute UploadDataProvider tasks.
+   * @param maxQueuedChunks the number of chunks read ahead of the send window, 0 to disable.
+   * @param maxQueuedBytes the number of bytes read ahead of the send window.
    */
   public CronetUploadDataStream(UploadDataProvider dataProvider, Executor executor,
-                                CronetUrlRequest request) {
+                                CronetUrlRequest request, int maxQueuedChunks,
+                                int maxQueuedBytes) {
     mExecutor = executor;
     mDataProvider = new VersionSafeCallbacks.UploadDataProviderWrapper(dataProvider);
+    mMappedFileProvider = dataProvider instanceof MappedFileUploadDataProvider
+                              ? (MappedFileUploadDataProvider)dataProvider
+                              : null;
     mRequest = request;
+    mMaxQueuedChunks = maxQueuedChunks;
+    mMaxQueuedBytes = maxQueuedBytes;
   }
 
   /**
@@ -80,6 +120,12 @@ public final class CronetUploadDataStream extends UploadDataSink {
    * @param originalThread
    */
   void readDataReady() {
+    if (mMaxQueuedChunks > 0) {
+      synchronized (mLock) { mSendWindowAvailable = true; }
+      sendQueuedChunk();
+      scheduleReadAhead();
+      return;
+    }
     if (mRemainingLength != 0) {
       postTaskToExecutor(mReadTask);
     } else {
@@ -99,21 +145,69 @@ public final class CronetUploadDataStream extends UploadDataSink {
    * Called to make the UploadDataProvider rewind upload data.
    */
   void rewind() {
-    Runnable task = new Runnable() {
-      @Override
-      public void run() {
-        synchronized (mLock) {
-          checkState(UserCallback.NOT_IN_CALLBACK);
-          mInWhichUserCallback = UserCallback.REWIND;
-        }
-        try {
-          mDataProvider.rewind(CronetUploadDataStream.this);
-        } catch (Exception exception) {
-          onError(exception);
+    if (mMaxQueuedChunks > 0) {
+      synchronized (mLock) {
+        // Chunks read ahead belong to the previous stream, they are read again after the rewind.
+        discardQueuedChunks();
+        mSendWindowAvailable = false;
+        if (mReadScheduled || mInWhichUserCallback == UserCallback.READ) {
+          mRewindPostponed = true;
+          return;
         }
       }
-    };
-    postTaskToExecutor(task);
+    }
+    postTaskToExecutor(mRewindTask);
+  }
+
+  /** Sends the oldest queued chunk, if Envoy is ready to accept it. */
+  private void sendQueuedChunk() {
+    ByteBuffer chunk;
+    boolean finalChunk;
+    synchronized (mLock) {
+      if (!mUploadDataStreamActive || !mSendWindowAvailable || mQueuedChunks.isEmpty()) {
+        return;
+      }
+      chunk = mQueuedChunks.poll();
+      mQueuedBytes -= chunk.position();
+      finalChunk = mLastChunkQueued && mQueuedChunks.isEmpty();
+      mSendWindowAvailable = false;
+    }
+    mRequest.send(chunk, finalChunk);
+  }
+
+  /** Reads the next chunk from the UploadDataProvider, unless the pipeline is full. */
+  private void scheduleReadAhead() {
+    boolean read;
+    synchronized (mLock) {
+      if (!mUploadDataStreamActive || mLastChunkQueued || mReadScheduled || mRewindPostponed ||
+          mInWhichUserCallback != UserCallback.NOT_IN_CALLBACK) {
+        return;
+      }
+      if (mQueuedChunks.size() >= mMaxQueuedChunks ||
+          (!mQueuedChunks.isEmpty() && mQueuedBytes + BYTE_BUFFER_SIZE > mMaxQueuedBytes)) {
+        return;
+      }
+      read = mRemainingLength != 0;
+      if (read) {
+        mReadScheduled = true;
+      } else {
+        // Empty body: there is nothing to read, only the end of stream to send.
+        mQueuedChunks.add(EMPTY_BYTE_BUFFER);
+        mLastChunkQueued = true;
+      }
+    }
+    if (read) {
+      postTaskToExecutor(mReadTask);
+    } else {
+      sendQueuedChunk();
+    }
+  }
+
+  @GuardedBy("mLock")
+  private void discardQueuedChunks() {
+    mQueuedChunks.clear();
+    mQueuedBytes = 0;
+    mLastChunkQueued = false;
   }
 
   @GuardedBy("mLock")
@@ -125,14 +219,32 @@ public final class CronetUploadDataStream extends UploadDataSink {
 
   private void read() {
     mRequest.checkCallingThread();
+    boolean rewind = false;
     synchronized (mLock) {
+      mReadScheduled = false;
       if (!mUploadDataStreamActive) {
         return;
       }
-      checkState(UserCallback.NOT_IN_CALLBACK);
-      mInWhichUserCallback = UserCallback.READ;
+      if (mRewindPostponed) {
+        mRewindPostponed = false;
+        rewind = true;
+      } else {
+        checkState(UserCallback.NOT_IN_CALLBACK);
+        mInWhichUserCallback = UserCallback.READ;
+      }
+    }
+    if (rewind) {
+      mRewindTask.run(); // Already on the executor.
+      return;
     }
     try {
+      if (mMappedFileProvider != null) {
+        // A slice of the mapping is sent as is: no buffer to allocate, nothing to copy.
+        mByteBuffer = mMappedFileProvider.readDirect(BYTE_BUFFER_SIZE);
+        mByteBufferLimit = mByteBuffer.limit();
+        onReadSucceeded(false);
+        return;
+      }
       // The mRemainingLength+1 is a hack to have the original tests passing - not really needed.
       mByteBufferLimit = mRemainingLength < 0 || mRemainingLength > BYTE_BUFFER_SIZE
                              ? BYTE_BUFFER_SIZE
@@ -169,6 +281,7 @@ public final class CronetUploadDataStream extends UploadDataSink {
 
   @Override
   public void onReadSucceeded(boolean lastChunk) {
+    boolean rewind = false;
     synchronized (mLock) {
       checkState(UserCallback.READ);
       if (mByteBufferLimit != mByteBuffer.limit()) {
@@ -190,6 +303,27 @@ public final class CronetUploadDataStream extends UploadDataSink {
       if (!mUploadDataStreamActive) {
         return;
       }
+      if (mMaxQueuedChunks > 0) {
+        if (mRewindPostponed) {
+          // This chunk was read for the previous stream: drop it and rewind instead.
+          mRewindPostponed = false;
+          rewind = true;
+        } else {
+          mQueuedChunks.add(mByteBuffer);
+          mQueuedBytes += bytesRead;
+          mLastChunkQueued = lastChunk || mRemainingLength == 0;
+        }
+      }
+    }
+    if (mMaxQueuedChunks > 0) {
+      mByteBuffer = null;
+      if (rewind) {
+        postTaskToExecutor(mRewindTask);
+        return;
+      }
+      sendQueuedChunk();
+      scheduleReadAhead();
+      return;
     }
     mRequest.send(mByteBuffer, lastChunk || mRemainingLength == 0);
     mByteBuffer = null;
@@ -249,6 +383,7 @@ public final class CronetUploadDataStream extends UploadDataSink {
         return;
       }
       mUploadDataStreamActive = false;
+      discardQueuedChunks();
     }
     Runnable task = new Runnable() {
       @Override
@@ -2,6 +2,7 @@ package org.chromium.net.impl;
 
 import android.os.ConditionVariable;
 import android.util.Log;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.IntDef;
 import io.envoyproxy.envoymobile.engine.EnvoyHTTPStream;
 import io.envoyproxy.envoymobile.engine.types.EnvoyFinalStreamIntel;
@@ -15,6 +16,7 @@ import java.net.URL;
 import java.nio.ByteBuffer;
 import java.util.AbstractMap;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -87,7 +89,6 @@ public final class CronetUrlRequest extends UrlRequestBase {
   private static final String USER_AGENT = "User-Agent";
   private static final String CONTENT_TYPE = "Content-Type";
   private static final ByteBuffer EMPTY_BYTE_BUFFER = ByteBuffer.allocateDirect(0);
-  private static final Executor DIRECT_EXECUTOR = new DirectExecutor();
 
   private final String mUserAgent;
   private final HeadersList mRequestHeaders = new HeadersList();
@@ -95,6 +96,7 @@ public final class CronetUrlRequest extends UrlRequestBase {
   private final CronetUrlRequestContext mRequestContext;
   private final AtomicBoolean mWaitingOnRedirect = new AtomicBoolean(false);
   private final AtomicBoolean mWaitingOnRead = new AtomicBoolean(false);
+  private final CallbackTimings mCallbackTimings;
   private volatile ByteBuffer mUserCurrentReadBuffer = null;
 
   /**
@@ -112,6 +114,21 @@ public final class CronetUrlRequest extends UrlRequestBase {
 
   private final boolean mAllowDirectExecutor;
 
+  /**
+   * Whether the user's executor was found to run tasks inline, which is only checked when direct
+   * execution is allowed. Response headers and body are then delivered by calling the user's
+   * callback directly, without allocating a task nor going through the executor. Only accessed on
+   * the network thread, see {@link #isDirectDelivery}.
+   */
+  private boolean mDirectDelivery;
+  private boolean mDirectDeliveryProbed;
+
+  /**
+   * Maximum number of response body bytes requested ahead of the user's reads, or 0 if response
+   * body data is only requested when the user calls {@link #read(ByteBuffer)}.
+   */
+  private final int mReadAheadBytes;
+
   /* These don't change with redirects */
   private String mInitialMethod;
   private final Executor mUserExecutor;
@@ -171,7 +188,10 @@ public final class CronetUrlRequest extends UrlRequestBase {
             ? new VersionSafeCallbacks.RequestFinishedInfoListener(requestFinishedListener)
             : null;
     mRequestContext = cronvoyEngine;
+    mCallbackTimings = new CallbackTimings(cronvoyEngine.callbackTimingsEnabled() ||
+                                           mRequestFinishedListener != null);
     mAllowDirectExecutor = allowDirectExecutor;
+    mReadAheadBytes = cronvoyEngine.getBuilder().readAheadBytes();
     mUserExecutor = executor;
     mInitialUrl = url;
     mCurrentUrl = url;
@@ -250,7 +270,10 @@ public final class CronetUrlRequest extends UrlRequestBase {
     if (mInitialMethod == null) {
       mInitialMethod = "POST";
     }
-    mUploadDataStream = new CronetUploadDataStream(uploadDataProvider, executor, this);
+    CronetEngineBuilderImpl builder = mRequestContext.getBuilder();
+    mUploadDataStream =
+        new CronetUploadDataStream(uploadDataProvider, executor, this,
+                                   builder.uploadPipelineMaxChunks(), builder.uploadPipelineMaxBytes());
   }
 
   @Override
@@ -271,8 +294,10 @@ public final class CronetUrlRequest extends UrlRequestBase {
     if (!mWaitingOnRead.compareAndSet(true, false)) {
       throw new IllegalStateException("Unexpected read attempt.");
     }
-    if (mState.compareAndSet(State.AWAITING_READ, streamEnded() ? State.COMPLETE : State.READING)) {
-      if (streamEnded()) {
+    mCallbackTimings.onRead();
+    boolean bodyEnded = bodyEnded();
+    if (mState.compareAndSet(State.AWAITING_READ, bodyEnded ? State.COMPLETE : State.READING)) {
+      if (bodyEnded) {
         if (mCronvoyCallbacks.successReady(SucceededState.FINAL_READ_DONE)) {
           onSucceeded();
         }
@@ -503,8 +528,7 @@ public final class CronetUrlRequest extends UrlRequestBase {
         buildEnvoyRequestHeaders(mInitialMethod, mRequestHeaders, mUploadDataStream, mUserAgent,
                                  mCurrentUrl, mRequestContext.getBuilder().http2Enabled());
     mCronvoyCallbacks = new CronvoyHttpCallbacks();
-    mStream.set(mRequestContext.getEnvoyEngine().startStream(mCronvoyCallbacks,
-                                                             /* explicitFlowCrontrol= */ true));
+    mStream.set(mRequestContext.startStream(mCronvoyCallbacks, /* explicitFlowCrontrol= */ true));
     mStream.get().sendHeaders(envoyRequestHeaders, mUploadDataStream == null);
     if (mUploadDataStream != null && mUrlChain.size() == 1) {
       mUploadDataStream.initializeWithRequest();
@@ -581,12 +605,43 @@ public final class CronetUrlRequest extends UrlRequestBase {
 
   void execute(Runnable runnable) {
     try {
-      mUserExecutor.execute(runnable);
+      mUserExecutor.execute(mCallbackTimings.timeQueueing(runnable));
     } catch (RejectedExecutionException e) {
       enterErrorState(new CronetExceptionImpl("Exception posting task to executor", e));
     }
   }
 
+  /**
+   * Whether response events can be delivered by calling the user's callback directly. Must be
+   * called on the network thread: the first call probes the user's executor with a no-op task from
+   * that thread, the one events are delivered on, whichever thread posted to the executor first.
+   */
+  private boolean isDirectDelivery() {
+    if (mAllowDirectExecutor && !mDirectDeliveryProbed) {
+      mDirectDeliveryProbed = true;
+      mDirectDelivery = runsTasksInline(mUserExecutor);
+    }
+    return mDirectDelivery;
+  }
+
+  /** Whether {@code executor} runs a task before returning, on the thread calling it. */
+  private static boolean runsTasksInline(Executor executor) {
+    final Thread callingThread = Thread.currentThread();
+    final AtomicBoolean executing = new AtomicBoolean(true);
+    final AtomicBoolean ranInline = new AtomicBoolean();
+    try {
+      executor.execute(() -> {
+        if (executing.get() && Thread.currentThread() == callingThread) {
+          ranInline.set(true);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      return false; // Reported when the next event is posted to the executor.
+    }
+    executing.set(false);
+    return ranInline.get();
+  }
+
   void onCanceled() {
     Runnable task = new Runnable() {
       @Override
@@ -660,6 +715,13 @@ public final class CronetUrlRequest extends UrlRequestBase {
     return cronvoyCallbacks != null && cronvoyCallbacks.mEndStream;
   }
 
+  /** True when the stream ended and all the response body data was handed to the user. */
+  private boolean bodyEnded() {
+    CronvoyHttpCallbacks cronvoyCallbacks = this.mCronvoyCallbacks;
+    return cronvoyCallbacks != null && cronvoyCallbacks.mEndStream &&
+        !cronvoyCallbacks.hasStagedData();
+  }
+
   private void recordEnvoyFinalStreamIntel(EnvoyFinalStreamIntel envoyFinalStreamIntel) {
     mEnvoyFinalStreamIntel = envoyFinalStreamIntel;
     if (mUrlResponseInfo != null) { // Null if cancelled before receiving a Response.
@@ -677,7 +739,9 @@ public final class CronetUrlRequest extends UrlRequestBase {
   // after Callback's onSucceeded, onFailed and onCanceled.
   private void maybeReportMetrics() {
     if (mEnvoyFinalStreamIntel != null) {
-      Metrics metrics = getMetrics(mEnvoyFinalStreamIntel, mBytesReceivedFromRedirects);
+      Metrics metrics =
+          getMetrics(mEnvoyFinalStreamIntel, mBytesReceivedFromRedirects, mCallbackTimings);
+      mRequestContext.recordCallbackTimings(mCallbackTimings);
       final RequestFinishedInfo requestInfo =
           new RequestFinishedInfoImpl(mInitialUrl, mRequestAnnotations, metrics,
                                       getFinishedReason(), mUrlResponseInfo, mException);
@@ -698,14 +762,18 @@ public final class CronetUrlRequest extends UrlRequestBase {
     }
   }
 
-  private static Metrics getMetrics(EnvoyFinalStreamIntel intel, long bytesReceivedFromRedirects) {
+  private static Metrics getMetrics(EnvoyFinalStreamIntel intel, long bytesReceivedFromRedirects,
+                                    CallbackTimings callbackTimings) {
     return new CronetMetrics(
         intel.getStreamStartMs(), intel.getDnsStartMs(), intel.getDnsEndMs(),
         intel.getConnectStartMs(), intel.getConnectEndMs(), intel.getSslStartMs(),
         intel.getSslEndMs(), intel.getSendingStartMs(), intel.getSendingEndMs(),
         /* pushStartMs= */ -1, /* pushEndMs= */ -1, intel.getResponseStartMs(),
         intel.getStreamEndMs(), intel.getSocketReused(), intel.getSentByteCount(),
-        intel.getReceivedByteCount() + bytesReceivedFromRedirects);
+        intel.getReceivedByteCount() + bytesReceivedFromRedirects,
+        callbackTimings.isEnabled() ? callbackTimings.getExecutorQueueingNanos() : -1,
+        callbackTimings.isEnabled() ? callbackTimings.getUserReadDelayNanos() : -1,
+        callbackTimings.isEnabled() ? callbackTimings.getLibraryOverheadNanos() : -1);
   }
 
   @RequestFinishedInfoImpl.FinishedReason
@@ -722,13 +790,6 @@ public final class CronetUrlRequest extends UrlRequestBase {
 
   private static class HeadersList extends ArrayList<Map.Entry<String, String>> {}
 
-  private static class DirectExecutor implements Executor {
-    @Override
-    public void execute(Runnable runnable) {
-      runnable.run();
-    }
-  }
-
   private static int determineNextState(boolean endStream, @State int original,
                                         @State int desired) {
     switch (original) {
@@ -747,9 +808,24 @@ public final class CronetUrlRequest extends UrlRequestBase {
     private final AtomicInteger mSucceededState = new AtomicInteger(SucceededState.UNDETERMINED);
     private volatile boolean mEndStream = false; // Accessed by different Threads
 
+    /**
+     * Guards the read-ahead state below. Only used when {@link #mReadAheadBytes} is not 0: response
+     * body data is then requested ahead of the user's reads, staged here, and handed to the user
+     * on the next {@link #read(ByteBuffer)} without another round trip to the network thread.
+     */
+    private final Object mReadAheadLock = new Object();
+    @GuardedBy("mReadAheadLock") private final ArrayDeque<ByteBuffer> mStagedData = new ArrayDeque<>();
+    @GuardedBy("mReadAheadLock") private long mStagedBytes;
+    @GuardedBy("mReadAheadLock") private int mPendingReadSize; // 0 when no user read is pending.
+    @GuardedBy("mReadAheadLock") private boolean mReadAheadOutstanding;
+    @GuardedBy("mReadAheadLock") private boolean mReadAheadDeferred; // By a send() in progress.
+    @GuardedBy("mReadAheadLock") private boolean mDelivering;
+
+    private final Executor mExecutor = mCallbackTimings.timingDirectExecutor();
+
     @Override
     public Executor getExecutor() {
-      return DIRECT_EXECUTOR;
+      return mExecutor;
     }
 
     @Override
@@ -790,32 +866,41 @@ public final class CronetUrlRequest extends UrlRequestBase {
         cancel(); // Abort the the original request - we are being redirected.
       }
 
-      Runnable task = new Runnable() {
-        @Override
-        public void run() {
-          checkCallingThread();
-          try {
-            if (locationField != null) {
-              mCronvoyCallbacks = null; // Makes CronvoyHttpCallbacks abandoned.
-              mStream.set(null);
-              mPendingRedirectUrl = URI.create(mCurrentUrl).resolve(locationField).toString();
-              mWaitingOnRedirect.set(true);
-              mCallback.onRedirectReceived(CronetUrlRequest.this, mUrlResponseInfo,
-                                           mPendingRedirectUrl);
-            } else {
-              if (responseCode < 300 || responseCode >= 400) {
-                setUrlResponseInfo(headers, responseCode);
-              }
-              fireCloseUploadDataProvider(); // Idempotent
-              mWaitingOnRead.set(true);
-              mCallback.onResponseStarted(CronetUrlRequest.this, mUrlResponseInfo);
-            }
-          } catch (Throwable t) {
-            onCallbackException(t);
+      if (mReadAheadBytes > 0 && locationField == null && !endStream) {
+        readAhead(); // Fetch the first chunk while the user handles onResponseStarted().
+      }
+      if (isDirectDelivery()) {
+        long startedAt = mCallbackTimings.onUserCallbackStarted();
+        deliverHeaders(headers, responseCode, locationField);
+        mCallbackTimings.onUserCallbackEnded(startedAt);
+      } else {
+        execute(() -> deliverHeaders(headers, responseCode, locationField));
+      }
+    }
+
+    private void deliverHeaders(Map<String, List<String>> headers, int responseCode,
+                                String locationField) {
+      checkCallingThread();
+      try {
+        if (locationField != null) {
+          mCronvoyCallbacks = null; // Makes CronvoyHttpCallbacks abandoned.
+          mStream.set(null);
+          mPendingRedirectUrl = URI.create(mCurrentUrl).resolve(locationField).toString();
+          mWaitingOnRedirect.set(true);
+          mCallback.onRedirectReceived(CronetUrlRequest.this, mUrlResponseInfo,
+                                       mPendingRedirectUrl);
+        } else {
+          if (responseCode < 300 || responseCode >= 400) {
+            setUrlResponseInfo(headers, responseCode);
           }
+          fireCloseUploadDataProvider(); // Idempotent
+          mWaitingOnRead.set(true);
+          mCallbackTimings.onReadExpected();
+          mCallback.onResponseStarted(CronetUrlRequest.this, mUrlResponseInfo);
         }
-      };
-      execute(task);
+      } catch (Throwable t) {
+        onCallbackException(t);
+      }
     }
 
     @Override
@@ -824,6 +909,10 @@ public final class CronetUrlRequest extends UrlRequestBase {
         return;
       }
       recordEnvoyStreamIntel(streamIntel);
+      if (mReadAheadBytes > 0) {
+        stageData(data, endStream);
+        return;
+      }
       mEndStream = endStream;
       @State int originalState;
       @State int updatedState;
@@ -838,22 +927,31 @@ public final class CronetUrlRequest extends UrlRequestBase {
         return;
       }
 
-      Runnable task = new Runnable() {
-        @Override
-        public void run() {
-          checkCallingThread();
-          try {
-            ByteBuffer userBuffer = mUserCurrentReadBuffer;
-            mUserCurrentReadBuffer = null; // Avoid the reference to a potentially large buffer.
-            userBuffer.put(data); // NPE ==> BUG, BufferOverflowException ==> User not behaving.
-            mWaitingOnRead.set(true);
-            mCallback.onReadCompleted(CronetUrlRequest.this, mUrlResponseInfo, userBuffer);
-          } catch (Throwable t) {
-            onCallbackException(t);
-          }
-        }
-      };
-      execute(task);
+      postReadCompleted(data);
+    }
+
+    private void postReadCompleted(ByteBuffer data) {
+      if (isDirectDelivery()) {
+        long startedAt = mCallbackTimings.onUserCallbackStarted();
+        deliverReadCompleted(data);
+        mCallbackTimings.onUserCallbackEnded(startedAt);
+      } else {
+        execute(() -> deliverReadCompleted(data));
+      }
+    }
+
+    private void deliverReadCompleted(ByteBuffer data) {
+      checkCallingThread();
+      try {
+        ByteBuffer userBuffer = mUserCurrentReadBuffer;
+        mUserCurrentReadBuffer = null; // Avoid the reference to a potentially large buffer.
+        userBuffer.put(data); // NPE ==> BUG, BufferOverflowException ==> User not behaving.
+        mWaitingOnRead.set(true);
+        mCallbackTimings.onReadExpected();
+        mCallback.onReadCompleted(CronetUrlRequest.this, mUrlResponseInfo, userBuffer);
+      } catch (Throwable t) {
+        onCallbackException(t);
+      }
     }
 
     @Override
@@ -871,6 +969,10 @@ public final class CronetUrlRequest extends UrlRequestBase {
       if (completeAbandonIfAny(originalState, updatedState)) {
         return;
       }
+      if (mReadAheadBytes > 0) {
+        deliverStagedData(); // The pending user read, if any, may now complete the request.
+        return;
+      }
       if (mState.compareAndSet(State.READING, State.COMPLETE)) {
         mCronvoyCallbacks.successReady(SucceededState.FINAL_READ_DONE);
       }
@@ -975,18 +1077,173 @@ public final class CronetUrlRequest extends UrlRequestBase {
       }
       if (!mCancelState.compareAndSet(CancelState.BUSY, CancelState.READY)) {
         stream.cancel();
+        return;
+      }
+      if (mReadAheadBytes > 0) {
+        resumeReadAhead();
       }
     }
 
     void readData(int size) {
+      if (mReadAheadBytes > 0) {
+        synchronized (mReadAheadLock) {
+          mPendingReadSize = size;
+        }
+        deliverStagedData();
+        readAhead();
+        return;
+      }
+      readFromStream(size);
+    }
+
+    /**
+     * Requests response body data from the stream if the state permits. Returns false if the
+     * request wasn't made, because the stream was cancelled or a send() is in progress.
+     */
+    private boolean readFromStream(long size) {
       EnvoyHTTPStream stream = mStream.get();
       if (!mCancelState.compareAndSet(CancelState.READY, CancelState.BUSY)) {
-        return; // Cancelled - to late to send something.
+        return false; // Cancelled - to late to send something - or busy sending.
       }
       stream.readData(size);
       if (!mCancelState.compareAndSet(CancelState.BUSY, CancelState.READY)) {
         stream.cancel();
       }
+      return true;
+    }
+
+    boolean hasStagedData() {
+      synchronized (mReadAheadLock) {
+        return mStagedBytes > 0;
+      }
+    }
+
+    /**
+     * Requests more response body data, unless a request is in flight or less than half of the
+     * budget is free. Waiting for half of the budget avoids trickling tiny reads to Envoy.
+     */
+    private void readAhead() {
+      long size;
+      synchronized (mReadAheadLock) {
+        if (mReadAheadOutstanding || mEndStream || mStagedBytes > mReadAheadBytes / 2) {
+          return;
+        }
+        size = mReadAheadBytes - mStagedBytes;
+        mReadAheadOutstanding = true;
+        mReadAheadDeferred = false;
+      }
+      if (readFromStream(size)) {
+        return;
+      }
+      synchronized (mReadAheadLock) {
+        mReadAheadOutstanding = false;
+        mReadAheadDeferred = true;
+      }
+      // The send() in progress resumes the read-ahead once done, unless it was already done before
+      // the read-ahead was marked as deferred.
+      if (mCancelState.get() == CancelState.READY) {
+        resumeReadAhead();
+      }
+    }
+
+    /** Retries a read-ahead that was deferred by a send() in progress, if any. */
+    private void resumeReadAhead() {
+      synchronized (mReadAheadLock) {
+        if (!mReadAheadDeferred) {
+          return;
+        }
+        mReadAheadDeferred = false;
+      }
+      readAhead();
+    }
+
+    private void stageData(ByteBuffer data, boolean endStream) {
+      synchronized (mReadAheadLock) {
+        mReadAheadOutstanding = false;
+        if (data.hasRemaining()) {
+          mStagedData.add(data);
+          mStagedBytes += data.remaining();
+        }
+      }
+      // Set after staging: bodyEnded() must not observe the end of the stream without its data.
+      mEndStream = endStream;
+      @State int originalState;
+      @State int updatedState;
+      do {
+        originalState = mState.get();
+        updatedState = determineNextState(endStream, originalState, originalState);
+      } while (!mState.compareAndSet(originalState, updatedState));
+      if (completeAbandonIfAny(originalState, updatedState)) {
+        return;
+      }
+      deliverStagedData();
+      readAhead();
+    }
+
+    /**
+     * Satisfies the pending user read from the staged data, or completes the request if the
+     * stream ended and nothing is left. This loops instead of recursing, so a user calling read()
+     * from onReadCompleted() on a direct executor doesn't grow the stack.
+     */
+    private void deliverStagedData() {
+      synchronized (mReadAheadLock) {
+        if (mDelivering) {
+          return; // The thread already delivering will pick up the pending read.
+        }
+        mDelivering = true;
+      }
+      while (true) {
+        ByteBuffer chunk = null;
+        synchronized (mReadAheadLock) {
+          if (mPendingReadSize == 0 || (mStagedBytes == 0 && !mEndStream)) {
+            mDelivering = false;
+            return;
+          }
+          if (mStagedBytes > 0) {
+            chunk = pollStagedData(mPendingReadSize);
+          }
+          mPendingReadSize = 0;
+        }
+        if (chunk == null) {
+          if (mState.compareAndSet(State.READING, State.COMPLETE) &&
+              successReady(SucceededState.FINAL_READ_DONE)) {
+            onSucceeded();
+          }
+          continue;
+        }
+        @State int originalState;
+        @State int updatedState;
+        do {
+          originalState = mState.get();
+          if (originalState == State.COMPLETE || originalState == State.CANCELLED ||
+              originalState == State.ERROR) {
+            updatedState = originalState; // Too late: the user was already notified.
+            break;
+          }
+          updatedState = determineNextState(mEndStream, originalState, State.AWAITING_READ);
+        } while (!mState.compareAndSet(originalState, updatedState));
+        if (completeAbandonIfAny(originalState, updatedState)) {
+          continue;
+        }
+        if (reportInternalStateTransitionErrorIfAny(originalState, State.READING)) {
+          continue;
+        }
+        postReadCompleted(chunk);
+      }
+    }
+
+    @GuardedBy("mReadAheadLock")
+    private ByteBuffer pollStagedData(int maxSize) {
+      ByteBuffer head = mStagedData.peek();
+      int size = Math.min(maxSize, head.remaining());
+      ByteBuffer chunk = head.duplicate();
+      chunk.limit(chunk.position() + size);
+      head.position(head.position() + size);
+      if (!head.hasRemaining()) {
+        mStagedData.poll();
+      }
+      mStagedBytes -= size;
+      return chunk;
     }
 
     /**
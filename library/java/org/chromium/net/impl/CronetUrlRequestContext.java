@@ -7,18 +7,23 @@ import android.os.ConditionVariable;
 import androidx.annotation.GuardedBy;
 import androidx.annotation.VisibleForTesting;
 import io.envoyproxy.envoymobile.engine.EnvoyEngine;
+import io.envoyproxy.envoymobile.engine.EnvoyHTTPStream;
+import io.envoyproxy.envoymobile.engine.EnvoyHTTPStreamCoalescer;
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPCallbacks;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandlerFactory;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import org.chromium.net.BidirectionalStream;
@@ -27,7 +32,6 @@ import org.chromium.net.NetworkQualityRttListener;
 import org.chromium.net.NetworkQualityThroughputListener;
 import org.chromium.net.RequestFinishedInfo;
 import org.chromium.net.UrlRequest;
-import org.chromium.net.impl.VersionSafeCallbacks.RequestFinishedInfoListener;
 import org.chromium.net.urlconnection.CronetHttpURLConnection;
 import org.chromium.net.urlconnection.CronetURLStreamHandlerFactory;
 
@@ -48,6 +52,7 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
   private final AtomicInteger mActiveRequestCount = new AtomicInteger(0);
 
   @GuardedBy("mLock") private EnvoyEngine mEngine;
+  @GuardedBy("mLock") private EnvoyHTTPStreamCoalescer mStreamCoalescer;
   /**
    * This field is accessed without synchronization, but only for the purposes of reference
    * equality comparison with other threads. If such a comparison is performed on the network
@@ -58,8 +63,11 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
   private Thread mNetworkThread;
 
   private final String mUserAgent;
-  private final CronetEngineBuilderImpl mBuilder;
+  private final boolean mCallbackTimingHistogramsEnabled;
+  private final NativeCronetEngineBuilderImpl mBuilder;
   private final AtomicReference<Runnable> mInitializationCompleter = new AtomicReference<>();
+  private final GlobalMetricsDeltaEncoder mGlobalMetricsDeltaEncoder =
+      new GlobalMetricsDeltaEncoder();
 
   /**
    * Locks operations on the list of RequestFinishedInfo.Listeners, because operations can happen
@@ -67,9 +75,18 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
    * any UrlRequest methods that acquire mUrlRequestAdapterLock while holding this lock.
    */
   private final Object mFinishedListenerLock = new Object();
+  // Values wrap the keys: a VersionSafeCallbacks.RequestFinishedInfoListener, or a
+  // RequestFinishedInfoBatcher for a RequestFinishedInfo.BatchListener.
   @GuardedBy("mFinishedListenerLock")
-  private final Map<RequestFinishedInfo.Listener, VersionSafeCallbacks.RequestFinishedInfoListener>
+  private final Map<RequestFinishedInfo.Listener, RequestFinishedInfo.Listener>
       mFinishedListenerMap = new HashMap<>();
+  /**
+   * Copy of the values of mFinishedListenerMap, replaced whenever it changes, so that finished
+   * requests are reported without locking nor copying.
+   */
+  private volatile RequestFinishedInfo.Listener[] mFinishedListeners = NO_FINISHED_LISTENERS;
+  private static final RequestFinishedInfo.Listener[] NO_FINISHED_LISTENERS =
+      new RequestFinishedInfo.Listener[0];
 
   public CronetUrlRequestContext(NativeCronetEngineBuilderImpl builder) {
     mBuilder = builder;
@@ -82,6 +99,7 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
     final int threadPriority =
         builder.threadPriority(THREAD_PRIORITY_BACKGROUND + THREAD_PRIORITY_MORE_FAVORABLE);
     mUserAgent = builder.getUserAgent();
+    mCallbackTimingHistogramsEnabled = builder.callbackTimingHistogramsEnabled();
     synchronized (mLock) {
       mEngine = builder.createEngine(() -> {
         mNetworkThread = Thread.currentThread();
@@ -94,6 +112,9 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
         }
         return null;
       });
+      if (builder.requestCoalescingEnabled()) {
+        mStreamCoalescer = new EnvoyHTTPStreamCoalescer(mEngine);
+      }
     }
   }
 
@@ -106,6 +127,22 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
     }
   }
 
+  /**
+   * Starts a stream on the engine, sharing it with identical in-flight requests when request
+   * coalescing is enabled.
+   */
+  EnvoyHTTPStream startStream(EnvoyHTTPCallbacks callbacks, boolean explicitFlowControl) {
+    synchronized (mLock) {
+      if (mEngine == null) {
+        throw new IllegalStateException("Engine is shut down.");
+      }
+      if (mStreamCoalescer != null) {
+        return mStreamCoalescer.startStream(callbacks, explicitFlowControl);
+      }
+      return mEngine.startStream(callbacks, explicitFlowControl);
+    }
+  }
+
   CronetEngineBuilderImpl getBuilder() { return mBuilder; }
 
   void setTaskToExecuteWhenInitializationIsCompleted(Runnable runnable) {
@@ -180,6 +217,7 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
       }
       mEngine.terminate();
       mEngine = null;
+      mStreamCoalescer = null;
     }
   }
 
@@ -192,9 +230,88 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
   @Override
   public void stopNetLog() {}
 
+  /**
+   * Returns the counter and histogram deltas accumulated by the engine since the previous call. See
+   * {@link GlobalMetricsDeltaEncoder} for the encoding. Returns an empty array if the engine is shut
+   * down or if its stats could not be collected, in which case the next call covers both periods.
+   */
   @Override
   public byte[] getGlobalMetricsDeltas() {
-    return new byte[0];
+    EnvoyEngine engine;
+    synchronized (mLock) {
+      if (!haveRequestContextAdapter()) {
+        return new byte[0];
+      }
+      engine = mEngine;
+    }
+    // Collecting the stats blocks on the network thread; don't hold mLock meanwhile. The encoder
+    // serializes concurrent calls with its own lock.
+    return mGlobalMetricsDeltaEncoder.takeSnapshotAndEncodeDeltas(engine::dumpPrometheusStats);
+  }
+
+  /**
+   * Records the time a finished request spent inside the library in the engine's histograms, in
+   * microseconds, if enabled with {@link CronetEngineBuilderImpl#enableCallbackTimingHistograms}.
+   * See {@link CallbackTimings}.
+   */
+  void recordCallbackTimings(CallbackTimings callbackTimings) {
+    if (!mCallbackTimingHistogramsEnabled) {
+      return;
+    }
+    EnvoyEngine engine;
+    synchronized (mLock) {
+      if (!haveRequestContextAdapter()) {
+        return;
+      }
+      engine = mEngine;
+    }
+    engine.recordHistogramValue("cronvoy.request.executor_queueing_delay_us",
+                                Collections.emptyMap(),
+                                toMicros(callbackTimings.getExecutorQueueingNanos()));
+    engine.recordHistogramValue("cronvoy.request.user_read_delay_us", Collections.emptyMap(),
+                                toMicros(callbackTimings.getUserReadDelayNanos()));
+    engine.recordHistogramValue("cronvoy.request.library_overhead_us", Collections.emptyMap(),
+                                toMicros(callbackTimings.getLibraryOverheadNanos()));
+  }
+
+  private static int toMicros(long nanos) {
+    return (int)Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void preconnect(String origin, int numConnections) {
+    URL url;
+    try {
+      url = new URL(origin);
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException("Invalid origin: " + origin, e);
+    }
+    String scheme = url.getProtocol();
+    if (!scheme.equals("http") && !scheme.equals("https")) {
+      throw new IllegalArgumentException("Unsupported scheme: " + scheme);
+    }
+    if (numConnections <= 0) {
+      throw new IllegalArgumentException("numConnections must be positive");
+    }
+    // Requests set their :authority from URL.getAuthority(), use the same host (and port) so that
+    // they are assigned to the connections opened here.
+    String authority = url.getAuthority();
+    // h2 raw domains are matched on the host alone, and are routed to the HTTP/2 cluster whatever
+    // the scheme.
+    boolean forceHttp2 = false;
+    for (String domain : mBuilder.h2RawDomains()) {
+      if (domain.equalsIgnoreCase(url.getHost())) {
+        forceHttp2 = true;
+        break;
+      }
+    }
+    synchronized (mLock) {
+      if (!haveRequestContextAdapter()) {
+        return;
+      }
+      mEngine.preconnect(scheme, authority, forceHttp2,
+                         Math.min(numConnections, mBuilder.maxConnectionsPerHost()));
+    }
   }
 
   @Override
@@ -236,19 +353,43 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
 
   @Override
   public void addRequestFinishedListener(RequestFinishedInfo.Listener listener) {
+    RequestFinishedInfo.Listener wrapper =
+        listener instanceof RequestFinishedInfo.BatchListener
+            ? new RequestFinishedInfoBatcher((RequestFinishedInfo.BatchListener)listener)
+            : new VersionSafeCallbacks.RequestFinishedInfoListener(listener);
+    RequestFinishedInfo.Listener replaced;
     synchronized (mFinishedListenerLock) {
-      mFinishedListenerMap.put(listener,
-                               new VersionSafeCallbacks.RequestFinishedInfoListener(listener));
+      replaced = mFinishedListenerMap.put(listener, wrapper);
+      mFinishedListeners = mFinishedListenerMap.values().toArray(NO_FINISHED_LISTENERS);
     }
+    flushIfBatcher(replaced);
   }
 
   @Override
   public void removeRequestFinishedListener(RequestFinishedInfo.Listener listener) {
-    synchronized (mFinishedListenerLock) { mFinishedListenerMap.remove(listener); }
+    RequestFinishedInfo.Listener removed;
+    synchronized (mFinishedListenerLock) {
+      removed = mFinishedListenerMap.remove(listener);
+      mFinishedListeners = mFinishedListenerMap.values().toArray(NO_FINISHED_LISTENERS);
+    }
+    // Requests which finished before the listener was removed are still delivered.
+    flushIfBatcher(removed);
+  }
+
+  private static void flushIfBatcher(RequestFinishedInfo.Listener listener) {
+    if (listener instanceof RequestFinishedInfoBatcher) {
+      ((RequestFinishedInfoBatcher)listener).flush();
+    }
   }
 
-  boolean hasRequestFinishedListener() {
-    synchronized (mFinishedListenerLock) { return !mFinishedListenerMap.isEmpty(); }
+  boolean hasRequestFinishedListener() { return mFinishedListeners.length != 0; }
+
+  /**
+   * Returns whether requests started now should measure their {@link CallbackTimings}: only when
+   * they are recorded in histograms or reported to a finished listener.
+   */
+  boolean callbackTimingsEnabled() {
+    return mCallbackTimingHistogramsEnabled || hasRequestFinishedListener();
   }
 
   @Override
@@ -305,14 +446,12 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
   }
 
   void reportRequestFinished(final RequestFinishedInfo requestInfo) {
-    List<RequestFinishedInfoListener> currentListeners;
-    synchronized (mFinishedListenerLock) {
-      if (mFinishedListenerMap.isEmpty()) {
-        return;
+    for (final RequestFinishedInfo.Listener listener : mFinishedListeners) {
+      if (listener instanceof RequestFinishedInfoBatcher) {
+        // Batches are posted to the listener's executor once complete.
+        listener.onRequestFinished(requestInfo);
+        continue;
       }
-      currentListeners = new ArrayList<>(mFinishedListenerMap.values());
-    }
-    for (final VersionSafeCallbacks.RequestFinishedInfoListener listener : currentListeners) {
       Runnable task = new Runnable() {
         @Override
         public void run() {
@@ -323,7 +462,7 @@ public final class CronetUrlRequestContext extends CronetEngineBase {
     }
   }
 
-  private static void postObservationTaskToExecutor(Executor executor, Runnable task) {
+  static void postObservationTaskToExecutor(Executor executor, Runnable task) {
     try {
       executor.execute(task);
     } catch (RejectedExecutionException failException) {
@@ -0,0 +1,327 @@
+package org.chromium.net.impl;
+
+import androidx.annotation.GuardedBy;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Turns successive snapshots of the engine stats store into compact binary deltas, as returned by
+ * {@link CronetUrlRequestContext#getGlobalMetricsDeltas()}.
+ *
+ * <p>Snapshots are consumed in the Prometheus text exposition format, which reports counters as
+ * running totals and histograms as cumulative bucket counts. Gauges and untyped series are ignored.
+ * Only series that changed since the previous call are emitted. Version 1 of the encoding is:
+ *
+ * <pre>
+ * payload   := version:u8 boundsCount:varint bounds[boundsCount] entryCount:varint entry[entryCount]
+ * bounds    := n:varint upperBound:f64le[n]
+ * entry     := sharedPrefix:varint suffixLength:varint suffix:utf8 kind:u8 value
+ * value     := delta:varint                                                   (kind == 0, counter)
+ *            | boundsIndex:varint countDelta:varint sumDelta:f64le
+ *              bucketDelta:varint[n + 1]                                    (kind == 1, histogram)
+ * </pre>
+ *
+ * <p>Entries are sorted by name, and each name is front-coded against the previous one. Histogram
+ * bucket deltas are per bucket (not cumulative), the last one covering the overflow bucket. A
+ * series whose value went down since the previous snapshot is assumed to have been reset, and its
+ * current value is reported as the delta.
+ */
+final class GlobalMetricsDeltaEncoder {
+  static final int VERSION = 1;
+  static final int KIND_COUNTER = 0;
+  static final int KIND_HISTOGRAM = 1;
+
+  private static final String TYPE_PREFIX = "# TYPE ";
+  private static final String BUCKET_SUFFIX = "_bucket";
+  private static final String SUM_SUFFIX = "_sum";
+  private static final String COUNT_SUFFIX = "_count";
+  private static final String LE_LABEL = "le=\"";
+
+  /** Cumulative state of a histogram series, as reported by one snapshot. */
+  private static final class Histogram {
+    final List<Double> mBounds = new ArrayList<>();
+    final List<Long> mCumulativeCounts = new ArrayList<>();
+    double mSum;
+    long mCount;
+
+    /** Per bucket counts, the last bucket being the overflow bucket. */
+    long[] bucketCounts() {
+      long[] counts = new long[mCumulativeCounts.size()];
+      long previous = 0;
+      for (int i = 0; i < counts.length; i++) {
+        long cumulative = mCumulativeCounts.get(i);
+        counts[i] = cumulative - previous;
+        previous = cumulative;
+      }
+      return counts;
+    }
+
+    double[] bounds() {
+      double[] bounds = new double[mBounds.size()];
+      for (int i = 0; i < bounds.length; i++) {
+        bounds[i] = mBounds.get(i);
+      }
+      return bounds;
+    }
+  }
+
+  /** Takes snapshots of the stats store, in the Prometheus text exposition format. */
+  interface SnapshotSource {
+    /** @return the snapshot, or an empty string if the stats could not be collected. */
+    String takeSnapshot();
+  }
+
+  // Serializes taking a snapshot with making it the baseline, so that each snapshot is diffed
+  // against the one taken just before it.
+  private final Object mSnapshotLock = new Object();
+  private final Object mLock = new Object();
+  @GuardedBy("mLock") private Map<String, Long> mCounters = new HashMap<>();
+  @GuardedBy("mLock") private Map<String, Histogram> mHistograms = new HashMap<>();
+
+  /**
+   * Takes a snapshot from {@code source} and encodes its difference with the previous snapshot.
+   * Concurrent callers take and encode their snapshots one after the other: otherwise a caller
+   * could make an older snapshot the baseline after a newer one, and the next deltas would count
+   * again what was already reported.
+   *
+   * @param source the source of the snapshot.
+   * @return the encoded deltas, or an empty array if no snapshot could be taken.
+   */
+  byte[] takeSnapshotAndEncodeDeltas(SnapshotSource source) {
+    synchronized (mSnapshotLock) {
+      String snapshot = source.takeSnapshot();
+      if (snapshot.isEmpty()) {
+        return new byte[0];
+      }
+      return encodeDeltas(snapshot);
+    }
+  }
+
+  /**
+   * Encodes the difference between {@code snapshot} and the snapshot passed to the previous call,
+   * and remembers {@code snapshot} as the new baseline.
+   *
+   * @param snapshot the stats store, in the Prometheus text exposition format.
+   * @return the encoded deltas.
+   */
+  byte[] encodeDeltas(String snapshot) {
+    Map<String, Long> counters = new HashMap<>();
+    Map<String, Histogram> histograms = new HashMap<>();
+    parse(snapshot, counters, histograms);
+
+    // Sorting the names maximizes the prefix shared by consecutive entries.
+    TreeMap<String, Object> changed = new TreeMap<>();
+    List<double[]> boundsTable = new ArrayList<>();
+    synchronized (mLock) {
+      for (Map.Entry<String, Long> counter : counters.entrySet()) {
+        Long previous = mCounters.get(counter.getKey());
+        long delta = delta(counter.getValue(), previous == null ? 0 : previous);
+        if (delta != 0) {
+          changed.put(counter.getKey(), delta);
+        }
+      }
+      for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+        Histogram current = histogram.getValue();
+        Histogram previous = mHistograms.get(histogram.getKey());
+        if (previous != null && previous.mCount == current.mCount) {
+          continue;
+        }
+        if (current.mCount == 0) {
+          continue;
+        }
+        changed.put(histogram.getKey(), histogramDelta(current, previous, boundsTable));
+      }
+      mCounters = counters;
+      mHistograms = histograms;
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(VERSION);
+    writeVarint(out, boundsTable.size());
+    for (double[] bounds : boundsTable) {
+      writeVarint(out, bounds.length);
+      for (double bound : bounds) {
+        writeDouble(out, bound);
+      }
+    }
+    writeVarint(out, changed.size());
+    byte[] previousName = new byte[0];
+    for (Map.Entry<String, Object> entry : changed.entrySet()) {
+      byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+      int shared = sharedPrefixLength(previousName, name);
+      writeVarint(out, shared);
+      writeVarint(out, name.length - shared);
+      out.write(name, shared, name.length - shared);
+      previousName = name;
+      if (entry.getValue() instanceof Long) {
+        out.write(KIND_COUNTER);
+        writeVarint(out, (Long)entry.getValue());
+      } else {
+        out.write(KIND_HISTOGRAM);
+        HistogramDelta delta = (HistogramDelta)entry.getValue();
+        writeVarint(out, delta.mBoundsIndex);
+        writeVarint(out, delta.mCount);
+        writeDouble(out, delta.mSum);
+        for (long bucket : delta.mBuckets) {
+          writeVarint(out, bucket);
+        }
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static final class HistogramDelta {
+    int mBoundsIndex;
+    long mCount;
+    double mSum;
+    long[] mBuckets;
+  }
+
+  private static HistogramDelta histogramDelta(Histogram current, Histogram previous,
+                                               List<double[]> boundsTable) {
+    double[] bounds = current.bounds();
+    long[] buckets = current.bucketCounts();
+    HistogramDelta delta = new HistogramDelta();
+    delta.mCount = current.mCount;
+    delta.mSum = current.mSum;
+    delta.mBuckets = buckets;
+    if (previous != null && previous.mCount <= current.mCount &&
+        Arrays.equals(previous.bounds(), bounds)) {
+      long[] previousBuckets = previous.bucketCounts();
+      long[] bucketDeltas = new long[buckets.length];
+      boolean reset = false;
+      for (int i = 0; i < buckets.length; i++) {
+        bucketDeltas[i] = buckets[i] - previousBuckets[i];
+        reset |= bucketDeltas[i] < 0;
+      }
+      if (!reset) {
+        delta.mCount = current.mCount - previous.mCount;
+        delta.mSum = current.mSum - previous.mSum;
+        delta.mBuckets = bucketDeltas;
+      }
+    }
+    delta.mBoundsIndex = boundsIndex(boundsTable, bounds);
+    return delta;
+  }
+
+  private static int boundsIndex(List<double[]> boundsTable, double[] bounds) {
+    // Envoy uses the same bucket layout for nearly every histogram, so this stays tiny.
+    for (int i = 0; i < boundsTable.size(); i++) {
+      if (Arrays.equals(boundsTable.get(i), bounds)) {
+        return i;
+      }
+    }
+    boundsTable.add(bounds);
+    return boundsTable.size() - 1;
+  }
+
+  private static long delta(long current, long previous) {
+    return current >= previous ? current - previous : current;
+  }
+
+  private static void parse(String snapshot, Map<String, Long> counters,
+                            Map<String, Histogram> histograms) {
+    Map<String, String> types = new HashMap<>();
+    for (String line : snapshot.split("\n")) {
+      line = line.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      if (line.startsWith(TYPE_PREFIX)) {
+        String[] parts = line.substring(TYPE_PREFIX.length()).split(" ");
+        if (parts.length == 2) {
+          types.put(parts[0], parts[1]);
+        }
+        continue;
+      }
+      if (line.startsWith("#")) {
+        continue;
+      }
+      int valueStart = line.lastIndexOf(' ');
+      if (valueStart <= 0) {
+        continue;
+      }
+      String series = line.substring(0, valueStart);
+      double value;
+      try {
+        value = Double.parseDouble(line.substring(valueStart + 1));
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      int labelsStart = series.indexOf('{');
+      String metric = labelsStart == -1 ? series : series.substring(0, labelsStart);
+      String labels = labelsStart == -1 ? "" : series.substring(labelsStart);
+
+      if ("counter".equals(types.get(metric))) {
+        counters.put(series, (long)value);
+      } else if (metric.endsWith(BUCKET_SUFFIX) && isHistogram(types, metric, BUCKET_SUFFIX)) {
+        int le = labels.lastIndexOf(LE_LABEL);
+        if (le == -1) {
+          continue;
+        }
+        int boundStart = le + LE_LABEL.length();
+        String bound = labels.substring(boundStart, labels.indexOf('"', boundStart));
+        // "le" is always the last label; drop it along with its leading separator.
+        String otherLabels = le == 1 ? "" : labels.substring(0, le - 1) + "}";
+        Histogram histogram = histogramFor(histograms, strip(metric, BUCKET_SUFFIX), otherLabels);
+        if (!"+Inf".equals(bound)) {
+          histogram.mBounds.add(Double.parseDouble(bound));
+        }
+        histogram.mCumulativeCounts.add((long)value);
+      } else if (metric.endsWith(SUM_SUFFIX) && isHistogram(types, metric, SUM_SUFFIX)) {
+        histogramFor(histograms, strip(metric, SUM_SUFFIX), labels).mSum = value;
+      } else if (metric.endsWith(COUNT_SUFFIX) && isHistogram(types, metric, COUNT_SUFFIX)) {
+        histogramFor(histograms, strip(metric, COUNT_SUFFIX), labels).mCount = (long)value;
+      }
+    }
+  }
+
+  private static boolean isHistogram(Map<String, String> types, String metric, String suffix) {
+    return "histogram".equals(types.get(strip(metric, suffix)));
+  }
+
+  private static String strip(String metric, String suffix) {
+    return metric.substring(0, metric.length() - suffix.length());
+  }
+
+  private static Histogram histogramFor(Map<String, Histogram> histograms, String metric,
+                                        String labels) {
+    String key = metric + labels;
+    Histogram histogram = histograms.get(key);
+    if (histogram == null) {
+      histogram = new Histogram();
+      histograms.put(key, histogram);
+    }
+    return histogram;
+  }
+
+  private static int sharedPrefixLength(byte[] a, byte[] b) {
+    int max = Math.min(a.length, b.length);
+    int i = 0;
+    while (i < max && a[i] == b[i]) {
+      i++;
+    }
+    return i;
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int)value);
+  }
+
+  private static void writeDouble(ByteArrayOutputStream out, double value) {
+    long bits = Double.doubleToLongBits(value);
+    for (int i = 0; i < 8; i++) {
+      out.write((int)(bits >>> (8 * i)));
+    }
+  }
+}
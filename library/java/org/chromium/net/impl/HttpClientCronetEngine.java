@@ -0,0 +1,179 @@
+package org.chromium.net.impl;
+
+import java.io.IOException;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.URLStreamHandlerFactory;
+import java.net.http.HttpClient;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.chromium.net.BidirectionalStream;
+import org.chromium.net.ExperimentalBidirectionalStream;
+import org.chromium.net.NetworkQualityRttListener;
+import org.chromium.net.NetworkQualityThroughputListener;
+import org.chromium.net.RequestFinishedInfo;
+import org.chromium.net.UrlRequest;
+
+/**
+ * {@link HttpClient} backed CronetEngine, for JVM hosts where the native library isn't available.
+ *
+ * <p>Unlike {@link JavaCronetEngine}, requests don't each hold a thread while in flight, and are
+ * multiplexed over HTTP/2 connections when the server supports it.
+ *
+ * <p>Does not support netlogs, transferred data measurement, bidistream, cache, priority, or
+ * traffic stats tagging.
+ */
+public final class HttpClientCronetEngine extends CronetEngineBase {
+  private final String mUserAgent;
+  private final ExecutorService mExecutorService;
+  private final HttpClient mHttpClient;
+
+  public HttpClientCronetEngine(CronetEngineBuilderImpl builder) {
+    mUserAgent = builder.getUserAgent();
+    // The client runs its callbacks on this executor; no thread is held by a request waiting on
+    // the network.
+    mExecutorService = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        Thread thread = Executors.defaultThreadFactory().newThread(r);
+        thread.setName("HttpClientCronetEngine");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    mHttpClient = HttpClient.newBuilder()
+                      .version(HttpClient.Version.HTTP_2)
+                      .followRedirects(HttpClient.Redirect.NEVER)
+                      .executor(mExecutorService)
+                      .build();
+  }
+
+  @Override
+  public UrlRequestBase
+  createRequest(String url, UrlRequest.Callback callback, Executor executor, int priority,
+                Collection<Object> connectionAnnotations, boolean disableCache,
+                boolean disableConnectionMigration, boolean allowDirectExecutor,
+                boolean trafficStatsTagSet, int trafficStatsTag, boolean trafficStatsUidSet,
+                int trafficStatsUid, RequestFinishedInfo.Listener requestFinishedListener,
+                int idempotency) {
+    return new HttpClientUrlRequest(mHttpClient, callback, executor, url, mUserAgent,
+                                    allowDirectExecutor);
+  }
+
+  @Override
+  protected ExperimentalBidirectionalStream
+  createBidirectionalStream(String url, BidirectionalStream.Callback callback, Executor executor,
+                            String httpMethod, List<Map.Entry<String, String>> requestHeaders,
+                            @StreamPriority int priority,
+                            boolean delayRequestHeadersUntilFirstFlush,
+                            Collection<Object> connectionAnnotations, boolean trafficStatsTagSet,
+                            int trafficStatsTag, boolean trafficStatsUidSet, int trafficStatsUid) {
+    throw new UnsupportedOperationException(
+        "Can't create a bidi stream - not supported by the HttpClient implementation");
+  }
+
+  @Override
+  public ExperimentalBidirectionalStream.Builder
+  newBidirectionalStreamBuilder(String url, BidirectionalStream.Callback callback,
+                                Executor executor) {
+    throw new UnsupportedOperationException(
+        "The bidirectional stream API is not supported by the HttpClient implementation "
+        + "of Cronet Engine");
+  }
+
+  @Override
+  public String getVersionString() {
+    return "CronetHttpClient/" + ImplVersion.getCronetVersionWithLastChange();
+  }
+
+  @Override
+  public void shutdown() {
+    mExecutorService.shutdown();
+  }
+
+  @Override
+  public void startNetLogToFile(String fileName, boolean logAll) {}
+
+  @Override
+  public void startNetLogToDisk(String dirPath, boolean logAll, int maxSize) {}
+
+  @Override
+  public void stopNetLog() {}
+
+  @Override
+  public byte[] getGlobalMetricsDeltas() {
+    return new byte[0];
+  }
+
+  @Override
+  public int getEffectiveConnectionType() {
+    return EFFECTIVE_CONNECTION_TYPE_UNKNOWN;
+  }
+
+  @Override
+  public int getHttpRttMs() {
+    return CONNECTION_METRIC_UNKNOWN;
+  }
+
+  @Override
+  public int getTransportRttMs() {
+    return CONNECTION_METRIC_UNKNOWN;
+  }
+
+  @Override
+  public int getDownstreamThroughputKbps() {
+    return CONNECTION_METRIC_UNKNOWN;
+  }
+
+  @Override
+  public void configureNetworkQualityEstimatorForTesting(boolean useLocalHostRequests,
+                                                         boolean useSmallerResponses,
+                                                         boolean disableOfflineCheck) {}
+
+  @Override
+  public void addRttListener(NetworkQualityRttListener listener) {}
+
+  @Override
+  public void removeRttListener(NetworkQualityRttListener listener) {}
+
+  @Override
+  public void addThroughputListener(NetworkQualityThroughputListener listener) {}
+
+  @Override
+  public void removeThroughputListener(NetworkQualityThroughputListener listener) {}
+
+  @Override
+  public void addRequestFinishedListener(RequestFinishedInfo.Listener listener) {}
+
+  @Override
+  public void removeRequestFinishedListener(RequestFinishedInfo.Listener listener) {}
+
+  @Override
+  public URLConnection openConnection(URL url) throws IOException {
+    return url.openConnection();
+  }
+
+  @Override
+  public URLConnection openConnection(URL url, Proxy proxy) throws IOException {
+    return url.openConnection(proxy);
+  }
+
+  @Override
+  public URLStreamHandlerFactory createURLStreamHandlerFactory() {
+    // Returning null causes this factory to pass though, which ends up using the platform's
+    // implementation.
+    return new URLStreamHandlerFactory() {
+      @Override
+      public URLStreamHandler createURLStreamHandler(String protocol) {
+        return null;
+      }
+    };
+  }
+}
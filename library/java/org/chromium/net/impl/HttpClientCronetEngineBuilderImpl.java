@@ -0,0 +1,27 @@
+package org.chromium.net.impl;
+
+import android.content.Context;
+import java.net.http.HttpClient;
+import org.chromium.net.ExperimentalCronetEngine;
+import org.chromium.net.ICronetEngineBuilder;
+
+/**
+ * Implementation of {@link ICronetEngineBuilder} that builds the {@link HttpClient} based Cronet
+ * engine.
+ */
+final class HttpClientCronetEngineBuilderImpl extends CronetEngineBuilderImpl {
+  /**
+   * Builder for HttpClient Cronet Engine.
+   *
+   * @param context Android {@link Context} for engine to use.
+   */
+  public HttpClientCronetEngineBuilderImpl(Context context) { super(context); }
+
+  @Override
+  public ExperimentalCronetEngine build() {
+    if (getUserAgent() == null) {
+      setUserAgent(getDefaultUserAgent());
+    }
+    return new HttpClientCronetEngine(this);
+  }
+}
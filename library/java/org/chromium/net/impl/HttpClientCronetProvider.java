@@ -0,0 +1,61 @@
+package org.chromium.net.impl;
+
+import android.content.Context;
+import java.util.Arrays;
+import org.chromium.net.CronetEngine;
+import org.chromium.net.CronetProvider;
+import org.chromium.net.ExperimentalCronetEngine;
+import org.chromium.net.ICronetEngineBuilder;
+
+/**
+ * Implementation of {@link CronetProvider} that creates {@link CronetEngine.Builder}
+ * for building the {@link java.net.http.HttpClient} based implementation of {@link CronetEngine}.
+ *
+ * <p>Only enabled where {@code java.net.http} is available, i.e. on JVM hosts. It is preferred
+ * over {@link JavaCronetProvider} there, as fallback when the native provider isn't available.
+ */
+public class HttpClientCronetProvider extends CronetProvider {
+  /**
+   * Constructor.
+   *
+   * @param context Android context to use.
+   */
+  public HttpClientCronetProvider(Context context) { super(context); }
+
+  @Override
+  public CronetEngine.Builder createBuilder() {
+    ICronetEngineBuilder impl = new HttpClientCronetEngineBuilderImpl(mContext);
+    return new ExperimentalCronetEngine.Builder(impl);
+  }
+
+  @Override
+  public String getName() {
+    return CronetProvider.PROVIDER_NAME_FALLBACK;
+  }
+
+  @Override
+  public String getVersion() {
+    return ImplVersion.getCronetVersion();
+  }
+
+  @Override
+  public boolean isEnabled() {
+    try {
+      Class.forName("java.net.http.HttpClient");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(new Object[] {HttpClientCronetProvider.class, mContext});
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other == this || (other instanceof HttpClientCronetProvider &&
+                             this.mContext.equals(((HttpClientCronetProvider)other).mContext));
+  }
+}
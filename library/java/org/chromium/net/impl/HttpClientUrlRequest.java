@@ -0,0 +1,492 @@
+package org.chromium.net.impl;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import org.chromium.net.UploadDataProvider;
+import org.chromium.net.UploadDataSink;
+import org.chromium.net.impl.Executors.CheckedRunnable;
+
+/**
+ * Pure java UrlRequest, backed by {@link HttpClient}.
+ *
+ * <p>Unlike {@link JavaUrlRequest}, no thread is held while the request is in flight: the request
+ * is sent asynchronously, and the response body is only pulled from the client, one chunk at a
+ * time, when the user calls {@link #read}. Requests to the same origin are multiplexed over one
+ * connection when the server speaks HTTP/2.
+ */
+final class HttpClientUrlRequest extends JavaUrlRequestBase {
+
+  private final HttpClient mClient;
+
+  /* These change with redirects. */
+  @Nullable private volatile CompletableFuture<?> mPendingResponse;
+  @Nullable private volatile ResponseBodySubscriber mResponseBody;
+
+  /**
+   * @param client The client sending the request
+   * @param userExecutor The executor used to dispatch to {@code callback}
+   */
+  HttpClientUrlRequest(HttpClient client, Callback callback, Executor userExecutor, String url,
+                       String userAgent, boolean allowDirectExecutor) {
+    super(callback, userExecutor, url, userAgent, allowDirectExecutor);
+    this.mClient = client;
+  }
+
+  /**
+   * Returns whether the header is managed by {@link HttpClient}, which rejects requests setting
+   * it.
+   */
+  private static boolean isRestrictedHeader(String header) {
+    return "Connection".equalsIgnoreCase(header) || "Content-Length".equalsIgnoreCase(header) ||
+        "Expect".equalsIgnoreCase(header) || "Host".equalsIgnoreCase(header) ||
+        "Upgrade".equalsIgnoreCase(header);
+  }
+
+  @Override
+  protected void fireOpenConnection() {
+    if (mUploadDataProvider == null) {
+      errorSetting(new CheckedRunnable() {
+        @Override
+        public void run() throws Exception {
+          sendRequest(HttpRequest.BodyPublishers.noBody());
+        }
+      }).run();
+      return;
+    }
+    final boolean firstTime = mUrlChain.size() == 1;
+    executeOnUploadExecutor(new CheckedRunnable() {
+      @Override
+      public void run() throws Exception {
+        final long length = mUploadDataProvider.getLength();
+        errorSetting(new CheckedRunnable() {
+          @Override
+          public void run() throws Exception {
+            sendRequest(length == 0 ? HttpRequest.BodyPublishers.noBody()
+                                    : new UploadBodyPublisher(length, firstTime));
+          }
+        }).run();
+      }
+    });
+  }
+
+  private void sendRequest(HttpRequest.BodyPublisher body) {
+    if (mState.get() == State.CANCELLED) {
+      return;
+    }
+    HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(mCurrentUrl));
+    if (!mRequestHeaders.containsKey(USER_AGENT)) {
+      mRequestHeaders.put(USER_AGENT, mUserAgent);
+    }
+    for (Map.Entry<String, String> entry : mRequestHeaders.entrySet()) {
+      if (!isRestrictedHeader(entry.getKey())) {
+        builder.setHeader(entry.getKey(), entry.getValue());
+      }
+    }
+    if (mInitialMethod == null) {
+      mInitialMethod = "GET";
+    }
+    builder.method(mInitialMethod, body);
+    mAdditionalStatusDetails = Status.SENDING_REQUEST;
+    CompletableFuture<HttpResponse<Flow.Publisher<List<ByteBuffer>>>> response =
+        mClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofPublisher());
+    mPendingResponse = response;
+    response.whenComplete((r, error) -> {
+      if (error != null) {
+        enterCronetErrorState(error instanceof CompletionException && error.getCause() != null
+                                  ? error.getCause()
+                                  : error);
+      } else {
+        errorSetting(() -> onResponse(r)).run();
+      }
+    });
+    if (mState.get() == State.CANCELLED) {
+      response.cancel(true);
+    }
+  }
+
+  private void onResponse(HttpResponse<Flow.Publisher<List<ByteBuffer>>> response) {
+    mPendingResponse = null;
+    if (mState.get() != State.STARTED) {
+      discardBody(response);
+      return;
+    }
+    final List<Map.Entry<String, String>> headerList = new ArrayList<>();
+    for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+      for (String value : header.getValue()) {
+        headerList.add(new SimpleEntry<>(header.getKey(), value));
+      }
+    }
+    int responseCode = response.statusCode();
+    String negotiatedProtocol =
+        response.version() == HttpClient.Version.HTTP_2 ? "h2" : "http/1.1";
+    // Copied, as user code might iterate over the list while we're redirecting.
+    mUrlResponseInfo = new UrlResponseInfoImpl(
+        new ArrayList<>(mUrlChain), responseCode, HttpReason.getReason(responseCode),
+        Collections.unmodifiableList(headerList), false, negotiatedProtocol, "", 0);
+    if (responseCode >= 300 && responseCode < 400) {
+      List<String> locationFields = mUrlResponseInfo.getAllHeaders().get("location");
+      if (locationFields != null) {
+        discardBody(response);
+        fireRedirectReceived(locationFields.get(0));
+        return;
+      }
+    }
+    fireCloseUploadDataProvider();
+    ResponseBodySubscriber body = new ResponseBodySubscriber();
+    mResponseBody = body;
+    response.body().subscribe(body);
+    mCallbackAsync.onResponseStarted(mUrlResponseInfo);
+  }
+
+  private static void discardBody(HttpResponse<Flow.Publisher<List<ByteBuffer>>> response) {
+    response.body().subscribe(new Flow.Subscriber<List<ByteBuffer>>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.cancel();
+      }
+
+      @Override
+      public void onNext(List<ByteBuffer> item) {}
+
+      @Override
+      public void onError(Throwable throwable) {}
+
+      @Override
+      public void onComplete() {}
+    });
+  }
+
+  @Override
+  protected void fireRead(ByteBuffer buffer) {
+    mResponseBody.read(buffer);
+  }
+
+  private void onReadCompleted(ByteBuffer buffer, int bytesRead) {
+    mUrlResponseInfo.setReceivedByteCount(mUrlResponseInfo.getReceivedByteCount() + bytesRead);
+    mCallbackAsync.onReadCompleted(mUrlResponseInfo, buffer);
+  }
+
+  private void onBodyComplete() {
+    if (mState.compareAndSet(/* expected= */ State.READING, /* updated= */ State.COMPLETE)) {
+      mCallbackAsync.onSucceeded(mUrlResponseInfo);
+    }
+  }
+
+  @Override
+  protected void fireDisconnect() {
+    CompletableFuture<?> pendingResponse = mPendingResponse;
+    if (pendingResponse != null) {
+      pendingResponse.cancel(true);
+    }
+    ResponseBodySubscriber responseBody = mResponseBody;
+    if (responseBody != null) {
+      responseBody.cancel();
+    }
+  }
+
+  private void executeOnUploadExecutor(CheckedRunnable runnable) {
+    try {
+      mUploadExecutor.execute(uploadErrorSetting(runnable));
+    } catch (RejectedExecutionException e) {
+      enterUploadErrorState(e);
+    }
+  }
+
+  /**
+   * Pulls the response body from the client as the user reads it: a chunk is only requested once
+   * the previous one was entirely copied into the user's buffers.
+   */
+  private final class ResponseBodySubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+    private final Object mLock = new Object();
+    @GuardedBy("mLock") private final Deque<ByteBuffer> mChunks = new ArrayDeque<>();
+    @GuardedBy("mLock") private Flow.Subscription mSubscription;
+    // The user's buffer, while waiting for a chunk to copy into it.
+    @GuardedBy("mLock") private ByteBuffer mPendingRead;
+    @GuardedBy("mLock") private boolean mRequested;
+    @GuardedBy("mLock") private boolean mComplete;
+    @GuardedBy("mLock") private Throwable mError;
+    @GuardedBy("mLock") private boolean mCancelled;
+
+    void read(ByteBuffer buffer) {
+      synchronized (mLock) {
+        mPendingRead = buffer;
+      }
+      deliverOrRequest();
+    }
+
+    void cancel() {
+      Flow.Subscription subscription;
+      synchronized (mLock) {
+        mCancelled = true;
+        mPendingRead = null;
+        mChunks.clear();
+        subscription = mSubscription;
+      }
+      if (subscription != null) {
+        subscription.cancel();
+      }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      boolean cancelled;
+      synchronized (mLock) {
+        mSubscription = subscription;
+        cancelled = mCancelled;
+      }
+      if (cancelled) {
+        subscription.cancel();
+      } else {
+        deliverOrRequest();
+      }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+      synchronized (mLock) {
+        mRequested = false;
+        for (ByteBuffer chunk : item) {
+          if (chunk.hasRemaining()) {
+            mChunks.addLast(chunk);
+          }
+        }
+      }
+      deliverOrRequest();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      synchronized (mLock) {
+        mError = throwable;
+      }
+      deliverOrRequest();
+    }
+
+    @Override
+    public void onComplete() {
+      synchronized (mLock) {
+        mComplete = true;
+      }
+      deliverOrRequest();
+    }
+
+    /**
+     * Completes the pending read from the chunks received so far, or the end of the body, or
+     * requests the next chunk if there's nothing to complete it with yet.
+     */
+    private void deliverOrRequest() {
+      ByteBuffer buffer;
+      int bytesRead = 0;
+      Throwable error = null;
+      Flow.Subscription toRequest = null;
+      synchronized (mLock) {
+        buffer = mPendingRead;
+        if (buffer == null || mCancelled) {
+          return;
+        }
+        while (!mChunks.isEmpty() && buffer.hasRemaining()) {
+          ByteBuffer chunk = mChunks.peekFirst();
+          int length = Math.min(chunk.remaining(), buffer.remaining());
+          ByteBuffer slice = chunk.slice();
+          slice.limit(length);
+          buffer.put(slice);
+          chunk.position(chunk.position() + length);
+          bytesRead += length;
+          if (!chunk.hasRemaining()) {
+            mChunks.removeFirst();
+          }
+        }
+        if (bytesRead == 0) {
+          if (mError != null) {
+            error = mError;
+          } else if (!mComplete) {
+            if (!mRequested && mSubscription != null) {
+              mRequested = true;
+              toRequest = mSubscription;
+            }
+            buffer = null;
+          }
+        }
+        if (buffer != null) {
+          mPendingRead = null;
+        }
+      }
+      if (toRequest != null) {
+        toRequest.request(1);
+      } else if (buffer == null) {
+        return;
+      } else if (bytesRead > 0) {
+        onReadCompleted(buffer, bytesRead);
+      } else if (error != null) {
+        enterCronetErrorState(error);
+      } else {
+        onBodyComplete();
+      }
+    }
+  }
+
+  /**
+   * Streams the request body from the {@link UploadDataProvider}, reading from it only as the
+   * client asks for more.
+   */
+  private final class UploadBodyPublisher
+      extends UploadDataSink implements HttpRequest.BodyPublisher, Flow.Subscription {
+    private final long mLength;
+    private final ByteBuffer mBuffer;
+    private final Object mLock = new Object();
+    // Whether the provider must rewind before the next subscriber reads from it.
+    @GuardedBy("mLock") private boolean mNeedsRewind;
+    @GuardedBy("mLock") private Flow.Subscriber<? super ByteBuffer> mSubscriber;
+    @GuardedBy("mLock") private long mDemand;
+    // Whether the provider is busy reading or rewinding.
+    @GuardedBy("mLock") private boolean mBusy;
+    @GuardedBy("mLock") private boolean mDone;
+    private long mWrittenBytes; // Only accessed by the provider's callbacks.
+
+    UploadBodyPublisher(long length, boolean firstTime) {
+      mLength = length;
+      mNeedsRewind = !firstTime;
+      // If the upload is small, we can save memory by allocating a buffer just large enough,
+      // plus one byte to detect callers uploading more bytes than they specified in length.
+      mBuffer = ByteBuffer.allocateDirect(
+          length > 0 && length < JavaUploadDataSinkBase.DEFAULT_UPLOAD_BUFFER_SIZE
+              ? (int)length + 1
+              : JavaUploadDataSinkBase.DEFAULT_UPLOAD_BUFFER_SIZE);
+    }
+
+    @Override
+    public long contentLength() {
+      return mLength;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+      boolean rewind;
+      synchronized (mLock) {
+        // The client subscribes again when it retries the request, which must then be re-read.
+        rewind = mNeedsRewind;
+        mNeedsRewind = true;
+        mSubscriber = subscriber;
+        mDemand = 0;
+        mDone = false;
+        mBusy = rewind;
+      }
+      subscriber.onSubscribe(this);
+      if (rewind) {
+        executeOnUploadExecutor(new CheckedRunnable() {
+          @Override
+          public void run() throws Exception {
+            mUploadDataProvider.rewind(UploadBodyPublisher.this);
+          }
+        });
+      }
+    }
+
+    @Override
+    public void request(long n) {
+      synchronized (mLock) {
+        mDemand += n;
+      }
+      readIfRequested();
+    }
+
+    @Override
+    public void cancel() {
+      synchronized (mLock) {
+        mDone = true;
+      }
+    }
+
+    private void readIfRequested() {
+      synchronized (mLock) {
+        if (mDemand <= 0 || mBusy || mDone) {
+          return;
+        }
+        mBusy = true;
+      }
+      executeOnUploadExecutor(new CheckedRunnable() {
+        @Override
+        public void run() throws Exception {
+          mBuffer.clear();
+          mUploadDataProvider.read(UploadBodyPublisher.this, mBuffer);
+        }
+      });
+    }
+
+    @Override
+    public void onReadSucceeded(boolean finalChunk) {
+      mBuffer.flip();
+      if (mLength != -1 && mLength - mWrittenBytes < mBuffer.remaining()) {
+        onReadError(new IllegalArgumentException(String.format(
+            Locale.getDefault(), "Read upload data length %d exceeds expected length %d",
+            mWrittenBytes + mBuffer.remaining(), mLength)));
+        return;
+      }
+      // The client may hold on to the chunk after the provider reuses the buffer.
+      ByteBuffer chunk = ByteBuffer.allocate(mBuffer.remaining());
+      chunk.put(mBuffer).flip();
+      mWrittenBytes += chunk.limit();
+      boolean done = mLength == -1 ? finalChunk : mWrittenBytes == mLength;
+      Flow.Subscriber<? super ByteBuffer> subscriber;
+      synchronized (mLock) {
+        if (mDone) {
+          return;
+        }
+        mBusy = false;
+        mDemand--;
+        mDone = done;
+        subscriber = mSubscriber;
+      }
+      subscriber.onNext(chunk);
+      if (done) {
+        subscriber.onComplete();
+      } else {
+        readIfRequested();
+      }
+    }
+
+    @Override
+    public void onReadError(Exception exception) {
+      Flow.Subscriber<? super ByteBuffer> subscriber;
+      synchronized (mLock) {
+        mDone = true;
+        subscriber = mSubscriber;
+      }
+      subscriber.onError(exception);
+      enterUploadErrorState(exception);
+    }
+
+    @Override
+    public void onRewindSucceeded() {
+      synchronized (mLock) {
+        mBusy = false;
+        mWrittenBytes = 0;
+      }
+      readIfRequested();
+    }
+
+    @Override
+    public void onRewindError(Exception exception) {
+      onReadError(exception);
+    }
+  }
+
+}
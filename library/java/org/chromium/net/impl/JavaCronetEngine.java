@@ -3,7 +3,10 @@ package org.chromium.net.impl;
 import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
 import static android.os.Process.THREAD_PRIORITY_MORE_FAVORABLE;
 
+import androidx.annotation.Nullable;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLConnection;
@@ -29,6 +32,9 @@ import org.chromium.net.UrlRequest;
 /**
  * {@link java.net.HttpURLConnection} backed CronetEngine.
  *
+ * <p>Requests run their blocking I/O on a pool of 10 threads, or each on its own virtual thread
+ * when enabled with {@link CronetEngineBuilderImpl#enableVirtualThreads} and supported by the JVM.
+ *
  * <p>Does not support netlogs, transferred data measurement, bidistream, cache, or priority.
  */
 public final class JavaCronetEngine extends CronetEngineBase {
@@ -45,6 +51,14 @@ public final class JavaCronetEngine extends CronetEngineBase {
     final int threadPriority =
         builder.threadPriority(THREAD_PRIORITY_BACKGROUND + THREAD_PRIORITY_MORE_FAVORABLE);
     mUserAgent = builder.getUserAgent();
+    ExecutorService virtualThreadExecutor =
+        builder.virtualThreadsEnabled() ? newVirtualThreadPerTaskExecutor() : null;
+    if (virtualThreadExecutor != null) {
+      // Each request still runs one task at a time, in order: JavaUrlRequest serializes its tasks
+      // on top of this executor.
+      mExecutorService = virtualThreadExecutor;
+      return;
+    }
     mExecutorService = new ThreadPoolExecutor(
         10, 20, 50, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
           @Override
@@ -61,6 +75,21 @@ public final class JavaCronetEngine extends CronetEngineBase {
         });
   }
 
+  /**
+   * Returns an executor starting a virtual thread per task, or null if the JVM doesn't support
+   * virtual threads. Looked up reflectively, as neither Android nor the JDKs this library is built
+   * against have them.
+   */
+  @Nullable
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService)factory.invoke(null);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      return null;
+    }
+  }
+
   @Override
   public UrlRequestBase
   createRequest(String url, UrlRequest.Callback callback, Executor executor, int priority,
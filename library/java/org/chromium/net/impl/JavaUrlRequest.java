@@ -5,15 +5,11 @@ import android.net.TrafficStats;
 import android.os.Build;
 import android.util.Log;
 import androidx.annotation.GuardedBy;
-import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
-import java.net.URI;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
@@ -26,97 +22,25 @@ import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import org.chromium.net.CronetException;
-import org.chromium.net.InlineExecutionProhibitedException;
-import org.chromium.net.UploadDataProvider;
-import org.chromium.net.UrlResponseInfo;
 import org.chromium.net.impl.Executors.CheckedRunnable;
-import org.chromium.net.impl.Executors.DirectPreventingExecutor;
 
 /**
  * Pure java UrlRequest, backed by {@link HttpURLConnection}.
  */
 @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH) // TrafficStats only available on ICS
-final class JavaUrlRequest extends UrlRequestBase {
-
-  /**
-   * State interface for keeping track of the internal state of a {@link UrlRequestBase}.
-   * <pre>
-   *               /- AWAITING_FOLLOW_REDIRECT <- REDIRECT_RECEIVED <-\     /- READING <--\
-   *               |                                                  |     |             |
-   *               V                                                  /     V             /
-   * NOT_STARTED -> STARTED -----------------------------------------------> AWAITING_READ -------
-   * --> COMPLETE
-   * </pre>
-   */
-  @IntDef({State.NOT_STARTED, State.STARTED, State.REDIRECT_RECEIVED,
-           State.AWAITING_FOLLOW_REDIRECT, State.AWAITING_READ, State.READING, State.ERROR,
-           State.COMPLETE, State.CANCELLED})
-  @Retention(RetentionPolicy.SOURCE)
-  @interface State {
-
-    int NOT_STARTED = 0;
-    int STARTED = 1;
-    int REDIRECT_RECEIVED = 2;
-    int AWAITING_FOLLOW_REDIRECT = 3;
-    int AWAITING_READ = 4;
-    int READING = 5;
-    int ERROR = 6;
-    int COMPLETE = 7;
-    int CANCELLED = 8;
-  }
+final class JavaUrlRequest extends JavaUrlRequestBase {
 
   private static final String X_ANDROID = "X-Android";
   private static final String X_ANDROID_SELECTED_TRANSPORT = "X-Android-Selected-Transport";
   private static final String TAG = JavaUrlRequest.class.getSimpleName();
   private static final int DEFAULT_CHUNK_LENGTH = JavaUploadDataSinkBase.DEFAULT_UPLOAD_BUFFER_SIZE;
-  private static final String USER_AGENT = "User-Agent";
-  private final AsyncUrlRequestCallback mCallbackAsync;
   private final Executor mExecutor;
-  private final String mUserAgent;
-  private final Map<String, String> mRequestHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-  private final List<String> mUrlChain = new ArrayList<>();
-  /**
-   * This is the source of thread safety in this class - no other synchronization is performed. By
-   * compare-and-swapping from one state to another, we guarantee that operations aren't running
-   * concurrently. Only the winner of a compare-and-swapping proceeds.
-   *
-   * <p>A caller can lose a compare-and-swapping for three reasons - user error (two calls to
-   * read() without waiting for the read to succeed), runtime error (network code or user code
-   * throws an exception), or cancellation.
-   */
-  private final AtomicInteger /* State */ mState = new AtomicInteger(State.NOT_STARTED);
-  private final AtomicBoolean mUploadProviderClosed = new AtomicBoolean(false);
-
-  private final boolean mAllowDirectExecutor;
-
-  /* These don't change with redirects */
-  private String mInitialMethod;
-  private VersionSafeCallbacks.UploadDataProviderWrapper mUploadDataProvider;
-  private Executor mUploadExecutor;
-
-  /**
-   * Holds a subset of StatusValues - {@link State#STARTED} can represent {@link
-   * Status#SENDING_REQUEST} or {@link Status#WAITING_FOR_RESPONSE}. While the distinction isn't
-   * needed to implement the logic in this class, it is needed to implement {@link
-   * #getStatus(StatusListener)}.
-   *
-   * <p>Concurrency notes - this value is not atomically updated with mState, so there is some
-   * risk that we'd get an inconsistent snapshot of both - however, it also happens that this value
-   * is only used with the STARTED state, so it's inconsequential.
-   */
-  @StatusValues private volatile int mAdditionalStatusDetails = Status.INVALID;
 
   /* These change with redirects. */
-  private String mCurrentUrl;
   @Nullable private ReadableByteChannel mResponseChannel; // Only accessed on mExecutor.
-  private UrlResponseInfoImpl mUrlResponseInfo;
-  private String mPendingRedirectUrl;
   private HttpURLConnection mCurrentUrlConnection;    // Only accessed on mExecutor.
   private OutputStreamDataSink mOutputStreamDataSink; // Only accessed on mExecutor.
 
@@ -127,21 +51,11 @@ final class JavaUrlRequest extends UrlRequestBase {
   JavaUrlRequest(Callback callback, final Executor executor, Executor userExecutor, String url,
                  String userAgent, boolean allowDirectExecutor, boolean trafficStatsTagSet,
                  int trafficStatsTag, final boolean trafficStatsUidSet, final int trafficStatsUid) {
-    if (url == null) {
-      throw new NullPointerException("URL is required");
-    }
-    if (callback == null) {
-      throw new NullPointerException("Listener is required");
-    }
+    super(callback, userExecutor, url, userAgent, allowDirectExecutor);
     if (executor == null) {
       throw new NullPointerException("Executor is required");
     }
-    if (userExecutor == null) {
-      throw new NullPointerException("userExecutor is required");
-    }
 
-    this.mAllowDirectExecutor = allowDirectExecutor;
-    this.mCallbackAsync = new AsyncUrlRequestCallback(callback, userExecutor);
     final int trafficStatsTagToUse =
         trafficStatsTagSet ? trafficStatsTag : TrafficStats.getThreadStatsTag();
     this.mExecutor = new SerializingExecutor(new Executor() {
@@ -167,96 +81,6 @@ final class JavaUrlRequest extends UrlRequestBase {
         });
       }
     });
-    this.mCurrentUrl = url;
-    this.mUserAgent = userAgent;
-  }
-
-  @Override
-  public void setHttpMethod(String method) {
-    checkNotStarted();
-    if (method == null) {
-      throw new NullPointerException("Method is required.");
-    }
-    if ("OPTIONS".equalsIgnoreCase(method) || "GET".equalsIgnoreCase(method) ||
-        "HEAD".equalsIgnoreCase(method) || "POST".equalsIgnoreCase(method) ||
-        "PUT".equalsIgnoreCase(method) || "DELETE".equalsIgnoreCase(method) ||
-        "TRACE".equalsIgnoreCase(method) || "PATCH".equalsIgnoreCase(method)) {
-      mInitialMethod = method;
-    } else {
-      throw new IllegalArgumentException("Invalid http method " + method);
-    }
-  }
-
-  private void checkNotStarted() {
-    @State int state = mState.get();
-    if (state != State.NOT_STARTED) {
-      throw new IllegalStateException("Request is already started. State is: " + state);
-    }
-  }
-
-  @Override
-  public void addHeader(String header, String value) {
-    checkNotStarted();
-    if (!isValidHeaderName(header) || value.contains("\r\n")) {
-      throw new IllegalArgumentException("Invalid header " + header + "=" + value);
-    }
-    if (mRequestHeaders.containsKey(header)) {
-      mRequestHeaders.remove(header);
-    }
-    mRequestHeaders.put(header, value);
-  }
-
-  private boolean isValidHeaderName(String header) {
-    for (int i = 0; i < header.length(); i++) {
-      char c = header.charAt(i);
-      switch (c) {
-      case '(':
-      case ')':
-      case '<':
-      case '>':
-      case '@':
-      case ',':
-      case ';':
-      case ':':
-      case '\\':
-      case '\'':
-      case '/':
-      case '[':
-      case ']':
-      case '?':
-      case '=':
-      case '{':
-      case '}':
-        return false;
-      default: {
-        if (Character.isISOControl(c) || Character.isWhitespace(c)) {
-          return false;
-        }
-      }
-      }
-    }
-    return true;
-  }
-
-  @Override
-  public void setUploadDataProvider(UploadDataProvider uploadDataProvider, Executor executor) {
-    if (uploadDataProvider == null) {
-      throw new NullPointerException("Invalid UploadDataProvider.");
-    }
-    if (!mRequestHeaders.containsKey("Content-Type")) {
-      throw new IllegalArgumentException("Requests with upload data must have a Content-Type.");
-    }
-    checkNotStarted();
-    if (mInitialMethod == null) {
-      mInitialMethod = "POST";
-    }
-    this.mUploadDataProvider =
-        new VersionSafeCallbacks.UploadDataProviderWrapper(uploadDataProvider);
-    if (mAllowDirectExecutor) {
-      this.mUploadExecutor = executor;
-    } else {
-      this.mUploadExecutor = new DirectPreventingExecutor(executor);
-    }
   }
 
   private final class OutputStreamDataSink extends JavaUploadDataSinkBase {
@@ -342,97 +166,6 @@ final class JavaUrlRequest extends UrlRequestBase {
     }
   }
 
-  @Override
-  public void start() {
-    mAdditionalStatusDetails = Status.CONNECTING;
-    transitionStates(State.NOT_STARTED, State.STARTED, new Runnable() {
-      @Override
-      public void run() {
-        mUrlChain.add(mCurrentUrl);
-        fireOpenConnection();
-      }
-    });
-  }
-
-  private void enterErrorState(final CronetException error) {
-    if (setTerminalState(State.ERROR)) {
-      fireDisconnect();
-      fireCloseUploadDataProvider();
-      mCallbackAsync.onFailed(mUrlResponseInfo, error);
-    }
-  }
-
-  private boolean setTerminalState(@State int error) {
-    while (true) {
-      @State int oldState = mState.get();
-      switch (oldState) {
-      case State.NOT_STARTED:
-        throw new IllegalStateException("Can't enter error state before start");
-      case State.ERROR:    // fallthrough
-      case State.COMPLETE: // fallthrough
-      case State.CANCELLED:
-        return false; // Already in a terminal state
-      default: {
-        if (mState.compareAndSet(/* expected= */ oldState, /* updated= */ error)) {
-          return true;
-        }
-      }
-      }
-    }
-  }
-
-  /**
-   * Ends the request with an error, caused by an exception thrown from user code.
-   */
-  private void enterUserErrorState(final Throwable error) {
-    enterErrorState(
-        new CallbackExceptionImpl("Exception received from UrlRequest.Callback", error));
-  }
-
-  /**
-   * Ends the request with an error, caused by an exception thrown from user code.
-   */
-  private void enterUploadErrorState(final Throwable error) {
-    enterErrorState(new CallbackExceptionImpl("Exception received from UploadDataProvider", error));
-  }
-
-  private void enterCronetErrorState(final Throwable error) {
-    // TODO(clm) mapping from Java exception (UnknownHostException, for example) to net error
-    // code goes here.
-    enterErrorState(new CronetExceptionImpl("System error", error));
-  }
-
-  /**
-   * Atomically swaps from the expected state to a new state. If the swap fails, and it's not due to
-   * an earlier error or cancellation, throws an exception.
-   *
-   * @param afterTransition Callback to run after transition completes successfully.
-   */
-  private void transitionStates(@State int expected, @State int newState,
-                                Runnable afterTransition) {
-    if (!mState.compareAndSet(expected, newState)) {
-      @State int state = mState.get();
-      if (!(state == State.CANCELLED || state == State.ERROR)) {
-        throw new IllegalStateException("Invalid state transition - expected " + expected +
-                                        " but was " + state);
-      }
-    } else {
-      afterTransition.run();
-    }
-  }
-
-  @Override
-  public void followRedirect() {
-    transitionStates(State.AWAITING_FOLLOW_REDIRECT, State.STARTED, new Runnable() {
-      @Override
-      public void run() {
-        mCurrentUrl = mPendingRedirectUrl;
-        mPendingRedirectUrl = null;
-        fireOpenConnection();
-      }
-    });
-  }
-
   private void fireGetHeaders() {
     mAdditionalStatusDetails = Status.WAITING_FOR_RESPONSE;
     mExecutor.execute(errorSetting(new CheckedRunnable() {
@@ -484,39 +217,8 @@ final class JavaUrlRequest extends UrlRequestBase {
     }));
   }
 
-  private void fireCloseUploadDataProvider() {
-    if (mUploadDataProvider != null && mUploadProviderClosed.compareAndSet(
-                                           /* expected= */ false, /* updated= */ true)) {
-      try {
-        mUploadExecutor.execute(uploadErrorSetting(new CheckedRunnable() {
-          @Override
-          public void run() throws Exception {
-            mUploadDataProvider.close();
-          }
-        }));
-      } catch (RejectedExecutionException e) {
-        Log.e(TAG, "Exception when closing uploadDataProvider", e);
-      }
-    }
-  }
-
-  private void fireRedirectReceived(final String locationField) {
-    transitionStates(State.STARTED, State.REDIRECT_RECEIVED, new Runnable() {
-      @Override
-      public void run() {
-        mPendingRedirectUrl = URI.create(mCurrentUrl).resolve(locationField).toString();
-        mUrlChain.add(mPendingRedirectUrl);
-        transitionStates(State.REDIRECT_RECEIVED, State.AWAITING_FOLLOW_REDIRECT, new Runnable() {
-          @Override
-          public void run() {
-            mCallbackAsync.onRedirectReceived(mUrlResponseInfo, mPendingRedirectUrl);
-          }
-        });
-      }
-    });
-  }
-
-  private void fireOpenConnection() {
+  @Override
+  protected void fireOpenConnection() {
     mExecutor.execute(errorSetting(new CheckedRunnable() {
       @Override
       public void run() throws Exception {
@@ -556,61 +258,15 @@ final class JavaUrlRequest extends UrlRequestBase {
     }));
   }
 
-  private Runnable errorSetting(final CheckedRunnable delegate) {
-    return new Runnable() {
-      @Override
-      public void run() {
-        try {
-          delegate.run();
-        } catch (Throwable t) {
-          enterCronetErrorState(t);
-        }
-      }
-    };
-  }
-
-  private Runnable userErrorSetting(final CheckedRunnable delegate) {
-    return new Runnable() {
-      @Override
-      public void run() {
-        try {
-          delegate.run();
-        } catch (Throwable t) {
-          enterUserErrorState(t);
-        }
-      }
-    };
-  }
-
-  private Runnable uploadErrorSetting(final CheckedRunnable delegate) {
-    return new Runnable() {
-      @Override
-      public void run() {
-        try {
-          delegate.run();
-        } catch (Throwable t) {
-          enterUploadErrorState(t);
-        }
-      }
-    };
-  }
-
   @Override
-  public void read(final ByteBuffer buffer) {
-    Preconditions.checkDirect(buffer);
-    Preconditions.checkHasRemaining(buffer);
-    transitionStates(State.AWAITING_READ, State.READING, new Runnable() {
+  protected void fireRead(final ByteBuffer buffer) {
+    mExecutor.execute(errorSetting(new CheckedRunnable() {
       @Override
-      public void run() {
-        mExecutor.execute(errorSetting(new CheckedRunnable() {
-          @Override
-          public void run() throws Exception {
-            int read = mResponseChannel == null ? -1 : mResponseChannel.read(buffer);
-            processReadResult(read, buffer);
-          }
-        }));
+      public void run() throws Exception {
+        int read = mResponseChannel == null ? -1 : mResponseChannel.read(buffer);
+        processReadResult(read, buffer);
       }
-    });
+    }));
   }
 
   private void processReadResult(int read, final ByteBuffer buffer) throws IOException {
@@ -628,7 +284,8 @@ final class JavaUrlRequest extends UrlRequestBase {
     }
   }
 
-  private void fireDisconnect() {
+  @Override
+  protected void fireDisconnect() {
     mExecutor.execute(new Runnable() {
       @Override
       public void run() {
@@ -648,192 +305,7 @@ final class JavaUrlRequest extends UrlRequestBase {
   }
 
   @Override
-  public void cancel() {
-    @State int oldState = mState.getAndSet(State.CANCELLED);
-    switch (oldState) {
-    // We've just scheduled some user code to run. When they perform their next operation,
-    // they'll observe it and fail. However, if user code is cancelling in response to one
-    // of these callbacks, we'll never actually cancel!
-    // TODO(clm) figure out if it's possible to avoid concurrency in user callbacks.
-    case State.REDIRECT_RECEIVED:
-    case State.AWAITING_FOLLOW_REDIRECT:
-    case State.AWAITING_READ:
-
-      // User code is waiting on us - cancel away!
-    case State.STARTED:
-    case State.READING:
-      fireDisconnect();
-      fireCloseUploadDataProvider();
-      mCallbackAsync.onCanceled(mUrlResponseInfo);
-      break;
-    // The rest are all termination cases - we're too late to cancel.
-    case State.ERROR:
-    case State.COMPLETE:
-    case State.CANCELLED:
-      break;
-    default:
-      break;
-    }
-  }
-
-  @Override
-  public boolean isDone() {
-    @State int state = mState.get();
-    return state == State.COMPLETE || state == State.ERROR || state == State.CANCELLED;
-  }
-
-  @Override
-  public void getStatus(StatusListener listener) {
-    @State int state = mState.get();
-    int extraStatus = this.mAdditionalStatusDetails;
-
-    @StatusValues final int status;
-    switch (state) {
-    case State.ERROR:
-    case State.COMPLETE:
-    case State.CANCELLED:
-    case State.NOT_STARTED:
-      status = Status.INVALID;
-      break;
-    case State.STARTED:
-      status = extraStatus;
-      break;
-    case State.REDIRECT_RECEIVED:
-    case State.AWAITING_FOLLOW_REDIRECT:
-    case State.AWAITING_READ:
-      status = Status.IDLE;
-      break;
-    case State.READING:
-      status = Status.READING_RESPONSE;
-      break;
-    default:
-      throw new IllegalStateException("Switch is exhaustive: " + state);
-    }
-
-    mCallbackAsync.sendStatus(new VersionSafeCallbacks.UrlRequestStatusListener(listener), status);
-  }
-
-  /**
-   * This wrapper ensures that callbacks are always called on the correct executor
-   */
-  private final class AsyncUrlRequestCallback {
-
-    final VersionSafeCallbacks.UrlRequestCallback mCallback;
-    final Executor mUserExecutor;
-    final Executor mFallbackExecutor;
-
-    AsyncUrlRequestCallback(Callback callback, final Executor userExecutor) {
-      this.mCallback = new VersionSafeCallbacks.UrlRequestCallback(callback);
-      if (mAllowDirectExecutor) {
-        this.mUserExecutor = userExecutor;
-        this.mFallbackExecutor = null;
-      } else {
-        mUserExecutor = new DirectPreventingExecutor(userExecutor);
-        mFallbackExecutor = userExecutor;
-      }
-    }
-
-    void sendStatus(final VersionSafeCallbacks.UrlRequestStatusListener listener,
-                    final int status) {
-      mUserExecutor.execute(new Runnable() {
-        @Override
-        public void run() {
-          listener.onStatus(status);
-        }
-      });
-    }
-
-    void execute(CheckedRunnable runnable) {
-      try {
-        mUserExecutor.execute(userErrorSetting(runnable));
-      } catch (RejectedExecutionException e) {
-        enterErrorState(new CronetExceptionImpl("Exception posting task to executor", e));
-      }
-    }
-
-    void onRedirectReceived(final UrlResponseInfo info, final String newLocationUrl) {
-      execute(new CheckedRunnable() {
-        @Override
-        public void run() throws Exception {
-          mCallback.onRedirectReceived(JavaUrlRequest.this, info, newLocationUrl);
-        }
-      });
-    }
-
-    void onResponseStarted(UrlResponseInfo info) {
-      execute(new CheckedRunnable() {
-        @Override
-        public void run() throws Exception {
-          if (mState.compareAndSet(/* expected= */ State.STARTED,
-                                   /* updated= */ State.AWAITING_READ)) {
-            mCallback.onResponseStarted(JavaUrlRequest.this, mUrlResponseInfo);
-          }
-        }
-      });
-    }
-
-    void onReadCompleted(final UrlResponseInfo info, final ByteBuffer byteBuffer) {
-      execute(new CheckedRunnable() {
-        @Override
-        public void run() throws Exception {
-          if (mState.compareAndSet(/* expected= */ State.READING,
-                                   /* updated= */ State.AWAITING_READ)) {
-            mCallback.onReadCompleted(JavaUrlRequest.this, info, byteBuffer);
-          }
-        }
-      });
-    }
-
-    void onCanceled(final UrlResponseInfo info) {
-      closeResponseChannel();
-      mUserExecutor.execute(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            mCallback.onCanceled(JavaUrlRequest.this, info);
-          } catch (Exception exception) {
-            Log.e(TAG, "Exception in onCanceled method", exception);
-          }
-        }
-      });
-    }
-
-    void onSucceeded(final UrlResponseInfo info) {
-      mUserExecutor.execute(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            mCallback.onSucceeded(JavaUrlRequest.this, info);
-          } catch (Exception exception) {
-            Log.e(TAG, "Exception in onSucceeded method", exception);
-          }
-        }
-      });
-    }
-
-    void onFailed(final UrlResponseInfo urlResponseInfo, final CronetException e) {
-      closeResponseChannel();
-      Runnable runnable = new Runnable() {
-        @Override
-        public void run() {
-          try {
-            mCallback.onFailed(JavaUrlRequest.this, urlResponseInfo, e);
-          } catch (Exception exception) {
-            Log.e(TAG, "Exception in onFailed method", exception);
-          }
-        }
-      };
-      try {
-        mUserExecutor.execute(runnable);
-      } catch (InlineExecutionProhibitedException wasDirect) {
-        if (mFallbackExecutor != null) {
-          mFallbackExecutor.execute(runnable);
-        }
-      }
-    }
-  }
-
-  private void closeResponseChannel() {
+  protected void closeResponseChannel() {
     mExecutor.execute(new Runnable() {
       @Override
       public void run() {
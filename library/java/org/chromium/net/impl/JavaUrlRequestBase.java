@@ -0,0 +1,589 @@
+package org.chromium.net.impl;
+
+import android.util.Log;
+import androidx.annotation.IntDef;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.chromium.net.CronetException;
+import org.chromium.net.InlineExecutionProhibitedException;
+import org.chromium.net.UploadDataProvider;
+import org.chromium.net.UrlResponseInfo;
+import org.chromium.net.impl.Executors.CheckedRunnable;
+import org.chromium.net.impl.Executors.DirectPreventingExecutor;
+
+/**
+ * Base class for pure java UrlRequest implementations. Holds the request state machine, the
+ * request parameters, and the dispatch of the callbacks; subclasses only send the request and read
+ * the response.
+ */
+abstract class JavaUrlRequestBase extends UrlRequestBase {
+
+  /**
+   * State interface for keeping track of the internal state of a {@link UrlRequestBase}.
+   * <pre>
+   *               /- AWAITING_FOLLOW_REDIRECT <- REDIRECT_RECEIVED <-\     /- READING <--\
+   *               |                                                  |     |             |
+   *               V                                                  /     V             /
+   * NOT_STARTED -> STARTED -----------------------------------------------> AWAITING_READ -------
+   * --> COMPLETE
+   * </pre>
+   */
+  @IntDef({State.NOT_STARTED, State.STARTED, State.REDIRECT_RECEIVED,
+           State.AWAITING_FOLLOW_REDIRECT, State.AWAITING_READ, State.READING, State.ERROR,
+           State.COMPLETE, State.CANCELLED})
+  @Retention(RetentionPolicy.SOURCE)
+  @interface State {
+
+    int NOT_STARTED = 0;
+    int STARTED = 1;
+    int REDIRECT_RECEIVED = 2;
+    int AWAITING_FOLLOW_REDIRECT = 3;
+    int AWAITING_READ = 4;
+    int READING = 5;
+    int ERROR = 6;
+    int COMPLETE = 7;
+    int CANCELLED = 8;
+  }
+
+  protected static final String USER_AGENT = "User-Agent";
+  private final String mTag = getClass().getSimpleName();
+  protected final AsyncUrlRequestCallback mCallbackAsync;
+  protected final String mUserAgent;
+  protected final Map<String, String> mRequestHeaders =
+      new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+  protected final List<String> mUrlChain = new ArrayList<>();
+  /**
+   * This is the source of thread safety in this class - no other synchronization is performed. By
+   * compare-and-swapping from one state to another, we guarantee that operations aren't running
+   * concurrently. Only the winner of a compare-and-swapping proceeds.
+   *
+   * <p>A caller can lose a compare-and-swapping for three reasons - user error (two calls to
+   * read() without waiting for the read to succeed), runtime error (network code or user code
+   * throws an exception), or cancellation.
+   */
+  protected final AtomicInteger /* State */ mState = new AtomicInteger(State.NOT_STARTED);
+  private final AtomicBoolean mUploadProviderClosed = new AtomicBoolean(false);
+
+  private final boolean mAllowDirectExecutor;
+
+  /* These don't change with redirects */
+  protected String mInitialMethod;
+  protected VersionSafeCallbacks.UploadDataProviderWrapper mUploadDataProvider;
+  protected Executor mUploadExecutor;
+
+  /**
+   * Holds a subset of StatusValues - {@link State#STARTED} can represent {@link
+   * Status#SENDING_REQUEST} or {@link Status#WAITING_FOR_RESPONSE}. While the distinction isn't
+   * needed to implement the state machine, it is needed to implement {@link
+   * #getStatus(StatusListener)}.
+   *
+   * <p>Concurrency notes - this value is not atomically updated with mState, so there is some
+   * risk that we'd get an inconsistent snapshot of both - however, it also happens that this value
+   * is only used with the STARTED state, so it's inconsequential.
+   */
+  @StatusValues protected volatile int mAdditionalStatusDetails = Status.INVALID;
+
+  /* These change with redirects. */
+  protected volatile String mCurrentUrl;
+  protected volatile UrlResponseInfoImpl mUrlResponseInfo;
+  protected volatile String mPendingRedirectUrl;
+
+  /**
+   * @param userExecutor The executor used to dispatch to {@code callback}
+   */
+  JavaUrlRequestBase(Callback callback, Executor userExecutor, String url, String userAgent,
+                     boolean allowDirectExecutor) {
+    if (url == null) {
+      throw new NullPointerException("URL is required");
+    }
+    if (callback == null) {
+      throw new NullPointerException("Listener is required");
+    }
+    if (userExecutor == null) {
+      throw new NullPointerException("userExecutor is required");
+    }
+
+    this.mAllowDirectExecutor = allowDirectExecutor;
+    this.mCallbackAsync = new AsyncUrlRequestCallback(callback, userExecutor);
+    this.mCurrentUrl = url;
+    this.mUserAgent = userAgent;
+  }
+
+  /**
+   * Sends the request to {@link #mCurrentUrl}, once started or when following a redirect.
+   */
+  protected abstract void fireOpenConnection();
+
+  /**
+   * Reads the next part of the response body into {@code buffer}, once in the READING state.
+   */
+  protected abstract void fireRead(ByteBuffer buffer);
+
+  /**
+   * Releases the connection, once the request reached a terminal state.
+   */
+  protected abstract void fireDisconnect();
+
+  /**
+   * Closes the response body before the request fails or is cancelled. Does nothing by default.
+   */
+  protected void closeResponseChannel() {}
+
+  @Override
+  public void setHttpMethod(String method) {
+    checkNotStarted();
+    if (method == null) {
+      throw new NullPointerException("Method is required.");
+    }
+    if ("OPTIONS".equalsIgnoreCase(method) || "GET".equalsIgnoreCase(method) ||
+        "HEAD".equalsIgnoreCase(method) || "POST".equalsIgnoreCase(method) ||
+        "PUT".equalsIgnoreCase(method) || "DELETE".equalsIgnoreCase(method) ||
+        "TRACE".equalsIgnoreCase(method) || "PATCH".equalsIgnoreCase(method)) {
+      mInitialMethod = method;
+    } else {
+      throw new IllegalArgumentException("Invalid http method " + method);
+    }
+  }
+
+  private void checkNotStarted() {
+    @State int state = mState.get();
+    if (state != State.NOT_STARTED) {
+      throw new IllegalStateException("Request is already started. State is: " + state);
+    }
+  }
+
+  @Override
+  public void addHeader(String header, String value) {
+    checkNotStarted();
+    if (!isValidHeaderName(header) || value.contains("\r\n")) {
+      throw new IllegalArgumentException("Invalid header " + header + "=" + value);
+    }
+    if (mRequestHeaders.containsKey(header)) {
+      mRequestHeaders.remove(header);
+    }
+    mRequestHeaders.put(header, value);
+  }
+
+  private boolean isValidHeaderName(String header) {
+    for (int i = 0; i < header.length(); i++) {
+      char c = header.charAt(i);
+      switch (c) {
+      case '(':
+      case ')':
+      case '<':
+      case '>':
+      case '@':
+      case ',':
+      case ';':
+      case ':':
+      case '\\':
+      case '\'':
+      case '/':
+      case '[':
+      case ']':
+      case '?':
+      case '=':
+      case '{':
+      case '}':
+        return false;
+      default: {
+        if (Character.isISOControl(c) || Character.isWhitespace(c)) {
+          return false;
+        }
+      }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void setUploadDataProvider(UploadDataProvider uploadDataProvider, Executor executor) {
+    if (uploadDataProvider == null) {
+      throw new NullPointerException("Invalid UploadDataProvider.");
+    }
+    if (!mRequestHeaders.containsKey("Content-Type")) {
+      throw new IllegalArgumentException("Requests with upload data must have a Content-Type.");
+    }
+    checkNotStarted();
+    if (mInitialMethod == null) {
+      mInitialMethod = "POST";
+    }
+    this.mUploadDataProvider =
+        new VersionSafeCallbacks.UploadDataProviderWrapper(uploadDataProvider);
+    if (mAllowDirectExecutor) {
+      this.mUploadExecutor = executor;
+    } else {
+      this.mUploadExecutor = new DirectPreventingExecutor(executor);
+    }
+  }
+
+  @Override
+  public void start() {
+    mAdditionalStatusDetails = Status.CONNECTING;
+    transitionStates(State.NOT_STARTED, State.STARTED, new Runnable() {
+      @Override
+      public void run() {
+        mUrlChain.add(mCurrentUrl);
+        fireOpenConnection();
+      }
+    });
+  }
+
+  protected void enterErrorState(final CronetException error) {
+    if (setTerminalState(State.ERROR)) {
+      fireDisconnect();
+      fireCloseUploadDataProvider();
+      mCallbackAsync.onFailed(mUrlResponseInfo, error);
+    }
+  }
+
+  private boolean setTerminalState(@State int error) {
+    while (true) {
+      @State int oldState = mState.get();
+      switch (oldState) {
+      case State.NOT_STARTED:
+        throw new IllegalStateException("Can't enter error state before start");
+      case State.ERROR:    // fallthrough
+      case State.COMPLETE: // fallthrough
+      case State.CANCELLED:
+        return false; // Already in a terminal state
+      default: {
+        if (mState.compareAndSet(/* expected= */ oldState, /* updated= */ error)) {
+          return true;
+        }
+      }
+      }
+    }
+  }
+
+  /**
+   * Ends the request with an error, caused by an exception thrown from user code.
+   */
+  protected void enterUserErrorState(final Throwable error) {
+    enterErrorState(
+        new CallbackExceptionImpl("Exception received from UrlRequest.Callback", error));
+  }
+
+  /**
+   * Ends the request with an error, caused by an exception thrown from the upload data provider.
+   */
+  protected void enterUploadErrorState(final Throwable error) {
+    enterErrorState(new CallbackExceptionImpl("Exception received from UploadDataProvider", error));
+  }
+
+  protected void enterCronetErrorState(final Throwable error) {
+    // TODO(clm) mapping from Java exception (UnknownHostException, for example) to net error
+    // code goes here.
+    enterErrorState(new CronetExceptionImpl("System error", error));
+  }
+
+  /**
+   * Atomically swaps from the expected state to a new state. If the swap fails, and it's not due to
+   * an earlier error or cancellation, throws an exception.
+   *
+   * @param afterTransition Callback to run after transition completes successfully.
+   */
+  protected void transitionStates(@State int expected, @State int newState,
+                                  Runnable afterTransition) {
+    if (!mState.compareAndSet(expected, newState)) {
+      @State int state = mState.get();
+      if (!(state == State.CANCELLED || state == State.ERROR)) {
+        throw new IllegalStateException("Invalid state transition - expected " + expected +
+                                        " but was " + state);
+      }
+    } else {
+      afterTransition.run();
+    }
+  }
+
+  @Override
+  public void followRedirect() {
+    transitionStates(State.AWAITING_FOLLOW_REDIRECT, State.STARTED, new Runnable() {
+      @Override
+      public void run() {
+        mCurrentUrl = mPendingRedirectUrl;
+        mPendingRedirectUrl = null;
+        fireOpenConnection();
+      }
+    });
+  }
+
+  protected void fireCloseUploadDataProvider() {
+    if (mUploadDataProvider != null && mUploadProviderClosed.compareAndSet(
+                                           /* expected= */ false, /* updated= */ true)) {
+      try {
+        mUploadExecutor.execute(uploadErrorSetting(new CheckedRunnable() {
+          @Override
+          public void run() throws Exception {
+            mUploadDataProvider.close();
+          }
+        }));
+      } catch (RejectedExecutionException e) {
+        Log.e(mTag, "Exception when closing uploadDataProvider", e);
+      }
+    }
+  }
+
+  protected void fireRedirectReceived(final String locationField) {
+    transitionStates(State.STARTED, State.REDIRECT_RECEIVED, new Runnable() {
+      @Override
+      public void run() {
+        mPendingRedirectUrl = URI.create(mCurrentUrl).resolve(locationField).toString();
+        mUrlChain.add(mPendingRedirectUrl);
+        transitionStates(State.REDIRECT_RECEIVED, State.AWAITING_FOLLOW_REDIRECT, new Runnable() {
+          @Override
+          public void run() {
+            mCallbackAsync.onRedirectReceived(mUrlResponseInfo, mPendingRedirectUrl);
+          }
+        });
+      }
+    });
+  }
+
+  protected Runnable errorSetting(final CheckedRunnable delegate) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          delegate.run();
+        } catch (Throwable t) {
+          enterCronetErrorState(t);
+        }
+      }
+    };
+  }
+
+  private Runnable userErrorSetting(final CheckedRunnable delegate) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          delegate.run();
+        } catch (Throwable t) {
+          enterUserErrorState(t);
+        }
+      }
+    };
+  }
+
+  protected Runnable uploadErrorSetting(final CheckedRunnable delegate) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          delegate.run();
+        } catch (Throwable t) {
+          enterUploadErrorState(t);
+        }
+      }
+    };
+  }
+
+  @Override
+  public void read(final ByteBuffer buffer) {
+    Preconditions.checkDirect(buffer);
+    Preconditions.checkHasRemaining(buffer);
+    transitionStates(State.AWAITING_READ, State.READING, new Runnable() {
+      @Override
+      public void run() {
+        fireRead(buffer);
+      }
+    });
+  }
+
+  @Override
+  public void cancel() {
+    @State int oldState = mState.getAndSet(State.CANCELLED);
+    switch (oldState) {
+    // We've just scheduled some user code to run. When they perform their next operation,
+    // they'll observe it and fail. However, if user code is cancelling in response to one
+    // of these callbacks, we'll never actually cancel!
+    // TODO(clm) figure out if it's possible to avoid concurrency in user callbacks.
+    case State.REDIRECT_RECEIVED:
+    case State.AWAITING_FOLLOW_REDIRECT:
+    case State.AWAITING_READ:
+
+      // User code is waiting on us - cancel away!
+    case State.STARTED:
+    case State.READING:
+      fireDisconnect();
+      fireCloseUploadDataProvider();
+      mCallbackAsync.onCanceled(mUrlResponseInfo);
+      break;
+    // The rest are all termination cases - we're too late to cancel.
+    case State.ERROR:
+    case State.COMPLETE:
+    case State.CANCELLED:
+      break;
+    default:
+      break;
+    }
+  }
+
+  @Override
+  public boolean isDone() {
+    @State int state = mState.get();
+    return state == State.COMPLETE || state == State.ERROR || state == State.CANCELLED;
+  }
+
+  @Override
+  public void getStatus(StatusListener listener) {
+    @State int state = mState.get();
+    int extraStatus = this.mAdditionalStatusDetails;
+
+    @StatusValues final int status;
+    switch (state) {
+    case State.ERROR:
+    case State.COMPLETE:
+    case State.CANCELLED:
+    case State.NOT_STARTED:
+      status = Status.INVALID;
+      break;
+    case State.STARTED:
+      status = extraStatus;
+      break;
+    case State.REDIRECT_RECEIVED:
+    case State.AWAITING_FOLLOW_REDIRECT:
+    case State.AWAITING_READ:
+      status = Status.IDLE;
+      break;
+    case State.READING:
+      status = Status.READING_RESPONSE;
+      break;
+    default:
+      throw new IllegalStateException("Switch is exhaustive: " + state);
+    }
+
+    mCallbackAsync.sendStatus(new VersionSafeCallbacks.UrlRequestStatusListener(listener), status);
+  }
+
+  /**
+   * This wrapper ensures that callbacks are always called on the correct executor
+   */
+  final class AsyncUrlRequestCallback {
+
+    final VersionSafeCallbacks.UrlRequestCallback mCallback;
+    final Executor mUserExecutor;
+    final Executor mFallbackExecutor;
+
+    AsyncUrlRequestCallback(Callback callback, final Executor userExecutor) {
+      this.mCallback = new VersionSafeCallbacks.UrlRequestCallback(callback);
+      if (mAllowDirectExecutor) {
+        this.mUserExecutor = userExecutor;
+        this.mFallbackExecutor = null;
+      } else {
+        mUserExecutor = new DirectPreventingExecutor(userExecutor);
+        mFallbackExecutor = userExecutor;
+      }
+    }
+
+    void sendStatus(final VersionSafeCallbacks.UrlRequestStatusListener listener,
+                    final int status) {
+      mUserExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          listener.onStatus(status);
+        }
+      });
+    }
+
+    void execute(CheckedRunnable runnable) {
+      try {
+        mUserExecutor.execute(userErrorSetting(runnable));
+      } catch (RejectedExecutionException e) {
+        enterErrorState(new CronetExceptionImpl("Exception posting task to executor", e));
+      }
+    }
+
+    void onRedirectReceived(final UrlResponseInfo info, final String newLocationUrl) {
+      execute(new CheckedRunnable() {
+        @Override
+        public void run() throws Exception {
+          mCallback.onRedirectReceived(JavaUrlRequestBase.this, info, newLocationUrl);
+        }
+      });
+    }
+
+    void onResponseStarted(UrlResponseInfo info) {
+      execute(new CheckedRunnable() {
+        @Override
+        public void run() throws Exception {
+          if (mState.compareAndSet(/* expected= */ State.STARTED,
+                                   /* updated= */ State.AWAITING_READ)) {
+            mCallback.onResponseStarted(JavaUrlRequestBase.this, mUrlResponseInfo);
+          }
+        }
+      });
+    }
+
+    void onReadCompleted(final UrlResponseInfo info, final ByteBuffer byteBuffer) {
+      execute(new CheckedRunnable() {
+        @Override
+        public void run() throws Exception {
+          if (mState.compareAndSet(/* expected= */ State.READING,
+                                   /* updated= */ State.AWAITING_READ)) {
+            mCallback.onReadCompleted(JavaUrlRequestBase.this, info, byteBuffer);
+          }
+        }
+      });
+    }
+
+    void onCanceled(final UrlResponseInfo info) {
+      closeResponseChannel();
+      mUserExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            mCallback.onCanceled(JavaUrlRequestBase.this, info);
+          } catch (Exception exception) {
+            Log.e(mTag, "Exception in onCanceled method", exception);
+          }
+        }
+      });
+    }
+
+    void onSucceeded(final UrlResponseInfo info) {
+      mUserExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            mCallback.onSucceeded(JavaUrlRequestBase.this, info);
+          } catch (Exception exception) {
+            Log.e(mTag, "Exception in onSucceeded method", exception);
+          }
+        }
+      });
+    }
+
+    void onFailed(final UrlResponseInfo urlResponseInfo, final CronetException e) {
+      closeResponseChannel();
+      Runnable runnable = new Runnable() {
+        @Override
+        public void run() {
+          try {
+            mCallback.onFailed(JavaUrlRequestBase.this, urlResponseInfo, e);
+          } catch (Exception exception) {
+            Log.e(mTag, "Exception in onFailed method", exception);
+          }
+        }
+      };
+      try {
+        mUserExecutor.execute(runnable);
+      } catch (InlineExecutionProhibitedException wasDirect) {
+        if (mFallbackExecutor != null) {
+          mFallbackExecutor.execute(runnable);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package org.chromium.net.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.chromium.net.UploadDataProvider;
+import org.chromium.net.UploadDataSink;
+
+/**
+ * Uploads an entire file by memory-mapping it.
+ *
+ * <p>With Cronvoy, the request body is handed to Envoy as slices of the mapping: no copy is made
+ * on the Java heap nor at the JNI boundary, the kernel pages the file in as Envoy writes it to the
+ * socket. With other Cronet implementations, this behaves like {@code UploadDataProviders.create(
+ * File)}, copying from the mapping into the provided buffer.
+ *
+ * <p>The file is mapped in windows of at most {@link #MAPPING_WINDOW_SIZE} bytes, which keeps the
+ * address space used by large uploads bounded. The file must not be modified during the upload.
+ */
+public final class MappedFileUploadDataProvider extends UploadDataProvider {
+  private static final int MAPPING_WINDOW_SIZE = 16 * 1024 * 1024;
+
+  private final File mFile;
+  /** Guards initialization of {@code mStream} and {@code mChannel} */
+  private final Object mLock = new Object();
+  private FileInputStream mStream;
+  private volatile FileChannel mChannel;
+  private long mSize;
+
+  // Only accessed by read and rewind, which the upload never invokes concurrently.
+  private MappedByteBuffer mWindow;
+  private long mWindowStart;
+  private long mPosition;
+
+  public MappedFileUploadDataProvider(File file) { mFile = file; }
+
+  @Override
+  public long getLength() throws IOException {
+    getChannel();
+    return mSize;
+  }
+
+  @Override
+  public void read(UploadDataSink uploadDataSink, ByteBuffer byteBuffer) throws IOException {
+    if (!byteBuffer.hasRemaining()) {
+      throw new IllegalStateException("Cronet passed a buffer with no bytes remaining");
+    }
+    ByteBuffer chunk = readDirect(byteBuffer.remaining());
+    chunk.flip();
+    byteBuffer.put(chunk);
+    uploadDataSink.onReadSucceeded(false);
+  }
+
+  @Override
+  public void rewind(UploadDataSink uploadDataSink) throws IOException {
+    mPosition = 0;
+    uploadDataSink.onRewindSucceeded();
+  }
+
+  @Override
+  public void close() throws IOException {
+    FileInputStream stream;
+    FileChannel channel;
+    synchronized (mLock) {
+      stream = mStream;
+      channel = mChannel;
+    }
+    mWindow = null;
+    if (channel != null) {
+      channel.close();
+    }
+    if (stream != null) {
+      stream.close();
+    }
+  }
+
+  /**
+   * Returns the next chunk of the file, of at most {@code maxSize} bytes, as a direct slice of the
+   * mapping. Like a buffer filled by {@link #read}, its position is the number of bytes it holds.
+   */
+  ByteBuffer readDirect(int maxSize) throws IOException {
+    if (mPosition >= mSize) {
+      return ByteBuffer.allocateDirect(0);
+    }
+    if (mWindow == null || mPosition < mWindowStart ||
+        mPosition >= mWindowStart + mWindow.capacity()) {
+      mWindowStart = mPosition;
+      mWindow = getChannel().map(FileChannel.MapMode.READ_ONLY, mWindowStart,
+                                 Math.min(MAPPING_WINDOW_SIZE, mSize - mWindowStart));
+    }
+    int offset = (int)(mPosition - mWindowStart);
+    int size = Math.min(maxSize, mWindow.capacity() - offset);
+    ByteBuffer window = mWindow.duplicate();
+    window.position(offset);
+    window.limit(offset + size);
+    ByteBuffer chunk = window.slice();
+    chunk.position(size);
+    mPosition += size;
+    return chunk;
+  }
+
+  /**
+   * Lazily initializes the channel so that a blocking operation isn't performed on a non-executor
+   * thread.
+   */
+  private FileChannel getChannel() throws IOException {
+    if (mChannel == null) {
+      synchronized (mLock) {
+        if (mChannel == null) {
+          FileInputStream stream = new FileInputStream(mFile);
+          FileChannel channel = stream.getChannel();
+          try {
+            mSize = channel.size();
+          } catch (IOException e) {
+            stream.close();
+            throw e;
+          }
+          mStream = stream;
+          mChannel = channel;
+        }
+      }
+    }
+    return mChannel;
+  }
+}
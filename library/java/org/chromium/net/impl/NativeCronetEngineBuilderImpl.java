@@ -100,6 +100,10 @@ public class NativeCronetEngineBuilderImpl extends CronetEngineBuilderImpl {
     return new CronetUrlRequestContext(this);
   }
 
+  List<String> h2RawDomains() { return mH2RawDomains; }
+
+  int maxConnectionsPerHost() { return mMaxConnectionsPerHost; }
+
   EnvoyEngine createEngine(EnvoyOnEngineRunning onEngineRunning) {
     AndroidEngineImpl engine =
         new AndroidEngineImpl(getContext(), onEngineRunning, mEnvoyLogger, mEnvoyEventTracker);
@@ -0,0 +1,133 @@
+package org.chromium.net.impl;
+
+import androidx.annotation.GuardedBy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.chromium.net.RequestFinishedInfo;
+
+/**
+ * Accumulates finished requests for a {@link RequestFinishedInfo.BatchListener}, and posts them to
+ * its executor in batches.
+ *
+ * <p>A batch is posted from the thread reporting the request which fills it, or from a shared timer
+ * thread once the listener's maximum delay has elapsed since its first request.
+ */
+final class RequestFinishedInfoBatcher extends RequestFinishedInfo.Listener {
+  private static final Object sTimerLock = new Object();
+  @GuardedBy("sTimerLock") private static ScheduledExecutorService sTimer;
+
+  private final RequestFinishedInfo.BatchListener mListener;
+  private final Object mLock = new Object();
+  @GuardedBy("mLock") private ArrayList<RequestFinishedInfo> mPending = new ArrayList<>();
+  // Incremented each time a batch is posted, so that a timer set for a batch that was already
+  // posted because it filled up doesn't post the next one early.
+  @GuardedBy("mLock") private long mBatchNumber;
+  // The timer set for the current batch, cancelled when the batch is posted.
+  @GuardedBy("mLock") private ScheduledFuture<?> mFlushTimer;
+
+  RequestFinishedInfoBatcher(RequestFinishedInfo.BatchListener listener) {
+    super(listener.getExecutor());
+    mListener = listener;
+  }
+
+  /**
+   * Adds a finished request to the current batch. Called on the thread reporting the request.
+   */
+  @Override
+  public void onRequestFinished(RequestFinishedInfo requestInfo) {
+    List<RequestFinishedInfo> batch = null;
+    long batchNumber;
+    synchronized (mLock) {
+      mPending.add(requestInfo);
+      batchNumber = mBatchNumber;
+      if (mPending.size() >= mListener.getMaxBatchSize()) {
+        batch = takeBatch();
+      } else if (mPending.size() > 1) {
+        return;
+      }
+    }
+    if (batch != null) {
+      post(batch);
+      return;
+    }
+    final long scheduledBatchNumber = batchNumber;
+    ScheduledFuture<?> flushTimer;
+    try {
+      flushTimer = getTimer().schedule(() -> flush(scheduledBatchNumber),
+                                       mListener.getMaxDelayMillis(), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      flush(scheduledBatchNumber);
+      return;
+    }
+    synchronized (mLock) {
+      if (scheduledBatchNumber == mBatchNumber) {
+        mFlushTimer = flushTimer;
+        return;
+      }
+    }
+    flushTimer.cancel(false); // The batch was posted while the timer was being set.
+  }
+
+  /**
+   * Posts the current batch, if any, without waiting for it to fill up.
+   */
+  void flush() {
+    List<RequestFinishedInfo> batch;
+    synchronized (mLock) {
+      if (mPending.isEmpty()) {
+        return;
+      }
+      batch = takeBatch();
+    }
+    post(batch);
+  }
+
+  private void flush(long batchNumber) {
+    List<RequestFinishedInfo> batch;
+    synchronized (mLock) {
+      if (batchNumber != mBatchNumber || mPending.isEmpty()) {
+        return;
+      }
+      batch = takeBatch();
+    }
+    post(batch);
+  }
+
+  @GuardedBy("mLock")
+  private List<RequestFinishedInfo> takeBatch() {
+    List<RequestFinishedInfo> batch = mPending;
+    mPending = new ArrayList<>();
+    mBatchNumber++;
+    if (mFlushTimer != null) {
+      mFlushTimer.cancel(false);
+      mFlushTimer = null;
+    }
+    return batch;
+  }
+
+  private void post(final List<RequestFinishedInfo> batch) {
+    CronetUrlRequestContext.postObservationTaskToExecutor(
+        mListener.getExecutor(), () -> mListener.onRequestsFinished(batch));
+  }
+
+  private static ScheduledExecutorService getTimer() {
+    synchronized (sTimerLock) {
+      if (sTimer == null) {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+          Thread thread = new Thread(runnable, "CronvoyRequestFinishedBatcher");
+          thread.setDaemon(true);
+          return thread;
+        });
+        // Timers are cancelled for batches that fill up: don't hold on to them until they expire.
+        timer.setRemoveOnCancelPolicy(true);
+        sTimer = timer;
+      }
+      return sTimer;
+    }
+  }
+}
@@ -10,7 +10,7 @@ import org.chromium.net.UrlRequest;
 
 /**
  * Base class for classes that implement {@link UrlRequest} including experimental
- * features. {@link CronetUrlRequest} and {@link JavaUrlRequest} extends this class.
+ * features. {@link CronetUrlRequest} and {@link JavaUrlRequestBase} extends this class.
  */
 abstract class UrlRequestBase extends ExperimentalUrlRequest {
   /**
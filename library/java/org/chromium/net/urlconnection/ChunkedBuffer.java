@@ -0,0 +1,104 @@
+package org.chromium.net.urlconnection;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * An in-memory byte sequence made of fixed size chunks, used by {@link CronetBufferedOutputStream}
+ * to buffer request bodies. Growing it never copies what was already written, and it is read back
+ * through a cursor which can be rewound.
+ *
+ * <p>Chunks are borrowed from a process-wide pool, and returned to it by {@link #release}.
+ */
+final class ChunkedBuffer {
+  // QUIC uses a read buffer of 14520 bytes, SPDY uses 2852 bytes, and normal
+  // stream uses 16384 bytes. Therefore, use 16384 for now so that an upload
+  // read rarely spans two chunks.
+  static final int CHUNK_SIZE = 16 * 1024;
+  private static final int MAX_POOLED_CHUNKS = 64;
+
+  private static final ArrayDeque<byte[]> sFreeChunks = new ArrayDeque<>();
+
+  private final ArrayList<byte[]> mChunks = new ArrayList<>();
+  private int mSize;
+  // Position of the read cursor.
+  private int mReadPosition;
+
+  /**
+   * Returns the number of bytes written.
+   */
+  int size() { return mSize; }
+
+  void write(int oneByte) {
+    int offset = mSize % CHUNK_SIZE;
+    if (offset == 0) {
+      mChunks.add(acquireChunk());
+    }
+    mChunks.get(mChunks.size() - 1)[offset] = (byte)oneByte;
+    mSize++;
+  }
+
+  void write(byte[] buffer, int offset, int count) {
+    while (count > 0) {
+      int chunkOffset = mSize % CHUNK_SIZE;
+      if (chunkOffset == 0) {
+        mChunks.add(acquireChunk());
+      }
+      int length = Math.min(count, CHUNK_SIZE - chunkOffset);
+      System.arraycopy(buffer, offset, mChunks.get(mChunks.size() - 1), chunkOffset, length);
+      mSize += length;
+      offset += length;
+      count -= length;
+    }
+  }
+
+  /**
+   * Copies as many bytes as fit into {@code byteBuffer} from the read cursor, and advances it.
+   * Returns the number of bytes copied.
+   */
+  int read(ByteBuffer byteBuffer) {
+    int copied = 0;
+    while (byteBuffer.hasRemaining() && mReadPosition < mSize) {
+      int chunkOffset = mReadPosition % CHUNK_SIZE;
+      int length = Math.min(byteBuffer.remaining(),
+                            Math.min(CHUNK_SIZE - chunkOffset, mSize - mReadPosition));
+      byteBuffer.put(mChunks.get(mReadPosition / CHUNK_SIZE), chunkOffset, length);
+      mReadPosition += length;
+      copied += length;
+    }
+    return copied;
+  }
+
+  /**
+   * Moves the read cursor back to the first byte.
+   */
+  void rewind() { mReadPosition = 0; }
+
+  /**
+   * Returns the chunks to the pool. The buffer is empty afterwards.
+   */
+  void release() {
+    synchronized (sFreeChunks) {
+      for (byte[] chunk : mChunks) {
+        if (sFreeChunks.size() >= MAX_POOLED_CHUNKS) {
+          break;
+        }
+        sFreeChunks.addFirst(chunk);
+      }
+    }
+    mChunks.clear();
+    mSize = 0;
+    mReadPosition = 0;
+  }
+
+  private static byte[] acquireChunk() {
+    synchronized (sFreeChunks) {
+      byte[] chunk = sFreeChunks.pollFirst();
+      if (chunk != null) {
+        return chunk;
+      }
+    }
+    return new byte[CHUNK_SIZE];
+  }
+}
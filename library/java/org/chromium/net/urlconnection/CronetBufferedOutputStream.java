@@ -13,16 +13,12 @@ import org.chromium.net.UploadDataSink;
  * nor {@link CronetHttpURLConnection#setChunkedStreamingMode} is set.
  */
 final class CronetBufferedOutputStream extends CronetOutputStream {
-  // QUIC uses a read buffer of 14520 bytes, SPDY uses 2852 bytes, and normal
-  // stream uses 16384 bytes. Therefore, use 16384 for now to avoid growing
-  // the buffer too many times.
-  private static final int INITIAL_BUFFER_SIZE = 16384;
   // If content length is not passed in the constructor, this is -1.
   private final int mInitialContentLength;
   private final CronetHttpURLConnection mConnection;
   private final UploadDataProvider mUploadDataProvider = new UploadDataProviderImpl();
   // Internal buffer that is used to buffer the request body.
-  private ByteBuffer mBuffer;
+  private final ChunkedBuffer mBuffer = new ChunkedBuffer();
   private boolean mConnected;
 
   /**
@@ -46,7 +42,6 @@ final class CronetBufferedOutputStream extends CronetOutputStream {
     }
     mConnection = connection;
     mInitialContentLength = (int)contentLength;
-    mBuffer = ByteBuffer.allocate(mInitialContentLength);
   }
 
   /**
@@ -60,29 +55,27 @@ final class CronetBufferedOutputStream extends CronetOutputStream {
 
     mConnection = connection;
     mInitialContentLength = -1;
-    // Buffering without knowing content-length.
-    mBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
   }
 
   @Override
   public void write(int oneByte) throws IOException {
     checkNotClosed();
     ensureCanWrite(1);
-    mBuffer.put((byte)oneByte);
+    mBuffer.write(oneByte);
   }
 
   @Override
   public void write(byte[] buffer, int offset, int count) throws IOException {
     checkNotClosed();
     ensureCanWrite(count);
-    mBuffer.put(buffer, offset, count);
+    mBuffer.write(buffer, offset, count);
   }
 
   /**
    * Ensures that {@code count} bytes can be written to the internal buffer.
    */
   private void ensureCanWrite(int count) throws IOException {
-    if (mInitialContentLength != -1 && mBuffer.position() + count > mInitialContentLength) {
+    if (mInitialContentLength != -1 && mBuffer.size() + count > mInitialContentLength) {
       // Error message is to match that of the default implementation.
       throw new ProtocolException("exceeded content-length limit of " + mInitialContentLength +
                                   " bytes");
@@ -91,19 +84,6 @@ final class CronetBufferedOutputStream extends CronetOutputStream {
       throw new IllegalStateException("Use setFixedLengthStreamingMode() or "
                                       + "setChunkedStreamingMode() for writing after connect");
     }
-    if (mInitialContentLength != -1) {
-      // If mInitialContentLength is known, the buffer should not grow.
-      return;
-    }
-    if (mBuffer.limit() - mBuffer.position() > count) {
-      // If there is enough capacity, the buffer should not grow.
-      return;
-    }
-    int afterSize = Math.max(mBuffer.capacity() * 2, mBuffer.capacity() + count);
-    ByteBuffer newByteBuffer = ByteBuffer.allocate(afterSize);
-    mBuffer.flip();
-    newByteBuffer.put(mBuffer);
-    mBuffer = newByteBuffer;
   }
 
   // Below are CronetOutputStream implementations:
@@ -114,17 +94,23 @@ final class CronetBufferedOutputStream extends CronetOutputStream {
   @Override
   void setConnected() throws IOException {
     mConnected = true;
-    if (mBuffer.position() < mInitialContentLength) {
+    if (mBuffer.size() < mInitialContentLength) {
       throw new ProtocolException("Content received is less than Content-Length");
     }
-    // Flip the buffer to prepare it for UploadDataProvider read calls.
-    mBuffer.flip();
   }
 
   @Override
   void checkReceivedEnoughContent() throws IOException {
-    // Already checked in setConnected. Skip the check here, since mBuffer
-    // might be flipped.
+    // Already checked in setConnected.
+  }
+
+  /**
+   * Also returns the request body's chunks to the pool, since it won't be read anymore.
+   */
+  @Override
+  void setRequestCompleted(IOException exception) {
+    super.setRequestCompleted(exception);
+    mBuffer.release();
   }
 
   @Override
@@ -141,27 +127,20 @@ final class CronetBufferedOutputStream extends CronetOutputStream {
       // TODO(xunjieli): Think of a less fragile way, since getLength() can be
       // potentially called in other places in the future.
       if (mInitialContentLength == -1) {
-        // Account for the fact that setConnected() flip()s mBuffer.
-        return mConnected ? mBuffer.limit() : mBuffer.position();
+        return mBuffer.size();
       }
       return mInitialContentLength;
     }
 
     @Override
     public void read(UploadDataSink uploadDataSink, ByteBuffer byteBuffer) {
-      final int availableSpace = byteBuffer.remaining();
-      if (availableSpace < mBuffer.remaining()) {
-        byteBuffer.put(mBuffer.array(), mBuffer.position(), availableSpace);
-        mBuffer.position(mBuffer.position() + availableSpace);
-      } else {
-        byteBuffer.put(mBuffer);
-      }
+      mBuffer.read(byteBuffer);
       uploadDataSink.onReadSucceeded(false);
     }
 
     @Override
     public void rewind(UploadDataSink uploadDataSink) {
-      mBuffer.position(0);
+      mBuffer.rewind();
       uploadDataSink.onRewindSucceeded();
     }
   }
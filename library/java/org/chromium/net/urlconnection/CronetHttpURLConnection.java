@@ -58,7 +58,7 @@ public final class CronetHttpURLConnection extends HttpURLConnection {
     super(url);
     mCronetEngine = cronetEngine;
     mMessageLoop = new MessageLoop();
-    mInputStream = new CronetInputStream(this);
+    mInputStream = new CronetInputStream(this, DirectBufferPool.forEngine(cronetEngine));
     mRequestHeaders = new ArrayList<Pair<String, String>>();
   }
 
@@ -454,6 +454,26 @@ public final class CronetHttpURLConnection extends HttpURLConnection {
     mMessageLoop.loop(getReadTimeout());
   }
 
+  /**
+   * Used by {@link CronetInputStream} to size its read buffer. Returns the response's
+   * Content-Length, or -1 if it is missing or invalid. This should only be called after the
+   * response headers are received.
+   */
+  long getContentLengthHint() {
+    if (mResponseInfo == null) {
+      return -1;
+    }
+    List<String> values = getAllHeaders().get(CONTENT_LENGTH);
+    if (values == null || values.isEmpty()) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(values.get(values.size() - 1).trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
   /**
    * Sets {@link TrafficStats} tag to use when accounting socket traffic caused by
    * this request. See {@link TrafficStats} for more information. If no tag is
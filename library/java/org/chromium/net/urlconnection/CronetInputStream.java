@@ -7,15 +7,30 @@ import java.nio.ByteBuffer;
 /**
  * An InputStream that is used by {@link CronetHttpURLConnection} to request
  * data from the network stack as needed.
+ *
+ * <p>The read buffer is borrowed from a {@link DirectBufferPool}, and sized from the response's
+ * Content-Length and the size of the chunks actually received: it grows while reads fill it, and
+ * shrinks while they leave it mostly empty.
  */
 final class CronetInputStream extends InputStream {
   private final CronetHttpURLConnection mHttpURLConnection;
+  private final DirectBufferPool mBufferPool;
   // Indicates whether listener's onSucceeded or onFailed callback is invoked.
   private boolean mResponseDataCompleted;
   private ByteBuffer mBuffer;
   private IOException mException;
+  // Whether mBuffer has been handed to the network stack by a read that didn't complete.
+  private boolean mReadPending;
+  // Capacity of the buffer to use for the next read, 0 until the first read.
+  private int mNextBufferSize;
+  // Number of consecutive reads that used less than a quarter of the buffer.
+  private int mSmallReadCount;
+  // Bytes left to receive according to Content-Length, or -1 if unknown.
+  private long mRemainingContentLength = -1;
 
+  // Used when the response size is unknown.
   private static final int READ_BUFFER_SIZE = 32 * 1024;
+  private static final int SMALL_READS_BEFORE_SHRINKING = 2;
 
   /**
    * Constructs a CronetInputStream.
@@ -23,7 +38,18 @@ final class CronetInputStream extends InputStream {
    *            with this InputStream.
    */
   public CronetInputStream(CronetHttpURLConnection httpURLConnection) {
+    this(httpURLConnection, new DirectBufferPool());
+  }
+
+  /**
+   * Constructs a CronetInputStream.
+   * @param httpURLConnection the CronetHttpURLConnection that is associated
+   *            with this InputStream.
+   * @param bufferPool the pool to borrow the read buffer from.
+   */
+  CronetInputStream(CronetHttpURLConnection httpURLConnection, DirectBufferPool bufferPool) {
     mHttpURLConnection = httpURLConnection;
+    mBufferPool = bufferPool;
   }
 
   @Override
@@ -76,7 +102,23 @@ final class CronetInputStream extends InputStream {
   void setResponseDataCompleted(IOException exception) {
     mException = exception;
     mResponseDataCompleted = true;
-    // Nothing else to read, so can free the buffer.
+    // Nothing else to read, so can free the buffer. The network stack is done with a buffer that a
+    // successful request was reading into, but not necessarily with one of a failed or canceled
+    // request: that one is left to the garbage collector.
+    if (exception == null) {
+      mReadPending = false;
+      releaseBuffer();
+    }
+    mBuffer = null;
+  }
+
+  /**
+   * Returns the read buffer to the pool. Doesn't cancel the request, as the connection's {@link
+   * CronetHttpURLConnection#disconnect} is responsible for that.
+   */
+  @Override
+  public void close() throws IOException {
+    releaseBuffer();
     mBuffer = null;
   }
 
@@ -88,23 +130,73 @@ final class CronetInputStream extends InputStream {
       return;
     }
     if (!hasUnreadData()) {
-      // Allocate read buffer if needed.
+      if (mNextBufferSize == 0) {
+        long contentLength = mHttpURLConnection.getContentLengthHint();
+        if (contentLength > 0) {
+          mRemainingContentLength = contentLength;
+          mNextBufferSize = DirectBufferPool.bufferSizeFor(contentLength);
+        } else {
+          mNextBufferSize = READ_BUFFER_SIZE;
+        }
+      }
+      // Borrow a read buffer of the desired size if needed.
+      if (mBuffer != null && mBuffer.capacity() != mNextBufferSize) {
+        releaseBuffer();
+        mBuffer = null;
+      }
       if (mBuffer == null) {
-        mBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        mBuffer = mBufferPool.acquire(mNextBufferSize);
       }
       mBuffer.clear();
 
       // Requests more data from CronetHttpURLConnection.
-      mHttpURLConnection.getMoreData(mBuffer);
+      ByteBuffer buffer = mBuffer;
+      mReadPending = true;
+      mHttpURLConnection.getMoreData(buffer);
+      mReadPending = false;
       if (mException != null) {
         throw mException;
       }
       if (mBuffer != null) {
         mBuffer.flip();
+        adaptBufferSize(mBuffer.limit(), mBuffer.capacity());
       }
     }
   }
 
+  /**
+   * Picks the size of the next read's buffer from a read of {@code bytesRead} bytes into a buffer
+   * of {@code capacity} bytes.
+   */
+  private void adaptBufferSize(int bytesRead, int capacity) {
+    if (mRemainingContentLength >= 0) {
+      // The body may be larger than its Content-Length if it is decompressed.
+      mRemainingContentLength = Math.max(0, mRemainingContentLength - bytesRead);
+    }
+    int nextBufferSize = capacity;
+    if (bytesRead == capacity) {
+      mSmallReadCount = 0;
+      nextBufferSize = DirectBufferPool.bufferSizeFor(2L * capacity);
+    } else if (bytesRead < capacity / 4 && ++mSmallReadCount >= SMALL_READS_BEFORE_SHRINKING) {
+      mSmallReadCount = 0;
+      nextBufferSize = DirectBufferPool.bufferSizeFor(capacity / 2);
+    }
+    if (mRemainingContentLength > 0) {
+      nextBufferSize =
+          Math.min(nextBufferSize, DirectBufferPool.bufferSizeFor(mRemainingContentLength));
+    }
+    mNextBufferSize = nextBufferSize;
+  }
+
+  /**
+   * Returns {@link #mBuffer} to the pool, unless the network stack may still write into it.
+   */
+  private void releaseBuffer() {
+    if (mBuffer != null && !mReadPending) {
+      mBufferPool.release(mBuffer);
+    }
+  }
+
   /**
    * Returns whether {@link #mBuffer} has unread data.
    */
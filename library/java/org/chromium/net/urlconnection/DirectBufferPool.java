@@ -0,0 +1,96 @@
+package org.chromium.net.urlconnection;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.chromium.net.CronetEngine;
+
+/**
+ * A pool of direct {@link ByteBuffer}s, shared by the {@link CronetInputStream}s of an engine.
+ *
+ * <p>Buffer capacities are powers of two between {@link #MIN_BUFFER_SIZE} and
+ * {@link #MAX_BUFFER_SIZE}. Only a few buffers of each capacity are retained, any released beyond
+ * that are left to the garbage collector.
+ */
+final class DirectBufferPool {
+  static final int MIN_BUFFER_SIZE = 4 * 1024;
+  static final int MAX_BUFFER_SIZE = 256 * 1024;
+  private static final int MAX_POOLED_BUFFERS_PER_SIZE = 2;
+
+  private static final Map<CronetEngine, DirectBufferPool> sEnginePools = new WeakHashMap<>();
+
+  private final Object mLock = new Object();
+  // Indexed by the base 2 logarithm of the capacity relative to MIN_BUFFER_SIZE.
+  private final ArrayDeque<ByteBuffer>[] mBuffers;
+
+  @SuppressWarnings("unchecked")
+  DirectBufferPool() {
+    int sizeCount = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE / MIN_BUFFER_SIZE) + 1;
+    mBuffers = new ArrayDeque[sizeCount];
+    for (int i = 0; i < sizeCount; i++) {
+      mBuffers[i] = new ArrayDeque<>(MAX_POOLED_BUFFERS_PER_SIZE);
+    }
+  }
+
+  /**
+   * Returns the pool shared by the connections of {@code cronetEngine}.
+   */
+  static DirectBufferPool forEngine(CronetEngine cronetEngine) {
+    synchronized (sEnginePools) {
+      DirectBufferPool pool = sEnginePools.get(cronetEngine);
+      if (pool == null) {
+        pool = new DirectBufferPool();
+        sEnginePools.put(cronetEngine, pool);
+      }
+      return pool;
+    }
+  }
+
+  /**
+   * Returns the capacity of the buffers that {@link #acquire} returns for {@code size}: the
+   * smallest power of two not smaller than {@code size}, clamped to the supported range.
+   */
+  static int bufferSizeFor(long size) {
+    if (size <= MIN_BUFFER_SIZE) {
+      return MIN_BUFFER_SIZE;
+    }
+    if (size >= MAX_BUFFER_SIZE) {
+      return MAX_BUFFER_SIZE;
+    }
+    return Integer.highestOneBit((int)size - 1) << 1;
+  }
+
+  /**
+   * Returns a cleared direct buffer with a capacity of {@code bufferSizeFor(size)}.
+   */
+  ByteBuffer acquire(long size) {
+    int capacity = bufferSizeFor(size);
+    ByteBuffer buffer;
+    synchronized (mLock) {
+      buffer = mBuffers[indexOf(capacity)].pollFirst();
+    }
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(capacity);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Returns {@code buffer} to the pool. It must have been obtained from {@link #acquire}, and
+   * must not be used by the caller, nor by the network stack, anymore.
+   */
+  void release(ByteBuffer buffer) {
+    ArrayDeque<ByteBuffer> buffers = mBuffers[indexOf(buffer.capacity())];
+    synchronized (mLock) {
+      if (buffers.size() < MAX_POOLED_BUFFERS_PER_SIZE) {
+        buffers.addFirst(buffer);
+      }
+    }
+  }
+
+  private static int indexOf(int capacity) {
+    return Integer.numberOfTrailingZeros(capacity / MIN_BUFFER_SIZE);
+  }
+}
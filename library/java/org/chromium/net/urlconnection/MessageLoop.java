@@ -3,17 +3,49 @@ package org.chromium.net.urlconnection;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.SocketTimeoutException;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A MessageLoop class for use in {@link CronetHttpURLConnection}.
+ *
+ * <p>Tasks are posted by any number of threads, but only run by the thread calling {@link #loop}.
+ * The queue is therefore a multi-producer, single-consumer queue of fixed size chunks: posting a
+ * task is a single atomic increment plus a store, and a chunk is only allocated every
+ * {@link #CHUNK_SIZE} tasks. The looping thread parks when the queue is empty, and producers only
+ * pay for an unpark when it actually did.
  */
 final class MessageLoop implements Executor {
-  private final BlockingQueue<Runnable> mQueue;
+  private static final int CHUNK_SIZE = 32;
+  // Number of times the looping thread polls an empty queue before parking. Callbacks typically
+  // arrive right after the looping thread started waiting, spinning avoids a park/unpark handoff.
+  // Spinning is pointless on a single CPU, as the producer can't run meanwhile.
+  private static final int SPINS_BEFORE_PARKING =
+      Runtime.getRuntime().availableProcessors() > 1 ? 64 : 0;
+
+  private static final class Chunk {
+    final long mBase;
+    final AtomicReferenceArray<Runnable> mSlots = new AtomicReferenceArray<>(CHUNK_SIZE);
+    final AtomicReference<Chunk> mNext = new AtomicReference<>();
+
+    Chunk(long base) { mBase = base; }
+  }
+
+  // Index that the next posted task is stored at.
+  private final AtomicLong mTail = new AtomicLong();
+  // A chunk from which producers look up the chunk of their index. Its base is never greater than
+  // an index that has not been claimed yet.
+  private final AtomicReference<Chunk> mProducerChunk;
+  // Only accessed by the looping thread.
+  private Chunk mHeadChunk;
+  private long mHead;
+  // The looping thread, while it is parked or about to park.
+  private final AtomicReference<Thread> mWaiter = new AtomicReference<>();
 
   // Indicates whether this message loop is currently running.
   private boolean mLoopRunning;
@@ -34,7 +66,10 @@ final class MessageLoop implements Executor {
   private static final long INVALID_THREAD_ID = -1;
   private long mThreadId = INVALID_THREAD_ID;
 
-  MessageLoop() { mQueue = new LinkedBlockingQueue<Runnable>(); }
+  MessageLoop() {
+    mHeadChunk = new Chunk(0);
+    mProducerChunk = new AtomicReference<>(mHeadChunk);
+  }
 
   private boolean calledOnValidThread() {
     if (mThreadId == INVALID_THREAD_ID) {
@@ -53,22 +88,67 @@ final class MessageLoop implements Executor {
    * @throws InterruptedIOException
    */
   private Runnable take(boolean useTimeout, long timeoutNano) throws InterruptedIOException {
-    Runnable task = null;
-    try {
-      if (!useTimeout) {
-        task = mQueue.take(); // Blocks if the queue is empty.
+    long deadlineNano = System.nanoTime() + timeoutNano;
+    int spins = SPINS_BEFORE_PARKING;
+    while (true) {
+      if (Thread.interrupted()) {
+        InterruptedIOException exception = new InterruptedIOException();
+        exception.initCause(new InterruptedException());
+        throw exception;
+      }
+      Runnable task = poll();
+      if (task != null) {
+        return task;
+      }
+      long remainingNano = deadlineNano - System.nanoTime();
+      if (useTimeout && remainingNano <= 0) {
+        // This will terminate the loop.
+        throw new SocketTimeoutException();
+      }
+      if (spins > 0) {
+        spins--;
+        continue;
+      }
+      Thread thread = Thread.currentThread();
+      mWaiter.set(thread);
+      // Re-check after publishing the waiter: a task posted before that would not unpark us.
+      task = poll();
+      if (task != null) {
+        mWaiter.lazySet(null);
+        return task;
+      }
+      if (useTimeout) {
+        LockSupport.parkNanos(this, remainingNano);
       } else {
-        // poll returns null upon timeout.
-        task = mQueue.poll(timeoutNano, TimeUnit.NANOSECONDS);
+        LockSupport.park(this);
       }
-    } catch (InterruptedException e) {
-      InterruptedIOException exception = new InterruptedIOException();
-      exception.initCause(e);
-      throw exception;
+      mWaiter.lazySet(null);
     }
-    if (task == null) {
-      // This will terminate the loop.
-      throw new SocketTimeoutException();
+  }
+
+  /**
+   * Returns the task at the head of the queue, or {@code null} if there is none. Only called by
+   * the looping thread.
+   */
+  private Runnable poll() {
+    if (mHead >= mTail.get()) {
+      return null;
+    }
+    int offset = (int)(mHead - mHeadChunk.mBase);
+    if (offset == CHUNK_SIZE) {
+      Chunk next = mHeadChunk.mNext.get();
+      if (next == null) {
+        // The producer of the next task hasn't linked its chunk yet.
+        return null;
+      }
+      mHeadChunk = next;
+      offset = 0;
+    }
+    // A null slot means its producer has claimed the index but not stored the task yet.
+    Runnable task = mHeadChunk.mSlots.get(offset);
+    if (task != null) {
+      mHeadChunk.mSlots.lazySet(offset, null);
+      mHead++;
     }
     return task;
   }
@@ -143,12 +223,28 @@ final class MessageLoop implements Executor {
     if (task == null) {
       throw new IllegalArgumentException();
     }
-    try {
-      mQueue.put(task);
-    } catch (InterruptedException e) {
-      // In theory this exception won't happen, since we have an blocking
-      // queue with Integer.MAX_Value capacity, put() call will not block.
-      throw new RejectedExecutionException(e);
+    // The chunk must be read before claiming an index, so that its base can't be past the index.
+    Chunk chunk = mProducerChunk.get();
+    long index = mTail.getAndIncrement();
+    while (index >= chunk.mBase + CHUNK_SIZE) {
+      Chunk next = chunk.mNext.get();
+      if (next == null) {
+        next = new Chunk(chunk.mBase + CHUNK_SIZE);
+        if (!chunk.mNext.compareAndSet(null, next)) {
+          next = chunk.mNext.get();
+        }
+      }
+      chunk = next;
+    }
+    Chunk producerChunk = mProducerChunk.get();
+    if (producerChunk.mBase < chunk.mBase) {
+      // Losing this race only means a later producer walks a bit further.
+      mProducerChunk.compareAndSet(producerChunk, chunk);
+    }
+    chunk.mSlots.set((int)(index - chunk.mBase), task);
+    Thread waiter = mWaiter.get();
+    if (waiter != null && mWaiter.compareAndSet(waiter, null)) {
+      LockSupport.unpark(waiter);
     }
   }
 
@@ -22,7 +22,8 @@ interface Engine {
   fun terminate()
 
   /**
-   * Flush the stats sinks outside of a flushing interval.
+   * Flush the stats sinks outside of a flushing interval, after forwarding to the engine the values
+   * that timers and distributions haven't forwarded yet.
    * Note: stat flushing is done asynchronously, this function will never block.
    * This is a noop if called before the underlying EnvoyEngine has started.
    */
@@ -38,4 +39,24 @@ interface Engine {
    * Drain all connections owned by this Engine.
    */
   fun drainConnections()
+
+  /**
+   * Open connections to an origin ahead of requests to it, so that these don't wait for DNS
+   * resolution, nor for TCP and TLS handshakes. Requests reusing such a connection report
+   * `socketReused` in their final stream intel.
+   *
+   * Idempotent: only the connections the origin is missing are opened, a single one if HTTP/2 is
+   * negotiated, and never more than the maximum number of connections per host.
+   *
+   * @param scheme The origin's scheme, http or https.
+   * @param authority The origin's host, with a port if it isn't the scheme's default.
+   * @param numConnections The number of connections the origin should have open.
+   * @param upstreamHttpProtocol The protocol requests to the origin force upstream, if any.
+   */
+  fun preconnect(
+    scheme: String,
+    authority: String,
+    numConnections: Int = 1,
+    upstreamHttpProtocol: UpstreamHttpProtocol? = null
+  )
 }
@@ -41,6 +41,7 @@ open class EngineBuilder(
   private var dnsPreresolveHostnames = "[]"
   private var enableHappyEyeballs = false
   private var enableInterfaceBinding = false
+  private var enableRequestCoalescing = false
   private var h2ConnectionKeepaliveIdleIntervalMilliseconds = 100000000
   private var h2ConnectionKeepaliveTimeoutSeconds = 10
   private var h2RawDomains = listOf<String>()
@@ -222,6 +223,20 @@ open class EngineBuilder(
     return this
   }
 
+  /**
+   * Specify whether identical in-flight GET requests share a single upstream stream. While a
+   * bodiless GET is waiting for its response headers, later streams with the same headers and
+   * flow control mode join it rather than opening a new stream.
+   *
+   * @param enableRequestCoalescing whether to coalesce identical in-flight GET requests.
+   *
+   * @return This builder.
+   */
+  fun enableRequestCoalescing(enableRequestCoalescing: Boolean): EngineBuilder {
+    this.enableRequestCoalescing = enableRequestCoalescing
+    return this
+  }
+
   /**
    * Add a rate at which to ping h2 connections on new stream creation if the connection has
    * sat idle.
@@ -323,6 +338,28 @@ open class EngineBuilder(
       return this
     }
 
+  /**
+   * Add an HTTP filter factory used to create platform filters for streams sent by this client,
+   * which are only called for the events given. Other events continue through the filter chain
+   * without calling into the filter, sparing the copy of their headers or data.
+   *
+   * A filter that stops iteration on an event must declare the events that follow it, so that it
+   * can resume iteration. Asynchronous filters are called for all the events of their direction.
+   *
+   * @param name Custom name to use for this filter factory. Useful for having
+   *             more meaningful trace logs, but not required. Should be unique
+   *             per factory registered.
+   * @param events the events the filters handle.
+   * @param factory closure returning an instantiated filter.
+   *
+   * @return this builder.
+   */
+  fun addPlatformFilter(name: String, events: Set<FilterEvent>, factory: () -> Filter):
+    EngineBuilder {
+      this.platformFilterChain.add(FilterFactory(name, factory, events))
+      return this
+    }
+
   /**
    * Add an HTTP filter factory used to create platform filters for streams sent by this client.
    *
@@ -499,14 +536,16 @@ open class EngineBuilder(
           engineType(),
           engineConfiguration,
           configuration.yaml,
-          logLevel
+          logLevel,
+          enableRequestCoalescing
         )
       }
       is Standard -> {
         EngineImpl(
           engineType(),
           engineConfiguration,
-          logLevel
+          logLevel,
+          enableRequestCoalescing
         )
       }
     }
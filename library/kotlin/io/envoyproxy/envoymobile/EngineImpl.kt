@@ -2,6 +2,7 @@ package io.envoyproxy.envoymobile
 
 import io.envoyproxy.envoymobile.engine.EnvoyConfiguration
 import io.envoyproxy.envoymobile.engine.EnvoyEngine
+import io.envoyproxy.envoymobile.engine.EnvoyHTTPStreamCoalescer
 
 /**
  * An implementation of {@link Engine}.
@@ -10,20 +11,25 @@ class EngineImpl constructor(
   internal val envoyEngine: EnvoyEngine,
   internal val envoyConfiguration: EnvoyConfiguration,
   internal val configurationYAML: String?,
-  internal val logLevel: LogLevel
+  internal val logLevel: LogLevel,
+  internal val requestCoalescingEnabled: Boolean = false
 ) : Engine {
 
   private val streamClient: StreamClient
-  private val pulseClient: PulseClient
+  private val pulseClient: PulseClientImpl
 
   constructor(
     envoyEngine: EnvoyEngine,
     envoyConfiguration: EnvoyConfiguration,
-    logLevel: LogLevel = LogLevel.INFO
-  ) : this(envoyEngine, envoyConfiguration, null, logLevel)
+    logLevel: LogLevel = LogLevel.INFO,
+    requestCoalescingEnabled: Boolean = false
+  ) : this(envoyEngine, envoyConfiguration, null, logLevel, requestCoalescingEnabled)
 
   init {
-    streamClient = StreamClientImpl(envoyEngine)
+    streamClient = StreamClientImpl(
+      envoyEngine,
+      if (requestCoalescingEnabled) EnvoyHTTPStreamCoalescer(envoyEngine) else null
+    )
     pulseClient = PulseClientImpl(envoyEngine)
     if (configurationYAML != null) {
       envoyEngine.runWithTemplate(configurationYAML, envoyConfiguration, logLevel.level)
@@ -45,6 +51,7 @@ class EngineImpl constructor(
   }
 
   override fun flushStats() {
+    pulseClient.forwardPendingValues()
     envoyEngine.flushStats()
   }
 
@@ -55,4 +62,35 @@ class EngineImpl constructor(
   override fun drainConnections() {
     envoyEngine.drainConnections()
   }
+
+  override fun preconnect(
+    scheme: String,
+    authority: String,
+    numConnections: Int,
+    upstreamHttpProtocol: UpstreamHttpProtocol?
+  ) {
+    require(scheme == "http" || scheme == "https") { "unsupported scheme $scheme" }
+    require(numConnections > 0) { "numConnections must be positive" }
+    // Mirrors the routes: h2 raw domains always use HTTP/2 over TLS, other http origins are never
+    // upgraded.
+    val forceHttp2 = isH2RawDomain(authority) ||
+      (scheme == "https" && upstreamHttpProtocol == UpstreamHttpProtocol.HTTP2)
+    envoyEngine.preconnect(
+      scheme,
+      authority,
+      forceHttp2,
+      minOf(numConnections, envoyConfiguration.maxConnectionsPerHost)
+    )
+  }
+
+  private fun isH2RawDomain(authority: String): Boolean {
+    // Drop the port, if any; the brackets of an IPv6 literal are kept.
+    val portSeparator = authority.lastIndexOf(':')
+    val host = if (portSeparator > authority.lastIndexOf(']')) {
+      authority.substring(0, portSeparator)
+    } else {
+      authority
+    }
+    return envoyConfiguration.h2RawDomains.any { it.equals(host, ignoreCase = true) }
+  }
 }
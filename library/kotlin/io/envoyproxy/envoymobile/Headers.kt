@@ -8,6 +8,9 @@ open class Headers {
   @Suppress("MemberNameEqualsClassName")
   val headers: Map<String, List<String>>
 
+  // The changes made to the headers these were built from, if any.
+  internal var change: HeadersChange? = null
+
   /**
    * Internal constructor used by builders.
    *
@@ -17,6 +20,15 @@ open class Headers {
     this.headers = headers
   }
 
+  /**
+   * The changes made to the given headers to build these.
+   *
+   * @param base: The headers to compare with.
+   *
+   * @return HeadersChange?, The changes, or null if these weren't built from `base`.
+   */
+  internal fun changeFrom(base: Headers): HeadersChange? = change?.takeIf { it.isFrom(base) }
+
   /**
    * Get the value for the provided header name.
    *
@@ -1,21 +1,41 @@
 package io.envoyproxy.envoymobile
 
+import java.lang.ref.WeakReference
+
 /*
  * Base builder class used to construct `Headers` instances.
  * See `{Request|Response}HeadersBuilder` for usage.
  */
 open class HeadersBuilder {
-  protected val headers: MutableMap<String, MutableList<String>>
+  // The headers as of the last time they were built, and the changes made since, null for the
+  // headers removed. Building applies the changes to a new map sharing the unchanged headers.
+  private var built: PersistentHeaderMap
+  private val pending = LinkedHashMap<String, List<String>?>()
+  // For builders created from existing headers, those headers, and the names of the headers
+  // changed since mapped to whether their values were replaced rather than only appended to.
+  private var base: Headers? = null
+  private var changes: MutableMap<String, Boolean>? = null
 
   /**
    * Instantiate a new builder, only used by child classes.
    *
    * @param headers: The headers to start with.
    */
-  protected constructor(headers: MutableMap<String, MutableList<String>>) {
-    this.headers = headers
+  protected constructor(headers: Map<String, List<String>>) {
+    this.built = PersistentHeaderMap.from(headers)
   }
 
+  /**
+   * The current headers, to build `Headers` from. Unchanged headers are shared with the headers
+   * the builder was created from.
+   */
+  protected val headers: Map<String, List<String>>
+    get() {
+      built = built.with(pending)
+      pending.clear()
+      return built
+    }
+
   /**
    * Append a value to the header name.
    *
@@ -28,7 +48,8 @@ open class HeadersBuilder {
     if (isRestrictedHeader(name)) {
       return this
     }
-    headers.getOrPut(name) { mutableListOf<String>() }.add(value)
+    pending[name] = currentValues(name).orEmpty() + value
+    changes?.let { if (name !in it) it[name] = false }
     return this
   }
 
@@ -44,7 +65,8 @@ open class HeadersBuilder {
     if (isRestrictedHeader(name)) {
       return this
     }
-    headers[name] = value
+    pending[name] = value.toList()
+    changes?.put(name, true)
     return this
   }
 
@@ -59,7 +81,8 @@ open class HeadersBuilder {
     if (isRestrictedHeader(name)) {
       return this
     }
-    headers.remove(name)
+    pending[name] = null
+    changes?.put(name, true)
     return this
   }
 
@@ -72,10 +95,67 @@ open class HeadersBuilder {
    * @return HeadersBuilder, This builder.
    */
   internal open fun internalSet(name: String, value: MutableList<String>): HeadersBuilder {
-    headers[name] = value
+    pending[name] = value.toList()
+    changes?.put(name, true)
     return this
   }
 
+  /**
+   * Track the changes made by this builder to the headers it was created from.
+   *
+   * @param base: The headers the builder was created from.
+   */
+  internal fun trackChanges(base: Headers) {
+    this.base = base
+    changes = mutableMapOf()
+  }
+
+  /**
+   * The changes made so far by this builder to the headers it was created from, from which only
+   * the headers touched can be updated rather than all of them. Captured when building, so that
+   * later changes to the builder don't apply to the headers already built.
+   *
+   * @return HeadersChange?, The changes, or null if the builder wasn't created from headers.
+   */
+  internal fun trackedChange(): HeadersChange? {
+    val changes = this.changes ?: return null
+    val base = this.base ?: return null
+    val cleared = mutableListOf<String>()
+    val added = mutableMapOf<String, List<String>>()
+    for ((name, replaced) in changes) {
+      val values = currentValues(name).orEmpty()
+      if (replaced) {
+        cleared.add(name)
+        if (values.isNotEmpty()) {
+          added[name] = values
+        }
+      } else {
+        // Values were only appended: the existing ones are kept.
+        val appended = values.drop(base.value(name)?.size ?: 0)
+        if (appended.isNotEmpty()) {
+          added[name] = appended
+        }
+      }
+    }
+    return HeadersChange(WeakReference(base), cleared, added)
+  }
+
+  private fun currentValues(name: String): List<String>? =
+    if (pending.containsKey(name)) pending[name] else built[name]
+
   private fun isRestrictedHeader(name: String) = name.startsWith(":") ||
     name.startsWith("x-envoy-mobile")
 }
+
+/*
+ * A change to headers: the headers named in `cleared` are removed, then those in `added` are
+ * added to the headers remaining. The headers changed are only weakly referenced, to be compared
+ * with the headers a change is applied to.
+ */
+internal class HeadersChange(
+  private val base: WeakReference<Headers>,
+  val cleared: List<String>,
+  val added: Map<String, List<String>>
+) {
+  fun isFrom(headers: Headers) = base.get() === headers
+}
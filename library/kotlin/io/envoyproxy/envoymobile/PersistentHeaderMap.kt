@@ -0,0 +1,126 @@
+package io.envoyproxy.envoymobile
+
+// Number of layers of changes over the flat map of headers after which changes are applied to a
+// new flat map. It bounds the cost of lookups.
+private const val MAX_LAYERS = 8
+
+/*
+ * Immutable map of headers, shared between `Headers` and the builders created from them.
+ *
+ * Changing the map creates a new map holding only the changed headers, layered over the
+ * existing one, so that converting headers to a builder and back costs as much as the changes
+ * made rather than the number of headers. Removed headers are recorded as null values. Lookups go
+ * through the layers; iterating flattens them, from the root up, into a single map once.
+ */
+internal class PersistentHeaderMap private constructor(
+  private val parent: PersistentHeaderMap?,
+  private val layer: Map<String, List<String>?>,
+  private val layers: Int
+) : AbstractMap<String, List<String>>() {
+  // Only cached on the map iterated, so that the maps layered over don't each hold a copy.
+  private val flattened: Map<String, List<String>> by lazy {
+    if (parent == null) {
+      @Suppress("UNCHECKED_CAST")
+      layer as Map<String, List<String>>
+    } else {
+      flatten()
+    }
+  }
+
+  override val entries: Set<Map.Entry<String, List<String>>>
+    get() = flattened.entries
+
+  override val size: Int
+    get() = flattened.size
+
+  override fun get(key: String): List<String>? {
+    var map: PersistentHeaderMap? = this
+    while (map != null) {
+      if (map.layer.containsKey(key)) {
+        return map.layer[key]
+      }
+      map = map.parent
+    }
+    return null
+  }
+
+  override fun containsKey(key: String): Boolean = get(key) != null
+
+  /**
+   * Create a map with changes applied to this one, which is left unchanged.
+   *
+   * @param changes: The new values of the headers changed, null for those removed.
+   *
+   * @return PersistentHeaderMap, The changed map.
+   */
+  fun with(changes: Map<String, List<String>?>): PersistentHeaderMap {
+    if (changes.isEmpty()) {
+      return this
+    }
+    if (layers >= MAX_LAYERS) {
+      val headers = flatten()
+      applyLayer(headers, changes)
+      return PersistentHeaderMap(null, headers, 0)
+    }
+    return PersistentHeaderMap(this, LinkedHashMap(changes), layers + 1)
+  }
+
+  /*
+   * Apply the layers to a copy of the flat map at the root, from the root up to this map.
+   */
+  private fun flatten(): LinkedHashMap<String, List<String>> {
+    val changes = ArrayList<Map<String, List<String>?>>(layers)
+    var map = this
+    var parent = parent
+    while (parent != null) {
+      changes.add(map.layer)
+      map = parent
+      parent = map.parent
+    }
+    @Suppress("UNCHECKED_CAST")
+    val headers = LinkedHashMap(map.layer as Map<String, List<String>>)
+    for (index in changes.indices.reversed()) {
+      applyLayer(headers, changes[index])
+    }
+    return headers
+  }
+
+  companion object {
+    private val EMPTY = PersistentHeaderMap(null, emptyMap(), 0)
+
+    /**
+     * Get a persistent map holding the given headers. Maps that already are persistent are
+     * returned as they are; others are copied.
+     *
+     * @param headers: The headers.
+     *
+     * @return PersistentHeaderMap, The persistent map of the headers.
+     */
+    fun from(headers: Map<String, List<String>>): PersistentHeaderMap {
+      if (headers is PersistentHeaderMap) {
+        return headers
+      }
+      if (headers.isEmpty()) {
+        return EMPTY
+      }
+      val copy = LinkedHashMap<String, List<String>?>()
+      for ((name, values) in headers) {
+        copy[name] = values.toList()
+      }
+      return PersistentHeaderMap(null, copy, 0)
+    }
+
+    private fun applyLayer(
+      headers: MutableMap<String, List<String>>,
+      layer: Map<String, List<String>?>
+    ) {
+      for ((name, values) in layer) {
+        if (values == null) {
+          headers.remove(name)
+        } else {
+          headers[name] = values
+        }
+      }
+    }
+  }
+}
@@ -1,13 +1,24 @@
 package io.envoyproxy.envoymobile
 
 import io.envoyproxy.envoymobile.engine.EnvoyEngine
+import java.util.concurrent.ConcurrentHashMap
+
+// Number of timers, and of distributions, kept to be shared by name and tags.
+internal const val MAX_SHARED_HISTOGRAMS = 512
 
 /**
  * Envoy implementation of `PulseClient`.
+ *
+ * Timers and distributions are shared by name and tags, so that the values recorded under the same
+ * name are kept in the same local histogram. Once `MAX_SHARED_HISTOGRAMS` of them are kept, as
+ * happens with tags built from unbounded data, new ones are no longer shared: their values are
+ * still forwarded to the engine, but each has its own local histogram.
  */
 internal class PulseClientImpl constructor(
   internal val engine: EnvoyEngine
 ) : PulseClient {
+  private val timers = ConcurrentHashMap<Pair<String, Map<String, String>>, TimerImpl>()
+  private val distributions = ConcurrentHashMap<Pair<String, Map<String, String>>, DistributionImpl>()
 
   override fun counter(vararg elements: Element): Counter {
     return CounterImpl(engine, elements.asList())
@@ -26,18 +37,50 @@ internal class PulseClientImpl constructor(
   }
 
   override fun timer(vararg elements: Element): Timer {
-    return TimerImpl(engine, elements.asList())
+    return timer(elements.asList(), TagsBuilder().build())
   }
 
   override fun timer(vararg elements: Element, tags: Tags): Timer {
-    return TimerImpl(engine, elements.asList(), tags)
+    return timer(elements.asList(), tags)
   }
 
   override fun distribution(vararg elements: Element): Distribution {
-    return DistributionImpl(engine, elements.asList())
+    return distribution(elements.asList(), TagsBuilder().build())
   }
 
   override fun distribution(vararg elements: Element, tags: Tags): Distribution {
-    return DistributionImpl(engine, elements.asList(), tags)
+    return distribution(elements.asList(), tags)
+  }
+
+  /**
+   * Forwards the values recorded by timers and distributions which weren't forwarded to the engine
+   * yet.
+   */
+  internal fun forwardPendingValues() {
+    timers.values.forEach { it.forwardPending() }
+    distributions.values.forEach { it.forwardPending() }
+  }
+
+  private fun timer(elements: List<Element>, tags: Tags): TimerImpl {
+    val key = Pair(elements.joinToString(separator = ".") { it.value }, tags.allTags().toMap())
+    return shared(timers, key) { TimerImpl(engine, elements, tags) }
+  }
+
+  private fun distribution(elements: List<Element>, tags: Tags): DistributionImpl {
+    val key = Pair(elements.joinToString(separator = ".") { it.value }, tags.allTags().toMap())
+    return shared(distributions, key) { DistributionImpl(engine, elements, tags) }
+  }
+
+  private fun <T> shared(
+    cache: ConcurrentHashMap<Pair<String, Map<String, String>>, T>,
+    key: Pair<String, Map<String, String>>,
+    create: () -> T
+  ): T {
+    cache[key]?.let { return it }
+    val created = create()
+    if (cache.size >= MAX_SHARED_HISTOGRAMS) {
+      return created
+    }
+    return cache.putIfAbsent(key, created) ?: created
   }
 }
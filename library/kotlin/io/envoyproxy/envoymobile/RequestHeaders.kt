@@ -49,9 +49,6 @@ open class RequestHeaders : Headers {
    *
    * @return RequestHeadersBuilder, The new builder.
    */
-  fun toRequestHeadersBuilder() = RequestHeadersBuilder(
-    headers.mapValues {
-      it.value.toMutableList()
-    }.toMutableMap()
-  )
+  fun toRequestHeadersBuilder() = RequestHeadersBuilder(headers)
+    .apply { trackChanges(this@RequestHeaders) }
 }
@@ -33,7 +33,7 @@ class RequestHeadersBuilder : HeadersBuilder {
    *
    * @param headers: The headers to start with.
    */
-  internal constructor(headers: MutableMap<String, MutableList<String>>) : super(headers)
+  internal constructor(headers: Map<String, List<String>>) : super(headers)
 
   override fun add(name: String, value: String): RequestHeadersBuilder {
     super.add(name, value)
@@ -92,6 +92,6 @@ class RequestHeadersBuilder : HeadersBuilder {
    * @return RequestHeaders, New instance of request headers.
    */
   fun build(): RequestHeaders {
-    return RequestHeaders(headers)
+    return RequestHeaders(headers).also { it.change = trackedChange() }
   }
 }
@@ -0,0 +1,17 @@
+package io.envoyproxy.envoymobile
+
+import java.nio.ByteBuffer
+
+/**
+ * A request submitted as part of a batch with `StreamClient.submitBatch`.
+ *
+ * @param prototype Prototype of the request's stream, with its callbacks set.
+ * @param headers Headers of the request.
+ * @param body Body of the request, ending the stream, or null for a headers-only request. The
+ * length sent is determined as for `Stream.sendData`.
+ */
+class RequestSpec(
+  val prototype: StreamPrototype,
+  val headers: RequestHeaders,
+  val body: ByteBuffer? = null
+)
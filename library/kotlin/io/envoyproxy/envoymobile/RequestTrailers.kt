@@ -17,9 +17,5 @@ class RequestTrailers : Trailers {
    *
    * @return RequestTrailersBuilder, The new builder.
    */
-  fun toRequestTrailersBuilder() = RequestTrailersBuilder(
-    headers.mapValues {
-      it.value.toMutableList()
-    }.toMutableMap()
-  )
+  fun toRequestTrailersBuilder() = RequestTrailersBuilder(headers)
 }
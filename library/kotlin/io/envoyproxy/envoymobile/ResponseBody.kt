@@ -0,0 +1,133 @@
+package io.envoyproxy.envoymobile
+
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.nio.charset.Charset
+
+// Bodies announced as larger than this are kept as the chunks received, rather than preallocated.
+internal const val MAX_PREALLOCATED_BODY_BYTES = 8L * 1024 * 1024
+
+/**
+ * The whole body of a response, as a sequence of buffers.
+ *
+ * The buffers are the data received from the network, which isn't copied until a contiguous array
+ * is asked for with `toByteArray()`.
+ *
+ * @param size The number of bytes in the body.
+ */
+class ResponseBody internal constructor(
+  private val chunks: List<ByteBuffer>,
+  val size: Int
+) {
+  /**
+   * Read-only views of the buffers making up the body, in order. No data is copied.
+   *
+   * @return The buffers of the body.
+   */
+  fun chunks(): List<ByteBuffer> = chunks.map { it.asReadOnlyBuffer() }
+
+  /**
+   * The body as a contiguous array. Bodies received in a single buffer, as are those preallocated
+   * from their `content-length`, are returned without copying; the array must then not be
+   * modified.
+   *
+   * @return The bytes of the body.
+   */
+  fun toByteArray(): ByteArray {
+    val onlyChunk = chunks.singleOrNull()
+    if (onlyChunk != null && onlyChunk.hasArray() && onlyChunk.arrayOffset() == 0 &&
+      onlyChunk.array().size == size
+    ) {
+      return onlyChunk.array()
+    }
+    val bytes = ByteArray(size)
+    var offset = 0
+    for (chunk in chunks) {
+      val length = chunk.remaining()
+      chunk.duplicate().get(bytes, offset, length)
+      offset += length
+    }
+    return bytes
+  }
+
+  /**
+   * Writes the body to a stream, without copying it into a contiguous array first.
+   *
+   * @param output The stream to write to.
+   */
+  fun writeTo(output: OutputStream) {
+    for (chunk in chunks) {
+      if (chunk.hasArray()) {
+        output.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining())
+      } else {
+        val bytes = ByteArray(chunk.remaining())
+        chunk.duplicate().get(bytes)
+        output.write(bytes)
+      }
+    }
+  }
+
+  /**
+   * Decodes the body as a string.
+   *
+   * @param charset The charset of the body.
+   * @return The body as a string.
+   */
+  fun string(charset: Charset = Charsets.UTF_8): String = String(toByteArray(), charset)
+}
+
+/**
+ * Aggregates the data received for the body of a response.
+ *
+ * When the response headers announce the length of the body, it is received into a single array
+ * of that size: each byte is copied once, and `ResponseBody.toByteArray()` doesn't copy again.
+ * Otherwise the buffers received are kept as they are, as each holds its own array.
+ *
+ * @param contentLength The length of the body announced by the response headers, if any.
+ */
+internal class ResponseBodyBuilder(contentLength: Long?) {
+  private var preallocated: ByteArray? = contentLength
+    ?.takeIf { it in 0..MAX_PREALLOCATED_BODY_BYTES }
+    ?.let { ByteArray(it.toInt()) }
+  private var preallocatedLength = 0
+  private val chunks = mutableListOf<ByteBuffer>()
+  private var size = 0
+
+  /**
+   * Adds data received for the body. As with data sent on a `Stream`, the whole buffer is read,
+   * from its start to its capacity.
+   *
+   * @param data The data received.
+   */
+  fun add(data: ByteBuffer) {
+    val chunk = data.duplicate()
+    chunk.clear()
+    val length = chunk.remaining()
+    if (length == 0) {
+      return
+    }
+    size += length
+    val array = preallocated
+    if (array != null && preallocatedLength + length <= array.size) {
+      chunk.get(array, preallocatedLength, length)
+      preallocatedLength += length
+      return
+    }
+    if (array != null) {
+      // The body is longer than announced, which the preallocated array can't hold.
+      chunks.add(ByteBuffer.wrap(array, 0, preallocatedLength))
+      preallocated = null
+    }
+    chunks.add(chunk)
+  }
+
+  /**
+   * Builds the body from the data received.
+   *
+   * @return The body.
+   */
+  fun build(): ResponseBody {
+    val array = preallocated ?: return ResponseBody(chunks.toList(), size)
+    return ResponseBody(listOf(ByteBuffer.wrap(array, 0, preallocatedLength)), size)
+  }
+}
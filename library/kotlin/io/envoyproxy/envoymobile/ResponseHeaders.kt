@@ -23,9 +23,6 @@ class ResponseHeaders : Headers {
    *
    * @return ResponseHeadersBuilder, The new builder.
    */
-  fun toResponseHeadersBuilder() = ResponseHeadersBuilder(
-    headers.mapValues {
-      it.value.toMutableList()
-    }.toMutableMap()
-  )
+  fun toResponseHeadersBuilder() = ResponseHeadersBuilder(headers)
+    .apply { trackChanges(this@ResponseHeaders) }
 }
@@ -16,7 +16,7 @@ class ResponseHeadersBuilder : HeadersBuilder {
    *
    * @param headers: The headers to start with.
    */
-  internal constructor(headers: MutableMap<String, MutableList<String>>) : super(headers)
+  internal constructor(headers: Map<String, List<String>>) : super(headers)
 
   override fun add(name: String, value: String): ResponseHeadersBuilder {
     super.add(name, value)
@@ -59,6 +59,6 @@ class ResponseHeadersBuilder : HeadersBuilder {
    * @return ResponseHeaders, New instance of response headers.
    */
   fun build(): ResponseHeaders {
-    return ResponseHeaders(headers)
+    return ResponseHeaders(headers).also { it.change = trackedChange() }
   }
 }
@@ -17,9 +17,5 @@ class ResponseTrailers : Trailers {
    *
    * @return ResponseTrailersBuilder, The new builder.
    */
-  fun toResponseTrailersBuilder() = ResponseTrailersBuilder(
-    headers.mapValues {
-      it.value.toMutableList()
-    }.toMutableMap()
-  )
+  fun toResponseTrailersBuilder() = ResponseTrailersBuilder(headers)
 }
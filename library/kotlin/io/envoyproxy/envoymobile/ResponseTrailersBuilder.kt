@@ -15,7 +15,7 @@ class ResponseTrailersBuilder : HeadersBuilder {
    *
    * @param trailers: The trailers to start with.
    */
-  internal constructor(trailers: MutableMap<String, MutableList<String>>) : super(trailers)
+  internal constructor(trailers: Map<String, List<String>>) : super(trailers)
 
   override fun add(name: String, value: String): ResponseTrailersBuilder {
     super.add(name, value)
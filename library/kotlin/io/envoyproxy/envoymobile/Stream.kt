@@ -52,6 +52,19 @@ open class Stream(
     return this
   }
 
+  /**
+   * Send headers and close the stream with a data frame, in a single call to the engine. This is
+   * equivalent to `sendHeaders` without `endStream` followed by `close(data)`, for requests whose
+   * whole body is known upfront. The length sent is determined as for **[sendData]**.
+   *
+   * @param headers Headers to send over the stream.
+   * @param data Data with which to close the stream.
+   */
+  open fun sendHeadersAndClose(headers: RequestHeaders, data: ByteBuffer) {
+    var length = if (useByteBufferPosition) data.position() else data.capacity()
+    underlyingStream.sendHeadersAndData(headers.allHeaders(), data, length)
+  }
+
   /**
    * Close the stream with trailers.
    *
@@ -1,5 +1,9 @@
 package io.envoyproxy.envoymobile
 
+import java.nio.ByteBuffer
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
 /**
  * Client used to create HTTP streams.
  */
@@ -10,4 +14,57 @@ interface StreamClient {
    * @return The new stream prototype.
    */
   fun newStreamPrototype(): StreamPrototype
+
+  /**
+   * Send a request and receive its whole response.
+   *
+   * The headers and body are handed to the engine in a single call. The response body is kept as
+   * the buffers received, or received into a single array when its `content-length` is known,
+   * rather than copied as it grows.
+   *
+   * @param headers Headers of the request.
+   * @param body Body of the request, or null for a headers-only request. As with
+   * `Stream.sendData`, the whole capacity of the buffer is sent.
+   * @param executor Executor on which to receive callback events.
+   * @param onResponse Closure which will receive the response once it is complete.
+   * @param onError Closure which will be called if the stream fails. If the stream is canceled,
+   * neither closure is called.
+   * @return The stream, which can be used to cancel the request.
+   */
+  fun execute(
+    headers: RequestHeaders,
+    body: ByteBuffer?,
+    executor: Executor = Executors.newSingleThreadExecutor(),
+    onResponse: (response: UnaryResponse) -> Unit,
+    onError: (error: EnvoyError) -> Unit
+  ): Stream {
+    return executeUnary(this, headers, body, executor, onResponse, onError)
+  }
+
+  /**
+   * Start a stream for each request, and send its headers and body, ending it.
+   *
+   * The streams are started and their requests handed to the engine in a single call, rather than
+   * one call per stream and per request, which lowers the latency of fanning requests out. Each
+   * stream calls the callbacks of its own prototype.
+   *
+   * @param requests The requests to send.
+   * @param executor Executor on which to receive the callback events of all the streams.
+   * @return The streams, in the order of their requests.
+   */
+  fun submitBatch(
+    requests: List<RequestSpec>,
+    executor: Executor = Executors.newSingleThreadExecutor()
+  ): List<Stream> {
+    return requests.map { request ->
+      val stream = request.prototype.start(executor)
+      val body = request.body
+      if (body == null) {
+        stream.sendHeaders(request.headers, true)
+      } else {
+        stream.sendHeadersAndClose(request.headers, body)
+      }
+      stream
+    }
+  }
 }
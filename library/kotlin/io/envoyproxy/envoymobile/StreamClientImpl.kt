@@ -1,13 +1,27 @@
 package io.envoyproxy.envoymobile
 
 import io.envoyproxy.envoymobile.engine.EnvoyEngine
+import io.envoyproxy.envoymobile.engine.EnvoyHTTPStreamCoalescer
+import java.util.concurrent.Executor
 
 /**
  * Envoy implementation of `StreamClient`.
  */
 internal class StreamClientImpl constructor(
-  internal val engine: EnvoyEngine
+  internal val engine: EnvoyEngine,
+  internal val coalescer: EnvoyHTTPStreamCoalescer? = null
 ) : StreamClient {
 
-  override fun newStreamPrototype() = StreamPrototype(engine)
+  override fun newStreamPrototype() = StreamPrototype(engine, coalescer)
+
+  override fun submitBatch(requests: List<RequestSpec>, executor: Executor): List<Stream> {
+    val engineRequests = requests.map { request ->
+      // Streams which can't start as part of the batch are all started one at a time.
+      request.prototype.createBatchRequest(engine, request.headers, request.body, executor)
+        ?: return super.submitBatch(requests, executor)
+    }
+    return engine.startStreams(engineRequests).mapIndexed { index, engineStream ->
+      Stream(engineStream, requests[index].prototype.useByteBufferPosition)
+    }
+  }
 }
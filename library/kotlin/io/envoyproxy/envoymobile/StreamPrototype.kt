@@ -1,6 +1,8 @@
 package io.envoyproxy.envoymobile
 
 import io.envoyproxy.envoymobile.engine.EnvoyEngine
+import io.envoyproxy.envoymobile.engine.EnvoyHTTPStreamCoalescer
+import io.envoyproxy.envoymobile.engine.EnvoyHTTPStreamRequest
 import java.nio.ByteBuffer
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
@@ -14,9 +16,23 @@ import java.util.concurrent.Executors
  * @param engine Engine to use for starting streams.
  */
 open class StreamPrototype(private val engine: EnvoyEngine) {
+  private var coalescer: EnvoyHTTPStreamCoalescer? = null
+
+  internal constructor(
+    engine: EnvoyEngine,
+    coalescer: EnvoyHTTPStreamCoalescer?
+  ) : this(engine) {
+    this.coalescer = coalescer
+  }
+
   private val callbacks = StreamCallbacks()
   private var explicitFlowControl = false
-  private var useByteBufferPosition = false
+  // Whether `start` isn't overridden, so that a batch can start the stream in its stead.
+  private val startsEngineStream by lazy {
+    javaClass.getMethod("start", Executor::class.java).declaringClass == StreamPrototype::class.java
+  }
+  internal var useByteBufferPosition = false
+    private set
 
   /**
    * Start a new stream.
@@ -25,10 +41,8 @@ open class StreamPrototype(private val engine: EnvoyEngine) {
    * @return The new stream.
    */
   open fun start(executor: Executor = Executors.newSingleThreadExecutor()): Stream {
-    val engineStream = engine.startStream(
-      createCallbacks(executor),
-      explicitFlowControl
-    )
+    val engineStream = coalescer?.startStream(createCallbacks(executor), explicitFlowControl)
+      ?: engine.startStream(createCallbacks(executor), explicitFlowControl)
     return Stream(engineStream, useByteBufferPosition)
   }
 
@@ -173,4 +187,33 @@ open class StreamPrototype(private val engine: EnvoyEngine) {
   internal fun createCallbacks(executor: Executor): EnvoyHTTPCallbacksAdapter {
     return EnvoyHTTPCallbacksAdapter(executor, callbacks)
   }
+
+  /**
+   * Creates the engine request starting a stream from this prototype as part of a batch.
+   *
+   * @param engine Engine starting the batch.
+   * @param headers Headers of the request.
+   * @param body Body of the request, or null for a headers-only request.
+   * @param executor Executor on which to receive callback events.
+   * @return The engine request, or null if the stream must be started on its own: by another
+   * engine, through the stream coalescer, or by a prototype overriding `start`.
+   */
+  internal fun createBatchRequest(
+    engine: EnvoyEngine,
+    headers: RequestHeaders,
+    body: ByteBuffer?,
+    executor: Executor
+  ): EnvoyHTTPStreamRequest? {
+    if (engine !== this.engine || coalescer != null || !startsEngineStream) {
+      return null
+    }
+    val length = when {
+      body == null -> 0
+      useByteBufferPosition -> body.position()
+      else -> body.capacity()
+    }
+    return EnvoyHTTPStreamRequest(
+      createCallbacks(executor), explicitFlowControl, headers.allHeaders(), body, length
+    )
+  }
 }
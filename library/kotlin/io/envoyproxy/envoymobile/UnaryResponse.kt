@@ -0,0 +1,63 @@
+package io.envoyproxy.envoymobile
+
+import java.nio.ByteBuffer
+import java.util.concurrent.Executor
+
+/**
+ * A whole response, received with `StreamClient.execute`.
+ *
+ * @param headers The response headers.
+ * @param body The response body, empty if the response has none.
+ * @param trailers The response trailers, or null if the response has none.
+ * @param finalStreamIntel Final internal HTTP stream metrics and context.
+ */
+class UnaryResponse internal constructor(
+  val headers: ResponseHeaders,
+  val body: ResponseBody,
+  val trailers: ResponseTrailers?,
+  val finalStreamIntel: FinalStreamIntel
+)
+
+/**
+ * Sends a request on a new stream of `streamClient`, and aggregates its response.
+ * See `StreamClient.execute`.
+ */
+internal fun executeUnary(
+  streamClient: StreamClient,
+  headers: RequestHeaders,
+  body: ByteBuffer?,
+  executor: Executor,
+  onResponse: (response: UnaryResponse) -> Unit,
+  onError: (error: EnvoyError) -> Unit
+): Stream {
+  // The callbacks run in turn on the executor.
+  var responseHeaders: ResponseHeaders? = null
+  var bodyBuilder = ResponseBodyBuilder(null)
+  var trailers: ResponseTrailers? = null
+  val stream = streamClient.newStreamPrototype()
+    .setOnResponseHeaders { headers, _, _ ->
+      responseHeaders = headers
+      bodyBuilder = ResponseBodyBuilder(
+        headers.value("content-length")?.firstOrNull()?.toLongOrNull()
+      )
+    }
+    .setOnResponseData { data, _, _ -> bodyBuilder.add(data) }
+    .setOnResponseTrailers { responseTrailers, _ -> trailers = responseTrailers }
+    .setOnError { error, _ -> onError(error) }
+    .setOnComplete { finalStreamIntel ->
+      val completedHeaders = responseHeaders
+      if (completedHeaders == null) {
+        onError(EnvoyError(0, "Stream completed without response headers"))
+      } else {
+        onResponse(UnaryResponse(completedHeaders, bodyBuilder.build(), trailers, finalStreamIntel))
+      }
+    }
+    .start(executor)
+
+  if (body == null) {
+    stream.sendHeaders(headers, true)
+  } else {
+    stream.sendHeadersAndClose(headers, body)
+  }
+  return stream
+}
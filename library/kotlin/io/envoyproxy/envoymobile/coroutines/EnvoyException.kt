@@ -0,0 +1,8 @@
+package io.envoyproxy.envoymobile
+
+/**
+ * Exception thrown by suspending stream functions when Envoy reports a failure.
+ *
+ * @param error The failure reported by Envoy.
+ */
+class EnvoyException(val error: EnvoyError) : Exception(error.message, error.cause)
@@ -0,0 +1,220 @@
+package io.envoyproxy.envoymobile
+
+import java.nio.ByteBuffer
+import java.util.concurrent.CancellationException
+import java.util.concurrent.Executor
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ClosedReceiveChannelException
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.flow
+
+// Maximum number of bytes requested from Envoy for each buffer of a response body, by default.
+internal const val DEFAULT_FLOW_READ_CHUNK_BYTES = 64L * 1024
+
+/**
+ * Start a new stream whose response is consumed with coroutines rather than callbacks.
+ *
+ * The stream uses explicit flow control, and replaces the callbacks set on this prototype.
+ *
+ * @param executor Executor on which to receive callback events. It must run them in order. They
+ * only hand the events over to the consuming coroutines, so by default they run inline.
+ * @param readChunkBytes Maximum number of bytes requested from Envoy for each buffer of the
+ * response body.
+ * @return The new stream.
+ */
+fun StreamPrototype.startFlowStream(
+  executor: Executor = Executor { it.run() },
+  readChunkBytes: Long = DEFAULT_FLOW_READ_CHUNK_BYTES
+): FlowStream {
+  return FlowStream(this, executor, readChunkBytes)
+}
+
+/**
+ * A type representing a stream that is actively transferring data, with suspending functions to
+ * send the request and a `Flow` of the response body.
+ *
+ * Constructed using `StreamPrototype.startFlowStream`. The response body is only requested from
+ * Envoy as the `Flow` is collected, one buffer at a time: a slow collector makes Envoy stop
+ * reading the response from the network, rather than have it buffered in memory. Likewise, sending
+ * data suspends until Envoy is ready for more.
+ */
+class FlowStream internal constructor(
+  prototype: StreamPrototype,
+  executor: Executor,
+  private val readChunkBytes: Long
+) {
+  // Response events, in the order of the callbacks.
+  private val events = Channel<ResponseEvent>(Channel.UNLIMITED)
+  // Holds an element when more data can be sent after the last data sent.
+  private val sendWindow = Channel<Unit>(Channel.CONFLATED)
+  private val underlyingStream: Stream
+
+  // Whether data was sent since the last time the send window was available.
+  private var awaitingSendWindow = false
+
+  @Volatile
+  private var headers: ResponseHeaders? = null
+  @Volatile
+  private var trailers: ResponseTrailers? = null
+  @Volatile
+  private var bodyReceived = false
+  @Volatile
+  private var failure: Throwable? = null
+
+  init {
+    underlyingStream = prototype
+      .setExplicitFlowControl(true)
+      .setOnResponseHeaders { headers, endStream, _ ->
+        events.offer(ResponseEvent.Headers(headers, endStream))
+      }
+      .setOnResponseData { data, endStream, _ -> events.offer(ResponseEvent.Data(data, endStream)) }
+      .setOnResponseTrailers { trailers, _ -> events.offer(ResponseEvent.Trailers(trailers)) }
+      .setOnError { error, _ -> fail(EnvoyException(error)) }
+      .setOnCancel { fail(CancellationException("The stream was canceled")) }
+      .setOnSendWindowAvailable { sendWindow.offer(Unit) }
+      .setOnComplete { sendWindow.close() }
+      .start(executor)
+  }
+
+  /**
+   * Send headers over the stream.
+   *
+   * @param headers Headers to send over the stream.
+   * @param endStream Whether this is a headers-only request.
+   */
+  suspend fun sendHeaders(headers: RequestHeaders, endStream: Boolean) {
+    awaitSendWindow()
+    underlyingStream.sendHeaders(headers, endStream)
+  }
+
+  /**
+   * Send data over the stream, once Envoy is ready for more data.
+   *
+   * @param data Data to send over the stream.
+   */
+  suspend fun sendData(data: ByteBuffer) {
+    awaitSendWindow()
+    underlyingStream.sendData(data)
+    awaitingSendWindow = true
+  }
+
+  /**
+   * Close the stream with trailers.
+   *
+   * @param trailers Trailers with which to close the stream.
+   */
+  suspend fun close(trailers: RequestTrailers) {
+    awaitSendWindow()
+    underlyingStream.close(trailers)
+  }
+
+  /**
+   * Close the stream with a data frame.
+   *
+   * @param data Data with which to close the stream.
+   */
+  suspend fun close(data: ByteBuffer) {
+    awaitSendWindow()
+    underlyingStream.close(data)
+  }
+
+  /**
+   * Cancel the stream.
+   */
+  fun cancel() {
+    underlyingStream.cancel()
+  }
+
+  /**
+   * Wait for the response headers.
+   *
+   * @return The response headers.
+   * @throws EnvoyException if the stream failed.
+   */
+  suspend fun responseHeaders(): ResponseHeaders {
+    headers?.let { return it }
+    val event = receiveEvent() as? ResponseEvent.Headers
+      ?: throw IllegalStateException("Response body received before headers")
+    bodyReceived = event.endStream
+    headers = event.headers
+    return event.headers
+  }
+
+  /**
+   * The response body. Each buffer is requested from Envoy when the collector is ready for it.
+   * The `Flow` can be collected once; if the collection stops early, the stream is canceled.
+   * Collecting it fails with an `EnvoyException` if the stream fails.
+   */
+  val responseBody: Flow<ByteBuffer> = flow {
+    responseHeaders()
+    var completed = false
+    try {
+      while (!bodyReceived) {
+        underlyingStream.readData(readChunkBytes)
+        when (val event = receiveEvent()) {
+          is ResponseEvent.Data -> {
+            bodyReceived = event.endStream
+            if (event.data.capacity() > 0) {
+              emit(event.data)
+            }
+          }
+          is ResponseEvent.Trailers -> {
+            trailers = event.trailers
+            bodyReceived = true
+          }
+          is ResponseEvent.Headers -> throw IllegalStateException("Response headers received twice")
+        }
+      }
+      completed = true
+    } finally {
+      if (!completed && failure == null) {
+        underlyingStream.cancel()
+      }
+    }
+  }
+
+  /**
+   * Wait for the end of the response, discarding the rest of the body if it wasn't collected.
+   *
+   * @return The response trailers, or null if the response has none.
+   * @throws EnvoyException if the stream failed.
+   */
+  suspend fun responseTrailers(): ResponseTrailers? {
+    responseBody.collect {}
+    return trailers
+  }
+
+  private suspend fun receiveEvent(): ResponseEvent {
+    failure?.let { throw it }
+    val event = events.receive()
+    if (event is ResponseEvent.Failure) {
+      failure = event.cause
+      throw event.cause
+    }
+    return event
+  }
+
+  private suspend fun awaitSendWindow() {
+    if (awaitingSendWindow) {
+      try {
+        sendWindow.receive()
+      } catch (e: ClosedReceiveChannelException) {
+        // The stream is complete: there is nothing to wait for.
+      }
+      awaitingSendWindow = false
+    }
+  }
+
+  private fun fail(cause: Throwable) {
+    events.offer(ResponseEvent.Failure(cause))
+    sendWindow.close(cause)
+  }
+
+  private sealed class ResponseEvent {
+    class Headers(val headers: ResponseHeaders, val endStream: Boolean) : ResponseEvent()
+    class Data(val data: ByteBuffer, val endStream: Boolean) : ResponseEvent()
+    class Trailers(val trailers: ResponseTrailers) : ResponseEvent()
+    class Failure(val cause: Throwable) : ResponseEvent()
+  }
+}
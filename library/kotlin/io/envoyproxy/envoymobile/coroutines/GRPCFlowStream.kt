@@ -0,0 +1,132 @@
+package io.envoyproxy.envoymobile
+
+import java.nio.ByteBuffer
+import java.util.concurrent.Executor
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.flow
+
+/**
+ * Start a new gRPC stream whose response messages are consumed with coroutines rather than
+ * callbacks.
+ *
+ * @param executor Executor on which to receive callback events. It must run them in order. They
+ * only hand the events over to the consuming coroutines, so by default they run inline.
+ * @param readChunkBytes Maximum number of bytes requested from Envoy for each buffer of the
+ * response body.
+ * @return The new gRPC stream.
+ */
+fun GRPCClient.startFlowStream(
+  executor: Executor = Executor { it.run() },
+  readChunkBytes: Long = DEFAULT_FLOW_READ_CHUNK_BYTES
+): GRPCFlowStream {
+  return GRPCFlowStream(
+    streamClient.newStreamPrototype().startFlowStream(executor, readChunkBytes),
+    compressionThresholdBytes,
+    maxReceiveMessageBytes
+  )
+}
+
+/**
+ * A type representing a gRPC stream that is actively transferring data, with suspending functions
+ * to send messages and a `Flow` of the response messages.
+ *
+ * Constructed using `GRPCClient.startFlowStream`. As with `FlowStream`, the response is only
+ * requested from Envoy as the messages are collected.
+ */
+class GRPCFlowStream internal constructor(
+  private val underlyingStream: FlowStream,
+  private val compressionThresholdBytes: Int,
+  private val maxReceiveMessageBytes: Int
+) {
+  // Set when the request headers select the gzip encoding.
+  private var codec: GRPCGzipCodec? = null
+
+  /**
+   * Send headers over the gRPC stream.
+   *
+   * @param headers Headers to send over the stream.
+   * @param endStream Whether this is a headers-only request.
+   */
+  suspend fun sendHeaders(headers: GRPCRequestHeaders, endStream: Boolean) {
+    codec = newGRPCGzipCodec(headers)
+    underlyingStream.sendHeaders(headers as RequestHeaders, endStream)
+  }
+
+  /**
+   * Send a protobuf message's binary data over the gRPC stream, once Envoy is ready for it.
+   *
+   * @param messageData Binary data of a protobuf message to send.
+   */
+  suspend fun sendMessage(messageData: ByteBuffer) {
+    underlyingStream.sendData(frameGRPCMessage(messageData, codec, compressionThresholdBytes))
+  }
+
+  /**
+   * Send the protobuf messages of a `Flow` over the gRPC stream, as Envoy is ready for them.
+   *
+   * @param messages Binary data of the protobuf messages to send.
+   */
+  suspend fun sendMessages(messages: Flow<ByteBuffer>) {
+    messages.collect { sendMessage(it) }
+  }
+
+  /**
+   * Close this connection.
+   */
+  suspend fun close() {
+    codec?.release()
+    underlyingStream.close(ByteBuffer.allocate(0))
+  }
+
+  /**
+   * Cancel the gRPC stream.
+   */
+  fun cancel() {
+    underlyingStream.cancel()
+  }
+
+  /**
+   * Wait for the response headers.
+   *
+   * @return The response headers.
+   * @throws EnvoyException if the stream failed.
+   */
+  suspend fun responseHeaders(): ResponseHeaders = underlyingStream.responseHeaders()
+
+  /**
+   * The response messages. Messages compressed with the encoding of the response headers are
+   * decompressed.
+   * The `Flow` can be collected once; if the collection stops early, the stream is canceled.
+   * Collecting it fails with an `EnvoyException` if the stream fails, or if a message is larger
+   * than the client's maximum, has an unsupported encoding or can't be decompressed, in which
+   * case the stream is canceled.
+   */
+  val responseMessages: Flow<ByteBuffer> = flow {
+    val encoding = responseHeaders().value(GRPC_ENCODING_HEADER)?.firstOrNull()
+    val responseCodec = GRPCGzipCodec()
+    val deframer = GRPCMessageDeframer(maxReceiveMessageBytes, responseCodec) { encoding }
+    val messages = mutableListOf<ByteBuffer>()
+    try {
+      underlyingStream.responseBody.collect { data ->
+        val error = deframer.processData(data) { message -> messages.add(message) }
+        for (message in messages) {
+          emit(message)
+        }
+        messages.clear()
+        // Throwing stops the collection of the response body, which cancels the stream.
+        error?.let { throw EnvoyException(it) }
+      }
+    } finally {
+      responseCodec.release()
+    }
+  }
+
+  /**
+   * Wait for the end of the response, discarding the messages that weren't collected.
+   *
+   * @return The response trailers, holding the gRPC status, or null if the response has none.
+   * @throws EnvoyException if the stream failed.
+   */
+  suspend fun responseTrailers(): ResponseTrailers? = underlyingStream.responseTrailers()
+}
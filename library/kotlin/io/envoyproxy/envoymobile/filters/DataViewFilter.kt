@@ -0,0 +1,13 @@
+package io.envoyproxy.envoymobile
+
+/*
+ * Marks a filter that receives body data as read-only views of Envoy's buffers, rather than
+ * copies.
+ *
+ * Views are only valid during the `onRequestData` or `onResponseData` call receiving them: a
+ * filter that keeps data for later, for instance to resume iteration with it, must copy it. Data
+ * returned unchanged with `FilterDataStatus.Continue` is passed on without being copied back, so
+ * a filter that only inspects the body doesn't copy it at all.
+ */
+@Suppress("EmptyClassBlock")
+interface DataViewFilter : Filter
@@ -1,8 +1,10 @@
 package io.envoyproxy.envoymobile
 
 import io.envoyproxy.envoymobile.engine.types.EnvoyFinalStreamIntel
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPDataViewFilter
 import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPFilter
 import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPFilterCallbacks
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPFilterEvents
 import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPFilterFactory
 import io.envoyproxy.envoymobile.engine.types.EnvoyStreamIntel
 import java.nio.ByteBuffer
@@ -15,24 +17,35 @@ interface Filter
 
 internal class FilterFactory(
   private val filterName: String,
-  private val factory: () -> Filter
+  private val factory: () -> Filter,
+  private val events: Set<FilterEvent>? = null
 ) : EnvoyHTTPFilterFactory {
   override fun getFilterName(): String {
     return filterName
   }
 
-  override fun create(): EnvoyHTTPFilter { return EnvoyHTTPFilterAdapter(factory()) }
+  override fun create(): EnvoyHTTPFilter {
+    val filter = factory()
+    if (filter is DataViewFilter) {
+      return EnvoyHTTPDataViewFilterAdapter(filter, events)
+    }
+    return EnvoyHTTPFilterAdapter(filter, events)
+  }
 }
 
-internal class EnvoyHTTPFilterAdapter(
-  private val filter: Filter
-) : EnvoyHTTPFilter {
+internal open class EnvoyHTTPFilterAdapter(
+  private val filter: Filter,
+  private val events: Set<FilterEvent>? = null
+) : EnvoyHTTPFilter, EnvoyHTTPFilterEvents {
+
+  override fun getEventMask(): Int = filterEventMask(filter, events)
 
   override fun onRequestHeaders(headers: Map<String, List<String>>, endStream: Boolean, streamIntel: EnvoyStreamIntel): Array<Any?> {
     (filter as? RequestFilter)?.let { requestFilter ->
-      val result = requestFilter.onRequestHeaders(RequestHeaders(headers), endStream, StreamIntel(streamIntel))
+      val requestHeaders = RequestHeaders(headers)
+      val result = requestFilter.onRequestHeaders(requestHeaders, endStream, StreamIntel(streamIntel))
       return when (result) {
-        is FilterHeadersStatus.Continue -> arrayOf(result.status, result.headers.headers)
+        is FilterHeadersStatus.Continue -> continueHeaders(result.status, result.headers, requestHeaders)
         is FilterHeadersStatus.StopIteration -> arrayOf(result.status, emptyMap<String, List<String>>())
       }
     }
@@ -41,9 +54,10 @@ internal class EnvoyHTTPFilterAdapter(
 
   override fun onResponseHeaders(headers: Map<String, List<String>>, endStream: Boolean, streamIntel: EnvoyStreamIntel): Array<Any?> {
     (filter as? ResponseFilter)?.let { responseFilter ->
-      val result = responseFilter.onResponseHeaders(ResponseHeaders(headers), endStream, StreamIntel(streamIntel))
+      val responseHeaders = ResponseHeaders(headers)
+      val result = responseFilter.onResponseHeaders(responseHeaders, endStream, StreamIntel(streamIntel))
       return when (result) {
-        is FilterHeadersStatus.Continue -> arrayOf(result.status, result.headers.headers)
+        is FilterHeadersStatus.Continue -> continueHeaders(result.status, result.headers, responseHeaders)
         is FilterHeadersStatus.StopIteration -> arrayOf(result.status, emptyMap<String, List<String>>())
       }
     }
@@ -161,4 +175,20 @@ internal class EnvoyHTTPFilterAdapter(
     }
     return arrayOf(-1, headers, data, trailers)
   }
+
+  // Returns the headers a filter continues with as the change made to the headers it received,
+  // when they were built from them, so that only the headers touched are updated.
+  private fun continueHeaders(status: Int, headers: Headers, received: Headers): Array<Any?> {
+    if (headers === received) {
+      return arrayOf(status, emptyMap<String, List<String>>(), emptyMap<String, List<String>>())
+    }
+    val change = headers.changeFrom(received) ?: return arrayOf(status, headers.headers)
+    return arrayOf(status, change.added, change.cleared.associateWith { listOf("") })
+  }
 }
+
+// Adapter for filters receiving views of body data rather than copies.
+internal class EnvoyHTTPDataViewFilterAdapter(
+  filter: DataViewFilter,
+  events: Set<FilterEvent>? = null
+) : EnvoyHTTPFilterAdapter(filter, events), EnvoyHTTPDataViewFilter
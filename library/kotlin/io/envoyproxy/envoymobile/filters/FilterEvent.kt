@@ -0,0 +1,51 @@
+package io.envoyproxy.envoymobile
+
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPFilterEvents
+
+/**
+ * An event a platform filter may handle. Filters registered with a set of events are only called
+ * for those; the others continue through the filter chain without calling into the platform.
+ */
+enum class FilterEvent(internal val mask: Int) {
+  REQUEST_HEADERS(EnvoyHTTPFilterEvents.EVENT_REQUEST_HEADERS),
+  REQUEST_DATA(EnvoyHTTPFilterEvents.EVENT_REQUEST_DATA),
+  REQUEST_TRAILERS(EnvoyHTTPFilterEvents.EVENT_REQUEST_TRAILERS),
+  RESPONSE_HEADERS(EnvoyHTTPFilterEvents.EVENT_RESPONSE_HEADERS),
+  RESPONSE_DATA(EnvoyHTTPFilterEvents.EVENT_RESPONSE_DATA),
+  RESPONSE_TRAILERS(EnvoyHTTPFilterEvents.EVENT_RESPONSE_TRAILERS)
+}
+
+private const val REQUEST_EVENTS = EnvoyHTTPFilterEvents.EVENT_REQUEST_HEADERS or
+  EnvoyHTTPFilterEvents.EVENT_REQUEST_DATA or EnvoyHTTPFilterEvents.EVENT_REQUEST_TRAILERS
+private const val RESPONSE_EVENTS = EnvoyHTTPFilterEvents.EVENT_RESPONSE_HEADERS or
+  EnvoyHTTPFilterEvents.EVENT_RESPONSE_DATA or EnvoyHTTPFilterEvents.EVENT_RESPONSE_TRAILERS
+
+/**
+ * The mask of events a filter is called for: those of the interfaces it implements, restricted
+ * to the declared events if any.
+ *
+ * An asynchronous filter is called for all the events of its direction whatever it declared, as
+ * events arriving while it has stopped iteration must not continue past it.
+ *
+ * @param filter The filter.
+ * @param events The events declared for the filter, or null to call it for all of them.
+ * @return The mask of events, as `EnvoyHTTPFilterEvents.EVENT_*` bits.
+ */
+internal fun filterEventMask(filter: Filter, events: Set<FilterEvent>?): Int {
+  val declared = events?.fold(0) { mask, event -> mask or event.mask } ?: EnvoyHTTPFilterEvents.EVENT_ALL
+  var mask = 0
+  if (filter is RequestFilter) {
+    mask = mask or (REQUEST_EVENTS and declared)
+  }
+  if (filter is ResponseFilter) {
+    mask = mask or (RESPONSE_EVENTS and declared) or
+      EnvoyHTTPFilterEvents.EVENT_ERROR or EnvoyHTTPFilterEvents.EVENT_CANCEL
+  }
+  if (filter is AsyncRequestFilter) {
+    mask = mask or REQUEST_EVENTS or EnvoyHTTPFilterEvents.EVENT_REQUEST_CALLBACKS
+  }
+  if (filter is AsyncResponseFilter) {
+    mask = mask or RESPONSE_EVENTS or EnvoyHTTPFilterEvents.EVENT_RESPONSE_CALLBACKS
+  }
+  return mask
+}
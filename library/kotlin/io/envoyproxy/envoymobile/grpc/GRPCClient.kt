@@ -3,13 +3,28 @@ package io.envoyproxy.envoymobile
 // 1 byte for the compression flag, 4 bytes for the message length (int)
 internal const val GRPC_PREFIX_LENGTH = 5
 
+// Response messages larger than this fail the stream by default, as with other gRPC clients.
+internal const val DEFAULT_GRPC_MAX_RECEIVE_MESSAGE_BYTES = 4 * 1024 * 1024
+
+// gRPC status codes of the errors raised when the client fails a stream.
+internal const val GRPC_STATUS_RESOURCE_EXHAUSTED = 8
+internal const val GRPC_STATUS_UNIMPLEMENTED = 12
+internal const val GRPC_STATUS_INTERNAL = 13
+
 /**
  * Client that supports sending and receiving gRPC traffic.
  *
  * @param streamClient The stream client to use for gRPC streams.
+ * @param compressionThresholdBytes On streams with compression enabled (see
+ *   `GRPCRequestHeadersBuilder.addGzipCompression`), messages smaller than this are sent
+ *   uncompressed, as compression wouldn't pay for its overhead.
+ * @param maxReceiveMessageBytes Receiving a larger response message fails the stream, with the
+ *   `RESOURCE_EXHAUSTED` gRPC status code as the error code.
  */
 class GRPCClient(
-  private val streamClient: StreamClient
+  internal val streamClient: StreamClient,
+  internal val compressionThresholdBytes: Int = DEFAULT_GRPC_COMPRESSION_THRESHOLD_BYTES,
+  internal val maxReceiveMessageBytes: Int = DEFAULT_GRPC_MAX_RECEIVE_MESSAGE_BYTES
 ) {
   /**
    * Create a new gRPC stream prototype which can be used to start streams.
@@ -17,6 +32,8 @@ class GRPCClient(
    * @return The new gRPC stream prototype.
    */
   fun newGRPCStreamPrototype() = GRPCStreamPrototype(
-    streamClient.newStreamPrototype()
+    streamClient.newStreamPrototype(),
+    compressionThresholdBytes,
+    maxReceiveMessageBytes
   )
 }
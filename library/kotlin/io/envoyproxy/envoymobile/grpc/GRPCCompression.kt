@@ -0,0 +1,199 @@
+package io.envoyproxy.envoymobile
+
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.util.zip.CRC32
+import java.util.zip.DataFormatException
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+// The only message encoding supported besides identity.
+internal const val GRPC_ENCODING_GZIP = "gzip"
+
+// Header holding the encoding of the messages sent on a stream.
+internal const val GRPC_ENCODING_HEADER = "grpc-encoding"
+
+// Header listing the message encodings the sender of a stream accepts.
+internal const val GRPC_ACCEPT_ENCODING_HEADER = "grpc-accept-encoding"
+
+// Messages smaller than this are sent uncompressed by default.
+internal const val DEFAULT_GRPC_COMPRESSION_THRESHOLD_BYTES = 1024
+
+/**
+ * Returns a codec for the messages sent with `headers`, or null if they aren't to be compressed.
+ *
+ * @param headers The request headers of the stream.
+ */
+internal fun newGRPCGzipCodec(headers: Headers): GRPCGzipCodec? {
+  return if (headers.value(GRPC_ENCODING_HEADER)?.contains(GRPC_ENCODING_GZIP) == true) {
+    GRPCGzipCodec()
+  } else {
+    null
+  }
+}
+
+/**
+ * Compresses and decompresses gRPC messages with the gzip encoding.
+ *
+ * The same `Deflater` and `Inflater` are reused for all the messages of a stream; `java.util.zip`
+ * streams would allocate new ones for each message. Not thread safe: messages sent and received
+ * on a stream each use their own codec.
+ */
+internal class GRPCGzipCodec {
+  private var deflater: Deflater? = null
+  private var inflater: Inflater? = null
+  private val crc = CRC32()
+  private val chunk = ByteArray(CHUNK_SIZE)
+
+  /**
+   * Compresses a message.
+   *
+   * @param message The message, from its position to its limit. The buffer isn't mutated.
+   * @return The gzip member holding the message.
+   */
+  fun compress(message: ByteBuffer): ByteArray {
+    val length = message.remaining()
+    val input: ByteArray
+    val offset: Int
+    if (message.hasArray()) {
+      input = message.array()
+      offset = message.arrayOffset() + message.position()
+    } else {
+      input = ByteArray(length)
+      offset = 0
+      message.duplicate().get(input)
+    }
+
+    val deflater = this.deflater
+      ?: Deflater(Deflater.DEFAULT_COMPRESSION, true).also { this.deflater = it }
+    deflater.reset()
+    deflater.setInput(input, offset, length)
+    deflater.finish()
+
+    val output = ByteArrayOutputStream(length / 2 + GZIP_HEADER.size + GZIP_TRAILER_LENGTH)
+    output.write(GZIP_HEADER)
+    while (!deflater.finished()) {
+      output.write(chunk, 0, deflater.deflate(chunk))
+    }
+    crc.reset()
+    crc.update(input, offset, length)
+    writeIntLittleEndian(output, crc.value.toInt())
+    writeIntLittleEndian(output, length)
+    return output.toByteArray()
+  }
+
+  /**
+   * Decompresses a message. Inflating stops as soon as the message exceeds `maxLength`, so a
+   * small member can't expand into a large allocation.
+   *
+   * @param message A gzip member.
+   * @param maxLength The maximum length of the decompressed message.
+   * @return The decompressed message, or null if it is longer than `maxLength`.
+   * @throws DataFormatException if the member is malformed.
+   */
+  fun decompress(message: ByteArray, maxLength: Int): ByteArray? {
+    val dataOffset = gzipDataOffset(message)
+      ?: throw DataFormatException("Malformed gzip header")
+    val inflater = this.inflater ?: Inflater(true).also { this.inflater = it }
+    inflater.reset()
+    inflater.setInput(message, dataOffset, message.size - dataOffset)
+
+    val output = ByteArrayOutputStream(minOf(message.size * 2, maxLength))
+    while (!inflater.finished()) {
+      val inflated = inflater.inflate(chunk)
+      if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+        throw DataFormatException("Truncated deflate data")
+      }
+      if (output.size() + inflated > maxLength) {
+        return null
+      }
+      output.write(chunk, 0, inflated)
+    }
+
+    val decompressed = output.toByteArray()
+    val trailerOffset = message.size - inflater.remaining
+    if (message.size - trailerOffset < GZIP_TRAILER_LENGTH) {
+      throw DataFormatException("Truncated gzip trailer")
+    }
+    crc.reset()
+    crc.update(decompressed)
+    if (readIntLittleEndian(message, trailerOffset) != crc.value.toInt() ||
+      readIntLittleEndian(message, trailerOffset + 4) != decompressed.size
+    ) {
+      throw DataFormatException("Corrupt gzip trailer")
+    }
+    return decompressed
+  }
+
+  /**
+   * Releases the native resources of the codec. It can still be used afterwards, at the cost of
+   * allocating them again.
+   */
+  fun release() {
+    deflater?.end()
+    deflater = null
+    inflater?.end()
+    inflater = null
+  }
+
+  private companion object {
+    const val CHUNK_SIZE = 8192
+    const val GZIP_TRAILER_LENGTH = 8
+    const val FLAG_HCRC = 0x02
+    const val FLAG_EXTRA = 0x04
+    const val FLAG_NAME = 0x08
+    const val FLAG_COMMENT = 0x10
+
+    // Magic number, deflate method, no flags, no modification time, no extra flags, unknown OS.
+    val GZIP_HEADER = byteArrayOf(0x1f, 0x8b.toByte(), 8, 0, 0, 0, 0, 0, 0, 0xff.toByte())
+
+    /**
+     * Returns the offset of the deflate data in a gzip member, skipping its header, or null if
+     * the header is malformed.
+     */
+    fun gzipDataOffset(member: ByteArray): Int? {
+      if (member.size < GZIP_HEADER.size || member[0] != GZIP_HEADER[0] ||
+        member[1] != GZIP_HEADER[1] || member[2] != GZIP_HEADER[2]
+      ) {
+        return null
+      }
+      val flags = member[3].toInt()
+      var offset = GZIP_HEADER.size
+      if (flags and FLAG_EXTRA != 0) {
+        if (member.size < offset + 2) {
+          return null
+        }
+        val extraLength = (member[offset].toInt() and 0xff) or
+          ((member[offset + 1].toInt() and 0xff) shl 8)
+        offset += 2 + extraLength
+      }
+      for (flag in intArrayOf(FLAG_NAME, FLAG_COMMENT)) {
+        if (flags and flag != 0) {
+          // Zero-terminated string.
+          while (offset < member.size && member[offset] != 0.toByte()) {
+            offset++
+          }
+          offset++
+        }
+      }
+      if (flags and FLAG_HCRC != 0) {
+        offset += 2
+      }
+      return if (offset <= member.size) offset else null
+    }
+
+    fun writeIntLittleEndian(output: ByteArrayOutputStream, value: Int) {
+      output.write(value)
+      output.write(value ushr 8)
+      output.write(value ushr 16)
+      output.write(value ushr 24)
+    }
+
+    fun readIntLittleEndian(input: ByteArray, offset: Int): Int {
+      return (input[offset].toInt() and 0xff) or
+        ((input[offset + 1].toInt() and 0xff) shl 8) or
+        ((input[offset + 2].toInt() and 0xff) shl 16) or
+        ((input[offset + 3].toInt() and 0xff) shl 24)
+    }
+  }
+}
@@ -16,9 +16,5 @@ class GRPCRequestHeaders : RequestHeaders {
    *
    * @return GRPCRequestHeadersBuilder, The new builder.
    */
-  fun toGRPCRequestHeadersBuilder() = GRPCRequestHeadersBuilder(
-    headers.mapValues {
-      it.value.toMutableList()
-    }.toMutableMap()
-  )
+  fun toGRPCRequestHeadersBuilder() = GRPCRequestHeadersBuilder(headers)
 }
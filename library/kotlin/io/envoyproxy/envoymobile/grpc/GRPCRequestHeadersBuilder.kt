@@ -9,7 +9,7 @@ class GRPCRequestHeadersBuilder : HeadersBuilder {
    *
    * @param headers: Headers to set.
    */
-  internal constructor(headers: MutableMap<String, MutableList<String>>) : super(headers)
+  internal constructor(headers: Map<String, List<String>>) : super(headers)
 
   override fun add(name: String, value: String): GRPCRequestHeadersBuilder {
     super.add(name, value)
@@ -65,6 +65,25 @@ class GRPCRequestHeadersBuilder : HeadersBuilder {
     return this
   }
 
+  /**
+   * Enable gzip compression of the messages sent on the stream, and advertise that compressed
+   * responses are accepted. Messages smaller than the `GRPCClient`'s compression threshold are
+   * still sent uncompressed.
+   *
+   * @param enabled Whether to compress messages.
+   * @return This builder.
+   */
+  fun addGzipCompression(enabled: Boolean): GRPCRequestHeadersBuilder {
+    if (enabled) {
+      set(GRPC_ENCODING_HEADER, mutableListOf(GRPC_ENCODING_GZIP))
+      set(GRPC_ACCEPT_ENCODING_HEADER, mutableListOf(GRPC_ENCODING_GZIP))
+    } else {
+      remove(GRPC_ENCODING_HEADER)
+      remove(GRPC_ACCEPT_ENCODING_HEADER)
+    }
+    return this
+  }
+
   /**
    * Build the request headers using the current builder.
    *
@@ -9,8 +9,12 @@ import java.nio.ByteOrder
  * Constructed using `GRPCStreamPrototype`, and used to write to the network.
  */
 class GRPCStream(
-  private val underlyingStream: Stream
+  private val underlyingStream: Stream,
+  private val compressionThresholdBytes: Int = DEFAULT_GRPC_COMPRESSION_THRESHOLD_BYTES
 ) {
+  // Set when the request headers select the gzip encoding.
+  private var codec: GRPCGzipCodec? = null
+
   /**
    * Send headers over the gRPC stream.
    *
@@ -19,34 +23,21 @@ class GRPCStream(
    * @return This stream, for chaining syntax.
    */
   fun sendHeaders(headers: GRPCRequestHeaders, endStream: Boolean): GRPCStream {
+    codec = newGRPCGzipCodec(headers)
     underlyingStream.sendHeaders(headers as RequestHeaders, endStream)
     return this
   }
 
   /**
    * Send a protobuf message's binary data over the gRPC stream.
+   * The message is compressed if the headers enabled compression and it is at least as large as
+   * the client's compression threshold.
    *
    * @param messageData Binary data of a protobuf message to send.
    * @return This stream, for chaining syntax.
    */
   fun sendMessage(messageData: ByteBuffer): GRPCStream {
-    // https://github.com/grpc/grpc/blob/master/doc/PROTOCOL-HTTP2.md#requests
-    // Length-Prefixed-Message = Compressed-Flag | Message-Length | Message
-    // Compressed-Flag = 0 / 1, encoded as 1 byte unsigned integer
-    // Message-Length = length of Message, encoded as 4 byte unsigned integer (big endian)
-    // Message = binary representation of protobuf messageData
-    val byteBuffer = ByteBuffer.allocate(GRPC_PREFIX_LENGTH)
-
-    // Compression flag (1 byte) - 0, not compressed
-    byteBuffer.put(0)
-
-    // Message length
-    val messageLength = messageData.remaining()
-    byteBuffer.order(ByteOrder.BIG_ENDIAN)
-    byteBuffer.putInt(messageLength)
-
-    underlyingStream.sendData(byteBuffer)
-    underlyingStream.sendData(messageData)
+    underlyingStream.sendData(frameGRPCMessage(messageData, codec, compressionThresholdBytes))
     return this
   }
 
@@ -54,6 +45,49 @@ class GRPCStream(
    * Close this connection.
    */
   fun close() {
+    codec?.release()
     underlyingStream.close(ByteBuffer.allocate(0))
   }
 }
+
+/**
+ * Frames a protobuf message's binary data to be sent over a gRPC stream.
+ *
+ * The prefix and the message are sent as one buffer: each `sendData` call is a JNI call and a
+ * dispatch to the Envoy thread, so sending them separately would double the cost of small
+ * messages.
+ *
+ * @param messageData Binary data of a protobuf message to send, from its position to its limit.
+ * The buffer isn't mutated.
+ * @param codec The codec compressing messages, null if compression isn't enabled.
+ * @param compressionThresholdBytes Messages smaller than this aren't compressed.
+ * @return The prefixed message.
+ */
+internal fun frameGRPCMessage(
+  messageData: ByteBuffer,
+  codec: GRPCGzipCodec?,
+  compressionThresholdBytes: Int
+): ByteBuffer {
+  // https://github.com/grpc/grpc/blob/master/doc/PROTOCOL-HTTP2.md#requests
+  // Length-Prefixed-Message = Compressed-Flag | Message-Length | Message
+  // Compressed-Flag = 0 / 1, encoded as 1 byte unsigned integer
+  // Message-Length = length of Message, encoded as 4 byte unsigned integer (big endian)
+  // Message = binary representation of protobuf messageData
+  val compressedMessage = codec
+    ?.takeIf { messageData.remaining() >= compressionThresholdBytes }
+    ?.compress(messageData)
+  val message = if (compressedMessage != null) ByteBuffer.wrap(compressedMessage) else messageData
+  val messageLength = message.remaining()
+  val byteBuffer = ByteBuffer.allocate(GRPC_PREFIX_LENGTH + messageLength)
+
+  // Compression flag (1 byte) - 1 if compressed, 0 otherwise
+  byteBuffer.put(if (compressedMessage != null) 1.toByte() else 0.toByte())
+
+  // Message length
+  byteBuffer.order(ByteOrder.BIG_ENDIAN)
+  byteBuffer.putInt(messageLength)
+
+  byteBuffer.put(message.duplicate())
+  byteBuffer.flip()
+  return byteBuffer
+}
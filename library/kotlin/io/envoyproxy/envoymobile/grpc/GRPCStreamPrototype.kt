@@ -1,10 +1,10 @@
 package io.envoyproxy.envoymobile
 
-import java.io.ByteArrayOutputStream
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
+import java.util.zip.DataFormatException
 
 /**
  * A type representing a gRPC stream that has not yet been started.
@@ -13,8 +13,56 @@ import java.util.concurrent.Executors
  * prior to starting a `GRPCStream` by calling `start()`.
  */
 class GRPCStreamPrototype(
-  private val underlyingStream: StreamPrototype
+  private val underlyingStream: StreamPrototype,
+  private val compressionThresholdBytes: Int = DEFAULT_GRPC_COMPRESSION_THRESHOLD_BYTES,
+  private val maxReceiveMessageBytes: Int = DEFAULT_GRPC_MAX_RECEIVE_MESSAGE_BYTES
 ) {
+  // The encoding of the response messages, from the response headers.
+  @Volatile
+  private var responseEncoding: String? = null
+
+  // Set once started, to cancel the stream when the response can't be processed.
+  @Volatile
+  private var stream: Stream? = null
+
+  // The reason the stream was failed by the client, reported instead of its cancellation.
+  @Volatile
+  private var failure: EnvoyError? = null
+
+  // Decompresses the response messages, released when the stream ends.
+  private var responseCodec: GRPCGzipCodec? = null
+
+  private var onResponseTrailers: ((ResponseTrailers, StreamIntel) -> Unit)? = null
+  private var onError: ((EnvoyError, FinalStreamIntel) -> Unit)? = null
+  private var onCancel: ((FinalStreamIntel) -> Unit)? = null
+
+  init {
+    underlyingStream.setOnResponseHeaders { headers, _, _ -> recordResponseEncoding(headers) }
+    underlyingStream.setOnResponseTrailers { trailers, streamIntel ->
+      if (failure == null) {
+        onResponseTrailers?.invoke(trailers, streamIntel)
+      }
+    }
+    underlyingStream.setOnError { error, finalStreamIntel ->
+      responseCodec?.release()
+      onError?.invoke(failure ?: error, finalStreamIntel)
+    }
+    underlyingStream.setOnCancel { finalStreamIntel ->
+      responseCodec?.release()
+      val failure = this.failure
+      if (failure != null) {
+        onError?.invoke(failure, finalStreamIntel)
+      } else {
+        onCancel?.invoke(finalStreamIntel)
+      }
+    }
+    // The stream may have completed before it could be canceled.
+    underlyingStream.setOnComplete { finalStreamIntel ->
+      responseCodec?.release()
+      failure?.let { onError?.invoke(it, finalStreamIntel) }
+    }
+  }
+
   /**
    * Start a new gRPC stream.
    * @param executor Executor on which to receive callback events.
@@ -22,7 +70,8 @@ class GRPCStreamPrototype(
    */
   fun start(executor: Executor = Executors.newSingleThreadExecutor()): GRPCStream {
     val stream = underlyingStream.start(executor)
-    return GRPCStream(stream)
+    this.stream = stream
+    return GRPCStream(stream, compressionThresholdBytes)
   }
 
   /**
@@ -34,13 +83,20 @@ class GRPCStreamPrototype(
   fun setOnResponseHeaders(
     closure: (headers: ResponseHeaders, endStream: Boolean, streamIntel: StreamIntel) -> Unit
   ): GRPCStreamPrototype {
-    underlyingStream.setOnResponseHeaders(closure)
+    underlyingStream.setOnResponseHeaders { headers, endStream, streamIntel ->
+      recordResponseEncoding(headers)
+      closure(headers, endStream, streamIntel)
+    }
     return this
   }
 
   /**
    * Specify a callback for when a new message has been received by the stream.
    * If `endStream` is `true`, the stream is complete.
+   * Messages compressed with the encoding of the response headers are decompressed. A message
+   * larger than the client's maximum, with an unsupported encoding or that can't be decompressed
+   * fails the stream: it is canceled, and the error callback is called instead of the cancel
+   * callback, with the `RESOURCE_EXHAUSTED`, `UNIMPLEMENTED` or `INTERNAL` gRPC status code.
    *
    * @param closure Closure which will receive messages on the stream.
    * @return This stream, for chaining syntax.
@@ -48,20 +104,14 @@ class GRPCStreamPrototype(
   fun setOnResponseMessage(
     closure: (data: ByteBuffer, streamIntel: StreamIntel) -> Unit
   ): GRPCStreamPrototype {
-    val byteBufferedOutputStream = ByteArrayOutputStream()
-    val processor = GRPCMessageProcessor()
-    var processState: GRPCMessageProcessor.ProcessState = GRPCMessageProcessor.ProcessState.CompressionFlag
+    val codec = GRPCGzipCodec()
+    responseCodec = codec
+    val deframer = GRPCMessageDeframer(maxReceiveMessageBytes, codec) { responseEncoding }
     underlyingStream.setOnResponseData { byteBuffer, _, streamIntel ->
-      val byteBufferArray = if (byteBuffer.hasArray()) {
-        byteBuffer.array()
-      } else {
-        val array = ByteArray(byteBuffer.remaining())
-        byteBuffer.get(array)
-        array
+      if (failure == null) {
+        deframer.processData(byteBuffer) { message -> closure(message, streamIntel) }
+          ?.let { fail(it) }
       }
-      byteBufferedOutputStream.write(byteBufferArray)
-
-      processState = processor.processData(byteBufferedOutputStream, processState, streamIntel, closure)
     }
 
     return this
@@ -77,12 +127,14 @@ class GRPCStreamPrototype(
   fun setOnResponseTrailers(
     closure: (trailers: ResponseTrailers, streamIntel: StreamIntel) -> Unit
   ): GRPCStreamPrototype {
-    underlyingStream.setOnResponseTrailers(closure)
+    onResponseTrailers = closure
     return this
   }
 
   /**
-   * Specify a callback for when an internal Envoy exception occurs with the stream.
+   * Specify a callback for when an internal Envoy exception occurs with the stream, or when the
+   * client fails it because the response can't be processed. The error code of the latter is a
+   * gRPC status code.
    * If the closure is called, the stream is complete.
    *
    * @param closure Closure which will be called when an error occurs.
@@ -91,7 +143,7 @@ class GRPCStreamPrototype(
   fun setOnError(
     closure: (error: EnvoyError, finalStreamIntel: FinalStreamIntel) -> Unit
   ): GRPCStreamPrototype {
-    underlyingStream.setOnError(closure)
+    onError = closure
     return this
   }
 
@@ -105,102 +157,139 @@ class GRPCStreamPrototype(
   fun setOnCancel(
     closure: (finalStreamIntel: FinalStreamIntel) -> Unit
   ): GRPCStreamPrototype {
-    underlyingStream.setOnCancel(closure)
+    onCancel = closure
     return this
   }
-}
 
-private class GRPCMessageProcessor {
-  /**
-   * Represents the process state of the response stream's body data.
-   */
-  sealed class ProcessState {
-    // Awaiting a gRPC compression flag.
-    object CompressionFlag : ProcessState()
-
-    // Awaiting the length specification of the next message.
-    object MessageLength : ProcessState()
+  private fun recordResponseEncoding(headers: ResponseHeaders) {
+    responseEncoding = headers.value(GRPC_ENCODING_HEADER)?.firstOrNull()
+  }
 
-    // Awaiting a message with the specified length.
-    class Message(val messageLength: Int) : ProcessState()
+  // Cancels the stream; the error is reported once Envoy confirms it is over.
+  private fun fail(error: EnvoyError) {
+    failure = error
+    stream?.cancel()
   }
+}
+
+/**
+ * Splits the response body of a gRPC stream into messages, as the data is received.
+ *
+ * Bytes are copied from the received data to the array of the message they belong to. That array
+ * grows as the message's bytes arrive rather than being sized from its announced length, so a
+ * bogus length doesn't allocate memory ahead of the data; the cost stays linear in the size of
+ * the body however it is split across messages and data frames.
+ *
+ * @param maxMessageBytes Messages announcing a larger length, or decompressing to one, are
+ * rejected.
+ * @param codec Codec decompressing the messages flagged as compressed. Released by the caller.
+ * @param encoding Closure returning the encoding of the compressed messages, from the response
+ * headers.
+ */
+internal class GRPCMessageDeframer(
+  private val maxMessageBytes: Int,
+  private val codec: GRPCGzipCodec,
+  private val encoding: () -> String?
+) {
+  // The prefix of the next message: the compression flag and the message length.
+  private val prefix = ByteArray(GRPC_PREFIX_LENGTH)
+  private var prefixLength = 0
+
+  // Whether the prefix of the current message was received.
+  private var inMessage = false
+  private var compressed = false
+  private var messageLength = 0
+  private var message = EMPTY_MESSAGE
+  private var receivedLength = 0
 
   /**
-   * Recursively processes a buffer of data, buffering it into messages based on state.
-   * When a message has been fully buffered, `onMessage` will be called with the message.
+   * Processes data received on the stream. `onMessage` is called with each message completed by
+   * the data, which is consumed entirely.
    *
-   * @param bufferedStream The buffer of data from which to determine state and messages.
-   * @param processState The current process state of the buffering.
+   * As for data sent on a `Stream`, the whole buffer is read, from its start to its capacity,
+   * whatever its position and limit.
+   *
+   * @param frame The data received.
    * @param onMessage Closure to call when a new message is available.
-   * @return The state after processing the passed data.
+   * @return An error, with a gRPC status code, if a message is too large, has an unsupported
+   * encoding or can't be decompressed. The deframer must not be used afterwards.
    */
-  fun processData(
-    bufferedStream: ByteArrayOutputStream,
-    processState: GRPCMessageProcessor.ProcessState,
-    streamIntel: StreamIntel,
-    onMessage: (byteBuffer: ByteBuffer, streamIntel: StreamIntel) -> Unit
-  ): GRPCMessageProcessor.ProcessState {
-    var nextState = processState
-
-    when (processState) {
-      is ProcessState.CompressionFlag -> {
-        val byteArray = bufferedStream.toByteArray()
-        if (byteArray.isEmpty()) {
-          // We don't have enough information to extract the compression flag, so we'll just return
-          return ProcessState.CompressionFlag
+  fun processData(frame: ByteBuffer, onMessage: (byteBuffer: ByteBuffer) -> Unit): EnvoyError? {
+    val data = frame.duplicate()
+    data.clear()
+    while (true) {
+      if (!inMessage) {
+        val prefixBytes = minOf(GRPC_PREFIX_LENGTH - prefixLength, data.remaining())
+        data.get(prefix, prefixLength, prefixBytes)
+        prefixLength += prefixBytes
+        if (prefixLength < GRPC_PREFIX_LENGTH) {
+          // We don't have enough information to extract the message length, so we'll just return
+          return null
         }
 
-        val compressionFlag = byteArray[0]
-        // TODO: Support gRPC compression https://github.com/envoyproxy/envoy-mobile/issues/501.
-        if (compressionFlag.compareTo(0) != 0) {
-          bufferedStream.reset()
+        prefixLength = 0
+        // The length is an unsigned 32 bit integer.
+        val length =
+          ByteBuffer.wrap(prefix, 1, 4).order(ByteOrder.BIG_ENDIAN).int.toLong() and 0xffffffffL
+        if (length > maxMessageBytes) {
+          return EnvoyError(
+            GRPC_STATUS_RESOURCE_EXHAUSTED,
+            "gRPC message of $length bytes exceeds the maximum of $maxMessageBytes bytes"
+          )
         }
-
-        nextState = ProcessState.MessageLength
+        inMessage = true
+        compressed = prefix[0].compareTo(0) != 0
+        messageLength = length.toInt()
+        receivedLength = 0
       }
-      is ProcessState.MessageLength -> {
-        if (bufferedStream.size() < GRPC_PREFIX_LENGTH) {
-          // We don't have enough information to extract the message length, so we'll just return
-          return ProcessState.MessageLength
-        }
 
-        val byteArray = bufferedStream.toByteArray()
-        val buffer = ByteBuffer.wrap(byteArray.sliceArray(1..4))
-        buffer.order(ByteOrder.BIG_ENDIAN)
-        val messageLength = buffer.int
-        nextState = ProcessState.Message(messageLength)
+      val messageBytes = minOf(messageLength - receivedLength, data.remaining())
+      val neededLength = receivedLength + messageBytes
+      if (neededLength > message.size) {
+        // Never beyond the message length, so the array is exactly the message once complete.
+        val grownLength = maxOf(message.size * 2, INITIAL_MESSAGE_CAPACITY)
+        message = message.copyOf(maxOf(neededLength, minOf(grownLength, messageLength)))
+      }
+      data.get(message, receivedLength, messageBytes)
+      receivedLength += messageBytes
+      if (receivedLength < messageLength) {
+        // We don't have enough bytes to construct the message, so we'll just return
+        return null
       }
-      is ProcessState.Message -> {
-        if (bufferedStream.size() < processState.messageLength + GRPC_PREFIX_LENGTH) {
-          // We don't have enough bytes to construct the message, so we'll just return
-          return ProcessState.Message(processState.messageLength)
-        }
 
-        val byteArray = bufferedStream.toByteArray()
-        onMessage(
-          ByteBuffer.wrap(
-            byteArray.sliceArray(
-              GRPC_PREFIX_LENGTH until GRPC_PREFIX_LENGTH + processState.messageLength
-            )
-          ),
-          streamIntel
-        )
-        bufferedStream.reset()
-        bufferedStream.write(
-          byteArray.sliceArray(
-            GRPC_PREFIX_LENGTH + processState.messageLength until byteArray.size
+      inMessage = false
+      val currentMessage = message
+      message = EMPTY_MESSAGE
+      val deliveredMessage = if (compressed) {
+        val encoding = encoding()
+        if (encoding != GRPC_ENCODING_GZIP) {
+          return EnvoyError(
+            GRPC_STATUS_UNIMPLEMENTED, "Compressed gRPC message with unsupported encoding $encoding"
           )
-        )
-
-        val remainingLength = GRPC_PREFIX_LENGTH + processState.messageLength until byteArray.size
-        if (byteArray.sliceArray(remainingLength).isEmpty()) {
-          return ProcessState.CompressionFlag
-        } else {
-          nextState = ProcessState.CompressionFlag
         }
+        val decompressed = try {
+          codec.decompress(currentMessage, maxMessageBytes)
+        } catch (e: DataFormatException) {
+          return EnvoyError(GRPC_STATUS_INTERNAL, "Malformed compressed gRPC message", cause = e)
+        }
+        decompressed ?: return EnvoyError(
+          GRPC_STATUS_RESOURCE_EXHAUSTED,
+          "Decompressed gRPC message exceeds the maximum of $maxMessageBytes bytes"
+        )
+      } else {
+        currentMessage
+      }
+      onMessage(ByteBuffer.wrap(deliveredMessage))
+      if (!data.hasRemaining()) {
+        return null
       }
     }
+  }
+
+  private companion object {
+    val EMPTY_MESSAGE = ByteArray(0)
 
-    return processData(bufferedStream, nextState, streamIntel, onMessage)
+    // Messages up to this size get an array of their length from their first bytes.
+    const val INITIAL_MESSAGE_CAPACITY = 64 * 1024
   }
 }
@@ -1,8 +1,10 @@
 package io.envoyproxy.envoymobile
 
 import io.envoyproxy.envoymobile.engine.EnvoyConfiguration
+import io.envoyproxy.envoymobile.engine.EnvoyDnsCacheEntry
 import io.envoyproxy.envoymobile.engine.EnvoyEngine
 import io.envoyproxy.envoymobile.engine.EnvoyHTTPStream
+import io.envoyproxy.envoymobile.engine.EnvoyHTTPStreamRequest
 import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPCallbacks
 import io.envoyproxy.envoymobile.engine.types.EnvoyNetworkType
 import io.envoyproxy.envoymobile.engine.types.EnvoyStringAccessor
@@ -26,6 +28,10 @@ internal class MockEnvoyEngine : EnvoyEngine {
     return MockEnvoyHTTPStream(callbacks!!, explicitFlowControl)
   }
 
+  override fun startStreams(requests: List<EnvoyHTTPStreamRequest>): List<EnvoyHTTPStream> {
+    return requests.map { MockEnvoyHTTPStream(it.callbacks, it.explicitFlowControl) }
+  }
+
   override fun terminate() = Unit
 
   override fun recordCounterInc(elements: String, tags: MutableMap<String, String>, count: Int): Int = 0
@@ -40,13 +46,40 @@ internal class MockEnvoyEngine : EnvoyEngine {
 
   override fun recordHistogramValue(elements: String, tags: MutableMap<String, String>, value: Int): Int = 0
 
+  override fun recordHistogramDurations(
+    elements: String,
+    tags: MutableMap<String, String>,
+    durationsMs: IntArray,
+    counts: LongArray
+  ): Int = 0
+
+  override fun recordHistogramValues(
+    elements: String,
+    tags: MutableMap<String, String>,
+    values: IntArray,
+    counts: LongArray
+  ): Int = 0
+
   override fun registerStringAccessor(accessorName: String, accessor: EnvoyStringAccessor): Int = 0
 
   override fun flushStats() = Unit
 
   override fun dumpStats(): String = ""
 
+  override fun dumpPrometheusStats(): String = ""
+
   override fun drainConnections() = Unit
 
+  override fun preconnect(
+    scheme: String,
+    authority: String,
+    forceHttp2: Boolean,
+    numConnections: Int
+  ): Int = 0
+
+  override fun prefetchDns(hosts: List<String>): Int = 0
+
+  override fun dnsCacheSnapshot(): List<EnvoyDnsCacheEntry> = emptyList()
+
   override fun setPreferredNetwork(network: EnvoyNetworkType) = Unit
 }
@@ -17,6 +17,12 @@ internal class MockEnvoyHTTPStream(
 
   override fun sendData(data: ByteBuffer?, endStream: Boolean) {}
 
+  override fun sendHeadersAndData(
+    headers: MutableMap<String, MutableList<String>>?,
+    data: ByteBuffer?,
+    length: Int
+  ) {}
+
   override fun readData(byteCount: Long) {}
 
   override fun sendTrailers(trailers: MutableMap<String, MutableList<String>>?) {}
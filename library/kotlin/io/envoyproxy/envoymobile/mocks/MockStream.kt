@@ -51,6 +51,11 @@ class MockStream internal constructor(underlyingStream: MockEnvoyHTTPStream) : S
    * Closure that will be called when the stream is canceled by the client.
    */
   var onCancel: (() -> Unit)? = null
+  /**
+   * Closure that will be called when the client asks for response data, under explicit flow
+   * control.
+   */
+  var onReadData: ((byteCount: Long) -> Unit)? = null
 
   override fun sendHeaders(headers: RequestHeaders, endStream: Boolean): Stream {
     onRequestHeaders?.invoke(headers, endStream)
@@ -62,6 +67,11 @@ class MockStream internal constructor(underlyingStream: MockEnvoyHTTPStream) : S
     return this
   }
 
+  override fun sendHeadersAndClose(headers: RequestHeaders, data: ByteBuffer) {
+    onRequestHeaders?.invoke(headers, false)
+    onRequestData?.invoke(data, true)
+  }
+
   override fun close(data: ByteBuffer) {
     onRequestData?.invoke(data, true)
   }
@@ -70,6 +80,11 @@ class MockStream internal constructor(underlyingStream: MockEnvoyHTTPStream) : S
     onRequestTrailers?.invoke(trailers)
   }
 
+  override fun readData(byteCount: Long): Stream {
+    onReadData?.invoke(byteCount)
+    return this
+  }
+
   override fun cancel() {
     onCancel?.invoke()
   }
@@ -110,6 +125,20 @@ class MockStream internal constructor(underlyingStream: MockEnvoyHTTPStream) : S
     mockStream.callbacks.onCancel(mockStreamIntel, mockFinalStreamIntel)
   }
 
+  /**
+   * Simulate the stream signaling that more data can be sent, under explicit flow control.
+   */
+  fun receiveSendWindowAvailable() {
+    mockStream.callbacks.onSendWindowAvailable(mockStreamIntel)
+  }
+
+  /**
+   * Simulate the stream completing.
+   */
+  fun receiveComplete() {
+    mockStream.callbacks.onComplete(mockStreamIntel, mockFinalStreamIntel)
+  }
+
   /**
    * Simulate Envoy returning an error.
    *
@@ -8,4 +8,17 @@ interface Distribution {
 
   /** Records a new value to add to the distribution along with the tags. */
   fun recordValue(tags: Tags = TagsBuilder().build(), value: Int)
+
+  /**
+   * @return A snapshot of the values recorded by this distribution in the current window,
+   * whatever their tags, for percentile queries within the app.
+   */
+  fun snapshot(): HistogramSnapshot
+
+  /**
+   * Starts a new window of values, e.g. to only query recent ones.
+   *
+   * @return A snapshot of the values recorded in the window ending.
+   */
+  fun resetWindow(): HistogramSnapshot
 }
@@ -5,23 +5,40 @@ import java.lang.ref.WeakReference
 
 /**
  * Envoy implementation of a `Distribution` for measurements of quantile data for int values
+ *
+ * Values are kept in a local histogram, and forwarded to the engine in batches.
  */
 internal class DistributionImpl : Distribution {
   var envoyEngine: WeakReference<EnvoyEngine>
   var series: String
   var tags: Tags
+  private val recorder: HistogramRecorder
 
   internal constructor(engine: EnvoyEngine, elements: List<Element>, tags: Tags = TagsBuilder().build()) {
     this.envoyEngine = WeakReference<EnvoyEngine>(engine)
     this.series = elements.joinToString(separator = ".") { it.value }
     this.tags = tags
+    this.recorder = HistogramRecorder(envoyEngine, series) { target, name, batchTags, values, counts ->
+      target.recordHistogramValues(name, batchTags, values, counts)
+    }
   }
 
   override fun recordValue(value: Int) {
-    envoyEngine.get()?.recordHistogramValue(series, this.tags.allTags(), value)
+    recorder.record(this.tags.allTags(), value)
   }
 
   override fun recordValue(tags: Tags, value: Int) {
-    envoyEngine.get()?.recordHistogramValue(series, tags.allTags(), value)
+    recorder.record(tags.allTags(), value)
+  }
+
+  override fun snapshot(): HistogramSnapshot = recorder.snapshot()
+
+  override fun resetWindow(): HistogramSnapshot = recorder.resetWindow()
+
+  /**
+   * Forwards the values not yet forwarded to the engine.
+   */
+  internal fun forwardPending() {
+    recorder.forwardPending()
   }
 }
@@ -0,0 +1,188 @@
+package io.envoyproxy.envoymobile
+
+import io.envoyproxy.envoymobile.engine.EnvoyEngine
+import java.lang.ref.WeakReference
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+// Number of values pending with the same tags after which they are forwarded to the engine.
+private const val FORWARD_BATCH_SIZE = 64
+
+// Time after the first value pending with some tags at which they are forwarded to the engine,
+// however many there are.
+internal const val DEFAULT_FORWARD_INTERVAL_MILLIS = 5000L
+
+// Number of sets of tags with values pending above which further values are forwarded on their
+// own, so that tags built from unbounded data don't grow the map of values pending.
+internal const val MAX_PENDING_TAG_SETS = 256
+
+// Shared by all recorders to forward values which didn't fill a batch.
+private val forwardTimer: ScheduledExecutorService by lazy {
+  ScheduledThreadPoolExecutor(1) { runnable ->
+    Thread(runnable, "EnvoyHistogramForwarder").apply { isDaemon = true }
+  }
+}
+
+/**
+ * Records the values of a `Timer` or `Distribution`.
+ *
+ * Values are recorded into a histogram of the current window, which the app can query, and into
+ * histograms of the values not yet forwarded to the engine, one per set of tags. Those are
+ * forwarded as the value and count of each of their buckets, in a single call per batch, rather
+ * than one call per value: once a batch is full, or from a shared timer thread once the forward
+ * interval has elapsed since its first value. The histogram of a set of tags is dropped when the
+ * timer forwards it, so only the tags recorded within the interval are kept.
+ *
+ * @param engine The engine values are forwarded to.
+ * @param series The name of the histogram in the engine.
+ * @param forwardIntervalMillis Maximum time values are kept before being forwarded.
+ * @param forward Forwards the values and counts of a batch to the engine.
+ */
+internal class HistogramRecorder(
+  private val engine: WeakReference<EnvoyEngine>,
+  private val series: String,
+  private val forwardIntervalMillis: Long = DEFAULT_FORWARD_INTERVAL_MILLIS,
+  private val forward: (
+    engine: EnvoyEngine,
+    series: String,
+    tags: Map<String, String>,
+    values: IntArray,
+    counts: LongArray
+  ) -> Unit
+) {
+  private val window = LogLinearHistogram()
+  private val pending = ConcurrentHashMap<Map<String, String>, PendingValues>()
+
+  /**
+   * Records a value.
+   *
+   * @param tags The tags of the value in the engine.
+   * @param value The value.
+   */
+  fun record(tags: Map<String, String>, value: Int) {
+    window.record(value)
+    var values = pending[tags]
+    if (values == null) {
+      if (pending.size >= MAX_PENDING_TAG_SETS) {
+        forwardValue(tags, value)
+        return
+      }
+      val newValues = PendingValues()
+      values = pending.putIfAbsent(tags.toMap(), newValues) ?: newValues
+    }
+    val batchFull = values.record(value)
+    if (values.claimScheduledForward()) {
+      scheduleForward(tags, values)
+    }
+    if (batchFull) {
+      forwardValues(tags, values)
+    }
+  }
+
+  /**
+   * @return A snapshot of the values recorded in the current window.
+   */
+  fun snapshot(): HistogramSnapshot = window.snapshot(reset = false)
+
+  /**
+   * Starts a new window.
+   *
+   * @return A snapshot of the values recorded in the window ending.
+   */
+  fun resetWindow(): HistogramSnapshot = window.snapshot(reset = true)
+
+  /**
+   * Forwards all the values pending to the engine.
+   */
+  fun forwardPending() {
+    for ((tags, values) in pending) {
+      forwardValues(tags, values)
+    }
+  }
+
+  private fun forwardValues(tags: Map<String, String>, values: PendingValues) {
+    val batch = values.drain() ?: return
+    val engine = engine.get() ?: return
+    val (bucketValues, bucketCounts) = batch.buckets()
+    forward(engine, series, tags, bucketValues, bucketCounts)
+  }
+
+  private fun forwardValue(tags: Map<String, String>, value: Int) {
+    val engine = engine.get() ?: return
+    forward(engine, series, tags, intArrayOf(value), longArrayOf(1))
+  }
+
+  private fun scheduleForward(tags: Map<String, String>, values: PendingValues) {
+    val key = tags.toMap()
+    val task = Runnable {
+      // Values recorded from now on schedule another forward. A thread which got `values` from
+      // the map before its removal still records into it, and so forwards its value that way.
+      values.unschedule()
+      pending.remove(key, values)
+      forwardValues(key, values)
+    }
+    try {
+      forwardTimer.schedule(task, forwardIntervalMillis, TimeUnit.MILLISECONDS)
+    } catch (e: RejectedExecutionException) {
+      task.run()
+    }
+  }
+}
+
+/**
+ * The values recorded with a set of tags which weren't forwarded to the engine yet.
+ */
+private class PendingValues {
+  private val histogram = LogLinearHistogram()
+  private val count = AtomicInteger()
+  private val draining = AtomicBoolean()
+  // Whether a forward is scheduled, which will take the values recorded until it runs.
+  private val scheduled = AtomicBoolean()
+
+  /**
+   * Records a value.
+   *
+   * @return Whether the values pending should now be forwarded.
+   */
+  fun record(value: Int): Boolean {
+    histogram.record(value)
+    return count.incrementAndGet() >= FORWARD_BATCH_SIZE
+  }
+
+  /**
+   * Called after recording a value, so that it is forwarded even if the batch isn't filled.
+   *
+   * @return Whether the caller must schedule a forward, as none is scheduled.
+   */
+  fun claimScheduledForward(): Boolean = scheduled.compareAndSet(false, true)
+
+  /**
+   * Called by the scheduled forward before taking the values pending.
+   */
+  fun unschedule() {
+    scheduled.set(false)
+  }
+
+  /**
+   * Takes the values pending.
+   *
+   * @return The values, or null if there are none or another thread is taking them.
+   */
+  fun drain(): HistogramSnapshot? {
+    if (!draining.compareAndSet(false, true)) {
+      return null
+    }
+    try {
+      val batch = histogram.snapshot(reset = true)
+      count.addAndGet(-batch.count.toInt())
+      return if (batch.count == 0L) null else batch
+    } finally {
+      draining.set(false)
+    }
+  }
+}
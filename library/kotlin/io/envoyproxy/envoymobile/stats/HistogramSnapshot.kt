@@ -0,0 +1,91 @@
+package io.envoyproxy.envoymobile
+
+import kotlin.math.ceil
+
+/**
+ * The values recorded by a `Timer` or `Distribution` over a window, for percentile queries.
+ *
+ * Values are counted in log-linear buckets: values below 32 each have their own bucket, and each
+ * later power of two is divided into 16 buckets. Percentiles are reported as the middle of their
+ * bucket, within about 3% of the values recorded. Snapshots have a fixed size whatever the number
+ * of values, and can be merged, e.g. to aggregate several windows.
+ *
+ * @param sum The sum of the values recorded.
+ */
+class HistogramSnapshot internal constructor(
+  private val counts: LongArray,
+  val sum: Long,
+  private val minValue: Long,
+  private val maxValue: Long
+) {
+  /** The number of values recorded. */
+  val count: Long = counts.sum()
+
+  /** The smallest value recorded, or null if none was. */
+  val min: Int?
+    get() = if (count == 0L || minValue > maxValue) null else minValue.toInt()
+
+  /** The largest value recorded, or null if none was. */
+  val max: Int?
+    get() = if (count == 0L || minValue > maxValue) null else maxValue.toInt()
+
+  /** The mean of the values recorded, or null if none was. */
+  val mean: Double?
+    get() = if (count == 0L) null else sum.toDouble() / count
+
+  /**
+   * Get the value below which the given percentage of the values recorded fall.
+   *
+   * @param percentile The percentage, from 0 to 100, e.g. 95.0 for the 95th percentile.
+   * @return The value of the percentile, or null if no value was recorded.
+   */
+  fun percentile(percentile: Double): Int? {
+    require(percentile in 0.0..100.0) { "percentile must be between 0 and 100" }
+    if (count == 0L) {
+      return null
+    }
+    val rank = maxOf(1L, ceil(percentile / 100 * count).toLong())
+    var seen = 0L
+    for (index in counts.indices) {
+      seen += counts[index]
+      if (seen >= rank) {
+        return clamp(bucketValue(index))
+      }
+    }
+    return clamp(bucketValue(counts.lastIndex))
+  }
+
+  /**
+   * Merge the values of this snapshot with those of another, which are left unchanged.
+   *
+   * @param other The snapshot to merge with.
+   * @return A snapshot of the values of both.
+   */
+  fun merge(other: HistogramSnapshot): HistogramSnapshot {
+    return HistogramSnapshot(
+      LongArray(BUCKET_COUNT) { counts[it] + other.counts[it] },
+      sum + other.sum,
+      minOf(minValue, other.minValue),
+      maxOf(maxValue, other.maxValue)
+    )
+  }
+
+  /**
+   * The value and count of each bucket holding values, in increasing order of values.
+   *
+   * @return The values and their counts.
+   */
+  internal fun buckets(): Pair<IntArray, LongArray> {
+    val recorded = counts.indices.filter { counts[it] != 0L }
+    return Pair(
+      IntArray(recorded.size) { clamp(bucketValue(recorded[it])) },
+      LongArray(recorded.size) { counts[recorded[it]] }
+    )
+  }
+
+  // The values recorded within a bucket are within both its bounds and the extremes recorded, which
+  // makes a bucket holding a single distinct value report it exactly.
+  private fun clamp(value: Int): Int {
+    return if (minValue > maxValue) value else value.coerceIn(minValue.toInt(), maxValue.toInt())
+  }
+}
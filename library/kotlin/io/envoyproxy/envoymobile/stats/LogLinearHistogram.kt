@@ -0,0 +1,89 @@
+package io.envoyproxy.envoymobile
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+// Each power of two above 2^SUB_BUCKET_BITS is divided into 2^SUB_BUCKET_BITS buckets, bounding
+// the error of the middle of a bucket to 1 / 2^(SUB_BUCKET_BITS + 1) of the values it holds.
+private const val SUB_BUCKET_BITS = 4
+private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+
+// Values below SUB_BUCKETS have their own bucket, then each power of two up to 2^30 has
+// SUB_BUCKETS of them.
+internal const val BUCKET_COUNT = (31 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+
+/**
+ * The bucket of a non-negative value.
+ */
+internal fun bucketIndex(value: Int): Int {
+  if (value < SUB_BUCKETS) {
+    return value
+  }
+  val shift = 31 - Integer.numberOfLeadingZeros(value) - SUB_BUCKET_BITS
+  return (shift + 1) * SUB_BUCKETS + (value ushr shift) - SUB_BUCKETS
+}
+
+/**
+ * The value reported for a bucket: the middle of the values it holds.
+ */
+internal fun bucketValue(index: Int): Int {
+  if (index < SUB_BUCKETS) {
+    return index
+  }
+  val shift = index / SUB_BUCKETS - 1
+  val lowest = (index % SUB_BUCKETS + SUB_BUCKETS) shl shift
+  return lowest + ((1 shl shift) - 1) / 2
+}
+
+/**
+ * A histogram of non-negative values with a fixed number of log-linear buckets.
+ *
+ * Values are recorded without locking, from any thread. A value recorded while a snapshot resets
+ * the histogram is counted in either the snapshot or the values after it, and the sum and extremes
+ * of the snapshot may not account for it.
+ */
+internal class LogLinearHistogram {
+  private val counts = AtomicLongArray(BUCKET_COUNT)
+  private val sum = AtomicLong()
+  private val min = AtomicLong(Long.MAX_VALUE)
+  private val max = AtomicLong(Long.MIN_VALUE)
+
+  /**
+   * Records a value. Negative values are recorded as 0.
+   *
+   * @param value The value to record.
+   */
+  fun record(value: Int) {
+    val recorded = maxOf(value, 0).toLong()
+    counts.incrementAndGet(bucketIndex(recorded.toInt()))
+    sum.addAndGet(recorded)
+    var current = min.get()
+    while (recorded < current && !min.compareAndSet(current, recorded)) {
+      current = min.get()
+    }
+    current = max.get()
+    while (recorded > current && !max.compareAndSet(current, recorded)) {
+      current = max.get()
+    }
+  }
+
+  /**
+   * Takes a snapshot of the values recorded.
+   *
+   * @param reset Whether to remove the values from the histogram, starting a new window.
+   * @return The snapshot.
+   */
+  fun snapshot(reset: Boolean): HistogramSnapshot {
+    if (!reset) {
+      return HistogramSnapshot(
+        LongArray(BUCKET_COUNT) { counts.get(it) }, sum.get(), min.get(), max.get()
+      )
+    }
+    return HistogramSnapshot(
+      LongArray(BUCKET_COUNT) { counts.getAndSet(it, 0) },
+      sum.getAndSet(0),
+      min.getAndSet(Long.MAX_VALUE),
+      max.getAndSet(Long.MIN_VALUE)
+    )
+  }
+}
@@ -8,4 +8,17 @@ interface Timer {
 
   /** Records a new duration to add to the timer along with tags. */
   fun recordDuration(tags: Tags = TagsBuilder().build(), durationMs: Int)
+
+  /**
+   * @return A snapshot of the durations recorded by this timer in the current window, whatever
+   * their tags, for percentile queries within the app.
+   */
+  fun snapshot(): HistogramSnapshot
+
+  /**
+   * Starts a new window of durations, e.g. to only query recent ones.
+   *
+   * @return A snapshot of the durations recorded in the window ending.
+   */
+  fun resetWindow(): HistogramSnapshot
 }
@@ -5,23 +5,40 @@ import java.lang.ref.WeakReference
 
 /**
  * Envoy implementation of a `Timer` for time measurements e.g. distribution of durations.
+ *
+ * Durations are kept in a local histogram, and forwarded to the engine in batches.
  */
 internal class TimerImpl : Timer {
   var envoyEngine: WeakReference<EnvoyEngine>
   var series: String
   var tags: Tags
+  private val recorder: HistogramRecorder
 
   internal constructor(engine: EnvoyEngine, elements: List<Element>, tags: Tags = TagsBuilder().build()) {
     this.envoyEngine = WeakReference<EnvoyEngine>(engine)
     this.series = elements.joinToString(separator = ".") { it.value }
     this.tags = tags
+    this.recorder = HistogramRecorder(envoyEngine, series) { target, name, batchTags, durationsMs, counts ->
+      target.recordHistogramDurations(name, batchTags, durationsMs, counts)
+    }
   }
 
   override fun recordDuration(durationMs: Int) {
-    envoyEngine.get()?.recordHistogramDuration(series, this.tags.allTags(), durationMs)
+    recorder.record(this.tags.allTags(), durationMs)
   }
 
   override fun recordDuration(tags: Tags, durationMs: Int) {
-    envoyEngine.get()?.recordHistogramDuration(series, tags.allTags(), durationMs)
+    recorder.record(tags.allTags(), durationMs)
+  }
+
+  override fun snapshot(): HistogramSnapshot = recorder.snapshot()
+
+  override fun resetWindow(): HistogramSnapshot = recorder.resetWindow()
+
+  /**
+   * Forwards the durations not yet forwarded to the engine.
+   */
+  internal fun forwardPending() {
+    recorder.forwardPending()
   }
 }
@@ -107,14 +107,16 @@ ios_http_filter_on_request_headers(envoy_headers headers, bool end_stream,
     EnvoyHTTPFilter *filter = (__bridge EnvoyHTTPFilter *)context;
     if (filter.onRequestHeaders == nil) {
       return (envoy_filter_headers_status){/*status*/ kEnvoyFilterHeadersStatusContinue,
-                                           /*headers*/ headers};
+                                           /*headers*/ headers,
+                                           /*cleared_headers*/ NULL};
     }
 
     EnvoyHeaders *platformHeaders = to_ios_headers(headers);
     // TODO(goaway): consider better solution for compound return
     NSArray *result = filter.onRequestHeaders(platformHeaders, end_stream, stream_intel);
     return (envoy_filter_headers_status){/*status*/ [result[0] intValue],
-                                         /*headers*/ toNativeHeaders(result[1])};
+                                         /*headers*/ toNativeHeaders(result[1]),
+                                         /*cleared_headers*/ NULL};
   }
 }
 
@@ -128,13 +130,15 @@ ios_http_filter_on_response_headers(envoy_headers headers, bool end_stream,
     EnvoyHTTPFilter *filter = (__bridge EnvoyHTTPFilter *)context;
     if (filter.onResponseHeaders == nil) {
       return (envoy_filter_headers_status){/*status*/ kEnvoyFilterHeadersStatusContinue,
-                                           /*headers*/ headers};
+                                           /*headers*/ headers,
+                                           /*cleared_headers*/ NULL};
     }
 
     EnvoyHeaders *platformHeaders = to_ios_headers(headers);
     NSArray *result = filter.onResponseHeaders(platformHeaders, end_stream, stream_intel);
     return (envoy_filter_headers_status){/*status*/ [result[0] intValue],
-                                         /*headers*/ toNativeHeaders(result[1])};
+                                         /*headers*/ toNativeHeaders(result[1]),
+                                         /*cleared_headers*/ NULL};
   }
 }
 
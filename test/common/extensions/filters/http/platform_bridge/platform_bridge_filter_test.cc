@@ -200,7 +200,7 @@ TEST_F(PlatformBridgeFilterTest, BasicContinueOnRequestHeaders) {
     EXPECT_EQ(Data::Utility::copyToString(c_headers.entries[0].value), "test.code");
     EXPECT_TRUE(end_stream);
     invocations->on_request_headers_calls++;
-    return {kEnvoyFilterHeadersStatusContinue, c_headers};
+    return {kEnvoyFilterHeadersStatusContinue, c_headers, nullptr};
   };
 
   setUpFilter(R"EOF(
@@ -215,6 +215,52 @@ platform_filter_name: BasicContinueOnRequestHeaders
   EXPECT_EQ(invocations.on_request_headers_calls, 1);
 }
 
+TEST_F(PlatformBridgeFilterTest, ChangeOnRequestHeaders) {
+  envoy_http_filter platform_filter{};
+  filter_invocations invocations{};
+  platform_filter.static_context = &invocations;
+  platform_filter.init_filter = [](const void* context) -> const void* {
+    envoy_http_filter* c_filter = static_cast<envoy_http_filter*>(const_cast<void*>(context));
+    filter_invocations* invocations =
+        static_cast<filter_invocations*>(const_cast<void*>(c_filter->static_context));
+    invocations->init_filter_calls++;
+    return invocations;
+  };
+  platform_filter.on_request_headers = [](envoy_headers c_headers, bool, envoy_stream_intel,
+                                          const void* context) -> envoy_filter_headers_status {
+    filter_invocations* invocations = static_cast<filter_invocations*>(const_cast<void*>(context));
+    invocations->on_request_headers_calls++;
+    release_envoy_headers(c_headers);
+    envoy_headers* cleared_headers =
+        static_cast<envoy_headers*>(safe_malloc(sizeof(envoy_headers)));
+    *cleared_headers = make_envoy_headers({{"x-bar", ""}, {"x-baz", ""}});
+    return {kEnvoyFilterHeadersStatusContinue,
+            make_envoy_headers({{"x-foo", "2"}, {"x-bar", "c"}}), cleared_headers};
+  };
+
+  setUpFilter(R"EOF(
+platform_filter_name: ChangeOnRequestHeaders
+)EOF",
+              &platform_filter);
+  EXPECT_EQ(invocations.init_filter_calls, 1);
+
+  Http::TestRequestHeaderMapImpl request_headers{
+      {":authority", "test.code"}, {"x-foo", "1"}, {"x-bar", "a"}, {"x-baz", "b"}};
+
+  EXPECT_EQ(Http::FilterHeadersStatus::Continue, filter_->decodeHeaders(request_headers, true));
+  EXPECT_EQ(invocations.on_request_headers_calls, 1);
+  // Only the headers touched were updated.
+  EXPECT_EQ(request_headers.size(), 4);
+  auto foo = request_headers.get(Http::LowerCaseString("x-foo"));
+  ASSERT_EQ(foo.size(), 2);
+  EXPECT_EQ(foo[0]->value().getStringView(), "1");
+  EXPECT_EQ(foo[1]->value().getStringView(), "2");
+  auto bar = request_headers.get(Http::LowerCaseString("x-bar"));
+  ASSERT_EQ(bar.size(), 1);
+  EXPECT_EQ(bar[0]->value().getStringView(), "c");
+  EXPECT_TRUE(request_headers.get(Http::LowerCaseString("x-baz")).empty());
+}
+
 TEST_F(PlatformBridgeFilterTest, StopOnRequestHeadersThenResumeOnData) {
   envoy_http_filter platform_filter{};
   filter_invocations invocations{};
@@ -236,7 +282,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnRequestHeadersThenResumeOnData) {
     EXPECT_FALSE(end_stream);
     invocations->on_request_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_request_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                        const void* context) -> envoy_filter_data_status {
@@ -294,7 +340,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnRequestHeadersThenResumeOnResumeDecoding)
     EXPECT_FALSE(end_stream);
     invocations->on_request_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_resume_request =
       [](envoy_headers* pending_headers, envoy_data* pending_data, envoy_headers* pending_trailers,
@@ -361,7 +407,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnRequestHeadersThenResumeOnResumeDecodingW
     EXPECT_FALSE(end_stream);
     invocations->on_request_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_resume_request =
       [](envoy_headers* pending_headers, envoy_data* pending_data, envoy_headers* pending_trailers,
@@ -432,7 +478,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnRequestHeadersThenResumeOnResumeDecodingW
     EXPECT_FALSE(end_stream);
     invocations->on_request_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_resume_request =
       [](envoy_headers* pending_headers, envoy_data* pending_data, envoy_headers* pending_trailers,
@@ -510,7 +556,7 @@ TEST_F(PlatformBridgeFilterTest, AsyncResumeDecodingIsNoopAfterPreviousResume) {
     EXPECT_FALSE(end_stream);
     invocations->on_request_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_request_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                        const void* context) -> envoy_filter_data_status {
@@ -666,7 +712,7 @@ TEST_F(PlatformBridgeFilterTest, BasicError) {
     invocations->on_response_headers_calls++;
     ADD_FAILURE() << "on_headers should not get called for an error response.";
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_response_data = [](envoy_data c_data, bool, envoy_stream_intel,
                                         const void* context) -> envoy_filter_data_status {
@@ -798,7 +844,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnRequestHeadersThenBufferThenResumeOnData)
     EXPECT_FALSE(end_stream);
     invocations->on_request_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_request_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                        const void* context) -> envoy_filter_data_status {
@@ -971,7 +1017,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnRequestHeadersThenBufferThenResumeOnTrail
     EXPECT_FALSE(end_stream);
     invocations->on_request_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_request_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                        const void* context) -> envoy_filter_data_status {
@@ -1074,7 +1120,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnRequestHeadersThenBufferThenResumeOnResum
     EXPECT_FALSE(end_stream);
     invocations->on_request_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_request_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                        const void* context) -> envoy_filter_data_status {
@@ -1215,7 +1261,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnRequestHeadersThenBufferThenDontResumeOnR
     EXPECT_FALSE(end_stream);
     invocations->on_request_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_request_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                        const void* context) -> envoy_filter_data_status {
@@ -1329,7 +1375,7 @@ TEST_F(PlatformBridgeFilterTest, BasicContinueOnResponseHeaders) {
     EXPECT_EQ(Data::Utility::copyToString(c_headers.entries[0].value), "test.code");
     EXPECT_TRUE(end_stream);
     invocations->on_response_headers_calls++;
-    return {kEnvoyFilterHeadersStatusContinue, c_headers};
+    return {kEnvoyFilterHeadersStatusContinue, c_headers, nullptr};
   };
 
   setUpFilter(R"EOF(
@@ -1365,7 +1411,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnResponseHeadersThenResumeOnData) {
     EXPECT_FALSE(end_stream);
     invocations->on_response_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_response_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                         const void* context) -> envoy_filter_data_status {
@@ -1423,7 +1469,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnResponseHeadersThenResumeOnResumeEncoding
     EXPECT_FALSE(end_stream);
     invocations->on_response_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_resume_response =
       [](envoy_headers* pending_headers, envoy_data* pending_data, envoy_headers* pending_trailers,
@@ -1490,7 +1536,7 @@ TEST_F(PlatformBridgeFilterTest, AsyncResumeEncodingIsNoopAfterPreviousResume) {
     EXPECT_FALSE(end_stream);
     invocations->on_response_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_response_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                         const void* context) -> envoy_filter_data_status {
@@ -1561,7 +1607,7 @@ TEST_F(PlatformBridgeFilterTest, AsyncResumeEncodingIsNoopAfterFilterIsPendingDe
     EXPECT_FALSE(end_stream);
     invocations->on_response_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_resume_response = [](envoy_headers*, envoy_data*, envoy_headers*, bool,
                                           envoy_stream_intel,
@@ -1785,7 +1831,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnResponseHeadersThenBufferThenResumeOnData
     EXPECT_FALSE(end_stream);
     invocations->on_response_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_response_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                         const void* context) -> envoy_filter_data_status {
@@ -1957,7 +2003,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnResponseHeadersThenBufferThenResumeOnTrai
     EXPECT_FALSE(end_stream);
     invocations->on_response_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_response_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                         const void* context) -> envoy_filter_data_status {
@@ -2060,7 +2106,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnResponseHeadersThenBufferThenResumeOnResu
     EXPECT_FALSE(end_stream);
     invocations->on_response_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_response_data = [](envoy_data c_data, bool end_stream, envoy_stream_intel,
                                         const void* context) -> envoy_filter_data_status {
@@ -2201,7 +2247,7 @@ TEST_F(PlatformBridgeFilterTest, StopOnRequestHeadersThenResumeOnResumeDecodingP
     EXPECT_FALSE(end_stream);
     invocations->on_request_headers_calls++;
     release_envoy_headers(c_headers);
-    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders};
+    return {kEnvoyFilterHeadersStatusStopIteration, envoy_noheaders, nullptr};
   };
   platform_filter.on_resume_request = [](envoy_headers* pending_headers, envoy_data*,
                                          envoy_headers*, bool, envoy_stream_intel,
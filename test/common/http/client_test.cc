@@ -930,5 +930,20 @@ TEST_P(ExplicitFlowControlTest, CancelWithStreamComplete) {
   ASSERT_EQ(cc_.on_complete_calls, 0);
 }
 
+TEST(PreconnectDestinationTest, MatchesTheRoutedCluster) {
+  auto expectDestination = [](absl::string_view scheme, bool force_http2,
+                              absl::string_view cluster, uint16_t port) {
+    const auto destination = Client::preconnectDestination(scheme, force_http2);
+    EXPECT_EQ(cluster, destination.first);
+    EXPECT_EQ(port, destination.second);
+  };
+
+  expectDestination("https", false, "base", 443);
+  expectDestination("http", false, "base_clear", 80);
+  expectDestination("https", true, "base_h2", 443);
+  // h2 raw domains are routed to base_h2 whatever the request's scheme.
+  expectDestination("http", true, "base_h2", 443);
+}
+
 } // namespace Http
 } // namespace Envoy
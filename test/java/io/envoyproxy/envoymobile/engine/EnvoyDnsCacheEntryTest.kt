@@ -0,0 +1,39 @@
+package io.envoyproxy.envoymobile.engine
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class EnvoyDnsCacheEntryTest {
+
+  @Test
+  fun `parseSnapshot parses resolved and resolving entries`() {
+    val entries = EnvoyDnsCacheEntry.parseSnapshot(
+      "example.com:443 93.184.216.34:443 10\nlyft.com:443 - -1\n",
+      60
+    )
+
+    assertThat(entries).hasSize(2)
+    assertThat(entries[0].host).isEqualTo("example.com:443")
+    assertThat(entries[0].address).isEqualTo("93.184.216.34:443")
+    assertThat(entries[0].ageSeconds).isEqualTo(10)
+    assertThat(entries[0].ttlSeconds).isEqualTo(50)
+    assertThat(entries[1].host).isEqualTo("lyft.com:443")
+    assertThat(entries[1].address).isNull()
+    assertThat(entries[1].ageSeconds).isEqualTo(-1)
+    assertThat(entries[1].ttlSeconds).isEqualTo(-1)
+  }
+
+  @Test
+  fun `parseSnapshot estimates ttl across refreshes that kept the address`() {
+    val entries = EnvoyDnsCacheEntry.parseSnapshot("[::1]:8443 [::1]:8443 130\n", 60)
+
+    assertThat(entries).hasSize(1)
+    assertThat(entries[0].address).isEqualTo("[::1]:8443")
+    assertThat(entries[0].ttlSeconds).isEqualTo(50)
+  }
+
+  @Test
+  fun `parseSnapshot returns no entries for an empty snapshot`() {
+    assertThat(EnvoyDnsCacheEntry.parseSnapshot("", 60)).isEmpty()
+  }
+}
@@ -0,0 +1,296 @@
+package io.envoyproxy.envoymobile.engine
+
+import io.envoyproxy.envoymobile.engine.types.EnvoyFinalStreamIntel
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPCallbacks
+import io.envoyproxy.envoymobile.engine.types.EnvoyStreamIntel
+import java.nio.ByteBuffer
+import java.util.Locale
+import java.util.concurrent.Executor
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.mockito.ArgumentMatchers.any
+import org.mockito.ArgumentMatchers.anyBoolean
+import org.mockito.ArgumentMatchers.anyLong
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+
+class EnvoyHTTPStreamCoalescerTest {
+  private val engine: EnvoyEngine = mock(EnvoyEngine::class.java)
+  private val upstreamCallbacks = mutableListOf<EnvoyHTTPCallbacks>()
+  private val upstreamStreams = mutableListOf<EnvoyHTTPStream>()
+  private val getHeaders = mapOf(":method" to listOf("GET"), ":path" to listOf("/a"))
+
+  @Before
+  fun setup() {
+    `when`(engine.startStream(any(), anyBoolean())).thenAnswer { invocation ->
+      upstreamCallbacks.add(invocation.getArgument(0))
+      mock(EnvoyHTTPStream::class.java).also { upstreamStreams.add(it) }
+    }
+  }
+
+  @Test
+  fun `identical in-flight GETs share one upstream stream`() {
+    val coalescer = EnvoyHTTPStreamCoalescer(engine)
+    val first = RecordingCallbacks()
+    val second = RecordingCallbacks()
+
+    coalescer.startStream(first, false).sendHeaders(getHeaders, true)
+    coalescer.startStream(second, false).sendHeaders(getHeaders, true)
+
+    assertThat(upstreamCallbacks).hasSize(1)
+    assertThat(coalescer.upstreamStreamCount).isEqualTo(1)
+    assertThat(coalescer.coalescedStreamCount).isEqualTo(1)
+
+    upstreamCallbacks[0].onHeaders(mapOf(":status" to listOf("200")), false, null)
+    upstreamCallbacks[0].onData(ByteBuffer.wrap("body".toByteArray()), true, null)
+    upstreamCallbacks[0].onComplete(null, null)
+
+    assertThat(first.events).containsExactly("headers", "data:body:true", "complete")
+    assertThat(second.events).containsExactly("headers", "data:body:true", "complete")
+  }
+
+  @Test
+  fun `followers get their own writable copies of the body`() {
+    val coalescer = EnvoyHTTPStreamCoalescer(engine)
+    val first = RecordingCallbacks()
+    val second = RecordingCallbacks()
+    coalescer.startStream(first, false).sendHeaders(getHeaders, true)
+    coalescer.startStream(second, false).sendHeaders(getHeaders, true)
+
+    upstreamCallbacks[0].onHeaders(mapOf(":status" to listOf("200")), false, null)
+    upstreamCallbacks[0].onData(ByteBuffer.wrap("body".toByteArray()), true, null)
+
+    val firstData = first.data.single()
+    val secondData = second.data.single()
+    assertThat(firstData.hasArray()).isTrue()
+    assertThat(secondData.hasArray()).isTrue()
+    firstData.put(0, 'B'.toByte())
+    assertThat(secondData.get(0)).isEqualTo('b'.toByte())
+  }
+
+  @Test
+  fun `explicit flow control gives followers their own writable copies of the body`() {
+    val coalescer = EnvoyHTTPStreamCoalescer(engine)
+    val first = RecordingCallbacks()
+    val second = RecordingCallbacks()
+    val firstStream = coalescer.startStream(first, true)
+    val secondStream = coalescer.startStream(second, true)
+    firstStream.sendHeaders(getHeaders, true)
+    secondStream.sendHeaders(getHeaders, true)
+    upstreamCallbacks[0].onHeaders(mapOf(":status" to listOf("200")), false, null)
+
+    firstStream.readData(100)
+    upstreamCallbacks[0].onData(ByteBuffer.wrap("body".toByteArray()), true, null)
+    first.data.single().put(0, 'B'.toByte())
+    secondStream.readData(100)
+
+    assertThat(first.data.single().hasArray()).isTrue()
+    assertThat(second.data.single().hasArray()).isTrue()
+    assertThat(second.events).containsExactly("headers", "data:body:true")
+  }
+
+  @Test
+  fun `header names are compared independently of the default locale`() {
+    val defaultLocale = Locale.getDefault()
+    Locale.setDefault(Locale("tr", "TR"))
+    try {
+      val coalescer = EnvoyHTTPStreamCoalescer(engine)
+
+      coalescer.startStream(RecordingCallbacks(), false)
+        .sendHeaders(getHeaders + ("X-ID" to listOf("1")), true)
+      coalescer.startStream(RecordingCallbacks(), false)
+        .sendHeaders(getHeaders + ("x-id" to listOf("1")), true)
+
+      assertThat(upstreamCallbacks).hasSize(1)
+    } finally {
+      Locale.setDefault(defaultLocale)
+    }
+  }
+
+  @Test
+  fun `requests are not joined once response headers arrived`() {
+    val coalescer = EnvoyHTTPStreamCoalescer(engine)
+
+    coalescer.startStream(RecordingCallbacks(), false).sendHeaders(getHeaders, true)
+    upstreamCallbacks[0].onHeaders(mapOf(":status" to listOf("200")), false, null)
+    coalescer.startStream(RecordingCallbacks(), false).sendHeaders(getHeaders, true)
+
+    assertThat(upstreamCallbacks).hasSize(2)
+    assertThat(coalescer.coalescedStreamCount).isEqualTo(0)
+  }
+
+  @Test
+  fun `requests with a body or different headers are never coalesced`() {
+    val coalescer = EnvoyHTTPStreamCoalescer(engine)
+    val postHeaders = mapOf(":method" to listOf("POST"), ":path" to listOf("/a"))
+
+    coalescer.startStream(RecordingCallbacks(), false).sendHeaders(getHeaders, true)
+    coalescer.startStream(RecordingCallbacks(), false).sendHeaders(getHeaders, false)
+    coalescer.startStream(RecordingCallbacks(), false).sendHeaders(postHeaders, true)
+    coalescer.startStream(RecordingCallbacks(), false)
+      .sendHeaders(getHeaders + ("accept" to listOf("text/plain")), true)
+
+    assertThat(upstreamCallbacks).hasSize(4)
+    assertThat(coalescer.coalescedStreamCount).isEqualTo(0)
+  }
+
+  @Test
+  fun `explicit flow control delivers data at each follower's pace`() {
+    val coalescer = EnvoyHTTPStreamCoalescer(engine)
+    val fast = RecordingCallbacks()
+    val slow = RecordingCallbacks()
+    val fastStream = coalescer.startStream(fast, true)
+    val slowStream = coalescer.startStream(slow, true)
+    fastStream.sendHeaders(getHeaders, true)
+    slowStream.sendHeaders(getHeaders, true)
+    upstreamCallbacks[0].onHeaders(mapOf(":status" to listOf("200")), false, null)
+
+    fastStream.readData(100)
+    verify(upstreamStreams[0]).readData(100)
+    upstreamCallbacks[0].onData(ByteBuffer.wrap("hello".toByteArray()), true, null)
+    upstreamCallbacks[0].onComplete(null, null)
+    assertThat(fast.events).containsExactly("headers", "data:hello:true", "complete")
+    assertThat(slow.events).containsExactly("headers")
+
+    slowStream.readData(3)
+    slowStream.readData(3)
+    assertThat(slow.events).containsExactly("headers", "data:hel:false", "data:lo:true", "complete")
+  }
+
+  @Test
+  fun `explicit flow control stops reading ahead of a lagging follower`() {
+    val coalescer = EnvoyHTTPStreamCoalescer(engine)
+    val limit = EnvoyHTTPStreamCoalescer.MAX_BUFFERED_BYTES
+    val fastStream = coalescer.startStream(RecordingCallbacks(), true)
+    val slowStream = coalescer.startStream(RecordingCallbacks(), true)
+    fastStream.sendHeaders(getHeaders, true)
+    slowStream.sendHeaders(getHeaders, true)
+    upstreamCallbacks[0].onHeaders(mapOf(":status" to listOf("200")), false, null)
+
+    fastStream.readData(2 * limit)
+    verify(upstreamStreams[0]).readData(limit)
+    upstreamCallbacks[0].onData(ByteBuffer.allocate(limit.toInt()), false, null)
+    fastStream.readData(100)
+    verify(upstreamStreams[0], times(1)).readData(anyLong())
+
+    slowStream.readData(limit)
+    verify(upstreamStreams[0]).readData(100)
+  }
+
+  @Test
+  fun `explicit flow control keeps delivering once chunks read by every follower are dropped`() {
+    val coalescer = EnvoyHTTPStreamCoalescer(engine)
+    val fast = RecordingCallbacks()
+    val slow = RecordingCallbacks()
+    val fastStream = coalescer.startStream(fast, true)
+    val slowStream = coalescer.startStream(slow, true)
+    fastStream.sendHeaders(getHeaders, true)
+    slowStream.sendHeaders(getHeaders, true)
+    upstreamCallbacks[0].onHeaders(mapOf(":status" to listOf("200")), false, null)
+
+    fastStream.readData(100)
+    upstreamCallbacks[0].onData(ByteBuffer.wrap("one".toByteArray()), false, null)
+    fastStream.readData(100)
+    upstreamCallbacks[0].onData(ByteBuffer.wrap("two".toByteArray()), false, null)
+    slowStream.readData(100)
+    fastStream.readData(100)
+    upstreamCallbacks[0].onData(ByteBuffer.wrap("three".toByteArray()), true, null)
+    slowStream.readData(100)
+    slowStream.readData(100)
+
+    assertThat(fast.events).containsExactly(
+      "headers", "data:one:false", "data:two:false", "data:three:true"
+    )
+    assertThat(slow.events).containsExactly(
+      "headers", "data:one:false", "data:two:false", "data:three:true"
+    )
+  }
+
+  @Test
+  fun `cancelling one follower keeps the upstream stream alive for the others`() {
+    val coalescer = EnvoyHTTPStreamCoalescer(engine)
+    val cancelled = RecordingCallbacks()
+    val remaining = RecordingCallbacks()
+    val cancelledStream = coalescer.startStream(cancelled, false)
+    cancelledStream.sendHeaders(getHeaders, true)
+    coalescer.startStream(remaining, false).sendHeaders(getHeaders, true)
+
+    cancelledStream.cancel()
+    verify(upstreamStreams[0], never()).cancel()
+    upstreamCallbacks[0].onHeaders(mapOf(":status" to listOf("200")), true, null)
+    upstreamCallbacks[0].onComplete(null, null)
+
+    assertThat(cancelled.events).containsExactly("cancel")
+    assertThat(remaining.events).containsExactly("headers", "complete")
+  }
+
+  @Test
+  fun `cancelling every follower cancels the upstream stream`() {
+    val coalescer = EnvoyHTTPStreamCoalescer(engine)
+    val first = coalescer.startStream(RecordingCallbacks(), false)
+    val second = coalescer.startStream(RecordingCallbacks(), false)
+    first.sendHeaders(getHeaders, true)
+    second.sendHeaders(getHeaders, true)
+
+    first.cancel()
+    second.cancel()
+
+    verify(upstreamStreams[0]).cancel()
+  }
+
+  private class RecordingCallbacks : EnvoyHTTPCallbacks {
+    val events = mutableListOf<String>()
+    val data = mutableListOf<ByteBuffer>()
+
+    override fun getExecutor(): Executor = Executor { it.run() }
+
+    override fun onHeaders(
+      headers: Map<String, List<String>>,
+      endStream: Boolean,
+      streamIntel: EnvoyStreamIntel?
+    ) {
+      events.add("headers")
+    }
+
+    override fun onData(data: ByteBuffer, endStream: Boolean, streamIntel: EnvoyStreamIntel?) {
+      this.data.add(data)
+      val bytes = ByteArray(data.remaining())
+      data.duplicate().get(bytes)
+      events.add("data:${String(bytes)}:$endStream")
+    }
+
+    override fun onTrailers(trailers: Map<String, List<String>>, streamIntel: EnvoyStreamIntel?) {
+      events.add("trailers")
+    }
+
+    override fun onError(
+      errorCode: Int,
+      message: String,
+      attemptCount: Int,
+      streamIntel: EnvoyStreamIntel?,
+      finalStreamIntel: EnvoyFinalStreamIntel?
+    ) {
+      events.add("error")
+    }
+
+    override fun onCancel(
+      streamIntel: EnvoyStreamIntel?,
+      finalStreamIntel: EnvoyFinalStreamIntel?
+    ) {
+      events.add("cancel")
+    }
+
+    override fun onSendWindowAvailable(streamIntel: EnvoyStreamIntel?) {}
+
+    override fun onComplete(
+      streamIntel: EnvoyStreamIntel?,
+      finalStreamIntel: EnvoyFinalStreamIntel?
+    ) {
+      events.add("complete")
+    }
+  }
+}
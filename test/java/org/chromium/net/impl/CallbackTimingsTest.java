@@ -0,0 +1,84 @@
+package org.chromium.net.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class CallbackTimingsTest {
+
+  private final CallbackTimings mTimings = new CallbackTimings(/* enabled= */ true);
+
+  @Test
+  public void queueingDelay_isTimeUntilTaskRuns() throws Exception {
+    List<Runnable> queue = new ArrayList<>();
+    Executor queueingExecutor = queue::add;
+
+    queueingExecutor.execute(mTimings.timeQueueing(() -> {}));
+    Thread.sleep(20);
+    queue.get(0).run();
+
+    assertThat(mTimings.getExecutorQueueingNanos())
+        .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+    assertThat(mTimings.getLibraryOverheadNanos())
+        .isEqualTo(mTimings.getExecutorQueueingNanos());
+  }
+
+  @Test
+  public void userReadDelay_isTimeUntilRead() throws Exception {
+    mTimings.onRead(); // Not expected: ignored.
+    assertThat(mTimings.getUserReadDelayNanos()).isZero();
+
+    mTimings.onReadExpected();
+    Thread.sleep(20);
+    mTimings.onRead();
+
+    assertThat(mTimings.getUserReadDelayNanos())
+        .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+    assertThat(mTimings.getLibraryOverheadNanos()).isLessThan(TimeUnit.MILLISECONDS.toNanos(20));
+  }
+
+  @Test
+  public void networkThreadTime_excludesUserCallbacksRunInline() throws Exception {
+    Executor networkExecutor = mTimings.timingDirectExecutor();
+    Runnable userCallback = mTimings.timeQueueing(() -> sleep(50));
+
+    networkExecutor.execute(userCallback);
+
+    assertThat(mTimings.getLibraryOverheadNanos()).isLessThan(TimeUnit.MILLISECONDS.toNanos(50));
+
+    networkExecutor.execute(() -> sleep(20));
+
+    assertThat(mTimings.getLibraryOverheadNanos())
+        .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+  }
+
+  @Test
+  public void disabledTimings_leaveTasksUnwrapped() throws Exception {
+    CallbackTimings timings = new CallbackTimings(/* enabled= */ false);
+    Runnable task = () -> sleep(20);
+
+    assertThat(timings.timeQueueing(task)).isSameAs(task);
+    timings.timingDirectExecutor().execute(task);
+    timings.onReadExpected();
+    timings.onRead();
+
+    assertThat(timings.getExecutorQueueingNanos()).isZero();
+    assertThat(timings.getUserReadDelayNanos()).isZero();
+    assertThat(timings.getLibraryOverheadNanos()).isZero();
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -11,15 +11,19 @@ import androidx.test.core.app.ApplicationProvider;
 import io.envoyproxy.envoymobile.RequestMethod;
 import io.envoyproxy.envoymobile.engine.AndroidJniLibrary;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -29,6 +33,7 @@ import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import org.chromium.net.CronetException;
 import org.chromium.net.ExperimentalUrlRequest;
+import org.chromium.net.UploadDataProvider;
 import org.chromium.net.UploadDataProviders;
 import org.chromium.net.UrlRequest;
 import org.chromium.net.UrlResponseInfo;
@@ -140,6 +145,24 @@ public class CronvoyEngineTest {
     assertThat(response.getNbResponseChunks()).isEqualTo(3); // 5 bytes, 5 bytes, and 2 bytes
   }
 
+  @Test
+  public void get_withDirectExecutor_deliversBodyInline() throws Exception {
+    mockWebServer.enqueue(
+        new MockResponse().throttleBody(5, 1, TimeUnit.SECONDS).setBody("hello, world"));
+    mockWebServer.start();
+    RequestScenario requestScenario =
+        new RequestScenario().addResponseBuffers(13).useDirectExecutor();
+
+    Response response = sendRequest(requestScenario);
+
+    assertThat(response.getCronetException()).withFailMessage(response.getErrorMessage()).isNull();
+    assertThat(response.getBodyAsString()).isEqualTo("hello, world");
+    assertThat(response.getNbResponseChunks()).isEqualTo(3); // 5 bytes, 5 bytes, and 2 bytes
+    // Only the probe, which finds the executor to be direct, and the final callback go through the
+    // executor: headers and body are delivered inline.
+    assertThat(requestScenario.directExecutorTasks.get()).isEqualTo(2);
+  }
+
   @Test
   public void get_cancelOnResponseStarted() throws Exception {
     mockWebServer.enqueue(new MockResponse().setBody("hello, world"));
@@ -204,6 +227,45 @@ public class CronvoyEngineTest {
     assertThat(response.getCronetException()).withFailMessage(response.getErrorMessage()).isNull();
   }
 
+  @Test
+  public void post_mappedFile() throws Exception {
+    byte[] requestBody = new byte[300_000];
+    new Random(1).nextBytes(requestBody);
+    File file = File.createTempFile("upload", ".bin");
+    file.deleteOnExit();
+    Files.write(file.toPath(), requestBody);
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest recordedRequest) {
+        assertThat(recordedRequest.getBody().readByteArray()).isEqualTo(requestBody);
+        switch (recordedRequest.getRequestUrl().encodedPath()) {
+        case "/get/flowers":
+          return new MockResponse()
+              .setResponseCode(HTTP_MOVED_TEMP)
+              .setHeader("Location", "/get/chocolates");
+
+        case "/get/chocolates":
+          return new MockResponse().setBody("Everything is awesome").setResponseCode(HTTP_OK);
+        }
+        return new MockResponse().setResponseCode(HTTP_BAD_REQUEST);
+      }
+    });
+    mockWebServer.start();
+    // The redirect checks that the mapping is rewound, and the whole file sent twice.
+    RequestScenario requestScenario =
+        new RequestScenario()
+            .addResponseBuffers(30)
+            .setUrlPath("/get/flowers")
+            .addHeader("content-type", "application/octet-stream")
+            .setUploadDataProvider(new MappedFileUploadDataProvider(file));
+
+    Response response = sendRequest(requestScenario);
+
+    assertThat(response.getResponseCode()).isEqualTo(HTTP_OK);
+    assertThat(response.getBodyAsString()).isEqualTo("Everything is awesome");
+    assertThat(response.getCronetException()).withFailMessage(response.getErrorMessage()).isNull();
+  }
+
   @Test
   public void get_redirect() throws Exception {
     mockWebServer.setDispatcher(new Dispatcher() {
@@ -322,9 +384,16 @@ public class CronvoyEngineTest {
     ExperimentalUrlRequest.Builder builder = cronvoyEngine.newUrlRequestBuilder(
         mockWebServer.url(requestScenario.urlPath).toString(),
         urlRequestCallbackTester.getWrappedUrlRequestCallback(testCallback),
-        Executors.newSingleThreadExecutor());
+        requestScenario.directExecutorTasks != null ? requestScenario.directExecutorTasks
+                                                    : Executors.newSingleThreadExecutor());
+    if (requestScenario.directExecutorTasks != null) {
+      builder.allowDirectExecutor();
+    }
 
-    if (requestScenario.requestBody != null) {
+    if (requestScenario.uploadDataProvider != null) {
+      builder.setUploadDataProvider(requestScenario.uploadDataProvider,
+                                    Executors.newSingleThreadExecutor());
+    } else if (requestScenario.requestBody != null) {
       builder.setUploadDataProvider(UploadDataProviders.create(requestScenario.requestBody),
                                     Executors.newSingleThreadExecutor());
     }
@@ -424,9 +493,11 @@ public class CronvoyEngineTest {
     String httpMethod = null; // Cronet has defaults - it is optional
     String urlPath = TEST_URL_PATH;
     byte[] requestBody = null;
+    UploadDataProvider uploadDataProvider = null;
     final List<Map.Entry<String, String>> header = new ArrayList<>();
     final List<ByteBuffer> responseBody = new ArrayList<>();
     boolean cancelOnResponseStarted = false;
+    CountingDirectExecutor directExecutorTasks = null;
 
     RequestScenario setHttpMethod(RequestMethod httpMethod) {
       this.httpMethod = httpMethod.name();
@@ -447,6 +518,11 @@ public class CronvoyEngineTest {
       return setRequestBody(requestBody.getBytes());
     }
 
+    RequestScenario setUploadDataProvider(UploadDataProvider uploadDataProvider) {
+      this.uploadDataProvider = uploadDataProvider;
+      return this;
+    }
+
     RequestScenario addHeader(String key, String value) {
       header.add(new SimpleImmutableEntry<>(key, value));
       return this;
@@ -463,6 +539,23 @@ public class CronvoyEngineTest {
       cancelOnResponseStarted = true;
       return this;
     }
+
+    RequestScenario useDirectExecutor() {
+      directExecutorTasks = new CountingDirectExecutor();
+      return this;
+    }
+  }
+
+  private static class CountingDirectExecutor implements Executor {
+    private final AtomicInteger tasks = new AtomicInteger();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.incrementAndGet();
+      task.run();
+    }
+
+    int get() { return tasks.get(); }
   }
 
   private static class Response {
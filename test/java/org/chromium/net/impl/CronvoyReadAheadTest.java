@@ -0,0 +1,256 @@
+package org.chromium.net.impl;
+
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.chromium.net.testing.CronetTestRule.SERVER_CERT_PEM;
+import static org.chromium.net.testing.CronetTestRule.SERVER_KEY_PKCS8_PEM;
+
+import androidx.test.core.app.ApplicationProvider;
+import io.envoyproxy.envoymobile.engine.AndroidJniLibrary;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.chromium.net.CronetException;
+import org.chromium.net.UploadDataProvider;
+import org.chromium.net.UploadDataSink;
+import org.chromium.net.UrlRequest;
+import org.chromium.net.UrlResponseInfo;
+import org.chromium.net.testing.Http2TestServer;
+import org.chromium.net.testing.TestFilesInstaller;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class CronvoyReadAheadTest {
+
+  private static final int READ_AHEAD_BYTES = 8;
+
+  private static CronetUrlRequestContext cronvoyEngine;
+
+  private final MockWebServer mockWebServer = new MockWebServer();
+
+  @BeforeClass
+  public static void loadJniLibrary() {
+    AndroidJniLibrary.loadTestLibrary();
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    if (cronvoyEngine != null) {
+      cronvoyEngine.shutdown();
+    }
+  }
+
+  @Before
+  public void setUp() {
+    if (cronvoyEngine == null) {
+      NativeCronetEngineBuilderImpl nativeCronetEngineBuilder =
+          new NativeCronetEngineBuilderImpl(ApplicationProvider.getApplicationContext());
+      nativeCronetEngineBuilder.setUserAgent("Cronvoy");
+      nativeCronetEngineBuilder.enableReadAhead(READ_AHEAD_BYTES);
+      nativeCronetEngineBuilder.setMockCertVerifierForTesting();
+      cronvoyEngine = new CronetUrlRequestContext(nativeCronetEngineBuilder);
+    }
+  }
+
+  @After
+  public void shutdownMockWebServer() throws IOException {
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  public void get_bodyLargerThanBudget() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("hello, world, and then some more"));
+    mockWebServer.start();
+
+    Response response = sendRequest(/* bufferSize= */ 64, /* cancelOnResponseStarted= */ false);
+
+    assertThat(response.mCronetException).isNull();
+    assertThat(response.mResponseCode).isEqualTo(HTTP_OK);
+    assertThat(response.mBody).isEqualTo("hello, world, and then some more");
+  }
+
+  @Test
+  public void get_buffersSmallerThanStagedData() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("hello, world"));
+    mockWebServer.start();
+
+    Response response = sendRequest(/* bufferSize= */ 3, /* cancelOnResponseStarted= */ false);
+
+    assertThat(response.mCronetException).isNull();
+    assertThat(response.mBody).isEqualTo("hello, world");
+  }
+
+  @Test
+  public void get_withThrottledBodyResponse() throws Exception {
+    mockWebServer.enqueue(
+        new MockResponse().throttleBody(5, 1, TimeUnit.SECONDS).setBody("hello, world"));
+    mockWebServer.start();
+
+    Response response = sendRequest(/* bufferSize= */ 13, /* cancelOnResponseStarted= */ false);
+
+    assertThat(response.mCronetException).isNull();
+    assertThat(response.mBody).isEqualTo("hello, world");
+  }
+
+  @Test
+  public void get_noBody() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setResponseCode(HTTP_OK));
+    mockWebServer.start();
+
+    Response response = sendRequest(/* bufferSize= */ 1, /* cancelOnResponseStarted= */ false);
+
+    assertThat(response.mCronetException).isNull();
+    assertThat(response.mBody).isEmpty();
+  }
+
+  @Test
+  public void get_cancelOnResponseStarted() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("hello, world"));
+    mockWebServer.start();
+
+    Response response = sendRequest(/* bufferSize= */ 13, /* cancelOnResponseStarted= */ true);
+
+    assertThat(response.mCancelled).isTrue();
+    assertThat(response.mBody).isEmpty();
+  }
+
+  @Test
+  public void post_bodyEchoedWhileUploading() throws Exception {
+    TestFilesInstaller.installIfNeeded(ApplicationProvider.getApplicationContext());
+    Http2TestServer.startHttp2TestServer(ApplicationProvider.getApplicationContext(),
+                                         SERVER_CERT_PEM, SERVER_KEY_PKCS8_PEM);
+    try {
+      // The server echoes each chunk as received: the response body is read ahead while the
+      // request body is still being sent, so reads are attempted during sends.
+      StringBuilder expectedBody = new StringBuilder();
+      for (int i = 0; i < 500; i++) {
+        expectedBody.append(String.format("chunk %03d;", i));
+      }
+
+      Response response = sendRequest(Http2TestServer.getEchoStreamUrl(),
+                                       new ChunkedUploadDataProvider(expectedBody.toString(), 10),
+                                       /* bufferSize= */ 5, /* cancelOnResponseStarted= */ false);
+
+      assertThat(response.mCronetException).isNull();
+      assertThat(response.mResponseCode).isEqualTo(HTTP_OK);
+      assertThat(response.mBody).isEqualTo(expectedBody.toString());
+    } finally {
+      Http2TestServer.shutdownHttp2TestServer();
+    }
+  }
+
+  private Response sendRequest(int bufferSize, boolean cancelOnResponseStarted) {
+    return sendRequest(mockWebServer.url("get/flowers").toString(), /* uploadDataProvider= */ null,
+                       bufferSize, cancelOnResponseStarted);
+  }
+
+  private Response sendRequest(String url, UploadDataProvider uploadDataProvider, int bufferSize,
+                               boolean cancelOnResponseStarted) {
+    UrlRequestCallbackTester<Response> urlRequestCallbackTester = new UrlRequestCallbackTester<>();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    UrlRequest.Callback callback = new UrlRequest.Callback() {
+      @Override
+      public void onRedirectReceived(UrlRequest request, UrlResponseInfo info, String newUrl) {
+        request.followRedirect();
+      }
+
+      @Override
+      public void onResponseStarted(UrlRequest request, UrlResponseInfo info) {
+        if (cancelOnResponseStarted) {
+          request.cancel();
+          return;
+        }
+        request.read(ByteBuffer.allocateDirect(bufferSize));
+      }
+
+      @Override
+      public void onReadCompleted(UrlRequest request, UrlResponseInfo info, ByteBuffer buffer) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          body.write(buffer.get());
+        }
+        buffer.clear();
+        request.read(buffer);
+      }
+
+      @Override
+      public void onSucceeded(UrlRequest request, UrlResponseInfo info) {
+        urlRequestCallbackTester.setResponse(new Response(info, body, null, false));
+      }
+
+      @Override
+      public void onFailed(UrlRequest request, UrlResponseInfo info, CronetException error) {
+        urlRequestCallbackTester.setResponse(new Response(info, body, error, false));
+      }
+
+      @Override
+      public void onCanceled(UrlRequest request, UrlResponseInfo info) {
+        urlRequestCallbackTester.setResponse(new Response(info, body, null, true));
+      }
+    };
+    UrlRequest.Builder builder = cronvoyEngine.newUrlRequestBuilder(
+        url, urlRequestCallbackTester.getWrappedUrlRequestCallback(callback),
+        Executors.newSingleThreadExecutor());
+    if (uploadDataProvider != null) {
+      builder.addHeader("Content-Type", "text/plain")
+          .setUploadDataProvider(uploadDataProvider, Executors.newSingleThreadExecutor());
+    }
+    return urlRequestCallbackTester.waitForResponse(builder.build());
+  }
+
+  /** Provides the body in chunks of the given size, each sent separately, of unknown length. */
+  private static class ChunkedUploadDataProvider extends UploadDataProvider {
+    private final byte[] mBody;
+    private final int mChunkSize;
+    private int mPosition;
+
+    ChunkedUploadDataProvider(String body, int chunkSize) {
+      mBody = body.getBytes();
+      mChunkSize = chunkSize;
+    }
+
+    @Override
+    public long getLength() {
+      return -1;
+    }
+
+    @Override
+    public void read(UploadDataSink uploadDataSink, ByteBuffer byteBuffer) {
+      int size = Math.min(Math.min(mChunkSize, byteBuffer.remaining()), mBody.length - mPosition);
+      byteBuffer.put(mBody, mPosition, size);
+      mPosition += size;
+      uploadDataSink.onReadSucceeded(/* finalChunk= */ mPosition == mBody.length);
+    }
+
+    @Override
+    public void rewind(UploadDataSink uploadDataSink) {
+      mPosition = 0;
+      uploadDataSink.onRewindSucceeded();
+    }
+  }
+
+  private static class Response {
+    final int mResponseCode;
+    final String mBody;
+    final CronetException mCronetException;
+    final boolean mCancelled;
+
+    Response(UrlResponseInfo info, ByteArrayOutputStream body, CronetException cronetException,
+             boolean cancelled) {
+      mResponseCode = info == null ? 0 : info.getHttpStatusCode();
+      mBody = new String(body.toByteArray());
+      mCronetException = cronetException;
+      mCancelled = cancelled;
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package org.chromium.net.impl;
+
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+import static java.net.HttpURLConnection.HTTP_MOVED_TEMP;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import io.envoyproxy.envoymobile.engine.AndroidJniLibrary;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.chromium.net.CronetException;
+import org.chromium.net.UploadDataProvider;
+import org.chromium.net.UploadDataProviders;
+import org.chromium.net.UploadDataSink;
+import org.chromium.net.UrlRequest;
+import org.chromium.net.UrlResponseInfo;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class CronvoyUploadPipeliningTest {
+
+  private static CronetUrlRequestContext cronvoyEngine;
+
+  private final MockWebServer mockWebServer = new MockWebServer();
+
+  @BeforeClass
+  public static void loadJniLibrary() {
+    AndroidJniLibrary.loadTestLibrary();
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    if (cronvoyEngine != null) {
+      cronvoyEngine.shutdown();
+    }
+  }
+
+  @Before
+  public void setUp() {
+    if (cronvoyEngine == null) {
+      NativeCronetEngineBuilderImpl nativeCronetEngineBuilder =
+          new NativeCronetEngineBuilderImpl(ApplicationProvider.getApplicationContext());
+      nativeCronetEngineBuilder.setUserAgent("Cronvoy");
+      nativeCronetEngineBuilder.enableUploadPipelining(/* maxChunks= */ 4,
+                                                       /* maxBytes= */ 256 * 1024);
+      cronvoyEngine = new CronetUrlRequestContext(nativeCronetEngineBuilder);
+    }
+  }
+
+  @After
+  public void shutdownMockWebServer() throws IOException {
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  public void post_largeBody() throws Exception {
+    byte[] requestBody = randomBytes(1_000_000);
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest recordedRequest) {
+        assertThat(recordedRequest.getBody().readByteArray()).isEqualTo(requestBody);
+        return new MockResponse().setBody("received");
+      }
+    });
+    mockWebServer.start();
+
+    Response response = sendRequest("/post/flowers", UploadDataProviders.create(requestBody));
+
+    assertThat(response.mCronetException).isNull();
+    assertThat(response.mResponseCode).isEqualTo(HTTP_OK);
+    assertThat(response.mBody).isEqualTo("received");
+  }
+
+  @Test
+  public void post_chunkedBody() throws Exception {
+    byte[] requestBody = randomBytes(300_000);
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest recordedRequest) {
+        assertThat(recordedRequest.getBody().readByteArray()).isEqualTo(requestBody);
+        return new MockResponse().setBody("received");
+      }
+    });
+    mockWebServer.start();
+
+    Response response = sendRequest("/post/flowers", new ChunkedUploadDataProvider(requestBody));
+
+    assertThat(response.mCronetException).isNull();
+    assertThat(response.mBody).isEqualTo("received");
+  }
+
+  @Test
+  public void post_emptyBody() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("received"));
+    mockWebServer.start();
+
+    Response response = sendRequest("/post/flowers", UploadDataProviders.create(new byte[0]));
+
+    assertThat(response.mCronetException).isNull();
+    assertThat(response.mBody).isEqualTo("received");
+  }
+
+  @Test
+  public void post_redirect_rewindsPipelinedChunks() throws Exception {
+    byte[] requestBody = randomBytes(500_000);
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest recordedRequest) {
+        // The whole body is sent again after the redirect, from its first byte.
+        assertThat(recordedRequest.getBody().readByteArray()).isEqualTo(requestBody);
+        switch (recordedRequest.getRequestUrl().encodedPath()) {
+        case "/post/flowers":
+          return new MockResponse()
+              .setResponseCode(HTTP_MOVED_TEMP)
+              .setHeader("Location", "/post/chocolates");
+
+        case "/post/chocolates":
+          return new MockResponse().setBody("received");
+        }
+        return new MockResponse().setResponseCode(HTTP_BAD_REQUEST);
+      }
+    });
+    mockWebServer.start();
+
+    Response response = sendRequest("/post/flowers", UploadDataProviders.create(requestBody));
+
+    assertThat(response.mCronetException).isNull();
+    assertThat(response.mBody).isEqualTo("received");
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  private Response sendRequest(String path, UploadDataProvider uploadDataProvider) {
+    UrlRequestCallbackTester<Response> urlRequestCallbackTester = new UrlRequestCallbackTester<>();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    UrlRequest.Callback callback = new UrlRequest.Callback() {
+      @Override
+      public void onRedirectReceived(UrlRequest request, UrlResponseInfo info, String newUrl) {
+        request.followRedirect();
+      }
+
+      @Override
+      public void onResponseStarted(UrlRequest request, UrlResponseInfo info) {
+        request.read(ByteBuffer.allocateDirect(64));
+      }
+
+      @Override
+      public void onReadCompleted(UrlRequest request, UrlResponseInfo info, ByteBuffer buffer) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          body.write(buffer.get());
+        }
+        buffer.clear();
+        request.read(buffer);
+      }
+
+      @Override
+      public void onSucceeded(UrlRequest request, UrlResponseInfo info) {
+        urlRequestCallbackTester.setResponse(new Response(info, body, null));
+      }
+
+      @Override
+      public void onFailed(UrlRequest request, UrlResponseInfo info, CronetException error) {
+        urlRequestCallbackTester.setResponse(new Response(info, body, error));
+      }
+
+      @Override
+      public void onCanceled(UrlRequest request, UrlResponseInfo info) {
+        urlRequestCallbackTester.setResponse(new Response(info, body, null));
+      }
+    };
+    UrlRequest.Builder builder =
+        cronvoyEngine
+            .newUrlRequestBuilder(mockWebServer.url(path).toString(),
+                                  urlRequestCallbackTester.getWrappedUrlRequestCallback(callback),
+                                  Executors.newSingleThreadExecutor())
+            .addHeader("content-type", "application/octet-stream")
+            .setUploadDataProvider(uploadDataProvider, Executors.newSingleThreadExecutor());
+    return urlRequestCallbackTester.waitForResponse(builder.build());
+  }
+
+  /** Uploads its bytes with chunked transfer encoding, in uneven slices. */
+  private static class ChunkedUploadDataProvider extends UploadDataProvider {
+    private final byte[] mData;
+    private int mPosition;
+
+    ChunkedUploadDataProvider(byte[] data) { mData = data; }
+
+    @Override
+    public long getLength() {
+      return -1;
+    }
+
+    @Override
+    public void read(UploadDataSink uploadDataSink, ByteBuffer byteBuffer) {
+      int size = Math.min(Math.min(byteBuffer.remaining(), 10_000), mData.length - mPosition);
+      byteBuffer.put(mData, mPosition, size);
+      mPosition += size;
+      uploadDataSink.onReadSucceeded(mPosition == mData.length);
+    }
+
+    @Override
+    public void rewind(UploadDataSink uploadDataSink) {
+      mPosition = 0;
+      uploadDataSink.onRewindSucceeded();
+    }
+  }
+
+  private static class Response {
+    final int mResponseCode;
+    final String mBody;
+    final CronetException mCronetException;
+
+    Response(UrlResponseInfo info, ByteArrayOutputStream body, CronetException cronetException) {
+      mResponseCode = info == null ? 0 : info.getHttpStatusCode();
+      mBody = new String(body.toByteArray());
+      mCronetException = cronetException;
+    }
+  }
+}
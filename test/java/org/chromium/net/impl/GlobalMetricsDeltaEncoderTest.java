@@ -0,0 +1,201 @@
+package org.chromium.net.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class GlobalMetricsDeltaEncoderTest {
+
+  private static final String SNAPSHOT_1 = "# TYPE envoy_cluster_upstream_rq_total counter\n"
+                                           + "envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base\"} 3\n"
+                                           + "envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base_h2\"} 1\n"
+                                           + "# TYPE envoy_server_memory_allocated gauge\n"
+                                           + "envoy_server_memory_allocated{} 1000\n"
+                                           + "# TYPE envoy_cluster_upstream_rq_time histogram\n"
+                                           + "envoy_cluster_upstream_rq_time_bucket{envoy_cluster_name=\"base\",le=\"1\"} 1\n"
+                                           + "envoy_cluster_upstream_rq_time_bucket{envoy_cluster_name=\"base\",le=\"10\"} 2\n"
+                                           + "envoy_cluster_upstream_rq_time_bucket{envoy_cluster_name=\"base\",le=\"+Inf\"} 3\n"
+                                           + "envoy_cluster_upstream_rq_time_sum{envoy_cluster_name=\"base\"} 25.5\n"
+                                           + "envoy_cluster_upstream_rq_time_count{envoy_cluster_name=\"base\"} 3\n";
+
+  private static final String SNAPSHOT_2 = "# TYPE envoy_cluster_upstream_rq_total counter\n"
+                                           + "envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base\"} 5\n"
+                                           + "envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base_h2\"} 1\n"
+                                           + "# TYPE envoy_cluster_upstream_rq_time histogram\n"
+                                           + "envoy_cluster_upstream_rq_time_bucket{envoy_cluster_name=\"base\",le=\"1\"} 1\n"
+                                           + "envoy_cluster_upstream_rq_time_bucket{envoy_cluster_name=\"base\",le=\"10\"} 3\n"
+                                           + "envoy_cluster_upstream_rq_time_bucket{envoy_cluster_name=\"base\",le=\"+Inf\"} 5\n"
+                                           + "envoy_cluster_upstream_rq_time_sum{envoy_cluster_name=\"base\"} 125.5\n"
+                                           + "envoy_cluster_upstream_rq_time_count{envoy_cluster_name=\"base\"} 5\n";
+
+  private final GlobalMetricsDeltaEncoder mEncoder = new GlobalMetricsDeltaEncoder();
+
+  @Test
+  public void firstCall_reportsCumulativeValues() {
+    Decoded decoded = decode(mEncoder.encodeDeltas(SNAPSHOT_1));
+
+    assertThat(decoded.mBounds).hasSize(1);
+    assertThat(decoded.mBounds.get(0)).containsExactly(1.0, 10.0);
+    assertThat(decoded.mCounters)
+        .containsOnlyKeys("envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base\"}",
+                          "envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base_h2\"}");
+    assertThat(decoded.mCounters.get("envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base\"}"))
+        .isEqualTo(3);
+    long[] histogram =
+        decoded.mHistograms.get("envoy_cluster_upstream_rq_time{envoy_cluster_name=\"base\"}");
+    // count, then per bucket counts.
+    assertThat(histogram).containsExactly(3, 1, 1, 1);
+    assertThat(decoded.mSums.get("envoy_cluster_upstream_rq_time{envoy_cluster_name=\"base\"}"))
+        .isEqualTo(25.5);
+  }
+
+  @Test
+  public void secondCall_reportsOnlyChangedSeries() {
+    mEncoder.encodeDeltas(SNAPSHOT_1);
+    Decoded decoded = decode(mEncoder.encodeDeltas(SNAPSHOT_2));
+
+    assertThat(decoded.mCounters)
+        .containsOnlyKeys("envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base\"}");
+    assertThat(decoded.mCounters.get("envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base\"}"))
+        .isEqualTo(2);
+    long[] histogram =
+        decoded.mHistograms.get("envoy_cluster_upstream_rq_time{envoy_cluster_name=\"base\"}");
+    assertThat(histogram).containsExactly(2, 0, 1, 1);
+    assertThat(decoded.mSums.get("envoy_cluster_upstream_rq_time{envoy_cluster_name=\"base\"}"))
+        .isEqualTo(100.0);
+  }
+
+  @Test
+  public void unchangedSnapshot_encodesNoEntries() {
+    mEncoder.encodeDeltas(SNAPSHOT_1);
+    byte[] encoded = mEncoder.encodeDeltas(SNAPSHOT_1);
+
+    // Version, empty bounds table, zero entries.
+    assertThat(encoded).containsExactly(1, 0, 0);
+  }
+
+  @Test
+  public void counterReset_reportsCurrentValue() {
+    mEncoder.encodeDeltas(SNAPSHOT_2);
+    Decoded decoded = decode(mEncoder.encodeDeltas(SNAPSHOT_1));
+
+    assertThat(decoded.mCounters.get("envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base\"}"))
+        .isEqualTo(3);
+    assertThat(decoded.mHistograms.get("envoy_cluster_upstream_rq_time{envoy_cluster_name=\"base\"}"))
+        .containsExactly(3, 1, 1, 1);
+  }
+
+  @Test
+  public void concurrentCallers_reportEachIncrementOnce() throws Exception {
+    AtomicLong requests = new AtomicLong();
+    AtomicLong reported = new AtomicLong();
+    GlobalMetricsDeltaEncoder.SnapshotSource source = () -> {
+      String snapshot = "# TYPE envoy_rq_total counter\nenvoy_rq_total{} " +
+                        requests.incrementAndGet() + "\n";
+      // Gives the other caller a chance to take a newer snapshot before this one is encoded.
+      Thread.yield();
+      return snapshot;
+    };
+    CountDownLatch start = new CountDownLatch(1);
+    Runnable caller = () -> {
+      try {
+        start.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+      for (int i = 0; i < 500; i++) {
+        Long delta = decode(mEncoder.takeSnapshotAndEncodeDeltas(source))
+                         .mCounters.get("envoy_rq_total{}");
+        reported.addAndGet(delta == null ? 0 : delta);
+      }
+    };
+    Thread first = new Thread(caller);
+    Thread second = new Thread(caller);
+    first.start();
+    second.start();
+    start.countDown();
+    first.join();
+    second.join();
+
+    assertThat(reported.get()).isEqualTo(requests.get());
+  }
+
+  @Test
+  public void emptySnapshot_keepsBaseline() {
+    mEncoder.encodeDeltas(SNAPSHOT_1);
+
+    assertThat(mEncoder.takeSnapshotAndEncodeDeltas(() -> "")).isEmpty();
+    Decoded decoded = decode(mEncoder.takeSnapshotAndEncodeDeltas(() -> SNAPSHOT_2));
+    assertThat(decoded.mCounters.get("envoy_cluster_upstream_rq_total{envoy_cluster_name=\"base\"}"))
+        .isEqualTo(2);
+  }
+
+  private static final class Decoded {
+    final List<double[]> mBounds = new ArrayList<>();
+    final Map<String, Long> mCounters = new LinkedHashMap<>();
+    final Map<String, long[]> mHistograms = new LinkedHashMap<>();
+    final Map<String, Double> mSums = new LinkedHashMap<>();
+  }
+
+  private static Decoded decode(byte[] encoded) {
+    ByteBuffer buffer = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN);
+    Decoded decoded = new Decoded();
+    assertThat(buffer.get()).isEqualTo((byte)GlobalMetricsDeltaEncoder.VERSION);
+    long boundsCount = readVarint(buffer);
+    for (int i = 0; i < boundsCount; i++) {
+      double[] bounds = new double[(int)readVarint(buffer)];
+      for (int j = 0; j < bounds.length; j++) {
+        bounds[j] = buffer.getDouble();
+      }
+      decoded.mBounds.add(bounds);
+    }
+    long entryCount = readVarint(buffer);
+    byte[] previousName = new byte[0];
+    for (int i = 0; i < entryCount; i++) {
+      int shared = (int)readVarint(buffer);
+      byte[] name = new byte[shared + (int)readVarint(buffer)];
+      System.arraycopy(previousName, 0, name, 0, shared);
+      buffer.get(name, shared, name.length - shared);
+      previousName = name;
+      String key = new String(name, StandardCharsets.UTF_8);
+      if (buffer.get() == GlobalMetricsDeltaEncoder.KIND_COUNTER) {
+        decoded.mCounters.put(key, readVarint(buffer));
+        continue;
+      }
+      double[] bounds = decoded.mBounds.get((int)readVarint(buffer));
+      long[] values = new long[bounds.length + 2];
+      values[0] = readVarint(buffer);
+      decoded.mSums.put(key, buffer.getDouble());
+      for (int j = 1; j < values.length; j++) {
+        values[j] = readVarint(buffer);
+      }
+      decoded.mHistograms.put(key, values);
+    }
+    assertThat(buffer.hasRemaining()).isFalse();
+    return decoded;
+  }
+
+  private static long readVarint(ByteBuffer buffer) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      value |= (long)(b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
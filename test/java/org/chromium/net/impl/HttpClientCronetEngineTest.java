@@ -0,0 +1,169 @@
+package org.chromium.net.impl;
+
+import static java.net.HttpURLConnection.HTTP_MOVED_TEMP;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.chromium.net.UploadDataProviders;
+import org.chromium.net.UrlRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class HttpClientCronetEngineTest {
+
+  private final MockWebServer mockWebServer = new MockWebServer();
+  private final ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+  private CronetEngineBase engine;
+
+  @Before
+  public void setUp() {
+    HttpClientCronetEngineBuilderImpl builder =
+        new HttpClientCronetEngineBuilderImpl(ApplicationProvider.getApplicationContext());
+    builder.setUserAgent("Cronvoy");
+    engine = (CronetEngineBase)builder.build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    engine.shutdown();
+    callbackExecutor.shutdown();
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  public void get_simple() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setBody("hello, world"));
+    mockWebServer.start();
+
+    RecordingCallback callback =
+        sendRequest(engine, "/get/flowers", /* body= */ null, /* bufferSize= */ 5);
+
+    assertThat(callback.failure).isNull();
+    assertThat(callback.responseInfo.getHttpStatusCode()).isEqualTo(HTTP_OK);
+    assertThat(callback.body.toString()).isEqualTo("hello, world");
+    assertThat(callback.nbReads).isEqualTo(3); // 5 bytes, 5 bytes, and 2 bytes
+    assertThat(callback.responseInfo.getReceivedByteCount()).isEqualTo(12);
+    assertThat(mockWebServer.takeRequest().getHeader("User-Agent")).isEqualTo("Cronvoy");
+  }
+
+  @Test
+  public void post_simple() throws Exception {
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest recordedRequest) {
+        assertThat(recordedRequest.getMethod()).isEqualTo("POST");
+        return new MockResponse().setBody(recordedRequest.getBody().readUtf8());
+      }
+    });
+    mockWebServer.start();
+
+    RecordingCallback callback =
+        sendRequest(engine, "/post", "This is the request Body", /* bufferSize= */ 100);
+
+    assertThat(callback.failure).isNull();
+    assertThat(callback.body.toString()).isEqualTo("This is the request Body");
+  }
+
+  @Test
+  public void post_followsRedirectRewindingBody() throws Exception {
+    mockWebServer.enqueue(
+        new MockResponse().setResponseCode(HTTP_MOVED_TEMP).setHeader("Location", "/moved"));
+    mockWebServer.enqueue(new MockResponse().setBody("moved"));
+    mockWebServer.start();
+
+    RecordingCallback callback =
+        sendRequest(engine, "/post", "request body", /* bufferSize= */ 100);
+
+    assertThat(callback.failure).isNull();
+    assertThat(callback.body.toString()).isEqualTo("moved");
+    assertThat(callback.responseInfo.getUrlChain()).hasSize(2);
+    mockWebServer.takeRequest();
+    RecordedRequest redirected = mockWebServer.takeRequest();
+    assertThat(redirected.getPath()).isEqualTo("/moved");
+    assertThat(redirected.getBody().readUtf8()).isEqualTo("request body");
+  }
+
+  @Test
+  public void get_cancelWhileWaitingForResponse() throws Exception {
+    mockWebServer.enqueue(new MockResponse().setHeadersDelay(1, TimeUnit.SECONDS));
+    mockWebServer.start();
+    RecordingCallback callback = new RecordingCallback(/* bufferSize= */ 100);
+    UrlRequest request = engine
+                             .newUrlRequestBuilder(mockWebServer.url("/slow").toString(), callback,
+                                                   callbackExecutor)
+                             .build();
+
+    request.start();
+    request.cancel();
+
+    assertThat(callback.done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(callback.cancelled).isTrue();
+    assertThat(callback.failure).isNull();
+  }
+
+  // The HttpURLConnection based engine holds one of its 10 threads per request in flight, and
+  // would never have more than 10 of these requests at the server at once.
+  @Test
+  public void get_concurrentSlowRequests_areNotLimitedByThreads() throws Exception {
+    int nbRequests = 20;
+    CountDownLatch inFlight = new CountDownLatch(nbRequests);
+    CountDownLatch respond = new CountDownLatch(1);
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest recordedRequest) throws InterruptedException {
+        inFlight.countDown();
+        respond.await(30, TimeUnit.SECONDS);
+        return new MockResponse().setBody("slow");
+      }
+    });
+    mockWebServer.start();
+
+    RecordingCallback[] callbacks = new RecordingCallback[nbRequests];
+    for (int i = 0; i < nbRequests; i++) {
+      callbacks[i] = new RecordingCallback(/* bufferSize= */ 100);
+      engine
+          .newUrlRequestBuilder(mockWebServer.url("/slow").toString(), callbacks[i],
+                                callbackExecutor)
+          .build()
+          .start();
+    }
+    boolean allInFlight = inFlight.await(10, TimeUnit.SECONDS);
+    respond.countDown();
+
+    assertThat(allInFlight).isTrue();
+    for (RecordingCallback callback : callbacks) {
+      assertThat(callback.done.await(30, TimeUnit.SECONDS)).isTrue();
+      assertThat(callback.failure).isNull();
+      assertThat(callback.body.toString()).isEqualTo("slow");
+    }
+  }
+
+  private RecordingCallback sendRequest(CronetEngineBase engine, String path, String requestBody,
+                                        int bufferSize) throws Exception {
+    RecordingCallback callback = new RecordingCallback(bufferSize);
+    UrlRequest.Builder builder = engine.newUrlRequestBuilder(mockWebServer.url(path).toString(),
+                                                             callback, callbackExecutor);
+    if (requestBody != null) {
+      builder.addHeader("Content-Type", "text/plain");
+      builder.setUploadDataProvider(UploadDataProviders.create(requestBody.getBytes()),
+                                    callbackExecutor);
+    }
+    builder.build().start();
+    assertThat(callback.done.await(5, TimeUnit.SECONDS)).isTrue();
+    return callback;
+  }
+}
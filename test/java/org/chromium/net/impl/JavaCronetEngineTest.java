@@ -0,0 +1,88 @@
+package org.chromium.net.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import androidx.test.core.app.ApplicationProvider;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class JavaCronetEngineTest {
+
+  // Well above the 10 threads of the pool used without virtual threads.
+  private static final int NB_REQUESTS = 100;
+
+  private final MockWebServer mockWebServer = new MockWebServer();
+  private final ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+  private CronetEngineBase engine;
+
+  @After
+  public void tearDown() throws IOException {
+    if (engine != null) {
+      engine.shutdown();
+    }
+    callbackExecutor.shutdown();
+    mockWebServer.shutdown();
+  }
+
+  // On the pool of 10 threads, no more than 10 requests would ever reach the server at once.
+  @Test
+  public void get_concurrentSlowRequests_onVirtualThreads() throws Exception {
+    assumeTrue("Virtual threads are not supported", supportsVirtualThreads());
+    CountDownLatch inFlight = new CountDownLatch(NB_REQUESTS);
+    CountDownLatch respond = new CountDownLatch(1);
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest recordedRequest) throws InterruptedException {
+        inFlight.countDown();
+        respond.await(30, TimeUnit.SECONDS);
+        return new MockResponse().setBody("slow");
+      }
+    });
+    mockWebServer.start();
+    JavaCronetEngineBuilderImpl builder =
+        new JavaCronetEngineBuilderImpl(ApplicationProvider.getApplicationContext());
+    builder.enableVirtualThreads(true);
+    engine = (CronetEngineBase)builder.build();
+
+    RecordingCallback[] callbacks = new RecordingCallback[NB_REQUESTS];
+    for (int i = 0; i < NB_REQUESTS; i++) {
+      callbacks[i] = new RecordingCallback(/* bufferSize= */ 100);
+      engine
+          .newUrlRequestBuilder(mockWebServer.url("/slow").toString(), callbacks[i],
+                                callbackExecutor)
+          .build()
+          .start();
+    }
+    boolean allInFlight = inFlight.await(10, TimeUnit.SECONDS);
+    respond.countDown();
+
+    assertThat(allInFlight).isTrue();
+    for (RecordingCallback callback : callbacks) {
+      assertThat(callback.done.await(30, TimeUnit.SECONDS)).isTrue();
+      assertThat(callback.failure).isNull();
+      assertThat(callback.body.toString()).isEqualTo("slow");
+    }
+  }
+
+  private static boolean supportsVirtualThreads() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+}
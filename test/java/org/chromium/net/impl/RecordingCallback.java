@@ -0,0 +1,63 @@
+package org.chromium.net.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import org.chromium.net.CronetException;
+import org.chromium.net.UrlRequest;
+import org.chromium.net.UrlResponseInfo;
+
+/**
+ * Follows redirects, reads the whole response body into {@link #body}, and counts {@link #done}
+ * down once the request succeeded, failed or was cancelled.
+ */
+class RecordingCallback extends UrlRequest.Callback {
+  final CountDownLatch done = new CountDownLatch(1);
+  final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  volatile UrlResponseInfo responseInfo;
+  volatile CronetException failure;
+  volatile boolean cancelled;
+  volatile int nbReads;
+  private final int bufferSize;
+
+  RecordingCallback(int bufferSize) { this.bufferSize = bufferSize; }
+
+  @Override
+  public void onRedirectReceived(UrlRequest request, UrlResponseInfo info, String newLocationUrl) {
+    request.followRedirect();
+  }
+
+  @Override
+  public void onResponseStarted(UrlRequest request, UrlResponseInfo info) {
+    request.read(ByteBuffer.allocateDirect(bufferSize));
+  }
+
+  @Override
+  public void onReadCompleted(UrlRequest request, UrlResponseInfo info, ByteBuffer byteBuffer) {
+    byteBuffer.flip();
+    byte[] bytes = new byte[byteBuffer.remaining()];
+    byteBuffer.get(bytes);
+    body.write(bytes, 0, bytes.length);
+    nbReads++;
+    byteBuffer.clear();
+    request.read(byteBuffer);
+  }
+
+  @Override
+  public void onSucceeded(UrlRequest request, UrlResponseInfo info) {
+    responseInfo = info;
+    done.countDown();
+  }
+
+  @Override
+  public void onFailed(UrlRequest request, UrlResponseInfo info, CronetException error) {
+    failure = error;
+    done.countDown();
+  }
+
+  @Override
+  public void onCanceled(UrlRequest request, UrlResponseInfo info) {
+    cancelled = true;
+    done.countDown();
+  }
+}
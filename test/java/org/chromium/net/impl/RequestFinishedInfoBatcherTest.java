@@ -0,0 +1,91 @@
+package org.chromium.net.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.chromium.net.RequestFinishedInfo;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class RequestFinishedInfoBatcherTest {
+
+  private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+  private static final class RecordingBatchListener extends RequestFinishedInfo.BatchListener {
+    final List<List<String>> mBatches = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch mDelivered = new CountDownLatch(1);
+
+    RecordingBatchListener(int maxBatchSize, long maxDelayMillis) {
+      super(DIRECT_EXECUTOR, maxBatchSize, maxDelayMillis);
+    }
+
+    @Override
+    public void onRequestsFinished(List<RequestFinishedInfo> requestInfos) {
+      List<String> urls = new ArrayList<>();
+      for (RequestFinishedInfo requestInfo : requestInfos) {
+        urls.add(requestInfo.getUrl());
+      }
+      mBatches.add(urls);
+      mDelivered.countDown();
+    }
+  }
+
+  private static RequestFinishedInfo finished(String url) {
+    return new RequestFinishedInfoImpl(url, Collections.emptyList(), null,
+                                       RequestFinishedInfo.SUCCEEDED, null, null);
+  }
+
+  @Test
+  public void fullBatch_isDeliveredImmediately() {
+    RecordingBatchListener listener = new RecordingBatchListener(2, TimeUnit.HOURS.toMillis(1));
+    RequestFinishedInfoBatcher batcher = new RequestFinishedInfoBatcher(listener);
+
+    batcher.onRequestFinished(finished("a"));
+    assertThat(listener.mBatches).isEmpty();
+    batcher.onRequestFinished(finished("b"));
+    batcher.onRequestFinished(finished("c"));
+
+    assertThat(listener.mBatches).containsExactly(Arrays.asList("a", "b"));
+  }
+
+  @Test
+  public void partialBatch_isDeliveredAfterDelay() throws Exception {
+    RecordingBatchListener listener = new RecordingBatchListener(10, 10);
+    RequestFinishedInfoBatcher batcher = new RequestFinishedInfoBatcher(listener);
+
+    batcher.onRequestFinished(finished("a"));
+    batcher.onRequestFinished(finished("b"));
+
+    assertThat(listener.mDelivered.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(listener.mBatches).containsExactly(Arrays.asList("a", "b"));
+  }
+
+  @Test
+  public void flush_deliversPartialBatch() {
+    RecordingBatchListener listener = new RecordingBatchListener(10, TimeUnit.HOURS.toMillis(1));
+    RequestFinishedInfoBatcher batcher = new RequestFinishedInfoBatcher(listener);
+
+    batcher.flush();
+    batcher.onRequestFinished(finished("a"));
+    batcher.flush();
+
+    assertThat(listener.mBatches).containsExactly(Arrays.asList("a"));
+  }
+
+  @Test
+  public void batchListener_withoutBatching_receivesSingletonBatches() {
+    RecordingBatchListener listener = new RecordingBatchListener(10, 10);
+
+    listener.onRequestFinished(finished("a"));
+
+    assertThat(listener.mBatches).containsExactly(Arrays.asList("a"));
+  }
+}
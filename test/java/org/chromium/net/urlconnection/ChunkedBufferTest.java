@@ -0,0 +1,89 @@
+package org.chromium.net.urlconnection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.chromium.net.testing.Feature;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Test for {@link ChunkedBuffer}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChunkedBufferTest {
+  private static final int DATA_SIZE = 3 * ChunkedBuffer.CHUNK_SIZE + 123;
+
+  @Test
+  @SmallTest
+  @Feature({"Cronet"})
+  public void testWriteAndRead_acrossChunks() throws Exception {
+    ChunkedBuffer underTest = new ChunkedBuffer();
+    byte[] data = createData();
+    underTest.write(data[0]);
+    underTest.write(data, 1, 1000);
+    underTest.write(data, 1001, data.length - 1001);
+
+    assertThat(underTest.size()).isEqualTo(data.length);
+    assertThat(readAll(underTest, 1000)).isEqualTo(data);
+  }
+
+  @Test
+  @SmallTest
+  @Feature({"Cronet"})
+  public void testRewind() throws Exception {
+    ChunkedBuffer underTest = new ChunkedBuffer();
+    byte[] data = createData();
+    underTest.write(data, 0, data.length);
+    ByteBuffer partial = ByteBuffer.allocate(ChunkedBuffer.CHUNK_SIZE + 1);
+    underTest.read(partial);
+
+    underTest.rewind();
+
+    assertThat(readAll(underTest, 7000)).isEqualTo(data);
+  }
+
+  @Test
+  @SmallTest
+  @Feature({"Cronet"})
+  public void testRelease_emptiesBuffer() throws Exception {
+    ChunkedBuffer underTest = new ChunkedBuffer();
+    byte[] data = createData();
+    underTest.write(data, 0, data.length);
+
+    underTest.release();
+
+    assertThat(underTest.size()).isEqualTo(0);
+    assertThat(underTest.read(ByteBuffer.allocate(10))).isEqualTo(0);
+    underTest.write(data, 0, 10);
+    assertThat(readAll(underTest, 10)).isEqualTo(Arrays.copyOf(data, 10));
+  }
+
+  private static byte[] createData() {
+    byte[] data = new byte[DATA_SIZE];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte)i;
+    }
+    return data;
+  }
+
+  /**
+   * Reads {@code buffer} until it is exhausted, in reads of at most {@code readSize} bytes.
+   */
+  private static byte[] readAll(ChunkedBuffer buffer, int readSize) {
+    ByteBuffer result = ByteBuffer.allocate(buffer.size());
+    ByteBuffer readBuffer = ByteBuffer.allocateDirect(readSize);
+    while (true) {
+      readBuffer.clear();
+      if (buffer.read(readBuffer) == 0) {
+        break;
+      }
+      readBuffer.flip();
+      result.put(readBuffer);
+    }
+    return result.array();
+  }
+}
@@ -6,6 +6,8 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.SmallTest;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import org.chromium.net.testing.CronetTestRule;
 import org.chromium.net.testing.Feature;
@@ -133,6 +135,92 @@ public class CronetInputStreamTest {
     });
   }
 
+  @Test
+  @SmallTest
+  @Feature({"Cronet"})
+  public void testRead_bufferGrowsWhileFilled() throws Exception {
+    List<Integer> capacities = recordBufferCapacities(Integer.MAX_VALUE);
+    runTestCase(underTest -> {
+      byte[] buffer = new byte[DirectBufferPool.MAX_BUFFER_SIZE];
+      for (int i = 0; i < 5; i++) {
+        underTest.read(buffer, 0, buffer.length);
+      }
+    });
+
+    assertThat(capacities).containsExactly(32 * 1024, 64 * 1024, 128 * 1024, 256 * 1024, 256 * 1024)
+        .inOrder();
+  }
+
+  @Test
+  @SmallTest
+  @Feature({"Cronet"})
+  public void testRead_bufferShrinksWhileMostlyEmpty() throws Exception {
+    List<Integer> capacities = recordBufferCapacities(100);
+    runTestCase(underTest -> {
+      for (int i = 0; i < 5; i++) {
+        underTest.read(new byte[100], 0, 100);
+      }
+    });
+
+    assertThat(capacities).containsExactly(32 * 1024, 32 * 1024, 16 * 1024, 16 * 1024, 8 * 1024)
+        .inOrder();
+  }
+
+  @Test
+  @SmallTest
+  @Feature({"Cronet"})
+  public void testRead_bufferSizedFromContentLength() throws Exception {
+    Mockito.when(mMockConnection.getContentLengthHint()).thenReturn(5000L);
+    List<Integer> capacities = recordBufferCapacities(Integer.MAX_VALUE);
+    runTestCase(underTest -> { underTest.read(new byte[5000], 0, 5000); });
+
+    assertThat(capacities).containsExactly(8 * 1024);
+  }
+
+  @Test
+  @SmallTest
+  @Feature({"Cronet"})
+  public void testClose_returnsBufferToPool() throws Exception {
+    DirectBufferPool pool = new DirectBufferPool();
+    List<ByteBuffer> buffers = new ArrayList<>();
+    Mockito
+        .doAnswer(invocation -> {
+          ByteBuffer buffer = (ByteBuffer)invocation.getArguments()[0];
+          buffers.add(buffer);
+          buffer.put((byte)0);
+          return null;
+        })
+        .when(mMockConnection)
+        .getMoreData(ArgumentMatchers.any());
+
+    for (int i = 0; i < 2; i++) {
+      try (CronetInputStream underTest = new CronetInputStream(mMockConnection, pool)) {
+        underTest.read();
+      }
+    }
+
+    assertThat(buffers).hasSize(2);
+    assertThat(buffers.get(1)).isSameInstanceAs(buffers.get(0));
+  }
+
+  /**
+   * Makes each read fill at most {@code maxBytesPerRead} bytes, and returns the list to which the
+   * capacity of the buffer of each read is appended.
+   */
+  private List<Integer> recordBufferCapacities(int maxBytesPerRead) throws IOException {
+    List<Integer> capacities = new ArrayList<>();
+    Mockito
+        .doAnswer(invocation -> {
+          ByteBuffer buffer = (ByteBuffer)invocation.getArguments()[0];
+          capacities.add(buffer.capacity());
+          buffer.position(Math.min(buffer.capacity(), maxBytesPerRead));
+          return null;
+        })
+        .when(mMockConnection)
+        .getMoreData(ArgumentMatchers.any());
+    return capacities;
+  }
+
   private void runTestCase(CronetInputStreamTestCase testCase) throws Exception {
     try (CronetInputStream underTest = new CronetInputStream(mMockConnection)) {
       testCase.runTestCase(underTest);
@@ -1,5 +1,6 @@
 package org.chromium.net.urlconnection;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -9,6 +10,8 @@ import androidx.test.filters.SmallTest;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -148,4 +151,49 @@ public class MessageLoopTest {
     }
     assertFalse(loop.isRunning());
   }
+
+  @Test
+  @SmallTest
+  @Feature({"Cronet"})
+  public void testTasksFromManyThreads() throws Exception {
+    final MessageLoop loop = new MessageLoop();
+    final int producerCount = 4;
+    final int tasksPerProducer = 1000;
+    final int[] nextTask = new int[producerCount];
+    final int[] runCount = new int[1];
+    List<Thread> producers = new ArrayList<>();
+    for (int p = 0; p < producerCount; p++) {
+      final int producer = p;
+      producers.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < tasksPerProducer; i++) {
+            final int task = i;
+            loop.execute(new Runnable() {
+              @Override
+              public void run() {
+                // Tasks from a given thread run in the order they were posted.
+                if (nextTask[producer]++ != task) {
+                  mFailed = true;
+                }
+                if (++runCount[0] == producerCount * tasksPerProducer) {
+                  loop.quit();
+                }
+              }
+            });
+          }
+        }
+      }));
+    }
+    for (Thread producer : producers) {
+      producer.start();
+    }
+    loop.loop(10_000);
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    assertFalse(loop.isRunning());
+    assertEquals(producerCount * tasksPerProducer, runCount[0]);
+    assertFalse(mFailed);
+  }
 }
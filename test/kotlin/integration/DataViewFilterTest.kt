@@ -0,0 +1,195 @@
+package test.kotlin.integration
+
+import io.envoyproxy.envoymobile.Custom
+import io.envoyproxy.envoymobile.DataViewFilter
+import io.envoyproxy.envoymobile.EngineBuilder
+import io.envoyproxy.envoymobile.EnvoyError
+import io.envoyproxy.envoymobile.FilterDataStatus
+import io.envoyproxy.envoymobile.FilterHeadersStatus
+import io.envoyproxy.envoymobile.FilterTrailersStatus
+import io.envoyproxy.envoymobile.FinalStreamIntel
+import io.envoyproxy.envoymobile.RequestHeadersBuilder
+import io.envoyproxy.envoymobile.RequestMethod
+import io.envoyproxy.envoymobile.ResponseFilter
+import io.envoyproxy.envoymobile.ResponseHeaders
+import io.envoyproxy.envoymobile.ResponseTrailers
+import io.envoyproxy.envoymobile.StreamIntel
+import io.envoyproxy.envoymobile.UpstreamHttpProtocol
+import io.envoyproxy.envoymobile.engine.JniLibrary
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.fail
+import org.junit.Test
+
+private const val emhcmType =
+  "type.googleapis.com/envoy.extensions.filters.network.http_connection_manager.v3.EnvoyMobileHttpConnectionManager"
+private const val pbfType = "type.googleapis.com/envoymobile.extensions.filters.http.platform_bridge.PlatformBridge"
+private const val filterName = "data_view_filter"
+private const val responseBody = "response_body"
+private const val config =
+"""
+static_resources:
+  listeners:
+  - name: base_api_listener
+    address:
+      socket_address: { protocol: TCP, address: 0.0.0.0, port_value: 10000 }
+    api_listener:
+      api_listener:
+        "@type": $emhcmType
+        config:
+          stat_prefix: api_hcm
+          route_config:
+            name: api_router
+            virtual_hosts:
+            - name: api
+              domains: ["*"]
+              routes:
+              - match: { prefix: "/" }
+                direct_response:
+                  status: 200
+                  body:
+                    inline_string: $responseBody
+          http_filters:
+          - name: envoy.filters.http.platform_bridge
+            typed_config:
+              "@type": $pbfType
+              platform_filter_name: $filterName
+          - name: envoy.router
+            typed_config:
+              "@type": type.googleapis.com/envoy.extensions.filters.http.router.v3.Router
+"""
+
+// Each case runs several streams: releasing the borrowed data twice, or forwarding it after it
+// was released, corrupts the native heap and fails a later stream if not the first one.
+private const val streamCount = 20
+
+/**
+ * Checks the ownership of the body data passed to data view filters: the native data is handed
+ * back when the view is returned unchanged, and copied then released otherwise.
+ */
+class DataViewFilterTest {
+
+  init {
+    JniLibrary.loadTestLibrary()
+  }
+
+  class TransformingFilter(
+    private val viewReceived: CountDownLatch,
+    private val transform: (ByteBuffer) -> ByteBuffer
+  ) : ResponseFilter, DataViewFilter {
+    override fun onResponseHeaders(
+      headers: ResponseHeaders,
+      endStream: Boolean,
+      streamIntel: StreamIntel
+    ): FilterHeadersStatus<ResponseHeaders> {
+      return FilterHeadersStatus.Continue(headers)
+    }
+
+    override fun onResponseData(
+      body: ByteBuffer,
+      endStream: Boolean,
+      streamIntel: StreamIntel
+    ): FilterDataStatus<ResponseHeaders> {
+      if (body.isDirect && body.isReadOnly) {
+        viewReceived.countDown()
+      }
+      return FilterDataStatus.Continue(transform(body))
+    }
+
+    override fun onResponseTrailers(
+      trailers: ResponseTrailers,
+      streamIntel: StreamIntel
+    ): FilterTrailersStatus<ResponseHeaders, ResponseTrailers> {
+      return FilterTrailersStatus.Continue(trailers)
+    }
+
+    override fun onError(error: EnvoyError, finalStreamIntel: FinalStreamIntel) {}
+    override fun onComplete(finalStreamIntel: FinalStreamIntel) {}
+    override fun onCancel(finalStreamIntel: FinalStreamIntel) {}
+  }
+
+  private fun receivedBodies(transform: (ByteBuffer) -> ByteBuffer): List<String> {
+    val viewReceived = CountDownLatch(streamCount)
+    val engine = EngineBuilder(Custom(config))
+      .addPlatformFilter(
+        name = filterName,
+        factory = { TransformingFilter(viewReceived, transform) }
+      )
+      .setOnEngineRunning {}
+      .build()
+    val client = engine.streamClient()
+
+    val requestHeaders = RequestHeadersBuilder(
+      method = RequestMethod.GET,
+      scheme = "https",
+      authority = "example.com",
+      path = "/test"
+    )
+      .addUpstreamHttpProtocol(UpstreamHttpProtocol.HTTP2)
+      .build()
+
+    val bodies = mutableListOf<String>()
+    for (index in 0 until streamCount) {
+      val completeExpectation = CountDownLatch(1)
+      val body = ByteArrayOutputStream()
+      client.newStreamPrototype()
+        .setOnResponseData { data, _, _ ->
+          val bytes = ByteArray(data.remaining())
+          data.duplicate().get(bytes)
+          body.write(bytes)
+        }
+        .setOnError { _, _ -> fail<Unit>("Unexpected error") }
+        .setOnComplete { completeExpectation.countDown() }
+        .start(Executors.newSingleThreadExecutor())
+        .sendHeaders(requestHeaders, true)
+
+      completeExpectation.await(10, TimeUnit.SECONDS)
+      assertThat(completeExpectation.count).isEqualTo(0)
+      bodies.add(body.toString(Charsets.UTF_8.name()))
+    }
+
+    engine.terminate()
+
+    assertThat(viewReceived.count).isEqualTo(0)
+    return bodies
+  }
+
+  @Test
+  fun `view returned unchanged forwards the native data`() {
+    val bodies = receivedBodies { view -> view }
+
+    assertThat(bodies).containsOnly(responseBody)
+  }
+
+  @Test
+  fun `slice of the view forwards a copy of the sliced bytes`() {
+    val bodies = receivedBodies { view ->
+      view.position("response_".length)
+      view.slice()
+    }
+
+    assertThat(bodies).containsOnly("body")
+  }
+
+  @Test
+  fun `new buffer forwards its bytes`() {
+    val bodies = receivedBodies { _ -> ByteBuffer.wrap("replaced".toByteArray()) }
+
+    assertThat(bodies).containsOnly("replaced")
+  }
+
+  @Test
+  fun `new direct buffer forwards its bytes`() {
+    val bodies = receivedBodies { _ ->
+      val buffer = ByteBuffer.allocateDirect("replaced".length)
+      buffer.put("replaced".toByteArray())
+      buffer
+    }
+
+    assertThat(bodies).containsOnly("replaced")
+  }
+}
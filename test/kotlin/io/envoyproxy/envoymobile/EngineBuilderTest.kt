@@ -4,6 +4,7 @@ import io.envoyproxy.envoymobile.engine.EnvoyEngine
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.Test
 import org.mockito.Mockito.mock
+import org.mockito.Mockito.verify
 
 class EngineBuilderTest {
   private lateinit var engineBuilder: EngineBuilder
@@ -239,4 +240,42 @@ class EngineBuilderTest {
     val engine = engineBuilder.build() as EngineImpl
     assertThat(engine.envoyConfiguration!!.nativeFilterChain.size).isEqualTo(1)
   }
+
+  @Test
+  fun `preconnecting clamps to max connections per host`() {
+    engineBuilder = EngineBuilder(Standard())
+    engineBuilder.addEngineType { envoyEngine }
+    engineBuilder.setMaxConnectionsPerHost(2)
+
+    val engine = engineBuilder.build()
+    engine.preconnect("https", "example.com", 5)
+    verify(envoyEngine).preconnect("https", "example.com", false, 2)
+  }
+
+  @Test
+  fun `preconnecting to h2 raw domain forces http2 whatever the port`() {
+    engineBuilder = EngineBuilder(Standard())
+    engineBuilder.addEngineType { envoyEngine }
+    engineBuilder.addH2RawDomains(listOf("example.com"))
+
+    val engine = engineBuilder.build()
+    engine.preconnect("http", "example.com")
+    engine.preconnect("https", "example.com:8443")
+    engine.preconnect("https", "other.example.com:8443")
+    verify(envoyEngine).preconnect("http", "example.com", true, 1)
+    verify(envoyEngine).preconnect("https", "example.com:8443", true, 1)
+    verify(envoyEngine).preconnect("https", "other.example.com:8443", false, 1)
+  }
+
+  @Test
+  fun `preconnecting with http2 only forces it over https`() {
+    engineBuilder = EngineBuilder(Standard())
+    engineBuilder.addEngineType { envoyEngine }
+
+    val engine = engineBuilder.build()
+    engine.preconnect("http", "example.com", 1, UpstreamHttpProtocol.HTTP2)
+    engine.preconnect("https", "example.com", 1, UpstreamHttpProtocol.HTTP2)
+    verify(envoyEngine).preconnect("http", "example.com", false, 1)
+    verify(envoyEngine).preconnect("https", "example.com", true, 1)
+  }
 }
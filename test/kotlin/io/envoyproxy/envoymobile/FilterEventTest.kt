@@ -0,0 +1,82 @@
+package io.envoyproxy.envoymobile
+
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPDataViewFilter
+import io.envoyproxy.envoymobile.engine.types.EnvoyHTTPFilterEvents
+import java.nio.ByteBuffer
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class FilterEventTest {
+  private open class TestResponseFilter : ResponseFilter {
+    override fun onResponseHeaders(headers: ResponseHeaders, endStream: Boolean, streamIntel: StreamIntel):
+      FilterHeadersStatus<ResponseHeaders> = FilterHeadersStatus.Continue(headers)
+
+    override fun onResponseData(body: ByteBuffer, endStream: Boolean, streamIntel: StreamIntel):
+      FilterDataStatus<ResponseHeaders> = FilterDataStatus.Continue(body)
+
+    override fun onResponseTrailers(trailers: ResponseTrailers, streamIntel: StreamIntel):
+      FilterTrailersStatus<ResponseHeaders, ResponseTrailers> = FilterTrailersStatus.Continue(trailers)
+
+    override fun onError(error: EnvoyError, finalStreamIntel: FinalStreamIntel) {}
+
+    override fun onCancel(finalStreamIntel: FinalStreamIntel) {}
+
+    override fun onComplete(finalStreamIntel: FinalStreamIntel) {}
+  }
+
+  private class TestAsyncResponseFilter : TestResponseFilter(), AsyncResponseFilter {
+    override fun setResponseFilterCallbacks(callbacks: ResponseFilterCallbacks) {}
+
+    override fun onResumeResponse(
+      headers: ResponseHeaders?,
+      data: ByteBuffer?,
+      trailers: ResponseTrailers?,
+      endStream: Boolean,
+      streamIntel: StreamIntel
+    ): FilterResumeStatus<ResponseHeaders, ResponseTrailers> =
+      FilterResumeStatus.ResumeIteration(headers, data, trailers)
+  }
+
+  private class TestDataViewFilter : TestResponseFilter(), DataViewFilter
+
+  @Test
+  fun `only data view filters receive views of body data`() {
+    assertThat(FilterFactory("filter", { TestDataViewFilter() }).create())
+      .isInstanceOf(EnvoyHTTPDataViewFilter::class.java)
+    assertThat(FilterFactory("filter", { TestResponseFilter() }).create())
+      .isNotInstanceOf(EnvoyHTTPDataViewFilter::class.java)
+  }
+
+  @Test
+  fun `response filter is only called for response events`() {
+    val mask = EnvoyHTTPFilterAdapter(TestResponseFilter()).eventMask
+
+    assertThat(mask).isEqualTo(
+      EnvoyHTTPFilterEvents.EVENT_RESPONSE_HEADERS or EnvoyHTTPFilterEvents.EVENT_RESPONSE_DATA or
+        EnvoyHTTPFilterEvents.EVENT_RESPONSE_TRAILERS or EnvoyHTTPFilterEvents.EVENT_ERROR or
+        EnvoyHTTPFilterEvents.EVENT_CANCEL
+    )
+  }
+
+  @Test
+  fun `declared events restrict the events a filter is called for`() {
+    val factory = FilterFactory("filter", { TestResponseFilter() }, setOf(FilterEvent.RESPONSE_HEADERS))
+
+    assertThat((factory.create() as EnvoyHTTPFilterEvents).eventMask).isEqualTo(
+      EnvoyHTTPFilterEvents.EVENT_RESPONSE_HEADERS or EnvoyHTTPFilterEvents.EVENT_ERROR or
+        EnvoyHTTPFilterEvents.EVENT_CANCEL
+    )
+  }
+
+  @Test
+  fun `asynchronous filter is called for all events of its direction`() {
+    val mask = EnvoyHTTPFilterAdapter(TestAsyncResponseFilter(), setOf(FilterEvent.RESPONSE_HEADERS))
+      .eventMask
+
+    assertThat(mask and EnvoyHTTPFilterEvents.EVENT_RESPONSE_DATA).isNotZero()
+    assertThat(mask and EnvoyHTTPFilterEvents.EVENT_RESPONSE_TRAILERS).isNotZero()
+    assertThat(mask and EnvoyHTTPFilterEvents.EVENT_RESPONSE_CALLBACKS).isNotZero()
+    assertThat(mask and EnvoyHTTPFilterEvents.EVENT_REQUEST_CALLBACKS).isZero()
+    assertThat(mask and EnvoyHTTPFilterEvents.EVENT_REQUEST_HEADERS).isZero()
+  }
+}
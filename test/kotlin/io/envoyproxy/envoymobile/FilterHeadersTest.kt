@@ -0,0 +1,92 @@
+package io.envoyproxy.envoymobile
+
+import io.envoyproxy.envoymobile.engine.types.EnvoyStreamIntel
+import java.nio.ByteBuffer
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+private val streamIntel = object : EnvoyStreamIntel {
+  override fun getStreamId(): Long = 0
+  override fun getConnectionId(): Long = 0
+  override fun getAttemptCount(): Long = 0
+  override fun getConsumedBytesFromResponse(): Long = 0
+}
+
+class FilterHeadersTest {
+  private class HeadersFilter(
+    private val onHeaders: (RequestHeaders) -> RequestHeaders
+  ) : RequestFilter {
+    override fun onRequestHeaders(headers: RequestHeaders, endStream: Boolean, streamIntel: StreamIntel):
+      FilterHeadersStatus<RequestHeaders> = FilterHeadersStatus.Continue(onHeaders(headers))
+
+    override fun onRequestData(body: ByteBuffer, endStream: Boolean, streamIntel: StreamIntel):
+      FilterDataStatus<RequestHeaders> = FilterDataStatus.Continue(body)
+
+    override fun onRequestTrailers(trailers: RequestTrailers, streamIntel: StreamIntel):
+      FilterTrailersStatus<RequestHeaders, RequestTrailers> = FilterTrailersStatus.Continue(trailers)
+
+    override fun onError(error: EnvoyError, finalStreamIntel: FinalStreamIntel) {}
+
+    override fun onCancel(finalStreamIntel: FinalStreamIntel) {}
+
+    override fun onComplete(finalStreamIntel: FinalStreamIntel) {}
+  }
+
+  private val received = mapOf(
+    ":method" to listOf("GET"),
+    ":scheme" to listOf("https"),
+    ":authority" to listOf("envoyproxy.io"),
+    ":path" to listOf("/"),
+    "x-foo" to listOf("1"),
+    "x-bar" to listOf("a")
+  )
+
+  private fun continueWith(onHeaders: (RequestHeaders) -> RequestHeaders): Array<Any?> =
+    EnvoyHTTPFilterAdapter(HeadersFilter(onHeaders)).onRequestHeaders(received, false, streamIntel)
+
+  @Test
+  fun `headers continued unchanged update no headers`() {
+    val result = continueWith { headers -> headers }
+
+    assertThat(result[1]).isEqualTo(emptyMap<String, List<String>>())
+    assertThat(result[2]).isEqualTo(emptyMap<String, List<String>>())
+  }
+
+  @Test
+  fun `headers built from the headers received update only the headers changed`() {
+    val result = continueWith { headers ->
+      headers.toRequestHeadersBuilder()
+        .add("x-foo", "2")
+        .remove("x-bar")
+        .build()
+    }
+
+    assertThat(result[1]).isEqualTo(mapOf("x-foo" to listOf("2")))
+    assertThat(result[2]).isEqualTo(mapOf("x-bar" to listOf("")))
+  }
+
+  @Test
+  fun `changes made to the builder after building don't apply to the headers built`() {
+    val result = continueWith { headers ->
+      val builder = headers.toRequestHeadersBuilder()
+      val built = builder.add("x-foo", "2").build()
+      builder.add("x-baz", "b").set("x-foo", mutableListOf("3")).remove("x-bar")
+      built
+    }
+
+    assertThat(result[1]).isEqualTo(mapOf("x-foo" to listOf("2")))
+    assertThat(result[2]).isEqualTo(emptyMap<String, List<String>>())
+  }
+
+  @Test
+  fun `headers not built from the headers received replace them`() {
+    val replacement = RequestHeadersBuilder(RequestMethod.GET, "https", "envoyproxy.io", "/")
+      .add("x-new", "1")
+      .build()
+
+    val result = continueWith { _ -> replacement }
+
+    assertThat(result).hasSize(2)
+    assertThat(result[1]).isEqualTo(replacement.headers)
+  }
+}
@@ -0,0 +1,123 @@
+package io.envoyproxy.envoymobile
+
+import java.nio.ByteBuffer
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.yield
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.fail
+import org.junit.Test
+
+class FlowStreamTest {
+  private val headers = RequestHeadersBuilder(RequestMethod.POST, "https", "envoyproxy.io", "/pb")
+    .build()
+  private val responseHeaders = ResponseHeaders(mapOf(":status" to listOf("200")))
+
+  @Test(timeout = 10000L)
+  fun `response body is read one chunk per buffer collected`() = runBlocking<Unit> {
+    var stream: MockStream? = null
+    val readByteCounts = mutableListOf<Long>()
+    val streamClient = MockStreamClient { mockStream ->
+      stream = mockStream
+      mockStream.onReadData = { byteCount ->
+        readByteCounts.add(byteCount)
+        val index = readByteCounts.size.toByte()
+        mockStream.receiveData(ByteBuffer.wrap(byteArrayOf(index)), readByteCounts.size == 3)
+      }
+    }
+
+    val flowStream = streamClient.newStreamPrototype().startFlowStream(readChunkBytes = 1024)
+    flowStream.sendHeaders(headers, true)
+    stream?.receiveHeaders(responseHeaders, false)
+    val received = mutableListOf<Byte>()
+    flowStream.responseBody.collect { data ->
+      // Nothing more is read until the collector is done with the previous buffer.
+      assertThat(readByteCounts).hasSize(received.size + 1)
+      received.add(data.get(0))
+    }
+
+    assertThat(flowStream.responseHeaders().value(":status")).containsExactly("200")
+    assertThat(received).containsExactly(1.toByte(), 2.toByte(), 3.toByte())
+    assertThat(readByteCounts).containsOnly(1024L)
+    assertThat(flowStream.responseTrailers()).isNull()
+  }
+
+  @Test(timeout = 10000L)
+  fun `response trailers end the body`() = runBlocking<Unit> {
+    val trailers = ResponseTrailers(mapOf("x-foo" to listOf("bar")))
+    val streamClient = MockStreamClient { mockStream ->
+      var reads = 0
+      mockStream.onReadData = {
+        if (reads++ == 0) {
+          mockStream.receiveData(ByteBuffer.wrap(byteArrayOf(1)), false)
+        } else {
+          mockStream.receiveTrailers(trailers)
+        }
+      }
+      mockStream.onRequestHeaders = { _, _ -> mockStream.receiveHeaders(responseHeaders, false) }
+    }
+
+    val flowStream = streamClient.newStreamPrototype().startFlowStream()
+    flowStream.sendHeaders(headers, true)
+
+    assertThat(flowStream.responseTrailers()?.allHeaders()).isEqualTo(trailers.allHeaders())
+  }
+
+  @Test(timeout = 10000L)
+  fun `stopping collection early cancels the stream`() = runBlocking<Unit> {
+    var canceled = false
+    val streamClient = MockStreamClient { mockStream ->
+      mockStream.onReadData = { mockStream.receiveData(ByteBuffer.wrap(byteArrayOf(1)), false) }
+      mockStream.onRequestHeaders = { _, _ -> mockStream.receiveHeaders(responseHeaders, false) }
+      mockStream.onCancel = { canceled = true }
+    }
+
+    val flowStream = streamClient.newStreamPrototype().startFlowStream()
+    flowStream.sendHeaders(headers, true)
+    flowStream.responseBody.first()
+
+    assertThat(canceled).isTrue()
+  }
+
+  @Test(timeout = 10000L)
+  fun `errors fail the collection`() = runBlocking<Unit> {
+    val streamClient = MockStreamClient { mockStream ->
+      mockStream.onReadData = { mockStream.receiveError(EnvoyError(2, "network error")) }
+      mockStream.onRequestHeaders = { _, _ -> mockStream.receiveHeaders(responseHeaders, false) }
+    }
+
+    val flowStream = streamClient.newStreamPrototype().startFlowStream()
+    flowStream.sendHeaders(headers, true)
+    try {
+      flowStream.responseBody.collect {}
+      fail("Expected the collection to fail")
+    } catch (e: EnvoyException) {
+      assertThat(e.error.errorCode).isEqualTo(2)
+      assertThat(e.message).isEqualTo("network error")
+    }
+  }
+
+  @Test(timeout = 10000L)
+  fun `data is sent once the send window is available`() = runBlocking<Unit> {
+    var stream: MockStream? = null
+    val sentData = mutableListOf<ByteBuffer>()
+    val streamClient = MockStreamClient { mockStream ->
+      stream = mockStream
+      mockStream.onRequestData = { data, _ -> sentData.add(data) }
+    }
+
+    val flowStream = streamClient.newStreamPrototype().startFlowStream()
+    flowStream.sendHeaders(headers, false)
+    flowStream.sendData(ByteBuffer.wrap(byteArrayOf(1)))
+    val secondSend = launch { flowStream.sendData(ByteBuffer.wrap(byteArrayOf(2))) }
+    yield()
+    assertThat(sentData).hasSize(1)
+
+    stream?.receiveSendWindowAvailable()
+    secondSend.join()
+
+    assertThat(sentData).hasSize(2)
+  }
+}
@@ -0,0 +1,97 @@
+package io.envoyproxy.envoymobile
+
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.fail
+import org.junit.Test
+
+class GRPCFlowStreamTest {
+  private val headers = GRPCRequestHeadersBuilder("https", "envoyproxy.io", "/pb.api.v1.Foo/GetBar")
+    .build()
+  private val responseHeaders = ResponseHeaders(mapOf(":status" to listOf("200")))
+
+  private fun frame(message: ByteArray): ByteArray {
+    val data = ByteBuffer.allocate(5 + message.size)
+    data.put(0) // Compression flag
+    data.order(ByteOrder.BIG_ENDIAN)
+    data.putInt(message.size) // Length bytes
+    data.put(message)
+    return data.array()
+  }
+
+  @Test(timeout = 10000L)
+  fun `sends messages of a flow`() = runBlocking<Unit> {
+    val sentData = ByteArrayOutputStream()
+    val streamClient = MockStreamClient { stream ->
+      stream.onRequestData = { data, _ ->
+        sentData.write(data.array())
+        stream.receiveSendWindowAvailable()
+      }
+    }
+
+    val grpcStream = GRPCClient(streamClient).startFlowStream()
+    grpcStream.sendHeaders(headers, false)
+    val messages = listOf(byteArrayOf(1, 2), byteArrayOf(3)).map { ByteBuffer.wrap(it) }
+    grpcStream.sendMessages(messages.asFlow())
+    grpcStream.close()
+
+    assertThat(sentData.toByteArray()).isEqualTo(frame(byteArrayOf(1, 2)) + frame(byteArrayOf(3)))
+  }
+
+  @Test(timeout = 10000L)
+  fun `response messages are read as they are collected`() = runBlocking<Unit> {
+    // Two messages, the second one split across frames.
+    val body = frame(byteArrayOf(1, 2)) + frame(byteArrayOf(3, 4, 5))
+    val frames = listOf(body.sliceArray(0 until 9), body.sliceArray(9 until body.size))
+    var reads = 0
+    val streamClient = MockStreamClient { stream ->
+      stream.onRequestHeaders = { _, _ -> stream.receiveHeaders(responseHeaders, false) }
+      stream.onReadData = {
+        if (reads < frames.size) {
+          stream.receiveData(ByteBuffer.wrap(frames[reads++]), false)
+        } else {
+          stream.receiveTrailers(ResponseTrailers(mapOf("grpc-status" to listOf("0"))))
+        }
+      }
+    }
+
+    val grpcStream = GRPCClient(streamClient).startFlowStream()
+    grpcStream.sendHeaders(headers, true)
+    val received = mutableListOf<ByteArray>()
+    grpcStream.responseMessages.collect { message ->
+      received.add(message.array())
+      // The first message completes with the first frame.
+      assertThat(reads).isEqualTo(received.size)
+    }
+
+    assertThat(received).containsExactly(byteArrayOf(1, 2), byteArrayOf(3, 4, 5))
+    assertThat(grpcStream.responseTrailers()?.value("grpc-status")).containsExactly("0")
+  }
+
+  @Test(timeout = 10000L)
+  fun `message larger than maximum fails and cancels the stream`() = runBlocking<Unit> {
+    var canceled = false
+    val streamClient = MockStreamClient { stream ->
+      stream.onRequestHeaders = { _, _ -> stream.receiveHeaders(responseHeaders, false) }
+      stream.onReadData = { stream.receiveData(ByteBuffer.wrap(frame(ByteArray(1025))), false) }
+      stream.onCancel = { canceled = true }
+    }
+
+    val grpcStream = GRPCClient(streamClient, maxReceiveMessageBytes = 1024).startFlowStream()
+    grpcStream.sendHeaders(headers, true)
+    var error: EnvoyError? = null
+    try {
+      grpcStream.responseMessages.collect { fail<Unit>("Unexpected message") }
+    } catch (e: EnvoyException) {
+      error = e.error
+    }
+
+    assertThat(error?.errorCode).isEqualTo(GRPC_STATUS_RESOURCE_EXHAUSTED)
+    assertThat(canceled).isTrue()
+  }
+}
@@ -66,4 +66,23 @@ class GRPCRequestHeadersBuilderTest {
       .build()
     assertThat(headers.value("grpc-timeout")).isNull()
   }
+
+  @Test
+  fun `adds encoding headers when gzip compression is enabled`() {
+    val headers = GRPCRequestHeadersBuilder("https", "envoyproxy.io", "/pb.api.v1.Foo/GetBar")
+      .addGzipCompression(true)
+      .build()
+    assertThat(headers.value("grpc-encoding")).containsExactly("gzip")
+    assertThat(headers.value("grpc-accept-encoding")).containsExactly("gzip")
+  }
+
+  @Test
+  fun `removes encoding headers when gzip compression is disabled`() {
+    val headers = GRPCRequestHeadersBuilder("https", "envoyproxy.io", "/pb.api.v1.Foo/GetBar")
+      .addGzipCompression(true)
+      .addGzipCompression(false)
+      .build()
+    assertThat(headers.value("grpc-encoding")).isNull()
+    assertThat(headers.value("grpc-accept-encoding")).isNull()
+  }
 }
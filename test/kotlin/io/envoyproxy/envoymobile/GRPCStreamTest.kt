@@ -5,6 +5,8 @@ import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.Executor
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.Test
 
@@ -74,6 +76,22 @@ class GRPCStreamTest {
     assertThat(sentData.toByteArray().sliceArray(5 until sentData.size())).isEqualTo(message1.array())
   }
 
+  @Test
+  fun `prefix and message are sent in a single data frame`() {
+    val sentFrames = mutableListOf<ByteArray>()
+    val streamClient = MockStreamClient { stream ->
+      stream.onRequestData = { data, _ -> sentFrames.add(data.array()) }
+    }
+
+    GRPCClient(streamClient)
+      .newGRPCStreamPrototype()
+      .start(Executor {})
+      .sendMessage(message1)
+
+    assertThat(sentFrames).hasSize(1)
+    assertThat(sentFrames[0]).hasSize(5 + message1.array().count())
+  }
+
   @Test
   fun `close is called with empty data frame`() {
     var closedData: ByteBuffer? = null
@@ -260,4 +278,300 @@ class GRPCStreamTest {
     stream?.receiveData(secondMessageBuffer, false)
     countDownLatch.await()
   }
+
+  @Test(timeout = 10000L)
+  fun `message callback receives messages from 1 byte to 4 MB split across frames`() {
+    val messages = listOf(1, 1024, 64 * 1024, 4 * 1024 * 1024).map { size ->
+      ByteArray(size) { index -> (index % 251).toByte() }
+    }
+    val body = ByteArrayOutputStream()
+    for (message in messages) {
+      body.write(0) // Compression flag
+      body.write(ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN).putInt(message.size).array())
+      body.write(message)
+    }
+    val received = mutableListOf<ByteArray>()
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient { stream = it }
+
+    GRPCClient(streamClient)
+      .newGRPCStreamPrototype()
+      .setOnResponseMessage { message, _ -> received.add(message.array()) }
+      .start(Executor {})
+
+    // Frames are slices of the body, as received from the network in 16 KB frames.
+    val bodyBytes = body.toByteArray()
+    for (offset in bodyBytes.indices step 16 * 1024) {
+      val frameLength = minOf(16 * 1024, bodyBytes.size - offset)
+      stream?.receiveData(ByteBuffer.wrap(bodyBytes, offset, frameLength).slice(), false)
+    }
+
+    assertThat(received).hasSize(messages.size)
+    for (index in messages.indices) {
+      assertThat(received[index]).isEqualTo(messages[index])
+    }
+  }
+
+  @Test(timeout = 10000L)
+  fun `message callback receives many small messages sent in single chunk`() {
+    val messageCount = 100_000
+    val body = ByteBuffer.allocate(messageCount * (5 + 1)) // Prefix and 1 byte message
+    body.order(ByteOrder.BIG_ENDIAN)
+    for (index in 0 until messageCount) {
+      body.put(0) // Compression flag
+      body.putInt(1) // Length bytes
+      body.put(index.toByte())
+    }
+    body.flip()
+    var receivedCount = 0
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient { stream = it }
+
+    GRPCClient(streamClient)
+      .newGRPCStreamPrototype()
+      .setOnResponseMessage { message, _ ->
+        assertThat(message.array()).containsExactly(receivedCount.toByte())
+        receivedCount++
+      }
+      .start(Executor {})
+
+    stream?.receiveData(body, false)
+
+    assertThat(receivedCount).isEqualTo(messageCount)
+  }
+
+  @Test
+  fun `message larger than maximum fails the stream`() {
+    val prefix = ByteBuffer.allocate(5)
+    prefix.put(0) // Compression flag
+    prefix.order(ByteOrder.BIG_ENDIAN)
+    prefix.putInt(1025) // Length bytes
+    var canceled = false
+    var errorCode: Int? = null
+    var trailersReceived = false
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient {
+      stream = it
+      it.onCancel = { canceled = true }
+    }
+
+    GRPCClient(streamClient, maxReceiveMessageBytes = 1024)
+      .newGRPCStreamPrototype()
+      .setOnResponseMessage { _, _ -> throw AssertionError("Unexpected message") }
+      .setOnResponseTrailers { _, _ -> trailersReceived = true }
+      .setOnError { error, _ -> errorCode = error.errorCode }
+      .setOnCancel { throw AssertionError("Unexpected cancel") }
+      .start(Executor {})
+
+    stream?.receiveData(prefix, false)
+    assertThat(canceled).isTrue()
+    stream?.receiveData(ByteBuffer.allocate(1025), false)
+    stream?.receiveTrailers(ResponseTrailers(mapOf("grpc-status" to listOf("0"))))
+    stream?.receiveCancel()
+
+    assertThat(trailersReceived).isFalse()
+    assertThat(errorCode).isEqualTo(GRPC_STATUS_RESOURCE_EXHAUSTED)
+  }
+
+  @Test
+  fun `failure is reported when the stream completes before it is canceled`() {
+    val prefix = ByteBuffer.allocate(5)
+    prefix.put(0) // Compression flag
+    prefix.order(ByteOrder.BIG_ENDIAN)
+    prefix.putInt(-1) // Length bytes: the maximum unsigned length, not a negative one
+    var errorCode: Int? = null
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient { stream = it }
+
+    GRPCClient(streamClient)
+      .newGRPCStreamPrototype()
+      .setOnResponseMessage { _, _ -> throw AssertionError("Unexpected message") }
+      .setOnError { error, _ -> errorCode = error.errorCode }
+      .start(Executor {})
+
+    stream?.receiveData(prefix, true)
+    stream?.receiveComplete()
+
+    assertThat(errorCode).isEqualTo(GRPC_STATUS_RESOURCE_EXHAUSTED)
+  }
+
+  @Test
+  fun `cancel callback is called when the stream is canceled without failure`() {
+    var canceled = false
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient { stream = it }
+
+    GRPCClient(streamClient)
+      .newGRPCStreamPrototype()
+      .setOnError { _, _ -> throw AssertionError("Unexpected error") }
+      .setOnCancel { canceled = true }
+      .start(Executor {})
+
+    stream?.receiveCancel()
+
+    assertThat(canceled).isTrue()
+  }
+
+  // Compression tests
+
+  private val gzipHeaders = GRPCRequestHeadersBuilder("https", "envoyproxy.io", "/pb.api.v1.Foo/GetBar")
+    .addGzipCompression(true)
+    .build()
+
+  private fun telemetryMessage(): ByteArray {
+    val builder = StringBuilder()
+    var index = 0
+    while (builder.length < 16384) {
+      builder.append("{\"event\":\"request_finished\",\"latency_ms\":").append(index % 97)
+        .append(",\"status\":200,\"id\":").append(index++).append("}\n")
+    }
+    return builder.toString().toByteArray()
+  }
+
+  @Test
+  fun `compresses messages at least as large as threshold when gzip is enabled`() {
+    val message = telemetryMessage()
+    val sentData = ByteArrayOutputStream()
+    val streamClient = MockStreamClient { stream ->
+      stream.onRequestData = { data, _ -> sentData.write(data.array()) }
+    }
+
+    GRPCClient(streamClient, compressionThresholdBytes = 1024)
+      .newGRPCStreamPrototype()
+      .start(Executor {})
+      .sendHeaders(gzipHeaders, false)
+      .sendMessage(ByteBuffer.wrap(message))
+
+    val data = sentData.toByteArray()
+    val size = ByteBuffer.wrap(data.sliceArray(1 until 5)).order(ByteOrder.BIG_ENDIAN).int
+    val payload = data.sliceArray(5 until data.size)
+    assertThat(data[0]).isEqualTo(1)
+    assertThat(size).isEqualTo(payload.size)
+    // Repetitive telemetry payloads shrink by an order of magnitude.
+    assertThat(payload.size * 10).isLessThan(message.size)
+    assertThat(GZIPInputStream(payload.inputStream()).readBytes()).isEqualTo(message)
+  }
+
+  @Test
+  fun `does not compress messages smaller than threshold`() {
+    val sentData = ByteArrayOutputStream()
+    val streamClient = MockStreamClient { stream ->
+      stream.onRequestData = { data, _ -> sentData.write(data.array()) }
+    }
+
+    GRPCClient(streamClient, compressionThresholdBytes = 1024)
+      .newGRPCStreamPrototype()
+      .start(Executor {})
+      .sendHeaders(gzipHeaders, false)
+      .sendMessage(message1)
+
+    assertThat(sentData.toByteArray()[0]).isEqualTo(0)
+    assertThat(sentData.toByteArray().sliceArray(5 until sentData.size())).isEqualTo(message1.array())
+  }
+
+  @Test
+  fun `does not compress messages when gzip is not enabled`() {
+    val message = telemetryMessage()
+    val sentData = ByteArrayOutputStream()
+    val streamClient = MockStreamClient { stream ->
+      stream.onRequestData = { data, _ -> sentData.write(data.array()) }
+    }
+    val headers = GRPCRequestHeadersBuilder("https", "envoyproxy.io", "/pb.api.v1.Foo/GetBar")
+      .build()
+
+    GRPCClient(streamClient, compressionThresholdBytes = 1024)
+      .newGRPCStreamPrototype()
+      .start(Executor {})
+      .sendHeaders(headers, false)
+      .sendMessage(ByteBuffer.wrap(message))
+
+    assertThat(sentData.toByteArray()[0]).isEqualTo(0)
+    assertThat(sentData.size()).isEqualTo(5 + message.size)
+  }
+
+  @Test(timeout = 1000L)
+  fun `message callback decompresses gzip encoded messages`() {
+    val message = telemetryMessage()
+    val compressed = ByteArrayOutputStream()
+    GZIPOutputStream(compressed).use { it.write(message) }
+    val received = mutableListOf<ByteArray>()
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient { stream = it }
+
+    GRPCClient(streamClient)
+      .newGRPCStreamPrototype()
+      .setOnResponseMessage { data, _ -> received.add(data.array()) }
+      .start(Executor {})
+
+    stream?.receiveHeaders(ResponseHeaders(mapOf("grpc-encoding" to listOf("gzip"))), false)
+    val data = ByteBuffer.allocate(5 + compressed.size())
+    data.put(1) // Compression flag
+    data.order(ByteOrder.BIG_ENDIAN)
+    data.putInt(compressed.size()) // Length bytes
+    data.put(compressed.toByteArray())
+    stream?.receiveData(data, false)
+
+    assertThat(received).hasSize(1)
+    assertThat(received[0]).isEqualTo(message)
+  }
+
+  private fun receiveCompressedMessage(
+    encoding: String,
+    compressed: ByteArray,
+    maxReceiveMessageBytes: Int = DEFAULT_GRPC_MAX_RECEIVE_MESSAGE_BYTES
+  ): Int? {
+    var errorCode: Int? = null
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient {
+      stream = it
+      it.onCancel = { stream?.receiveCancel() }
+    }
+
+    GRPCClient(streamClient, maxReceiveMessageBytes = maxReceiveMessageBytes)
+      .newGRPCStreamPrototype()
+      .setOnResponseMessage { _, _ -> throw AssertionError("Unexpected message") }
+      .setOnError { error, _ -> errorCode = error.errorCode }
+      .start(Executor {})
+
+    stream?.receiveHeaders(ResponseHeaders(mapOf("grpc-encoding" to listOf(encoding))), false)
+    val data = ByteBuffer.allocate(5 + compressed.size)
+    data.put(1) // Compression flag
+    data.order(ByteOrder.BIG_ENDIAN)
+    data.putInt(compressed.size) // Length bytes
+    data.put(compressed)
+    stream?.receiveData(data, false)
+    return errorCode
+  }
+
+  @Test
+  fun `message with unsupported encoding fails the stream`() {
+    val compressed = ByteArrayOutputStream()
+    GZIPOutputStream(compressed).use { it.write(telemetryMessage()) }
+
+    val errorCode = receiveCompressedMessage("snappy", compressed.toByteArray())
+
+    assertThat(errorCode).isEqualTo(GRPC_STATUS_UNIMPLEMENTED)
+  }
+
+  @Test
+  fun `malformed compressed message fails the stream`() {
+    val compressed = ByteArrayOutputStream()
+    GZIPOutputStream(compressed).use { it.write(telemetryMessage()) }
+    val truncated = compressed.toByteArray().copyOf(compressed.size() / 2)
+
+    val errorCode = receiveCompressedMessage("gzip", truncated)
+
+    assertThat(errorCode).isEqualTo(GRPC_STATUS_INTERNAL)
+  }
+
+  @Test(timeout = 1000L)
+  fun `message decompressing beyond maximum fails the stream`() {
+    // 1 MB of zeros compresses to about 1 KB.
+    val compressed = ByteArrayOutputStream()
+    GZIPOutputStream(compressed).use { it.write(ByteArray(1024 * 1024)) }
+
+    val errorCode = receiveCompressedMessage("gzip", compressed.toByteArray(), 64 * 1024)
+
+    assertThat(errorCode).isEqualTo(GRPC_STATUS_RESOURCE_EXHAUSTED)
+  }
 }
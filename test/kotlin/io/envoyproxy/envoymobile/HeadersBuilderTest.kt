@@ -42,4 +42,50 @@ class HeadersBuilderTest {
       .build()
     assertThat(headers.value("x-foo")).containsExactly("abc")
   }
+
+  @Test
+  fun `builder created from headers tracks only the headers changed`() {
+    val base = RequestHeadersBuilder(RequestMethod.GET, "https", "envoyproxy.io", "/")
+      .add("x-foo", "1")
+      .add("x-bar", "a")
+      .add("x-baz", "b")
+      .build()
+    val headers = base.toRequestHeadersBuilder()
+      .add("x-foo", "2")
+      .set("x-bar", mutableListOf("c"))
+      .remove("x-baz")
+      .add("x-new", "d")
+      .build()
+
+    val change = headers.changeFrom(base)!!
+    assertThat(change.cleared).containsExactlyInAnyOrder("x-bar", "x-baz")
+    assertThat(change.added).isEqualTo(
+      mapOf("x-foo" to listOf("2"), "x-bar" to listOf("c"), "x-new" to listOf("d"))
+    )
+  }
+
+  @Test
+  fun `builder not created from headers has no changes from them`() {
+    val base = ResponseHeadersBuilder().addHttpStatus(200).build()
+    val other = ResponseHeadersBuilder().addHttpStatus(200).build()
+    val headers = other.toResponseHeadersBuilder().add("x-foo", "1").build()
+
+    assertThat(headers.changeFrom(base)).isNull()
+    assertThat(base.changeFrom(base)).isNull()
+  }
+
+  @Test
+  fun `changing headers converted to a builder leaves them unchanged`() {
+    val headers = ResponseHeadersBuilder().addHttpStatus(200).add("x-foo", "1").build()
+    val changed = headers.toResponseHeadersBuilder()
+      .add("x-foo", "2")
+      .add("x-bar", "a")
+      .build()
+
+    assertThat(changed.value("x-foo")).containsExactly("1", "2")
+    assertThat(changed.value("x-bar")).containsExactly("a")
+    assertThat(headers.allHeaders()).isEqualTo(
+      mapOf(":status" to listOf("200"), "x-foo" to listOf("1"))
+    )
+  }
 }
@@ -0,0 +1,114 @@
+package io.envoyproxy.envoymobile
+
+import io.envoyproxy.envoymobile.engine.types.EnvoyStreamIntel
+import java.nio.ByteBuffer
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+private const val HEADER_COUNT = 25
+private const val FILTER_COUNT = 4
+private const val WARMUP_ITERATIONS = 20_000
+private const val MEASURED_ITERATIONS = 100_000
+
+private val streamIntel = object : EnvoyStreamIntel {
+  override fun getStreamId(): Long = 0
+  override fun getConnectionId(): Long = 0
+  override fun getAttemptCount(): Long = 0
+  override fun getConsumedBytesFromResponse(): Long = 0
+}
+
+/**
+ * Times request headers going through a chain of platform filters, each of which adds a header
+ * with `toRequestHeadersBuilder().add().build()`. The filters are called through the adapter, and
+ * the headers they update are applied between filters, as the native filter chain does.
+ *
+ * Not run in CI: the target is commented out in the BUILD file, uncomment it to run locally.
+ */
+class HeadersFilterChainBenchmark {
+  private class AddHeaderFilter(private val name: String) : RequestFilter {
+    override fun onRequestHeaders(headers: RequestHeaders, endStream: Boolean, streamIntel: StreamIntel):
+      FilterHeadersStatus<RequestHeaders> =
+      FilterHeadersStatus.Continue(headers.toRequestHeadersBuilder().add(name, "1").build())
+
+    override fun onRequestData(body: ByteBuffer, endStream: Boolean, streamIntel: StreamIntel):
+      FilterDataStatus<RequestHeaders> = FilterDataStatus.Continue(body)
+
+    override fun onRequestTrailers(trailers: RequestTrailers, streamIntel: StreamIntel):
+      FilterTrailersStatus<RequestHeaders, RequestTrailers> = FilterTrailersStatus.Continue(trailers)
+
+    override fun onError(error: EnvoyError, finalStreamIntel: FinalStreamIntel) {}
+
+    override fun onCancel(finalStreamIntel: FinalStreamIntel) {}
+
+    override fun onComplete(finalStreamIntel: FinalStreamIntel) {}
+  }
+
+  private val received = LinkedHashMap<String, List<String>>().apply {
+    put(":method", listOf("GET"))
+    put(":scheme", listOf("https"))
+    put(":authority", listOf("envoyproxy.io"))
+    put(":path", listOf("/"))
+    for (index in size until HEADER_COUNT) {
+      put("x-header-$index", listOf("$index"))
+    }
+  }
+
+  private val filters = (0 until FILTER_COUNT).map { index ->
+    EnvoyHTTPFilterAdapter(AddHeaderFilter("x-filter-$index"))
+  }
+
+  @Suppress("UNCHECKED_CAST")
+  private fun runChain(): Map<String, List<String>> {
+    val headers = LinkedHashMap(received)
+    for (filter in filters) {
+      val result = filter.onRequestHeaders(headers, false, streamIntel)
+      if (result.size == 2) {
+        headers.clear()
+        headers.putAll(result[1] as Map<String, List<String>>)
+      } else {
+        headers.putAll(result[1] as Map<String, List<String>>)
+        headers.keys.removeAll((result[2] as Map<String, List<String>>).keys)
+      }
+    }
+    return headers
+  }
+
+  private fun nanosPerChain(chain: () -> Int): Long {
+    var sink = 0
+    for (iteration in 0 until WARMUP_ITERATIONS) {
+      sink += chain()
+    }
+    val start = System.nanoTime()
+    for (iteration in 0 until MEASURED_ITERATIONS) {
+      sink += chain()
+    }
+    val elapsed = System.nanoTime() - start
+    assertThat(sink).isPositive()
+    return elapsed / MEASURED_ITERATIONS
+  }
+
+  @Test
+  fun `headers through the filter chain`() {
+    val headers = runChain()
+    assertThat(headers).hasSize(HEADER_COUNT + FILTER_COUNT)
+
+    val chain = nanosPerChain { runChain().size }
+    println("$FILTER_COUNT filters over $HEADER_COUNT headers: ${chain}ns per chain")
+  }
+
+  @Test
+  fun `headers built by a filter, then iterated`() {
+    val filter = AddHeaderFilter("x-filter")
+    val headers = RequestHeaders(received)
+
+    val chain = nanosPerChain {
+      var built = headers
+      for (index in 0 until FILTER_COUNT) {
+        built = (filter.onRequestHeaders(built, false, StreamIntel(streamIntel))
+          as FilterHeadersStatus.Continue<RequestHeaders>).headers
+      }
+      built.allHeaders().entries.count()
+    }
+    println("$FILTER_COUNT builds then iteration over $HEADER_COUNT headers: ${chain}ns per chain")
+  }
+}
@@ -0,0 +1,54 @@
+package io.envoyproxy.envoymobile
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class PersistentHeaderMapTest {
+  private val base = PersistentHeaderMap.from(
+    mapOf(":status" to listOf("200"), "x-foo" to listOf("1"), "x-bar" to listOf("a"))
+  )
+
+  @Test
+  fun `changes are layered over the existing map without changing it`() {
+    val changed = base.with(mapOf("x-foo" to listOf("2"), "x-bar" to null, "x-baz" to listOf("b")))
+
+    assertThat(changed).isEqualTo(
+      mapOf(":status" to listOf("200"), "x-foo" to listOf("2"), "x-baz" to listOf("b"))
+    )
+    assertThat(changed["x-bar"]).isNull()
+    assertThat(changed.containsKey("x-bar")).isFalse()
+    assertThat(base).isEqualTo(
+      mapOf(":status" to listOf("200"), "x-foo" to listOf("1"), "x-bar" to listOf("a"))
+    )
+  }
+
+  @Test
+  fun `many changes keep the headers in order`() {
+    var map = base
+    for (i in 0 until 20) {
+      map = map.with(mapOf("x-foo" to listOf("$i"), "x-$i" to listOf("$i")))
+    }
+
+    assertThat(map["x-foo"]).containsExactly("19")
+    assertThat(map).hasSize(23)
+    assertThat(map.keys.take(4)).containsExactly(":status", "x-foo", "x-bar", "x-0")
+  }
+
+  @Test
+  fun `maps iterated before the maps they are layered over are flattened from the root`() {
+    val first = base.with(mapOf("x-foo" to listOf("2")))
+    val second = first.with(mapOf("x-bar" to null, "x-baz" to listOf("b")))
+
+    assertThat(second.entries.map { it.key }).containsExactly(":status", "x-foo", "x-baz")
+    assertThat(second["x-foo"]).containsExactly("2")
+    assertThat(first).isEqualTo(
+      mapOf(":status" to listOf("200"), "x-foo" to listOf("2"), "x-bar" to listOf("a"))
+    )
+  }
+
+  @Test
+  fun `persistent maps are not copied`() {
+    assertThat(PersistentHeaderMap.from(base)).isSameAs(base)
+    assertThat(base.with(emptyMap())).isSameAs(base)
+  }
+}
@@ -121,7 +121,7 @@ class PulseClientImplTest {
   }
 
   @Test
-  fun `timer delegates to engine with tags and duration for record`() {
+  fun `timer forwards durations to engine with tags in batches`() {
     val pulseClient = PulseClientImpl(envoyEngine)
     val timer = pulseClient.timer(
       Element("test"), Element("stat"),
@@ -129,13 +129,18 @@ class PulseClientImplTest {
     )
 
     timer.recordDuration(5)
+    timer.recordDuration(5)
+    pulseClient.forwardPendingValues()
 
-    val durationCaptor = ArgumentCaptor.forClass(Int::class.java)
-    verify(envoyEngine).recordHistogramDuration(
-      elementsCaptor.capture(), tagsCaptor.capture(), durationCaptor.capture()
+    val durationsCaptor = ArgumentCaptor.forClass(IntArray::class.java)
+    val countsCaptor = ArgumentCaptor.forClass(LongArray::class.java)
+    verify(envoyEngine).recordHistogramDurations(
+      elementsCaptor.capture(), tagsCaptor.capture(), durationsCaptor.capture(),
+      countsCaptor.capture()
     )
     assertThat(elementsCaptor.getValue()).isEqualTo("test.stat")
-    assertThat(durationCaptor.getValue()).isEqualTo(5)
+    assertThat(durationsCaptor.getValue()).containsExactly(5)
+    assertThat(countsCaptor.getValue()).containsExactly(2L)
 
     val tagCaptorValue = tagsCaptor.getValue()
     assertThat(tagCaptorValue.get("testKey1")).isEqualTo("testValue1")
@@ -143,7 +148,7 @@ class PulseClientImplTest {
   }
 
   @Test
-  fun `distribution delegates to engine with tags and value for record`() {
+  fun `distribution forwards values to engine with tags in batches`() {
     val pulseClient = PulseClientImpl(envoyEngine)
     val distribution = pulseClient.distribution(
       Element("test"), Element("stat"),
@@ -151,17 +156,49 @@ class PulseClientImplTest {
     )
 
     distribution.recordValue(5)
+    pulseClient.forwardPendingValues()
 
-    val valueCaptor = ArgumentCaptor.forClass(Int::class.java)
-
-    verify(envoyEngine).recordHistogramValue(
-      elementsCaptor.capture(), tagsCaptor.capture(), valueCaptor.capture()
+    val valuesCaptor = ArgumentCaptor.forClass(IntArray::class.java)
+    val countsCaptor = ArgumentCaptor.forClass(LongArray::class.java)
+    verify(envoyEngine).recordHistogramValues(
+      elementsCaptor.capture(), tagsCaptor.capture(), valuesCaptor.capture(),
+      countsCaptor.capture()
     )
     assertThat(elementsCaptor.getValue()).isEqualTo("test.stat")
-    assertThat(valueCaptor.getValue()).isEqualTo(5)
+    assertThat(valuesCaptor.getValue()).containsExactly(5)
+    assertThat(countsCaptor.getValue()).containsExactly(1L)
 
     val tagCaptorValue = tagsCaptor.getValue()
     assertThat(tagCaptorValue.get("testKey1")).isEqualTo("testValue1")
     assertThat(tagCaptorValue.get("testKey2")).isEqualTo("testValue2")
   }
+
+  @Test
+  fun `timers with the same name and tags share their histogram`() {
+    val pulseClient = PulseClientImpl(envoyEngine)
+
+    pulseClient.timer(Element("test"), Element("stat")).recordDuration(5)
+    pulseClient.timer(Element("test"), Element("stat")).recordDuration(7)
+
+    val snapshot = pulseClient.timer(Element("test"), Element("stat")).snapshot()
+    assertThat(snapshot.count).isEqualTo(2L)
+    assertThat(snapshot.max).isEqualTo(7)
+    assertThat(pulseClient.timer(Element("test"), Element("other")).snapshot().count).isEqualTo(0L)
+  }
+
+  @Test
+  fun `timers beyond the maximum shared are not kept`() {
+    val pulseClient = PulseClientImpl(envoyEngine)
+    for (i in 0 until MAX_SHARED_HISTOGRAMS) {
+      pulseClient.timer(Element("test"), tags = TagsBuilder().add("id", "$i").build())
+    }
+
+    val tags = TagsBuilder().add("id", "other").build()
+    pulseClient.timer(Element("test"), tags = tags).recordDuration(5)
+
+    assertThat(pulseClient.timer(Element("test"), tags = tags).snapshot().count).isEqualTo(0L)
+    val shared = TagsBuilder().add("id", "0").build()
+    pulseClient.timer(Element("test"), tags = shared).recordDuration(5)
+    assertThat(pulseClient.timer(Element("test"), tags = shared).snapshot().count).isEqualTo(1L)
+  }
 }
@@ -0,0 +1,132 @@
+package io.envoyproxy.envoymobile
+
+import io.envoyproxy.envoymobile.engine.EnvoyEngine
+import io.envoyproxy.envoymobile.engine.EnvoyHTTPStream
+import io.envoyproxy.envoymobile.engine.EnvoyHTTPStreamCoalescer
+import io.envoyproxy.envoymobile.engine.EnvoyHTTPStreamRequest
+import java.nio.ByteBuffer
+import java.util.concurrent.Executor
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.mockito.ArgumentMatchers.any
+import org.mockito.ArgumentMatchers.anyBoolean
+import org.mockito.ArgumentMatchers.anyList
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+
+class StreamClientBatchTest {
+  private val engine: EnvoyEngine = mock(EnvoyEngine::class.java)
+  private val directExecutor = Executor { it.run() }
+  private val batches = mutableListOf<List<EnvoyHTTPStreamRequest>>()
+
+  private fun headers(path: String): RequestHeaders =
+    RequestHeadersBuilder(RequestMethod.POST, "https", "envoyproxy.io", path).build()
+
+  @Before
+  fun setup() {
+    `when`(engine.startStreams(anyList())).thenAnswer { invocation ->
+      val requests = invocation.getArgument<List<EnvoyHTTPStreamRequest>>(0)
+      batches.add(requests)
+      requests.map { mock(EnvoyHTTPStream::class.java) }
+    }
+    `when`(engine.startStream(any(), anyBoolean())).thenAnswer {
+      mock(EnvoyHTTPStream::class.java)
+    }
+  }
+
+  @Test
+  fun `starts all streams of a batch with a single engine call`() {
+    val streamClient = StreamClientImpl(engine)
+    val body = ByteBuffer.allocateDirect(8)
+    body.put("hello".toByteArray())
+
+    val streams = streamClient.submitBatch(
+      listOf(
+        RequestSpec(streamClient.newStreamPrototype(), headers("/a")),
+        RequestSpec(
+          streamClient.newStreamPrototype().setUseByteBufferPosition(true), headers("/b"), body
+        )
+      ),
+      directExecutor
+    )
+
+    assertThat(streams).hasSize(2)
+    verify(engine, never()).startStream(any(), anyBoolean())
+    assertThat(batches).hasSize(1)
+    val requests = batches[0]
+    assertThat(requests[0].headers[":path"]).containsExactly("/a")
+    assertThat(requests[0].body).isNull()
+    assertThat(requests[1].headers[":path"]).containsExactly("/b")
+    assertThat(requests[1].body).isSameAs(body)
+    assertThat(requests[1].bodyLength).isEqualTo(5)
+  }
+
+  @Test
+  fun `starts streams one at a time through the coalescer`() {
+    val streamClient = StreamClientImpl(engine, EnvoyHTTPStreamCoalescer(engine))
+
+    streamClient.submitBatch(
+      listOf(
+        RequestSpec(streamClient.newStreamPrototype(), headers("/a")),
+        RequestSpec(streamClient.newStreamPrototype(), headers("/b"))
+      ),
+      directExecutor
+    )
+
+    verify(engine, never()).startStreams(anyList())
+    verify(engine, times(2)).startStream(any(), anyBoolean())
+  }
+
+  @Test
+  fun `sends requests of prototypes overriding start on their own streams`() {
+    val sent = mutableListOf<String>()
+    val mockStreamClient = MockStreamClient { stream ->
+      stream.onRequestHeaders = { headers, endStream ->
+        sent.add("${headers.value(":path")?.first()} endStream=$endStream")
+      }
+    }
+
+    StreamClientImpl(engine).submitBatch(
+      listOf(
+        RequestSpec(mockStreamClient.newStreamPrototype(), headers("/a")),
+        RequestSpec(mockStreamClient.newStreamPrototype(), headers("/b"))
+      ),
+      directExecutor
+    )
+
+    verify(engine, never()).startStreams(anyList())
+    assertThat(sent).containsExactly("/a endStream=true", "/b endStream=true")
+  }
+
+  @Test
+  fun `batches prototypes of subclasses not overriding start`() {
+    val streamClient = StreamClientImpl(engine)
+    val prototype = object : StreamPrototype(engine) {}
+
+    streamClient.submitBatch(listOf(RequestSpec(prototype, headers("/a"))), directExecutor)
+
+    verify(engine, never()).startStream(any(), anyBoolean())
+    assertThat(batches).hasSize(1)
+  }
+
+  @Test
+  fun `starts prototypes of subclasses overriding start on their own`() {
+    val streamClient = StreamClientImpl(engine)
+    var started = false
+    val prototype = object : StreamPrototype(engine) {
+      override fun start(executor: Executor): Stream {
+        started = true
+        return super.start(executor)
+      }
+    }
+
+    streamClient.submitBatch(listOf(RequestSpec(prototype, headers("/a"))), directExecutor)
+
+    verify(engine, never()).startStreams(anyList())
+    assertThat(started).isTrue()
+  }
+}
@@ -0,0 +1,116 @@
+package io.envoyproxy.envoymobile
+
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.util.concurrent.Executor
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class UnaryResponseTest {
+  private val directExecutor = Executor { it.run() }
+  private val headers = RequestHeadersBuilder(RequestMethod.POST, "https", "envoyproxy.io", "/pb")
+    .build()
+
+  @Test
+  fun `sends headers and body together, ending the stream`() {
+    val sent = mutableListOf<String>()
+    val streamClient = MockStreamClient { stream ->
+      stream.onRequestHeaders = { _, endStream -> sent.add("headers endStream=$endStream") }
+      stream.onRequestData = { data, endStream -> sent.add("data ${String(data.array())} endStream=$endStream") }
+    }
+
+    streamClient.execute(headers, ByteBuffer.wrap("hello".toByteArray()), directExecutor, {}, {})
+
+    assertThat(sent).containsExactly("headers endStream=false", "data hello endStream=true")
+  }
+
+  @Test
+  fun `sends headers only request without body`() {
+    var headersEndStream: Boolean? = null
+    val streamClient = MockStreamClient { stream ->
+      stream.onRequestHeaders = { _, endStream -> headersEndStream = endStream }
+    }
+
+    streamClient.execute(headers, null, directExecutor, {}, {})
+
+    assertThat(headersEndStream).isTrue()
+  }
+
+  @Test
+  fun `keeps chunks received without content length`() {
+    var response: UnaryResponse? = null
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient { stream = it }
+
+    streamClient.execute(headers, null, directExecutor, { response = it }, {})
+    stream?.receiveHeaders(ResponseHeaders(mapOf(":status" to listOf("200"))), false)
+    stream?.receiveData(ByteBuffer.wrap("hello, ".toByteArray()), false)
+    stream?.receiveData(ByteBuffer.wrap("world".toByteArray()), true)
+    stream?.receiveComplete()
+
+    val body = response!!.body
+    assertThat(body.size).isEqualTo(12)
+    assertThat(body.chunks()).hasSize(2)
+    assertThat(body.string()).isEqualTo("hello, world")
+    val written = ByteArrayOutputStream()
+    body.writeTo(written)
+    assertThat(written.toString()).isEqualTo("hello, world")
+  }
+
+  @Test
+  fun `receives body into single array when content length is known`() {
+    var response: UnaryResponse? = null
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient { stream = it }
+
+    streamClient.execute(headers, null, directExecutor, { response = it }, {})
+    stream?.receiveHeaders(
+      ResponseHeaders(mapOf(":status" to listOf("200"), "content-length" to listOf("12"))), false
+    )
+    stream?.receiveData(ByteBuffer.wrap("hello, ".toByteArray()), false)
+    stream?.receiveData(ByteBuffer.wrap("world".toByteArray()), true)
+    stream?.receiveComplete()
+
+    val body = response!!.body
+    assertThat(body.chunks()).hasSize(1)
+    // The preallocated array is returned as is.
+    assertThat(body.toByteArray()).isSameAs(body.toByteArray())
+    assertThat(body.string()).isEqualTo("hello, world")
+  }
+
+  @Test
+  fun `receives body longer than its content length`() {
+    var response: UnaryResponse? = null
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient { stream = it }
+
+    streamClient.execute(headers, null, directExecutor, { response = it }, {})
+    stream?.receiveHeaders(
+      ResponseHeaders(mapOf(":status" to listOf("200"), "content-length" to listOf("5"))), false
+    )
+    stream?.receiveData(ByteBuffer.wrap("hello, ".toByteArray()), false)
+    stream?.receiveData(ByteBuffer.wrap("world".toByteArray()), true)
+    stream?.receiveComplete()
+
+    assertThat(response!!.body.string()).isEqualTo("hello, world")
+  }
+
+  @Test
+  fun `passes trailers and errors`() {
+    var response: UnaryResponse? = null
+    var error: EnvoyError? = null
+    var stream: MockStream? = null
+    val streamClient = MockStreamClient { stream = it }
+
+    streamClient.execute(headers, null, directExecutor, { response = it }, {})
+    stream?.receiveHeaders(ResponseHeaders(mapOf(":status" to listOf("200"))), false)
+    stream?.receiveTrailers(ResponseTrailers(mapOf("x-foo" to listOf("bar"))))
+    stream?.receiveComplete()
+    streamClient.execute(headers, null, directExecutor, {}, { error = it })
+    stream?.receiveError(EnvoyError(2, "network error"))
+
+    assertThat(response!!.trailers?.value("x-foo")).containsExactly("bar")
+    assertThat(response!!.body.size).isEqualTo(0)
+    assertThat(error?.message).isEqualTo("network error")
+  }
+}
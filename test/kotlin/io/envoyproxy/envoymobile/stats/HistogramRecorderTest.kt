@@ -0,0 +1,152 @@
+package io.envoyproxy.envoymobile
+
+import io.envoyproxy.envoymobile.engine.EnvoyEngine
+import java.lang.ref.WeakReference
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.data.Percentage
+import org.junit.Test
+
+class HistogramRecorderTest {
+  private class Forwarded(val tags: Map<String, String>, val values: List<Int>, val counts: List<Long>)
+
+  private val engine = MockEnvoyEngine()
+  private val forwarded = mutableListOf<Forwarded>()
+  private val recorder = HistogramRecorder(WeakReference<EnvoyEngine>(engine), "test.stat") { _, _, tags, values, counts ->
+    forwarded.add(Forwarded(tags, values.toList(), counts.toList()))
+  }
+
+  @Test
+  fun `reports percentiles of values recorded`() {
+    val histogram = LogLinearHistogram()
+    for (value in 1..1000) {
+      histogram.record(value)
+    }
+
+    val snapshot = histogram.snapshot(reset = false)
+
+    assertThat(snapshot.count).isEqualTo(1000L)
+    assertThat(snapshot.min).isEqualTo(1)
+    assertThat(snapshot.max).isEqualTo(1000)
+    assertThat(snapshot.mean).isEqualTo(500.5)
+    assertThat(snapshot.percentile(50.0)).isCloseTo(500, Percentage.withPercentage(3.2))
+    assertThat(snapshot.percentile(95.0)).isCloseTo(950, Percentage.withPercentage(3.2))
+    assertThat(snapshot.percentile(100.0)).isEqualTo(1000)
+  }
+
+  @Test
+  fun `reports small values exactly`() {
+    val histogram = LogLinearHistogram()
+    histogram.record(3)
+    histogram.record(7)
+    histogram.record(31)
+
+    val snapshot = histogram.snapshot(reset = false)
+
+    assertThat(snapshot.percentile(0.0)).isEqualTo(3)
+    assertThat(snapshot.percentile(50.0)).isEqualTo(7)
+    assertThat(snapshot.percentile(99.0)).isEqualTo(31)
+  }
+
+  @Test
+  fun `empty snapshot has no percentiles`() {
+    val snapshot = LogLinearHistogram().snapshot(reset = false)
+
+    assertThat(snapshot.count).isEqualTo(0L)
+    assertThat(snapshot.percentile(50.0)).isNull()
+    assertThat(snapshot.min).isNull()
+    assertThat(snapshot.mean).isNull()
+  }
+
+  @Test
+  fun `merges snapshots`() {
+    val first = LogLinearHistogram()
+    val second = LogLinearHistogram()
+    first.record(10)
+    second.record(20)
+    second.record(30)
+
+    val merged = first.snapshot(reset = false).merge(second.snapshot(reset = false))
+
+    assertThat(merged.count).isEqualTo(3L)
+    assertThat(merged.sum).isEqualTo(60L)
+    assertThat(merged.min).isEqualTo(10)
+    assertThat(merged.max).isEqualTo(30)
+    assertThat(merged.percentile(50.0)).isEqualTo(20)
+  }
+
+  @Test
+  fun `resetting the window starts a new one`() {
+    recorder.record(emptyMap(), 100)
+    recorder.record(emptyMap(), 200)
+
+    val ended = recorder.resetWindow()
+    recorder.record(emptyMap(), 300)
+
+    assertThat(ended.count).isEqualTo(2L)
+    assertThat(recorder.snapshot().count).isEqualTo(1L)
+    assertThat(recorder.snapshot().percentile(50.0)).isEqualTo(300)
+  }
+
+  @Test
+  fun `forwards values in batches of buckets per tags`() {
+    val tags = mapOf("key" to "value")
+    for (i in 0 until 63) {
+      recorder.record(tags, 5)
+    }
+    assertThat(forwarded).isEmpty()
+
+    recorder.record(tags, 1000)
+
+    assertThat(forwarded).hasSize(1)
+    assertThat(forwarded[0].tags).isEqualTo(tags)
+    assertThat(forwarded[0].values).containsExactly(5, 1000)
+    assertThat(forwarded[0].counts).containsExactly(63L, 1L)
+  }
+
+  @Test
+  fun `forwards values pending on request`() {
+    recorder.record(emptyMap(), 5)
+    recorder.record(mapOf("key" to "value"), 7)
+
+    recorder.forwardPending()
+    recorder.forwardPending()
+
+    assertThat(forwarded.map { it.values }).containsExactlyInAnyOrder(listOf(5), listOf(7))
+    // The window keeps values of all tags.
+    assertThat(recorder.snapshot().count).isEqualTo(2L)
+  }
+
+  @Test(timeout = 10000L)
+  fun `forwards values pending once the forward interval elapsed`() {
+    val timerForwarded = CountDownLatch(1)
+    val forwardedValues = mutableListOf<Int>()
+    val timedRecorder = HistogramRecorder(
+      WeakReference<EnvoyEngine>(engine), "test.stat", forwardIntervalMillis = 50
+    ) { _, _, _, values, _ ->
+      synchronized(forwardedValues) { forwardedValues.addAll(values.toList()) }
+      timerForwarded.countDown()
+    }
+
+    timedRecorder.record(emptyMap(), 5)
+
+    assertThat(timerForwarded.await(5, TimeUnit.SECONDS)).isTrue()
+    assertThat(synchronized(forwardedValues) { forwardedValues.toList() }).containsExactly(5)
+  }
+
+  @Test
+  fun `forwards values of further tags on their own above the maximum of tags pending`() {
+    for (i in 0 until MAX_PENDING_TAG_SETS) {
+      recorder.record(mapOf("key" to "$i"), 5)
+    }
+    assertThat(forwarded).isEmpty()
+
+    recorder.record(mapOf("key" to "other"), 7)
+
+    assertThat(forwarded).hasSize(1)
+    assertThat(forwarded[0].tags).isEqualTo(mapOf("key" to "other"))
+    assertThat(forwarded[0].values).containsExactly(7)
+    assertThat(forwarded[0].counts).containsExactly(1L)
+  }
+}